@@ -20,6 +20,8 @@
 
 package org.neo4j.backup;
 
+import org.neo4j.com.ComSettings;
+import org.neo4j.com.Throttle;
 import org.neo4j.kernel.GraphDatabaseAPI;
 import org.neo4j.kernel.configuration.Config;
 import org.neo4j.kernel.lifecycle.Lifecycle;
@@ -47,6 +49,15 @@ public class OnlineBackupKernelExtension implements Lifecycle
     {
         if ( config.<Boolean>get( OnlineBackupSettings.online_backup_enabled ) )
         {
+            // Only if set, the com settings aren't necessarily registered with a single instance database
+            if ( config.isSet( ComSettings.store_copy_max_read_rate ) )
+            {
+                Throttle.STORE_COPY_READS.setBytesPerSecond( config.get( ComSettings.store_copy_max_read_rate ) );
+            }
+            if ( config.isSet( ComSettings.store_copy_max_write_rate ) )
+            {
+                Throttle.STORE_COPY_WRITES.setBytesPerSecond( config.get( ComSettings.store_copy_max_write_rate ) );
+            }
             TheBackupInterface backup = new BackupImpl( graphDatabaseAPI );
             try
             {
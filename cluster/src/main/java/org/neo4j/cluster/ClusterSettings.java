@@ -21,11 +21,13 @@ package org.neo4j.cluster;
 
 import static org.neo4j.graphdb.factory.GraphDatabaseSetting.ANY;
 import static org.neo4j.graphdb.factory.GraphDatabaseSetting.FALSE;
+import static org.neo4j.graphdb.factory.GraphDatabaseSetting.FloatSetting;
 import static org.neo4j.graphdb.factory.GraphDatabaseSetting.HostnamePortSetting;
 import static org.neo4j.graphdb.factory.GraphDatabaseSetting.TRUE;
 import static org.neo4j.graphdb.factory.GraphDatabaseSetting.TimeSpanSetting;
 
 import org.neo4j.graphdb.factory.Default;
+import org.neo4j.graphdb.factory.Description;
 import org.neo4j.graphdb.factory.GraphDatabaseSetting;
 import org.neo4j.graphdb.factory.GraphDatabaseSetting.BooleanSetting;
 import org.neo4j.graphdb.factory.GraphDatabaseSetting.IntegerSetting;
@@ -65,4 +67,46 @@ public class ClusterSettings
 
     public static final StringSetting cluster_discovery_url = new StringSetting( "ha.discovery.url", ANY,
             "Must be a valid URL" );
+
+    @Description("Number of Paxos instances this instance lets run at the same time for the values it broadcasts, " +
+            "to begin with. The window then grows while instances close quickly and values are waiting, " +
+            "and halves when instances time out or are rejected. Lowered to ha.paxos_max_window if larger.")
+    @Default("10")
+    public static final IntegerSetting paxos_window = new IntegerSetting( "ha.paxos_window",
+            "Must be a valid number of instances", 1, null );
+
+    @Description("Largest number of Paxos instances this instance lets run at the same time for the values " +
+            "it broadcasts.")
+    @Default("100")
+    public static final IntegerSetting paxos_max_window = new IntegerSetting( "ha.paxos_max_window",
+            "Must be a valid number of instances", 1, null );
+
+    @Description("How unlikely a silence from another instance must be, given how regularly messages from it have " +
+            "arrived, before this instance suspects that it has failed. A threshold of phi means that there is " +
+            "about a 1 in 10^phi chance that the suspicion is wrong. Higher values give fewer false suspicions " +
+            "during GC pauses and network hiccups, lower values give faster failover. Set to 0 to suspect " +
+            "instances after a fixed timeout instead.")
+    @Default("8")
+    public static final FloatSetting heartbeat_phi_threshold = new FloatSetting( "ha.heartbeat_phi_threshold",
+            "Must be a valid floating point number", 0.0f, null );
+
+    @Description("Directory where this instance logs its Paxos promises and accepted values, so that it still " +
+            "knows them if it crashes and joins the cluster again. They are only kept in memory if not set. " +
+            "The log is cleared when the instance leaves the cluster or creates a new one. If all instances " +
+            "crash at the same time, the logs must be removed before starting the cluster again.")
+    public static final StringSetting paxos_log_directory = new StringSetting( "ha.paxos_log_directory", ANY,
+            "Must be a valid directory" );
+
+    @Description("Write the values this instance broadcasts to the cluster, such as master elections and member " +
+            "availability, in a compact binary format instead of with java serialization. Instances on versions " +
+            "that predate the format can't read such values, so only enable this once every instance in the " +
+            "cluster has been upgraded.")
+    @Default(FALSE)
+    public static final BooleanSetting compact_broadcasts = new BooleanSetting( "ha.compact_broadcasts" );
+
+    @Description("Propose broadcast values that are waiting for room in the Paxos window together, in one " +
+            "instance. Instances on versions that predate this can't learn such instances, so only enable this " +
+            "once every instance in the cluster has been upgraded.")
+    @Default(FALSE)
+    public static final BooleanSetting paxos_batching = new BooleanSetting( "ha.paxos_batching" );
 }
\ No newline at end of file
@@ -29,7 +29,12 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.neo4j.cluster.com.message.Message;
 import org.neo4j.cluster.com.message.MessageProcessor;
@@ -46,34 +51,70 @@ import org.slf4j.LoggerFactory;
  * Combines a set of state machines into one. This will
  * typically receive messages from the network and then delegate
  * to the correct state machine based on what type of message comes in.
- * Only one message at a time can be processed.
+ * <p/>
+ * Each state machine gets messages through a mailbox, and only one message at a time is processed per mailbox.
+ * State machines that share state are added to the same mailbox. Messages that a state machine sends to
+ * another state machine in its own mailbox are processed before the next message in the mailbox, while
+ * messages to state machines in other mailboxes are put in their mailboxes. Mailboxes are run by the
+ * dispatcher, so with a dispatcher that has several threads, a burst of messages for one mailbox does not
+ * hold up the others.
  */
 public class ConnectedStateMachines
         implements MessageProcessor, MessageSource
 {
+    /**
+     * Runs mailboxes on the thread that puts a message in them, unless some thread is already running them.
+     */
+    private static final Executor CALLER_RUNS = new Executor()
+    {
+        @Override
+        public void execute( Runnable command )
+        {
+            command.run();
+        }
+    };
+
     private final Logger logger = LoggerFactory.getLogger( ConnectedStateMachines.class );
 
     private final MessageProcessor sender;
     private DelayedDirectExecutor executor;
+    private final Executor dispatcher;
     private Timeouts timeouts;
     private final Map<Class<? extends MessageType>, StateMachine> stateMachines = new LinkedHashMap<Class<? extends
             MessageType>, StateMachine>();
+    private final Map<Class<? extends MessageType>, Mailbox> mailboxes = new ConcurrentHashMap<Class<? extends
+            MessageType>, Mailbox>();
+    private final Map<String, Mailbox> namedMailboxes = new LinkedHashMap<String, Mailbox>();
 
-    private final List<MessageProcessor> outgoingProcessors = new ArrayList<MessageProcessor>();
-    private final OutgoingMessageProcessor outgoing;
+    private final List<MessageProcessor> outgoingProcessors = new CopyOnWriteArrayList<MessageProcessor>();
+    private final MessageProcessor outgoing;
 
-    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock( true );
+    // The mailbox being run by the current thread, if any
+    private final ThreadLocal<Mailbox> currentMailbox = new ThreadLocal<Mailbox>();
 
     public ConnectedStateMachines( MessageSource source,
                                    final MessageProcessor sender,
                                    TimeoutStrategy timeoutStrategy,
                                    DelayedDirectExecutor executor )
+    {
+        this( source, sender, timeoutStrategy, executor, CALLER_RUNS );
+    }
+
+    /**
+     * @param dispatcher runs the mailboxes. A mailbox is never run by more than one thread at a time.
+     */
+    public ConnectedStateMachines( MessageSource source,
+                                   final MessageProcessor sender,
+                                   TimeoutStrategy timeoutStrategy,
+                                   DelayedDirectExecutor executor,
+                                   Executor dispatcher )
     {
         this.sender = sender;
         this.executor = executor;
+        this.dispatcher = dispatcher;
         this.timeouts = new Timeouts( this, timeoutStrategy );
 
-        outgoing = new OutgoingMessageProcessor();
+        outgoing = new OutgoingMessageRouter();
         source.addMessageProcessor( this );
     }
 
@@ -82,14 +123,39 @@ public class ConnectedStateMachines
         return timeouts;
     }
 
+    /**
+     * Add a state machine with a mailbox of its own.
+     */
     public synchronized void addStateMachine( StateMachine stateMachine )
     {
+        addStateMachine( stateMachine, stateMachine.getMessageType().getName() );
+    }
+
+    /**
+     * Add a state machine to the named mailbox, which it shares with all other state machines added to it.
+     */
+    public synchronized void addStateMachine( StateMachine stateMachine, String mailboxName )
+    {
+        Mailbox mailbox = namedMailboxes.get( mailboxName );
+        if ( mailbox == null )
+        {
+            mailbox = new Mailbox();
+            namedMailboxes.put( mailboxName, mailbox );
+        }
+
         stateMachines.put( stateMachine.getMessageType(), stateMachine );
+        mailbox.stateMachines.put( stateMachine.getMessageType(), stateMachine );
+        mailboxes.put( stateMachine.getMessageType(), mailbox );
     }
 
     public synchronized void removeStateMachine( StateMachine stateMachine )
     {
         stateMachines.remove( stateMachine.getMessageType() );
+        Mailbox mailbox = mailboxes.remove( stateMachine.getMessageType() );
+        if ( mailbox != null )
+        {
+            mailbox.stateMachines.remove( stateMachine.getMessageType() );
+        }
     }
 
     public Iterable<StateMachine> getStateMachines()
@@ -103,87 +169,62 @@ public class ConnectedStateMachines
         outgoingProcessors.add( messageProcessor );
     }
 
-    public OutgoingMessageProcessor getOutgoing()
+    /**
+     * @return processor for messages that are sent from outside the state machines, such as from listeners
+     *         and message processors. Messages sent through it while a state machine is handling a message are
+     *         treated as sent by that state machine.
+     */
+    public MessageProcessor getOutgoing()
     {
         return outgoing;
     }
 
     @Override
-    public synchronized void process( Message<? extends MessageType> message )
+    public void process( Message<? extends MessageType> message )
     {
-        lock.writeLock().lock();
-
-        try
+        Mailbox mailbox = mailboxes.get( message.getMessageType().getClass() );
+        if ( mailbox == null )
         {
-            // Lock timeouts while we are processing the message
-            synchronized ( timeouts )
-            {
-                StateMachine stateMachine = stateMachines.get( message.getMessageType().getClass() );
-                if ( stateMachine == null )
-                {
-                    return; // No StateMachine registered for this MessageType type - Ignore this
-                }
-
-                stateMachine.handle( message, outgoing );
-
-                // Process and send messages
-                // Allow state machines to send messages to each other as well in this loop
-                Message<? extends MessageType> outgoingMessage;
-                try
-                {
-                    while ( (outgoingMessage = outgoing.nextOutgoingMessage()) != null )
-                    {
-                        message.copyHeadersTo( outgoingMessage, CONVERSATION_ID, CREATED_BY );
+            return; // No StateMachine registered for this MessageType type - Ignore this
+        }
 
-                        for ( MessageProcessor outgoingProcessor : outgoingProcessors )
-                        {
-                            try
-                            {
-                                outgoingProcessor.process( outgoingMessage );
-                            }
-                            catch ( Throwable e )
-                            {
-                                logger.warn( "Outgoing message processor threw exception", e );
-                            }
-                        }
+        mailbox.deliver( message );
+    }
 
-                        if ( outgoingMessage.hasHeader( Message.TO ) )
-                        {
-                            try
-                            {
-                                sender.process( outgoingMessage );
-                            }
-                            catch ( Throwable e )
-                            {
-                                logger.warn( "Message sending threw exception", e );
-                            }
-                        }
-                        else
-                        {
-                            // Deliver internally if possible
-                            StateMachine internalStatemachine = stateMachines.get( outgoingMessage.getMessageType()
-                                    .getClass() );
-                            //                if (internalStatemachine != null && stateMachine != internalStatemachine )
-                            if ( internalStatemachine != null )
-                            {
-                                internalStatemachine.handle( (Message) outgoingMessage, outgoing );
-                            }
-                        }
-                    }
-                }
-                catch ( Exception e )
-                {
-                    logger.warn( "Error processing message " + message, e );
-                }
+    /**
+     * Let the outgoing processors see a message, and send it if it has a receiver.
+     *
+     * @return true if the message was sent, false if it is for a local state machine
+     */
+    private boolean send( Message<? extends MessageType> message )
+    {
+        for ( MessageProcessor outgoingProcessor : outgoingProcessors )
+        {
+            try
+            {
+                outgoingProcessor.process( message );
+            }
+            catch ( Throwable e )
+            {
+                logger.warn( "Outgoing message processor threw exception", e );
             }
+        }
 
-            // Before returning, process delayed executions so that they are done before returning
-            // This will effectively trigger all notifications created by contexts
-            executor.drain();
+        if ( message.hasHeader( Message.TO ) )
+        {
+            try
+            {
+                sender.process( message );
+            }
+            catch ( Throwable e )
+            {
+                logger.warn( "Message sending threw exception", e );
+            }
+            return true;
         }
-        finally
+        else
         {
-            lock.writeLock().unlock();
+            return false;
         }
     }
 
@@ -220,6 +261,151 @@ public class ConnectedStateMachines
         return stateMachines.get( messageType );
     }
 
+    /**
+     * Messages waiting for a group of state machines, and the messages those state machines send while
+     * handling one of them.
+     */
+    private class Mailbox
+            implements Runnable
+    {
+        private final Map<Class<? extends MessageType>, StateMachine> stateMachines = new ConcurrentHashMap<Class<?
+                extends MessageType>, StateMachine>();
+        private final Queue<Message<? extends MessageType>> incoming = new ConcurrentLinkedQueue<Message<? extends
+                MessageType>>();
+        private final OutgoingMessageProcessor outgoing = new OutgoingMessageProcessor();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        void deliver( Message<? extends MessageType> message )
+        {
+            incoming.offer( message );
+            schedule();
+        }
+
+        private void schedule()
+        {
+            if ( scheduled.compareAndSet( false, true ) )
+            {
+                try
+                {
+                    dispatcher.execute( this );
+                }
+                catch ( RejectedExecutionException e )
+                {
+                    // Shutting down
+                    scheduled.set( false );
+                }
+            }
+        }
+
+        @Override
+        public void run()
+        {
+            Mailbox previous = currentMailbox.get();
+            currentMailbox.set( this );
+            try
+            {
+                Message<? extends MessageType> message;
+                while ( (message = incoming.poll()) != null )
+                {
+                    handle( message );
+                }
+            }
+            finally
+            {
+                if ( previous == null )
+                {
+                    currentMailbox.remove();
+                }
+                else
+                {
+                    currentMailbox.set( previous );
+                }
+                scheduled.set( false );
+            }
+
+            // A message may have been delivered after the last poll but before this was unscheduled
+            if ( !incoming.isEmpty() )
+            {
+                schedule();
+            }
+        }
+
+        private void handle( Message<? extends MessageType> message )
+        {
+            StateMachine stateMachine = stateMachines.get( message.getMessageType().getClass() );
+            if ( stateMachine == null )
+            {
+                return; // Removed after the message was delivered
+            }
+
+            stateMachine.handle( message, outgoing );
+
+            // Process and send messages
+            // Allow state machines to send messages to each other as well in this loop
+            Message<? extends MessageType> outgoingMessage;
+            try
+            {
+                while ( (outgoingMessage = outgoing.nextOutgoingMessage()) != null )
+                {
+                    message.copyHeadersTo( outgoingMessage, CONVERSATION_ID, CREATED_BY );
+
+                    if ( !send( outgoingMessage ) )
+                    {
+                        // Deliver internally if possible
+                        Mailbox mailbox = mailboxes.get( outgoingMessage.getMessageType().getClass() );
+                        if ( mailbox == this )
+                        {
+                            StateMachine internalStatemachine = stateMachines.get( outgoingMessage
+                                    .getMessageType().getClass() );
+                            if ( internalStatemachine != null )
+                            {
+                                internalStatemachine.handle( (Message) outgoingMessage, outgoing );
+                            }
+                        }
+                        else if ( mailbox != null )
+                        {
+                            mailbox.deliver( outgoingMessage );
+                        }
+                    }
+                }
+            }
+            catch ( Exception e )
+            {
+                logger.warn( "Error processing message " + message, e );
+            }
+
+            // Before returning, process delayed executions so that they are done before returning
+            // This will effectively trigger all notifications created by contexts
+            executor.drain();
+        }
+    }
+
+    /**
+     * Messages sent on the thread that runs a mailbox go to that mailbox, as if the state machine whose message
+     * is being handled sent them. Others are sent right away.
+     */
+    private class OutgoingMessageRouter
+            implements MessageProcessor
+    {
+        @Override
+        public void process( Message<? extends MessageType> message )
+        {
+            Mailbox current = currentMailbox.get();
+            if ( current != null )
+            {
+                current.outgoing.process( message );
+            }
+            else if ( !send( message ) )
+            {
+                Mailbox mailbox = mailboxes.get( message.getMessageType().getClass() );
+                if ( mailbox != null )
+                {
+                    mailbox.deliver( message );
+                }
+            }
+        }
+    }
+
     private class OutgoingMessageProcessor
             implements MessageProcessor
     {
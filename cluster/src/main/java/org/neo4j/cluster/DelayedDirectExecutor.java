@@ -29,12 +29,17 @@ import java.util.concurrent.TimeUnit;
 /**
  * Executor that executes the Runnables when drain() is called. Allows asynch jobs to be scheduled, and then
  * run in a synchronous fashion.
+ * <p/>
+ * State machines on several threads may schedule and drain at the same time. Draining is done by one thread
+ * at a time, so that Runnables are run in the order they were scheduled.
  */
 public class DelayedDirectExecutor
         extends AbstractExecutorService
 {
     List<Runnable> runnables = new ArrayList<Runnable>();
 
+    private final Object drainLock = new Object();
+
     @Override
     public void shutdown()
     {
@@ -65,24 +70,32 @@ public class DelayedDirectExecutor
     }
 
     @Override
-    public void execute( Runnable command )
+    public synchronized void execute( Runnable command )
     {
         runnables.add( command );
     }
 
     public void drain()
     {
-        List<Runnable> current = runnables;
-        runnables = new ArrayList<Runnable>();
-        for ( Runnable runnable : current )
+        synchronized ( drainLock )
         {
-            try
+            List<Runnable> current;
+            synchronized ( this )
             {
-                runnable.run();
+                current = runnables;
+                runnables = new ArrayList<Runnable>();
             }
-            catch ( Throwable e )
+
+            for ( Runnable runnable : current )
             {
-                e.printStackTrace();
+                try
+                {
+                    runnable.run();
+                }
+                catch ( Throwable e )
+                {
+                    e.printStackTrace();
+                }
             }
         }
     }
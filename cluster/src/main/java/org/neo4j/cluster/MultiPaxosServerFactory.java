@@ -23,6 +23,7 @@ package org.neo4j.cluster;
 import static org.neo4j.cluster.com.message.Message.internal;
 
 import java.net.URI;
+import java.util.concurrent.Executor;
 
 import org.neo4j.cluster.com.message.MessageProcessor;
 import org.neo4j.cluster.com.message.MessageSource;
@@ -40,6 +41,7 @@ import org.neo4j.cluster.protocol.atomicbroadcast.multipaxos.MultiPaxosContext;
 import org.neo4j.cluster.protocol.atomicbroadcast.multipaxos.ProposerContext;
 import org.neo4j.cluster.protocol.atomicbroadcast.multipaxos.ProposerMessage;
 import org.neo4j.cluster.protocol.atomicbroadcast.multipaxos.ProposerState;
+import org.neo4j.cluster.protocol.atomicbroadcast.multipaxos.ProposerWindow;
 import org.neo4j.cluster.protocol.cluster.Cluster;
 import org.neo4j.cluster.protocol.cluster.ClusterConfiguration;
 import org.neo4j.cluster.protocol.cluster.ClusterContext;
@@ -59,6 +61,8 @@ import org.neo4j.cluster.protocol.heartbeat.HeartbeatJoinListener;
 import org.neo4j.cluster.protocol.heartbeat.HeartbeatMessage;
 import org.neo4j.cluster.protocol.heartbeat.HeartbeatRefreshProcessor;
 import org.neo4j.cluster.protocol.heartbeat.HeartbeatState;
+import org.neo4j.cluster.protocol.heartbeat.PhiAccrualFailureDetector;
+import org.neo4j.cluster.protocol.heartbeat.PhiAccrualTimeoutStrategy;
 import org.neo4j.cluster.protocol.snapshot.SnapshotContext;
 import org.neo4j.cluster.protocol.snapshot.SnapshotMessage;
 import org.neo4j.cluster.protocol.snapshot.SnapshotState;
@@ -76,13 +80,65 @@ import org.neo4j.kernel.logging.Logging;
 public class MultiPaxosServerFactory
         implements ProtocolServerFactory
 {
+    // The Paxos state machines, and the cluster and snapshot state machines that change what they have learned,
+    // share their contexts, so they handle one message at a time between them
+    private static final String PAXOS_MAILBOX = "paxos";
+
     private final ClusterConfiguration initialConfig;
     private final Logging logging;
+    private final int windowSize;
+    private final int maxWindowSize;
+    private final PhiAccrualFailureDetector failureDetector;
+    private final Executor dispatcher;
+    private final boolean batching;
 
     public MultiPaxosServerFactory( ClusterConfiguration initialConfig, Logging logging )
+    {
+        this( initialConfig, logging, ProposerWindow.DEFAULT_SIZE, ProposerWindow.DEFAULT_MAX_SIZE );
+    }
+
+    public MultiPaxosServerFactory( ClusterConfiguration initialConfig, Logging logging, int windowSize,
+                                    int maxWindowSize )
+    {
+        this( initialConfig, logging, windowSize, maxWindowSize, null );
+    }
+
+    /**
+     * @param failureDetector decides when members are suspected, or null to suspect them after the fixed
+     *                        heartbeat timeout of the timeout strategy
+     */
+    public MultiPaxosServerFactory( ClusterConfiguration initialConfig, Logging logging, int windowSize,
+                                    int maxWindowSize, PhiAccrualFailureDetector failureDetector )
+    {
+        this( initialConfig, logging, windowSize, maxWindowSize, failureDetector, null );
+    }
+
+    /**
+     * @param dispatcher runs the mailboxes of the state machines, or null to run them on the threads that
+     *                   deliver messages to them
+     */
+    public MultiPaxosServerFactory( ClusterConfiguration initialConfig, Logging logging, int windowSize,
+                                    int maxWindowSize, PhiAccrualFailureDetector failureDetector,
+                                    Executor dispatcher )
+    {
+        this( initialConfig, logging, windowSize, maxWindowSize, failureDetector, dispatcher, false );
+    }
+
+    /**
+     * @param batching whether waiting broadcast values may be proposed together as one
+     *                 {@link org.neo4j.cluster.protocol.atomicbroadcast.multipaxos.Batch}
+     */
+    public MultiPaxosServerFactory( ClusterConfiguration initialConfig, Logging logging, int windowSize,
+                                    int maxWindowSize, PhiAccrualFailureDetector failureDetector,
+                                    Executor dispatcher, boolean batching )
     {
         this.initialConfig = initialConfig;
         this.logging = logging;
+        this.windowSize = windowSize;
+        this.maxWindowSize = maxWindowSize;
+        this.failureDetector = failureDetector;
+        this.dispatcher = dispatcher;
+        this.batching = batching;
     }
 
     @Override
@@ -91,25 +147,41 @@ public class MultiPaxosServerFactory
                                              AcceptorInstanceStore acceptorInstanceStore,
                                              ElectionCredentialsProvider electionCredentialsProvider )
     {
+        if ( failureDetector != null )
+        {
+            timeoutStrategy = new PhiAccrualTimeoutStrategy( timeoutStrategy, failureDetector );
+        }
         LatencyCalculator latencyCalculator = new LatencyCalculator( timeoutStrategy, input );
+        if ( failureDetector != null )
+        {
+            latencyCalculator.addLatencyListener( failureDetector );
+        }
 
         DelayedDirectExecutor executor = new DelayedDirectExecutor();
 
         // Create state machines
-        ConnectedStateMachines connectedStateMachines = new ConnectedStateMachines( input, output, latencyCalculator,
-                executor );
+        ConnectedStateMachines connectedStateMachines = dispatcher == null ? new ConnectedStateMachines( input,
+                output, latencyCalculator, executor ) : new ConnectedStateMachines( input, output, latencyCalculator,
+                executor, dispatcher );
         Timeouts timeouts = connectedStateMachines.getTimeouts();
         connectedStateMachines.addMessageProcessor( latencyCalculator );
 
         AcceptorContext acceptorContext = new AcceptorContext( logging, acceptorInstanceStore );
         LearnerContext learnerContext = new LearnerContext();
-        ProposerContext proposerContext = new ProposerContext();
+        if ( windowSize > maxWindowSize )
+        {
+            logging.getLogger( ProposerWindow.class ).warn( "Paxos window " + windowSize + " is larger than the " +
+                    "max window " + maxWindowSize + ", starting with " + maxWindowSize + " instead" );
+        }
+        ProposerContext proposerContext = new ProposerContext( new ProposerWindow( windowSize, maxWindowSize ),
+                batching );
         final ClusterContext clusterContext = new ClusterContext( proposerContext, learnerContext,
                 new ClusterConfiguration( initialConfig.getName(), initialConfig.getMembers() ), timeouts, executor,
                 logging );
-        final HeartbeatContext heartbeatContext = new HeartbeatContext( clusterContext, learnerContext, executor );
-        final MultiPaxosContext context = new MultiPaxosContext( clusterContext, proposerContext, learnerContext,
-                heartbeatContext, timeouts );
+        final HeartbeatContext heartbeatContext = new HeartbeatContext( clusterContext, learnerContext, failureDetector,
+                executor );
+        final MultiPaxosContext context = new MultiPaxosContext( clusterContext, proposerContext, acceptorContext,
+                learnerContext, heartbeatContext, timeouts );
         ElectionContext electionContext = new ElectionContext( Iterables.iterable( new ElectionRole(
                 ClusterConfiguration
                         .COORDINATOR ) ), clusterContext, heartbeatContext );
@@ -117,25 +189,26 @@ public class MultiPaxosServerFactory
         AtomicBroadcastContext atomicBroadcastContext = new AtomicBroadcastContext( clusterContext, executor );
 
         connectedStateMachines.addStateMachine( new StateMachine( atomicBroadcastContext,
-                AtomicBroadcastMessage.class, AtomicBroadcastState.start ) );
+                AtomicBroadcastMessage.class, AtomicBroadcastState.start ), PAXOS_MAILBOX );
         connectedStateMachines.addStateMachine( new StateMachine( acceptorContext, AcceptorMessage.class,
-                AcceptorState.start ) );
+                AcceptorState.start ), PAXOS_MAILBOX );
         connectedStateMachines.addStateMachine( new StateMachine( context, ProposerMessage.class,
-                ProposerState.start ) );
-        connectedStateMachines.addStateMachine( new StateMachine( context, LearnerMessage.class, LearnerState.start ) );
+                ProposerState.start ), PAXOS_MAILBOX );
+        connectedStateMachines.addStateMachine( new StateMachine( context, LearnerMessage.class, LearnerState.start ),
+                PAXOS_MAILBOX );
         connectedStateMachines.addStateMachine( new StateMachine( heartbeatContext, HeartbeatMessage.class,
                 HeartbeatState.start ) );
         connectedStateMachines.addStateMachine( new StateMachine( electionContext, ElectionMessage.class,
                 ElectionState.start ) );
         connectedStateMachines.addStateMachine( new StateMachine( snapshotContext, SnapshotMessage.class,
-                SnapshotState.start ) );
+                SnapshotState.start ), PAXOS_MAILBOX );
 
         final ProtocolServer server = new ProtocolServer( connectedStateMachines, logging.getLogger( ProtocolServer
                 .class ) );
 
         StateMachine cluster = new StateMachine( clusterContext, ClusterMessage.class, ClusterState.start );
 
-        connectedStateMachines.addStateMachine( cluster );
+        connectedStateMachines.addStateMachine( cluster, PAXOS_MAILBOX );
 
         server.addBindingListener( new BindingListener()
         {
@@ -162,7 +235,7 @@ public class MultiPaxosServerFactory
                 .rule( ClusterState.start, ClusterMessage.create, ClusterState.entered,
                         internal( AtomicBroadcastMessage.entered ),
                         internal( ProposerMessage.join ),
-                        internal( AcceptorMessage.join ),
+                        internal( AcceptorMessage.created ),
                         internal( LearnerMessage.join ),
                         internal( HeartbeatMessage.join ),
                         internal( ElectionMessage.created ),
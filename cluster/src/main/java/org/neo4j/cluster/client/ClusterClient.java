@@ -19,8 +19,10 @@
  */
 package org.neo4j.cluster.client;
 
+import java.io.File;
 import java.net.URI;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
@@ -32,10 +34,16 @@ import org.neo4j.cluster.ConnectedStateMachines;
 import org.neo4j.cluster.MultiPaxosServerFactory;
 import org.neo4j.cluster.ProtocolServer;
 import org.neo4j.cluster.com.NetworkInstance;
+import org.neo4j.cluster.com.message.MessageProcessor;
 import org.neo4j.cluster.protocol.atomicbroadcast.AtomicBroadcast;
 import org.neo4j.cluster.protocol.atomicbroadcast.AtomicBroadcastListener;
 import org.neo4j.cluster.protocol.atomicbroadcast.Payload;
+import org.neo4j.cluster.protocol.atomicbroadcast.multipaxos.AcceptorInstanceStore;
+import org.neo4j.cluster.protocol.atomicbroadcast.multipaxos.FileAcceptorInstanceStore;
 import org.neo4j.cluster.protocol.atomicbroadcast.multipaxos.InMemoryAcceptorInstanceStore;
+import org.neo4j.cluster.protocol.atomicbroadcast.multipaxos.MultiPaxosContext;
+import org.neo4j.cluster.protocol.atomicbroadcast.multipaxos.ProposerContext;
+import org.neo4j.cluster.protocol.atomicbroadcast.multipaxos.ProposerMessage;
 import org.neo4j.cluster.protocol.cluster.Cluster;
 import org.neo4j.cluster.protocol.cluster.ClusterConfiguration;
 import org.neo4j.cluster.protocol.cluster.ClusterListener;
@@ -43,6 +51,7 @@ import org.neo4j.cluster.protocol.election.ElectionCredentialsProvider;
 import org.neo4j.cluster.protocol.heartbeat.Heartbeat;
 import org.neo4j.cluster.protocol.heartbeat.HeartbeatListener;
 import org.neo4j.cluster.protocol.heartbeat.HeartbeatMessage;
+import org.neo4j.cluster.protocol.heartbeat.PhiAccrualFailureDetector;
 import org.neo4j.cluster.statemachine.StateMachine;
 import org.neo4j.cluster.statemachine.StateTransitionLogger;
 import org.neo4j.cluster.timeout.FixedTimeoutStrategy;
@@ -63,6 +72,7 @@ public class ClusterClient extends LifecycleAdapter implements Cluster, AtomicBr
     private final AtomicBroadcast broadcast;
     private final Heartbeat heartbeat;
     private final ProtocolServer server;
+    private final PhiAccrualFailureDetector failureDetector;
 
     public interface Configuration
     {
@@ -83,6 +93,22 @@ public class ClusterClient extends LifecycleAdapter implements Cluster, AtomicBr
         String getDiscoveryUrl();
 
         String getClusterName();
+
+        int getPaxosWindow();
+
+        int getPaxosMaxWindow();
+
+        /**
+         * @return the phi accrual threshold for suspecting other members, or 0 to suspect them after a fixed timeout.
+         */
+        float getHeartbeatPhiThreshold();
+
+        /**
+         * @return the directory of the Paxos log, or null to only keep acceptor state in memory.
+         */
+        String getPaxosLogDirectory();
+
+        boolean isPaxosBatching();
     }
 
     public static Configuration adapt( final Config config,
@@ -144,6 +170,36 @@ public class ClusterClient extends LifecycleAdapter implements Cluster, AtomicBr
             {
                 return ClusterSettings.cluster_server.getAddress( config.getParams() );
             }
+
+            @Override
+            public int getPaxosWindow()
+            {
+                return config.get( ClusterSettings.paxos_window );
+            }
+
+            @Override
+            public int getPaxosMaxWindow()
+            {
+                return config.get( ClusterSettings.paxos_max_window );
+            }
+
+            @Override
+            public float getHeartbeatPhiThreshold()
+            {
+                return config.get( ClusterSettings.heartbeat_phi_threshold );
+            }
+
+            @Override
+            public String getPaxosLogDirectory()
+            {
+                return config.get( ClusterSettings.paxos_log_directory );
+            }
+
+            @Override
+            public boolean isPaxosBatching()
+            {
+                return config.get( ClusterSettings.paxos_batching );
+            }
         };
     }
 
@@ -154,10 +210,33 @@ public class ClusterClient extends LifecycleAdapter implements Cluster, AtomicBr
                 .timeout( HeartbeatMessage.sendHeartbeat, config.getHeartbeatInterval() ).relativeTimeout(
                         HeartbeatMessage.timed_out, HeartbeatMessage.sendHeartbeat, config.getHeartbeatInterval() );
 
+        if ( config.getHeartbeatPhiThreshold() > 0 )
+        {
+            // The heartbeat timeout that members were given before is the pause accepted on top of the interval
+            failureDetector = new PhiAccrualFailureDetector( config.getHeartbeatPhiThreshold(),
+                    config.getHeartbeatInterval(), config.getHeartbeatTimeout() );
+        }
+        else
+        {
+            failureDetector = null;
+        }
+
+        // Each mailbox of state machines is run by a thread of its own while it has messages, so that heartbeats
+        // are handled while Paxos is busy
+        final ExecutorService dispatcher = Executors.newCachedThreadPool( new DaemonThreadFactory( "cluster" ) );
+        life.add( new LifecycleAdapter()
+        {
+            @Override
+            public void shutdown() throws Throwable
+            {
+                dispatcher.shutdown();
+            }
+        } );
+
         MultiPaxosServerFactory protocolServerFactory = new MultiPaxosServerFactory( new ClusterConfiguration(
-                "neo4j.ha" ), logging );
+                "neo4j.ha" ), logging, config.getPaxosWindow(), config.getPaxosMaxWindow(), failureDetector,
+                dispatcher, config.isPaxosBatching() );
 
-        InMemoryAcceptorInstanceStore acceptorInstanceStore = new InMemoryAcceptorInstanceStore();
         ElectionCredentialsProvider electionCredentialsProvider = config.getElectionCredentialsProvider();
 
         NetworkInstance networkNodeTCP = new NetworkInstance( new NetworkInstance.Configuration()
@@ -175,7 +254,24 @@ public class ClusterClient extends LifecycleAdapter implements Cluster, AtomicBr
             }
         }, StringLogger.SYSTEM );
 
-        server = life.add( protocolServerFactory.newProtocolServer( timeoutStrategy, networkNodeTCP, networkNodeTCP,
+        AcceptorInstanceStore acceptorInstanceStore;
+        MessageProcessor output;
+        if ( config.getPaxosLogDirectory() != null )
+        {
+            // Replies are held back until the promises and values they report are forced to the log
+            FileAcceptorInstanceStore fileStore = life.add( new FileAcceptorInstanceStore( new File( config
+                    .getPaxosLogDirectory() ), networkNodeTCP.getMessageCodec(), logging.getLogger(
+                    FileAcceptorInstanceStore.class ) ) );
+            acceptorInstanceStore = fileStore;
+            output = fileStore.forceBefore( networkNodeTCP );
+        }
+        else
+        {
+            acceptorInstanceStore = new InMemoryAcceptorInstanceStore();
+            output = networkNodeTCP;
+        }
+
+        server = life.add( protocolServerFactory.newProtocolServer( timeoutStrategy, networkNodeTCP, output,
                 acceptorInstanceStore, electionCredentialsProvider ) );
 
         networkNodeTCP.addNetworkChannelsListener( new NetworkInstance.NetworkChannelsListener()
@@ -359,11 +455,14 @@ public class ClusterClient extends LifecycleAdapter implements Cluster, AtomicBr
         }
 
         appendTo.append( "Current timeouts:\n" );
-        for ( Map.Entry<Object, Timeouts.Timeout> objectTimeoutEntry : stateMachines.getTimeouts().getTimeouts()
-                .entrySet() )
+        Timeouts timeouts = stateMachines.getTimeouts();
+        synchronized ( timeouts )
         {
-            appendTo.append( objectTimeoutEntry.getKey().toString() ).append( ":" )
-                    .append( objectTimeoutEntry.getValue().getTimeoutMessage().toString() );
+            for ( Map.Entry<Object, Timeouts.Timeout> objectTimeoutEntry : timeouts.getTimeouts().entrySet() )
+            {
+                appendTo.append( objectTimeoutEntry.getKey().toString() ).append( ":" )
+                        .append( objectTimeoutEntry.getValue().getTimeoutMessage().toString() );
+            }
         }
     }
     
@@ -371,4 +470,20 @@ public class ClusterClient extends LifecycleAdapter implements Cluster, AtomicBr
     {
         return server.getServerId();
     }
+
+    public ProposerContext getProposerContext()
+    {
+        MultiPaxosContext context = (MultiPaxosContext) server.getConnectedStateMachines().getStateMachine(
+                ProposerMessage.class ).getContext();
+        return context.getProposerContext();
+    }
+
+    /**
+     * @return the failure detector that decides when other members are suspected, or null if they are
+     *         suspected after a fixed timeout.
+     */
+    public PhiAccrualFailureDetector getFailureDetector()
+    {
+        return failureDetector;
+    }
 }
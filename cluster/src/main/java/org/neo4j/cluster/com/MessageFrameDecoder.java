@@ -0,0 +1,109 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.cluster.com;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.handler.codec.frame.CorruptedFrameException;
+import org.jboss.netty.handler.codec.frame.TooLongFrameException;
+import org.jboss.netty.handler.codec.serialization.ObjectDecoder;
+import org.neo4j.cluster.com.message.Message;
+import org.neo4j.cluster.com.message.MessageCodec;
+
+/**
+ * Reads both the {@link MessageCodec} frames and the serialized objects written by a {@link MessageFrameEncoder},
+ * and tells the encoder of the same channel which codec version the other end speaks. On channels accepted by this
+ * instance the first version announcement is answered with a hello frame.
+ */
+class MessageFrameDecoder
+        extends ObjectDecoder
+{
+    private final int maxFrameLength;
+    private final MessageCodec codec;
+    private final MessageFrameEncoder encoder;
+    private final boolean initiator;
+
+    /**
+     * @param initiator true for channels opened by this instance, which announce their version instead of answering.
+     */
+    MessageFrameDecoder( int maxFrameLength, ClassLoader classLoader, MessageCodec codec,
+                         MessageFrameEncoder encoder, boolean initiator )
+    {
+        super( maxFrameLength, classLoader );
+        this.maxFrameLength = maxFrameLength;
+        this.codec = codec;
+        this.encoder = encoder;
+        this.initiator = initiator;
+    }
+
+    @Override
+    protected Object decode( ChannelHandlerContext ctx, Channel channel, ChannelBuffer buffer ) throws Exception
+    {
+        if ( buffer.readableBytes() < 5 ||
+                buffer.getUnsignedByte( buffer.readerIndex() + 4 ) != MessageFrameEncoder.MAGIC )
+        {
+            Object decoded = super.decode( ctx, channel, buffer );
+            if ( decoded instanceof Message )
+            {
+                int version = MessageCodec.announcedVersion( (Message<?>) decoded );
+                if ( version != -1 && !initiator && !encoder.isPeerKnown() )
+                {
+                    encoder.peerVersion( version );
+                    Channels.write( channel, encoder.hello( channel.getConfig().getBufferFactory() ) );
+                }
+            }
+            return decoded;
+        }
+
+        int length = buffer.getInt( buffer.readerIndex() );
+        if ( length < 2 )
+        {
+            channel.close();
+            throw new CorruptedFrameException( "Invalid frame length " + length );
+        }
+        if ( length > maxFrameLength )
+        {
+            channel.close();
+            throw new TooLongFrameException( "Frame length " + length + " exceeds " + maxFrameLength );
+        }
+        if ( buffer.readableBytes() < length + 4 )
+        {
+            return null;
+        }
+
+        buffer.skipBytes( 5 );
+        ChannelBuffer frame = buffer.readSlice( length - 1 );
+        int kind = frame.readUnsignedByte();
+        switch ( kind )
+        {
+            case MessageFrameEncoder.MESSAGE:
+                return codec.decode( frame );
+            case MessageFrameEncoder.HELLO:
+                encoder.peerVersion( frame.readUnsignedByte() );
+                return null;
+            default:
+                channel.close();
+                throw new CorruptedFrameException( "Unknown frame kind " + kind );
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.cluster.com;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferFactory;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.handler.codec.serialization.ObjectEncoder;
+import org.neo4j.cluster.com.message.Message;
+import org.neo4j.cluster.com.message.MessageCodec;
+
+/**
+ * Writes {@link Message}s as {@link MessageCodec} frames once the other end of the channel has said that it reads
+ * the same {@link MessageCodec#VERSION}, and as serialized objects until then.
+ * <p/>
+ * All frames start with the length of the rest of the frame. Codec frames then have {@link #MAGIC}, where serialized
+ * objects have the serialization stream version, so that {@link MessageFrameDecoder} can read both.
+ * <p/>
+ * Until the version of the other end is known, serialized messages carry a {@link MessageCodec#VERSION_HEADER},
+ * which instances that don't know about the codec ignore. An instance that does know about it answers the first one
+ * on a channel it accepted with a hello frame with its own version. Hello frames are only ever sent to instances
+ * that have announced a version, so older instances only ever see serialized objects.
+ */
+class MessageFrameEncoder
+        extends ObjectEncoder
+{
+    static final int MAGIC = 0xC1;
+    static final int HELLO = 0;
+    static final int MESSAGE = 1;
+
+    private final MessageCodec codec;
+    private volatile boolean peerKnown;
+    private volatile boolean compact;
+
+    MessageFrameEncoder( MessageCodec codec )
+    {
+        super( 2048 );
+        this.codec = codec;
+    }
+
+    ChannelBuffer hello( ChannelBufferFactory bufferFactory )
+    {
+        ChannelBuffer buffer = bufferFactory.getBuffer( 7 );
+        buffer.writeInt( 3 );
+        buffer.writeByte( MAGIC );
+        buffer.writeByte( HELLO );
+        buffer.writeByte( MessageCodec.VERSION );
+        return buffer;
+    }
+
+    void peerVersion( int version )
+    {
+        compact = version == MessageCodec.VERSION;
+        peerKnown = true;
+    }
+
+    boolean isPeerKnown()
+    {
+        return peerKnown;
+    }
+
+    boolean isCompact()
+    {
+        return compact;
+    }
+
+    @Override
+    protected Object encode( ChannelHandlerContext ctx, Channel channel, Object msg ) throws Exception
+    {
+        if ( msg instanceof ChannelBuffer )
+        {
+            // A hello, already framed
+            return msg;
+        }
+
+        if ( compact && msg instanceof Message )
+        {
+            ChannelBuffer buffer = ChannelBuffers.dynamicBuffer( 256, channel.getConfig().getBufferFactory() );
+            buffer.writeInt( 0 );
+            buffer.writeByte( MAGIC );
+            buffer.writeByte( MESSAGE );
+            codec.encode( (Message<?>) msg, buffer );
+            buffer.setInt( 0, buffer.writerIndex() - 4 );
+            return buffer;
+        }
+
+        if ( !peerKnown && msg instanceof Message && ((Message<?>) msg).hasHeader( Message.FROM ) )
+        {
+            msg = MessageCodec.announceVersion( (Message<?>) msg );
+        }
+        return super.encode( ctx, channel, msg );
+    }
+}
@@ -51,12 +51,11 @@ import org.jboss.netty.channel.group.DefaultChannelGroup;
 import org.jboss.netty.channel.socket.ServerSocketChannelFactory;
 import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
 import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
-import org.jboss.netty.handler.codec.serialization.ObjectDecoder;
-import org.jboss.netty.handler.codec.serialization.ObjectEncoder;
 import org.jboss.netty.handler.logging.LoggingHandler;
 import org.jboss.netty.util.ThreadNameDeterminer;
 import org.jboss.netty.util.ThreadRenamingRunnable;
 import org.neo4j.cluster.com.message.Message;
+import org.neo4j.cluster.com.message.MessageCodec;
 import org.neo4j.cluster.com.message.MessageProcessor;
 import org.neo4j.cluster.com.message.MessageSource;
 import org.neo4j.cluster.com.message.MessageType;
@@ -106,6 +105,7 @@ public class NetworkInstance
     private Configuration config;
     private StringLogger msgLog;
     private URI me;
+    private final MessageCodec codec = new MessageCodec();
 
     private Map<URI, Channel> connections = new ConcurrentHashMap<URI, Channel>();
     private Iterable<NetworkChannelsListener> listeners = Listeners.newListeners();
@@ -135,7 +135,7 @@ public class NetworkInstance
                 Executors.newCachedThreadPool( new NamedThreadFactory( "Cluster boss" ) ),
                 Executors.newFixedThreadPool( 10, new NamedThreadFactory( "Cluster worker" ) ) );
         serverBootstrap = new ServerBootstrap( nioChannelFactory );
-        serverBootstrap.setPipelineFactory( new NetworkNodePipelineFactory() );
+        serverBootstrap.setPipelineFactory( new NetworkNodePipelineFactory( false ) );
 
         int[] ports = config.getPorts();
 
@@ -146,7 +146,7 @@ public class NetworkInstance
         clientBootstrap = new ClientBootstrap( new NioClientSocketChannelFactory(
                 Executors.newSingleThreadExecutor( new NamedThreadFactory( "Cluster client boss" ) ),
                 Executors.newFixedThreadPool( 10, new NamedThreadFactory( "Cluster client worker" ) ) ) );
-        clientBootstrap.setPipelineFactory( new NetworkNodePipelineFactory() );
+        clientBootstrap.setPipelineFactory( new NetworkNodePipelineFactory( true ) );
 
         // Try all ports in the given range
         listen( minPort, maxPort );
@@ -375,6 +375,15 @@ public class NetworkInstance
         return me;
     }
 
+    /**
+     * The codec used for connections to instances on the same version, where codecs for payloads that the cluster
+     * protocols don't know about can be registered.
+     */
+    public MessageCodec getMessageCodec()
+    {
+        return codec;
+    }
+
     public Channel getChannel( URI uri )
     {
         return connections.get( uri );
@@ -418,6 +427,13 @@ public class NetworkInstance
     private class NetworkNodePipelineFactory
             implements ChannelPipelineFactory
     {
+        private final boolean initiator;
+
+        NetworkNodePipelineFactory( boolean initiator )
+        {
+            this.initiator = initiator;
+        }
+
         @Override
         public ChannelPipeline getPipeline() throws Exception
         {
@@ -430,9 +446,10 @@ public class NetworkInstance
 
         private void addSerialization( ChannelPipeline pipeline, int frameLength )
         {
-            pipeline.addLast( "frameDecoder",
-                    new ObjectDecoder( 1024 * 1000, NetworkNodePipelineFactory.this.getClass().getClassLoader() ) );
-            pipeline.addLast( "frameEncoder", new ObjectEncoder( 2048 ) );
+            MessageFrameEncoder encoder = new MessageFrameEncoder( codec );
+            pipeline.addLast( "frameDecoder", new MessageFrameDecoder( frameLength,
+                    NetworkNodePipelineFactory.this.getClass().getClassLoader(), codec, encoder, initiator ) );
+            pipeline.addLast( "frameEncoder", encoder );
         }
     }
 
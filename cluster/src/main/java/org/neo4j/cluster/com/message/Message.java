@@ -149,6 +149,11 @@ public class Message<MESSAGETYPE extends MessageType>
         return value;
     }
 
+    Map<String, String> getHeaders()
+    {
+        return headers;
+    }
+
     public <MESSAGETYPE extends MessageType> Message<MESSAGETYPE> copyHeadersTo( Message<MESSAGETYPE> message,
                                                                                  String... names )
     {
@@ -0,0 +1,997 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.cluster.com.message;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferInputStream;
+import org.jboss.netty.buffer.ChannelBufferOutputStream;
+import org.neo4j.cluster.protocol.atomicbroadcast.AtomicBroadcastMap;
+import org.neo4j.cluster.protocol.atomicbroadcast.Payload;
+import org.neo4j.cluster.protocol.atomicbroadcast.multipaxos.AcceptorMessage;
+import org.neo4j.cluster.protocol.atomicbroadcast.multipaxos.AtomicBroadcastMessage;
+import org.neo4j.cluster.protocol.atomicbroadcast.multipaxos.Batch;
+import org.neo4j.cluster.protocol.atomicbroadcast.multipaxos.InstanceId;
+import org.neo4j.cluster.protocol.atomicbroadcast.multipaxos.LearnerMessage;
+import org.neo4j.cluster.protocol.atomicbroadcast.multipaxos.ProposerMessage;
+import org.neo4j.cluster.protocol.cluster.ClusterMessage;
+import org.neo4j.cluster.protocol.election.DefaultElectionCredentials;
+import org.neo4j.cluster.protocol.election.ElectionMessage;
+import org.neo4j.cluster.protocol.heartbeat.HeartbeatMessage;
+import org.neo4j.cluster.protocol.omega.OmegaMessage;
+import org.neo4j.cluster.protocol.omega.payload.CollectPayload;
+import org.neo4j.cluster.protocol.omega.payload.CollectResponsePayload;
+import org.neo4j.cluster.protocol.omega.payload.RefreshAckPayload;
+import org.neo4j.cluster.protocol.omega.payload.RefreshPayload;
+import org.neo4j.cluster.protocol.snapshot.SnapshotMessage;
+
+/**
+ * Compact binary format for {@link Message}s sent between cluster instances, used instead of java serialization
+ * when both ends of a connection are on the same {@link #VERSION}.
+ * <p/>
+ * Message types of the built in protocols are written as two small numbers, the well known headers by id and the
+ * built in payloads field by field, with numbers as variable length longs. Other payloads are written by the
+ * {@link PayloadCodec} {@link #registerPayload(int, Class, PayloadCodec) registered} for their class, or else with
+ * java serialization, so anything that could be sent before can still be sent.
+ * <p/>
+ * {@link #VERSION} must be bumped whenever the built in message types, headers or payload formats change, since
+ * message types are written by ordinal.
+ */
+public class MessageCodec
+{
+    public static final int VERSION = 1;
+
+    /**
+     * Header with which an instance announces the {@link #VERSION} it reads, on messages it sends as serialized
+     * objects. Instances that don't know about it leave it alone, and may copy it into messages of their own, so
+     * the announcement names its sender.
+     */
+    public static final String VERSION_HEADER = "codec-version";
+
+    /**
+     * Payload ids below this are reserved for the built in payloads.
+     */
+    public static final int FIRST_EXTENSION_ID = 128;
+    private static final int MAX_ID = 255;
+
+    private static final int NULL = 0;
+    private static final int SERIALIZED = 1;
+    private static final int STRING = 2;
+    private static final int LONG = 3;
+    private static final int INTEGER = 4;
+    private static final int URI_VALUE = 5;
+
+    private static final Class<?>[] MESSAGE_TYPES = {
+            AcceptorMessage.class, ProposerMessage.class, LearnerMessage.class, AtomicBroadcastMessage.class,
+            HeartbeatMessage.class, ClusterMessage.class, ElectionMessage.class, SnapshotMessage.class,
+            OmegaMessage.class};
+    private static final MessageType[][] MESSAGE_TYPE_CONSTANTS = new MessageType[MESSAGE_TYPES.length][];
+    private static final Map<Class<?>, Integer> MESSAGE_TYPE_IDS = new HashMap<Class<?>, Integer>();
+
+    private static final String[] HEADERS = {
+            Message.CONVERSATION_ID, Message.CREATED_BY, Message.FROM, Message.TO, InstanceId.INSTANCE,
+            "last-learned", "delays"};
+    private static final Map<String, Integer> HEADER_IDS = new HashMap<String, Integer>();
+
+    static
+    {
+        for ( int i = 0; i < MESSAGE_TYPES.length; i++ )
+        {
+            MESSAGE_TYPE_CONSTANTS[i] = (MessageType[]) MESSAGE_TYPES[i].getEnumConstants();
+            MESSAGE_TYPE_IDS.put( MESSAGE_TYPES[i], i + 1 );
+        }
+        for ( int i = 0; i < HEADERS.length; i++ )
+        {
+            HEADER_IDS.put( HEADERS[i], i + 1 );
+        }
+    }
+
+    private static final Charset UTF8 = Charset.forName( "UTF-8" );
+
+    private final Map<Class<?>, Registration<?>> payloadsByType = new ConcurrentHashMap<Class<?>, Registration<?>>();
+    private final AtomicReferenceArray<Registration<?>> payloadsById =
+            new AtomicReferenceArray<Registration<?>>( MAX_ID + 1 );
+
+    /**
+     * @return a copy of {@code message} announcing this {@link #VERSION}, leaving {@code message} itself as it was
+     * since the same message may be sent on other channels.
+     */
+    public static <MESSAGETYPE extends MessageType> Message<MESSAGETYPE> announceVersion(
+            Message<MESSAGETYPE> message )
+    {
+        Message<MESSAGETYPE> copy = Message.internal( message.getMessageType(), message.getPayload() );
+        message.copyHeadersTo( copy );
+        return copy.setHeader( VERSION_HEADER, VERSION + "@" + message.getHeader( Message.FROM ) );
+    }
+
+    /**
+     * Removes the version announcement from a received message.
+     *
+     * @return the version the sender of {@code message} announced, or -1 if there was none, or if it was copied from
+     * a message of another instance.
+     */
+    public static int announcedVersion( Message<?> message )
+    {
+        String announcement = message.getHeaders().remove( VERSION_HEADER );
+        if ( announcement == null || !message.hasHeader( Message.FROM ) )
+        {
+            return -1;
+        }
+        int at = announcement.indexOf( '@' );
+        if ( at < 0 || !announcement.substring( at + 1 ).equals( message.getHeader( Message.FROM ) ) )
+        {
+            return -1;
+        }
+        try
+        {
+            return Integer.parseInt( announcement.substring( 0, at ) );
+        }
+        catch ( NumberFormatException e )
+        {
+            return -1;
+        }
+    }
+
+    public MessageCodec()
+    {
+        register( 16, InstanceId.class, new PayloadCodec<InstanceId>()
+        {
+            @Override
+            public void write( InstanceId payload, ChannelBuffer buffer, MessageCodec codec )
+            {
+                codec.writeVarLong( payload.getId(), buffer );
+            }
+
+            @Override
+            public InstanceId read( ChannelBuffer buffer, MessageCodec codec ) throws IOException
+            {
+                return new InstanceId( codec.readVarLong( buffer ) );
+            }
+        } );
+        register( 17, Payload.class, new PayloadCodec<Payload>()
+        {
+            @Override
+            public void write( Payload payload, ChannelBuffer buffer, MessageCodec codec )
+            {
+                codec.writeVarInt( payload.getLen(), buffer );
+                buffer.writeBytes( payload.getBuf(), 0, payload.getLen() );
+            }
+
+            @Override
+            public Payload read( ChannelBuffer buffer, MessageCodec codec ) throws IOException
+            {
+                int length = codec.readLength( buffer );
+                byte[] buf = new byte[length];
+                buffer.readBytes( buf );
+                return new Payload( buf, length );
+            }
+        } );
+        register( 18, AcceptorMessage.PrepareState.class, new PayloadCodec<AcceptorMessage.PrepareState>()
+        {
+            @Override
+            public void write( AcceptorMessage.PrepareState payload, ChannelBuffer buffer, MessageCodec codec )
+            {
+                codec.writeVarLong( payload.getBallot(), buffer );
+            }
+
+            @Override
+            public AcceptorMessage.PrepareState read( ChannelBuffer buffer, MessageCodec codec ) throws IOException
+            {
+                return new AcceptorMessage.PrepareState( codec.readVarLong( buffer ) );
+            }
+        } );
+        register( 19, AcceptorMessage.AcceptState.class, new PayloadCodec<AcceptorMessage.AcceptState>()
+        {
+            @Override
+            public void write( AcceptorMessage.AcceptState payload, ChannelBuffer buffer, MessageCodec codec )
+                    throws IOException
+            {
+                codec.writeVarLong( payload.getBallot(), buffer );
+                codec.writeObject( payload.getValue(), buffer );
+            }
+
+            @Override
+            public AcceptorMessage.AcceptState read( ChannelBuffer buffer, MessageCodec codec ) throws IOException
+            {
+                long ballot = codec.readVarLong( buffer );
+                return new AcceptorMessage.AcceptState( ballot, codec.readObject( buffer ) );
+            }
+        } );
+        register( 20, ProposerMessage.PromiseState.class, new PayloadCodec<ProposerMessage.PromiseState>()
+        {
+            @Override
+            public void write( ProposerMessage.PromiseState payload, ChannelBuffer buffer, MessageCodec codec )
+                    throws IOException
+            {
+                codec.writeVarLong( payload.getBallot(), buffer );
+                codec.writeObject( payload.getValue(), buffer );
+            }
+
+            @Override
+            public ProposerMessage.PromiseState read( ChannelBuffer buffer, MessageCodec codec ) throws IOException
+            {
+                long ballot = codec.readVarLong( buffer );
+                return new ProposerMessage.PromiseState( ballot, codec.readObject( buffer ) );
+            }
+        } );
+        register( 21, ProposerMessage.RejectPrepare.class, new PayloadCodec<ProposerMessage.RejectPrepare>()
+        {
+            @Override
+            public void write( ProposerMessage.RejectPrepare payload, ChannelBuffer buffer, MessageCodec codec )
+            {
+                codec.writeVarLong( payload.getBallot(), buffer );
+            }
+
+            @Override
+            public ProposerMessage.RejectPrepare read( ChannelBuffer buffer, MessageCodec codec ) throws IOException
+            {
+                return new ProposerMessage.RejectPrepare( codec.readVarLong( buffer ) );
+            }
+        } );
+        register( 22, ProposerMessage.RejectAcceptState.class, new PayloadCodec<ProposerMessage.RejectAcceptState>()
+        {
+            @Override
+            public void write( ProposerMessage.RejectAcceptState payload, ChannelBuffer buffer, MessageCodec codec )
+            {
+            }
+
+            @Override
+            public ProposerMessage.RejectAcceptState read( ChannelBuffer buffer, MessageCodec codec )
+            {
+                return new ProposerMessage.RejectAcceptState();
+            }
+        } );
+        register( 23, ProposerMessage.AcceptedState.class, new PayloadCodec<ProposerMessage.AcceptedState>()
+        {
+            @Override
+            public void write( ProposerMessage.AcceptedState payload, ChannelBuffer buffer, MessageCodec codec )
+            {
+            }
+
+            @Override
+            public ProposerMessage.AcceptedState read( ChannelBuffer buffer, MessageCodec codec )
+            {
+                return new ProposerMessage.AcceptedState();
+            }
+        } );
+        register( 24, LearnerMessage.LearnState.class, new PayloadCodec<LearnerMessage.LearnState>()
+        {
+            @Override
+            public void write( LearnerMessage.LearnState payload, ChannelBuffer buffer, MessageCodec codec )
+                    throws IOException
+            {
+                codec.writeObject( payload.getValue(), buffer );
+            }
+
+            @Override
+            public LearnerMessage.LearnState read( ChannelBuffer buffer, MessageCodec codec ) throws IOException
+            {
+                return new LearnerMessage.LearnState( codec.readObject( buffer ) );
+            }
+        } );
+        register( 25, LearnerMessage.LearnRequestState.class, new PayloadCodec<LearnerMessage.LearnRequestState>()
+        {
+            @Override
+            public void write( LearnerMessage.LearnRequestState payload, ChannelBuffer buffer, MessageCodec codec )
+            {
+            }
+
+            @Override
+            public LearnerMessage.LearnRequestState read( ChannelBuffer buffer, MessageCodec codec )
+            {
+                return new LearnerMessage.LearnRequestState();
+            }
+        } );
+        register( 26, LearnerMessage.LearnFailedState.class, new PayloadCodec<LearnerMessage.LearnFailedState>()
+        {
+            @Override
+            public void write( LearnerMessage.LearnFailedState payload, ChannelBuffer buffer, MessageCodec codec )
+            {
+            }
+
+            @Override
+            public LearnerMessage.LearnFailedState read( ChannelBuffer buffer, MessageCodec codec )
+            {
+                return new LearnerMessage.LearnFailedState();
+            }
+        } );
+        register( 27, HeartbeatMessage.IAmAliveState.class, new PayloadCodec<HeartbeatMessage.IAmAliveState>()
+        {
+            @Override
+            public void write( HeartbeatMessage.IAmAliveState payload, ChannelBuffer buffer, MessageCodec codec )
+                    throws IOException
+            {
+                codec.writeObject( payload.getServer(), buffer );
+            }
+
+            @Override
+            public HeartbeatMessage.IAmAliveState read( ChannelBuffer buffer, MessageCodec codec ) throws IOException
+            {
+                return new HeartbeatMessage.IAmAliveState( (URI) codec.readObject( buffer ) );
+            }
+        } );
+        register( 28, HeartbeatMessage.SuspicionsState.class, new PayloadCodec<HeartbeatMessage.SuspicionsState>()
+        {
+            @Override
+            public void write( HeartbeatMessage.SuspicionsState payload, ChannelBuffer buffer, MessageCodec codec )
+            {
+                codec.writeUris( payload.getSuspicions(), buffer );
+            }
+
+            @Override
+            public HeartbeatMessage.SuspicionsState read( ChannelBuffer buffer, MessageCodec codec )
+                    throws IOException
+            {
+                Set<URI> suspicions = new HashSet<URI>();
+                codec.readUris( suspicions, buffer );
+                return new HeartbeatMessage.SuspicionsState( suspicions );
+            }
+        } );
+        register( 29, ClusterMessage.ConfigurationResponseState.class,
+                new PayloadCodec<ClusterMessage.ConfigurationResponseState>()
+        {
+            @Override
+            public void write( ClusterMessage.ConfigurationResponseState payload, ChannelBuffer buffer,
+                               MessageCodec codec ) throws IOException
+            {
+                Map<String, URI> roles = payload.getRoles();
+                codec.writeVarInt( roles.size(), buffer );
+                for ( Map.Entry<String, URI> role : roles.entrySet() )
+                {
+                    codec.writeString( role.getKey(), buffer );
+                    codec.writeString( role.getValue().toString(), buffer );
+                }
+                codec.writeUris( payload.getMembers(), buffer );
+                codec.writeObject( payload.getLatestReceivedInstanceId(), buffer );
+                codec.writeObject( payload.getClusterName(), buffer );
+            }
+
+            @Override
+            public ClusterMessage.ConfigurationResponseState read( ChannelBuffer buffer, MessageCodec codec )
+                    throws IOException
+            {
+                Map<String, URI> roles = new HashMap<String, URI>();
+                for ( int i = codec.readLength( buffer ); i > 0; i-- )
+                {
+                    String role = codec.readString( buffer );
+                    roles.put( role, codec.readUri( buffer ) );
+                }
+                List<URI> members = new ArrayList<URI>();
+                codec.readUris( members, buffer );
+                InstanceId latestReceivedInstanceId = (InstanceId) codec.readObject( buffer );
+                String clusterName = (String) codec.readObject( buffer );
+                return new ClusterMessage.ConfigurationResponseState( roles, members, latestReceivedInstanceId,
+                        clusterName );
+            }
+        } );
+        register( 30, ClusterMessage.ConfigurationChangeState.class,
+                new PayloadCodec<ClusterMessage.ConfigurationChangeState>()
+        {
+            @Override
+            public void write( ClusterMessage.ConfigurationChangeState payload, ChannelBuffer buffer,
+                               MessageCodec codec ) throws IOException
+            {
+                codec.writeObject( payload.getJoin(), buffer );
+                codec.writeObject( payload.getLeave(), buffer );
+                codec.writeObject( payload.getRole(), buffer );
+                codec.writeObject( payload.getWinner(), buffer );
+            }
+
+            @Override
+            public ClusterMessage.ConfigurationChangeState read( ChannelBuffer buffer, MessageCodec codec )
+                    throws IOException
+            {
+                ClusterMessage.ConfigurationChangeState change = new ClusterMessage.ConfigurationChangeState();
+                URI join = (URI) codec.readObject( buffer );
+                if ( join != null )
+                {
+                    change.join( join );
+                }
+                URI leave = (URI) codec.readObject( buffer );
+                if ( leave != null )
+                {
+                    change.leave( leave );
+                }
+                String role = (String) codec.readObject( buffer );
+                URI winner = (URI) codec.readObject( buffer );
+                if ( role != null || winner != null )
+                {
+                    change.elected( role, winner );
+                }
+                return change;
+            }
+        } );
+        register( 31, ElectionMessage.VotedData.class, new PayloadCodec<ElectionMessage.VotedData>()
+        {
+            @Override
+            public void write( ElectionMessage.VotedData payload, ChannelBuffer buffer, MessageCodec codec )
+                    throws IOException
+            {
+                codec.writeObject( payload.getRole(), buffer );
+                codec.writeObject( payload.getVoteCredentials(), buffer );
+            }
+
+            @Override
+            public ElectionMessage.VotedData read( ChannelBuffer buffer, MessageCodec codec ) throws IOException
+            {
+                String role = (String) codec.readObject( buffer );
+                return new ElectionMessage.VotedData( role, (Comparable<Object>) codec.readObject( buffer ) );
+            }
+        } );
+        register( 32, DefaultElectionCredentials.class, new PayloadCodec<DefaultElectionCredentials>()
+        {
+            @Override
+            public void write( DefaultElectionCredentials payload, ChannelBuffer buffer, MessageCodec codec )
+            {
+                codec.writeVarInt( payload.getServerId(), buffer );
+                codec.writeVarLong( payload.getLatestTxId(), buffer );
+            }
+
+            @Override
+            public DefaultElectionCredentials read( ChannelBuffer buffer, MessageCodec codec ) throws IOException
+            {
+                int serverId = codec.readVarInt( buffer );
+                return new DefaultElectionCredentials( serverId, codec.readVarLong( buffer ) );
+            }
+        } );
+        register( 33, CollectPayload.class, new PayloadCodec<CollectPayload>()
+        {
+            @Override
+            public void write( CollectPayload payload, ChannelBuffer buffer, MessageCodec codec )
+            {
+                codec.writeVarInt( payload.getReadNum(), buffer );
+            }
+
+            @Override
+            public CollectPayload read( ChannelBuffer buffer, MessageCodec codec ) throws IOException
+            {
+                return new CollectPayload( codec.readVarInt( buffer ) );
+            }
+        } );
+        register( 34, RefreshPayload.class, new PayloadCodec<RefreshPayload>()
+        {
+            @Override
+            public void write( RefreshPayload payload, ChannelBuffer buffer, MessageCodec codec )
+            {
+                codec.writeRefresh( payload, buffer );
+            }
+
+            @Override
+            public RefreshPayload read( ChannelBuffer buffer, MessageCodec codec ) throws IOException
+            {
+                return codec.readRefresh( buffer );
+            }
+        } );
+        register( 35, RefreshAckPayload.class, new PayloadCodec<RefreshAckPayload>()
+        {
+            @Override
+            public void write( RefreshAckPayload payload, ChannelBuffer buffer, MessageCodec codec )
+            {
+                codec.writeVarInt( payload.round, buffer );
+            }
+
+            @Override
+            public RefreshAckPayload read( ChannelBuffer buffer, MessageCodec codec ) throws IOException
+            {
+                return new RefreshAckPayload( codec.readVarInt( buffer ) );
+            }
+        } );
+        register( 36, CollectResponsePayload.class, new PayloadCodec<CollectResponsePayload>()
+        {
+            @Override
+            public void write( CollectResponsePayload payload, ChannelBuffer buffer, MessageCodec codec )
+            {
+                URI[] servers = payload.getServers();
+                RefreshPayload[] registry = payload.getRegistry();
+                codec.writeVarInt( servers.length, buffer );
+                for ( int i = 0; i < servers.length; i++ )
+                {
+                    codec.writeString( servers[i].toString(), buffer );
+                    codec.writeRefresh( registry[i], buffer );
+                }
+                codec.writeVarInt( payload.getReadNum(), buffer );
+            }
+
+            @Override
+            public CollectResponsePayload read( ChannelBuffer buffer, MessageCodec codec ) throws IOException
+            {
+                int count = codec.readLength( buffer );
+                URI[] servers = new URI[count];
+                RefreshPayload[] registry = new RefreshPayload[count];
+                for ( int i = 0; i < count; i++ )
+                {
+                    servers[i] = codec.readUri( buffer );
+                    registry[i] = codec.readRefresh( buffer );
+                }
+                return new CollectResponsePayload( servers, registry, codec.readVarInt( buffer ) );
+            }
+        } );
+        register( 37, AtomicBroadcastMap.Put.class, new PayloadCodec<AtomicBroadcastMap.Put>()
+        {
+            @Override
+            public void write( AtomicBroadcastMap.Put payload, ChannelBuffer buffer, MessageCodec codec )
+                    throws IOException
+            {
+                codec.writeObject( payload.getKey(), buffer );
+                codec.writeObject( payload.getValue(), buffer );
+            }
+
+            @Override
+            public AtomicBroadcastMap.Put read( ChannelBuffer buffer, MessageCodec codec ) throws IOException
+            {
+                Object key = codec.readObject( buffer );
+                return new AtomicBroadcastMap.Put( key, codec.readObject( buffer ) );
+            }
+        } );
+        register( 38, AtomicBroadcastMap.Remove.class, new PayloadCodec<AtomicBroadcastMap.Remove>()
+        {
+            @Override
+            public void write( AtomicBroadcastMap.Remove payload, ChannelBuffer buffer, MessageCodec codec )
+                    throws IOException
+            {
+                codec.writeObject( payload.getKey(), buffer );
+            }
+
+            @Override
+            public AtomicBroadcastMap.Remove read( ChannelBuffer buffer, MessageCodec codec ) throws IOException
+            {
+                return new AtomicBroadcastMap.Remove( codec.readObject( buffer ) );
+            }
+        } );
+        register( 39, AtomicBroadcastMap.Clear.class, new PayloadCodec<AtomicBroadcastMap.Clear>()
+        {
+            @Override
+            public void write( AtomicBroadcastMap.Clear payload, ChannelBuffer buffer, MessageCodec codec )
+            {
+            }
+
+            @Override
+            public AtomicBroadcastMap.Clear read( ChannelBuffer buffer, MessageCodec codec )
+            {
+                return new AtomicBroadcastMap.Clear();
+            }
+        } );
+        register( 40, AtomicBroadcastMap.PutAll.class, new PayloadCodec<AtomicBroadcastMap.PutAll>()
+        {
+            @Override
+            public void write( AtomicBroadcastMap.PutAll payload, ChannelBuffer buffer, MessageCodec codec )
+                    throws IOException
+            {
+                Map<?, ?> map = payload.getMap();
+                codec.writeVarInt( map.size(), buffer );
+                for ( Map.Entry<?, ?> entry : map.entrySet() )
+                {
+                    codec.writeObject( entry.getKey(), buffer );
+                    codec.writeObject( entry.getValue(), buffer );
+                }
+            }
+
+            @Override
+            public AtomicBroadcastMap.PutAll read( ChannelBuffer buffer, MessageCodec codec ) throws IOException
+            {
+                Map<Object, Object> map = new HashMap<Object, Object>();
+                for ( int i = codec.readLength( buffer ); i > 0; i-- )
+                {
+                    Object key = codec.readObject( buffer );
+                    map.put( key, codec.readObject( buffer ) );
+                }
+                return new AtomicBroadcastMap.PutAll( map );
+            }
+        } );
+        register( 41, Batch.class, new PayloadCodec<Batch>()
+        {
+            @Override
+            public void write( Batch payload, ChannelBuffer buffer, MessageCodec codec ) throws IOException
+            {
+                codec.writeVarInt( payload.size(), buffer );
+                for ( int i = 0; i < payload.size(); i++ )
+                {
+                    codec.writeObject( payload.getValue( i ), buffer );
+                    codec.writeObject( payload.getConversationId( i ), buffer );
+                }
+            }
+
+            @Override
+            public Batch read( ChannelBuffer buffer, MessageCodec codec ) throws IOException
+            {
+                int size = codec.readLength( buffer );
+                Object[] values = new Object[size];
+                String[] conversationIds = new String[size];
+                for ( int i = 0; i < size; i++ )
+                {
+                    values[i] = codec.readObject( buffer );
+                    conversationIds[i] = (String) codec.readObject( buffer );
+                }
+                return new Batch( values, conversationIds );
+            }
+        } );
+    }
+
+    /**
+     * Registers a codec for payloads of exactly the given class. Both ends of a connection must register the same
+     * codecs with the same ids, or payloads of that class will be misread.
+     *
+     * @param id between {@link #FIRST_EXTENSION_ID} and 255.
+     */
+    public <T> void registerPayload( int id, Class<T> type, PayloadCodec<T> codec )
+    {
+        if ( id < FIRST_EXTENSION_ID || id > MAX_ID )
+        {
+            throw new IllegalArgumentException( "Payload id " + id + " is not between " + FIRST_EXTENSION_ID +
+                    " and " + MAX_ID );
+        }
+        register( id, type, codec );
+    }
+
+    private synchronized <T> void register( int id, Class<T> type, PayloadCodec<T> codec )
+    {
+        if ( payloadsById.get( id ) != null )
+        {
+            throw new IllegalArgumentException( "Payload id " + id + " is already used for " +
+                    payloadsById.get( id ).type.getName() );
+        }
+        if ( payloadsByType.containsKey( type ) )
+        {
+            throw new IllegalArgumentException( type.getName() + " already has a payload codec" );
+        }
+        Registration<T> registration = new Registration<T>( id, type, codec );
+        payloadsById.set( id, registration );
+        payloadsByType.put( type, registration );
+    }
+
+    /**
+     * @return whether the value can be written without falling back to java serialization, not counting any
+     * values nested in it.
+     */
+    public boolean hasCodecFor( Object value )
+    {
+        return value == null || value instanceof String || value instanceof Long || value instanceof Integer ||
+                value instanceof URI || payloadsByType.containsKey( value.getClass() );
+    }
+
+    public void encode( Message<?> message, ChannelBuffer buffer ) throws IOException
+    {
+        writeMessageType( message.getMessageType(), buffer );
+        writeObject( message.getPayload(), buffer );
+        Map<String, String> headers = message.getHeaders();
+        writeVarInt( headers.size(), buffer );
+        for ( Map.Entry<String, String> header : headers.entrySet() )
+        {
+            Integer id = HEADER_IDS.get( header.getKey() );
+            if ( id != null )
+            {
+                buffer.writeByte( id );
+            }
+            else
+            {
+                buffer.writeByte( 0 );
+                writeString( header.getKey(), buffer );
+            }
+            writeString( header.getValue(), buffer );
+        }
+    }
+
+    public Message<MessageType> decode( ChannelBuffer buffer ) throws IOException
+    {
+        MessageType messageType = readMessageType( buffer );
+        Message<MessageType> message = Message.internal( messageType, readObject( buffer ) );
+        for ( int i = readLength( buffer ); i > 0; i-- )
+        {
+            int id = buffer.readUnsignedByte();
+            String name;
+            if ( id == 0 )
+            {
+                name = readString( buffer );
+            }
+            else if ( id <= HEADERS.length )
+            {
+                name = HEADERS[id - 1];
+            }
+            else
+            {
+                throw new IOException( "Unknown header id " + id );
+            }
+            message.setHeader( name, readString( buffer ) );
+        }
+        return message;
+    }
+
+    private void writeMessageType( MessageType messageType, ChannelBuffer buffer ) throws IOException
+    {
+        Integer id = messageType instanceof Enum ?
+                MESSAGE_TYPE_IDS.get( ((Enum<?>) messageType).getDeclaringClass() ) : null;
+        if ( id != null )
+        {
+            buffer.writeByte( id );
+            writeVarInt( ((Enum<?>) messageType).ordinal(), buffer );
+        }
+        else
+        {
+            buffer.writeByte( 0 );
+            writeSerialized( messageType, buffer );
+        }
+    }
+
+    private MessageType readMessageType( ChannelBuffer buffer ) throws IOException
+    {
+        int id = buffer.readUnsignedByte();
+        if ( id == 0 )
+        {
+            return (MessageType) readSerialized( buffer );
+        }
+        if ( id > MESSAGE_TYPES.length )
+        {
+            throw new IOException( "Unknown message type id " + id );
+        }
+        MessageType[] constants = MESSAGE_TYPE_CONSTANTS[id - 1];
+        int ordinal = readVarInt( buffer );
+        if ( ordinal < 0 || ordinal >= constants.length )
+        {
+            throw new IOException( "Unknown " + MESSAGE_TYPES[id - 1].getSimpleName() + " " + ordinal );
+        }
+        return constants[ordinal];
+    }
+
+    /**
+     * Writes any payload value, including null.
+     */
+    public void writeObject( Object value, ChannelBuffer buffer ) throws IOException
+    {
+        if ( value == null )
+        {
+            buffer.writeByte( NULL );
+        }
+        else if ( value instanceof String )
+        {
+            buffer.writeByte( STRING );
+            writeString( (String) value, buffer );
+        }
+        else if ( value instanceof Long )
+        {
+            buffer.writeByte( LONG );
+            writeVarLong( (Long) value, buffer );
+        }
+        else if ( value instanceof Integer )
+        {
+            buffer.writeByte( INTEGER );
+            writeVarInt( (Integer) value, buffer );
+        }
+        else if ( value instanceof URI )
+        {
+            buffer.writeByte( URI_VALUE );
+            writeString( value.toString(), buffer );
+        }
+        else
+        {
+            Registration registration = payloadsByType.get( value.getClass() );
+            if ( registration != null )
+            {
+                buffer.writeByte( registration.id );
+                registration.codec.write( value, buffer, this );
+            }
+            else
+            {
+                buffer.writeByte( SERIALIZED );
+                writeSerialized( value, buffer );
+            }
+        }
+    }
+
+    public Object readObject( ChannelBuffer buffer ) throws IOException
+    {
+        int id = buffer.readUnsignedByte();
+        switch ( id )
+        {
+            case NULL:
+                return null;
+            case SERIALIZED:
+                return readSerialized( buffer );
+            case STRING:
+                return readString( buffer );
+            case LONG:
+                return readVarLong( buffer );
+            case INTEGER:
+                return readVarInt( buffer );
+            case URI_VALUE:
+                return readUri( buffer );
+            default:
+                Registration<?> registration = payloadsById.get( id );
+                if ( registration == null )
+                {
+                    throw new IOException( "Unknown payload id " + id );
+                }
+                return registration.codec.read( buffer, this );
+        }
+    }
+
+    public void writeString( String value, ChannelBuffer buffer )
+    {
+        byte[] bytes = value.getBytes( UTF8 );
+        writeVarInt( bytes.length, buffer );
+        buffer.writeBytes( bytes );
+    }
+
+    public String readString( ChannelBuffer buffer ) throws IOException
+    {
+        byte[] bytes = new byte[readLength( buffer )];
+        buffer.readBytes( bytes );
+        return new String( bytes, UTF8 );
+    }
+
+    public URI readUri( ChannelBuffer buffer ) throws IOException
+    {
+        String uri = readString( buffer );
+        try
+        {
+            return new URI( uri );
+        }
+        catch ( URISyntaxException e )
+        {
+            throw new IOException( "Invalid URI " + uri, e );
+        }
+    }
+
+    /**
+     * Writes a number as 1-10 bytes, 1 for anything between -64 and 63.
+     */
+    public void writeVarLong( long value, ChannelBuffer buffer )
+    {
+        long zigZag = (value << 1) ^ (value >> 63);
+        while ( (zigZag & ~0x7FL) != 0 )
+        {
+            buffer.writeByte( (int) ((zigZag & 0x7F) | 0x80) );
+            zigZag >>>= 7;
+        }
+        buffer.writeByte( (int) zigZag );
+    }
+
+    public long readVarLong( ChannelBuffer buffer ) throws IOException
+    {
+        long zigZag = 0;
+        for ( int shift = 0; shift < 64; shift += 7 )
+        {
+            byte b = buffer.readByte();
+            zigZag |= (long) (b & 0x7F) << shift;
+            if ( (b & 0x80) == 0 )
+            {
+                return (zigZag >>> 1) ^ -(zigZag & 1);
+            }
+        }
+        throw new IOException( "Malformed variable length number" );
+    }
+
+    public void writeVarInt( int value, ChannelBuffer buffer )
+    {
+        writeVarLong( value, buffer );
+    }
+
+    public int readVarInt( ChannelBuffer buffer ) throws IOException
+    {
+        long value = readVarLong( buffer );
+        if ( value != (int) value )
+        {
+            throw new IOException( value + " is not an int" );
+        }
+        return (int) value;
+    }
+
+    private int readLength( ChannelBuffer buffer ) throws IOException
+    {
+        int length = readVarInt( buffer );
+        if ( length < 0 || length > buffer.readableBytes() )
+        {
+            throw new IOException( "Invalid length " + length + ", " + buffer.readableBytes() + " bytes left" );
+        }
+        return length;
+    }
+
+    private void writeUris( Collection<URI> uris, ChannelBuffer buffer )
+    {
+        writeVarInt( uris.size(), buffer );
+        for ( URI uri : uris )
+        {
+            writeString( uri.toString(), buffer );
+        }
+    }
+
+    private void readUris( Collection<URI> target, ChannelBuffer buffer ) throws IOException
+    {
+        for ( int i = readLength( buffer ); i > 0; i-- )
+        {
+            target.add( readUri( buffer ) );
+        }
+    }
+
+    private void writeRefresh( RefreshPayload payload, ChannelBuffer buffer )
+    {
+        writeVarInt( payload.serialNum, buffer );
+        writeVarInt( payload.processId, buffer );
+        writeVarInt( payload.freshness, buffer );
+        writeVarInt( payload.refreshRound, buffer );
+    }
+
+    private RefreshPayload readRefresh( ChannelBuffer buffer ) throws IOException
+    {
+        int serialNum = readVarInt( buffer );
+        int processId = readVarInt( buffer );
+        int freshness = readVarInt( buffer );
+        return new RefreshPayload( serialNum, processId, freshness, readVarInt( buffer ) );
+    }
+
+    private void writeSerialized( Object value, ChannelBuffer buffer ) throws IOException
+    {
+        int lengthIndex = buffer.writerIndex();
+        buffer.writeInt( 0 );
+        ObjectOutputStream out = new ObjectOutputStream( new ChannelBufferOutputStream( buffer ) );
+        out.writeObject( value );
+        out.close();
+        buffer.setInt( lengthIndex, buffer.writerIndex() - lengthIndex - 4 );
+    }
+
+    private Object readSerialized( ChannelBuffer buffer ) throws IOException
+    {
+        int length = buffer.readInt();
+        int end = buffer.readerIndex() + length;
+        ObjectInputStream in = new ObjectInputStream( new ChannelBufferInputStream( buffer, length ) );
+        try
+        {
+            return in.readObject();
+        }
+        catch ( ClassNotFoundException e )
+        {
+            throw new IOException( e );
+        }
+        finally
+        {
+            in.close();
+            buffer.readerIndex( end );
+        }
+    }
+
+    private static class Registration<T>
+    {
+        private final int id;
+        private final Class<T> type;
+        private final PayloadCodec<T> codec;
+
+        Registration( int id, Class<T> type, PayloadCodec<T> codec )
+        {
+            this.id = id;
+            this.type = type;
+            this.codec = codec;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.cluster.com.message;
+
+import java.io.IOException;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+
+/**
+ * Writes and reads one type of {@link Message} payload for the {@link MessageCodec}. Nested values can be written
+ * with {@link MessageCodec#writeObject(Object, ChannelBuffer)}, which picks the right codec for them.
+ *
+ * @see MessageCodec#registerPayload(int, Class, PayloadCodec)
+ */
+public interface PayloadCodec<T>
+{
+    void write( T payload, ChannelBuffer buffer, MessageCodec codec ) throws IOException;
+
+    T read( ChannelBuffer buffer, MessageCodec codec ) throws IOException;
+}
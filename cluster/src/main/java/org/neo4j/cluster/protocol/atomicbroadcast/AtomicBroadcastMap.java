@@ -43,10 +43,17 @@ public class AtomicBroadcastMap<K, V>
     private AtomicBroadcast atomicBroadcast;
     private volatile MapCommand lastCommand;
     protected final AtomicBroadcastListener atomicBroadcastListener;
-    private final AtomicBroadcastSerializer serializer = new AtomicBroadcastSerializer();
-
-    public AtomicBroadcastMap( AtomicBroadcast atomicBroadcast, Snapshot snapshot )
+    private final AtomicBroadcastSerializer serializer;
+
+    /**
+     * @param serializer writes and reads the map commands. Build it with the
+     * {@link org.neo4j.cluster.ClusterSettings#compact_broadcasts} setting of this instance, so that the commands
+     * are only written compactly once the whole cluster can read them.
+     */
+    public AtomicBroadcastMap( AtomicBroadcast atomicBroadcast, Snapshot snapshot,
+                               AtomicBroadcastSerializer serializer )
     {
+        this.serializer = serializer;
         snapshot.setSnapshotProvider( new SnapshotProvider()
         {
             @Override
@@ -247,6 +254,16 @@ public class AtomicBroadcastMap<K, V>
             this.value = value;
         }
 
+        public Object getKey()
+        {
+            return key;
+        }
+
+        public Object getValue()
+        {
+            return value;
+        }
+
         @Override
         public void execute( Map map )
         {
@@ -304,6 +321,11 @@ public class AtomicBroadcastMap<K, V>
             this.key = key;
         }
 
+        public Object getKey()
+        {
+            return key;
+        }
+
         @Override
         public void execute( Map map )
         {
@@ -374,6 +396,11 @@ public class AtomicBroadcastMap<K, V>
             this.map = map;
         }
 
+        public Map getMap()
+        {
+            return map;
+        }
+
         @Override
         public void execute( Map map )
         {
@@ -26,26 +26,104 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.neo4j.cluster.com.message.MessageCodec;
+
 /**
  * Serializes and deserializes value to/from Payloads.
+ * <p/>
+ * If compact payloads are enabled, values that the {@link MessageCodec} has a codec for, such as the
+ * {@link AtomicBroadcastMap} commands or types registered with
+ * {@link MessageCodec#registerPayload(int, Class, org.neo4j.cluster.com.message.PayloadCodec)}, are written in its
+ * compact format, through a buffer that is reused between broadcasts. Anything else is written with java
+ * serialization, and both are read by {@link #receive(Payload)}.
+ * <p/>
+ * Broadcast values are stored and relayed by every instance, so compact payloads must only be written once all
+ * instances in the cluster can read them.
  */
 public class AtomicBroadcastSerializer
 {
+    /**
+     * First byte of compact payloads, where java serialization streams start with 0xAC.
+     */
+    private static final int COMPACT = 0xCB;
+    private static final int MAX_RETAINED_BUFFER_SIZE = 64 * 1024;
+
+    private final MessageCodec codec;
+    private final boolean compact;
+    private ChannelBuffer buffer;
+
+    public AtomicBroadcastSerializer()
+    {
+        this( new MessageCodec(), false );
+    }
+
+    /**
+     * @param compact whether to write values that {@code codec} has a codec for in its compact format. Compact
+     * payloads are read either way.
+     */
+    public AtomicBroadcastSerializer( MessageCodec codec, boolean compact )
+    {
+        this.codec = codec;
+        this.compact = compact;
+    }
+
+    public MessageCodec getCodec()
+    {
+        return codec;
+    }
+
     public Payload broadcast(Object value)
         throws IOException
     {
-        ByteArrayOutputStream bout = new ByteArrayOutputStream(  );
-        ObjectOutputStream oout = new ObjectOutputStream( bout );
-        oout.writeObject( value );
-        oout.close();
-        byte[] bytes = bout.toByteArray();
-        Payload payload = new Payload( bytes, bytes.length );
-        return payload;
+        if ( !compact || !codec.hasCodecFor( value ) )
+        {
+            ByteArrayOutputStream bout = new ByteArrayOutputStream(  );
+            ObjectOutputStream oout = new ObjectOutputStream( bout );
+            oout.writeObject( value );
+            oout.close();
+            byte[] bytes = bout.toByteArray();
+            Payload payload = new Payload( bytes, bytes.length );
+            return payload;
+        }
+
+        synchronized ( this )
+        {
+            if ( buffer == null )
+            {
+                buffer = ChannelBuffers.dynamicBuffer( 256 );
+            }
+            buffer.clear();
+            buffer.writeByte( COMPACT );
+            buffer.writeByte( MessageCodec.VERSION );
+            codec.writeObject( value, buffer );
+            byte[] bytes = new byte[buffer.readableBytes()];
+            buffer.readBytes( bytes );
+            if ( buffer.capacity() > MAX_RETAINED_BUFFER_SIZE )
+            {
+                buffer = null;
+            }
+            return new Payload( bytes, bytes.length );
+        }
     }
 
     public Object receive(Payload payload)
         throws IOException, ClassNotFoundException
     {
+        if ( payload.getLen() > 0 && (payload.getBuf()[0] & 0xFF) == COMPACT )
+        {
+            ChannelBuffer in = ChannelBuffers.wrappedBuffer( payload.getBuf(), 0, payload.getLen() );
+            in.skipBytes( 1 );
+            int version = in.readUnsignedByte();
+            if ( version != MessageCodec.VERSION )
+            {
+                throw new IOException( "Payload written with codec version " + version + ", but this is version " +
+                        MessageCodec.VERSION );
+            }
+            return codec.readObject( in );
+        }
+
         ByteArrayInputStream in = new ByteArrayInputStream( payload.getBuf(), 0, payload.getLen() );
         ObjectInputStream oin = new ObjectInputStream( in );
         return oin.readObject();
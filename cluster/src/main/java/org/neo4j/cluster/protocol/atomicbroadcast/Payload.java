@@ -57,6 +57,44 @@ public class Payload
         return len;
     }
 
+    @Override
+    public boolean equals( Object o )
+    {
+        if ( this == o )
+        {
+            return true;
+        }
+        if ( o == null || getClass() != o.getClass() )
+        {
+            return false;
+        }
+
+        Payload payload = (Payload) o;
+        if ( len != payload.len )
+        {
+            return false;
+        }
+        for ( int i = 0; i < len; i++ )
+        {
+            if ( buf[i] != payload.buf[i] )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        int result = len;
+        for ( int i = 0; i < len; i++ )
+        {
+            result = 31 * result + buf[i];
+        }
+        return result;
+    }
+
     @Override
     public void writeExternal( ObjectOutput out )
             throws IOException
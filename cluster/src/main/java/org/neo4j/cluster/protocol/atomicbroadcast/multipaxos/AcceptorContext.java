@@ -37,19 +37,51 @@ public class AcceptorContext
         this.instanceStore = instanceStore;
     }
 
+    /**
+     * @return the instance, or null if it has been forgotten since the whole cluster has delivered it.
+     */
     public AcceptorInstance getAcceptorInstance( InstanceId instanceId )
     {
         return instanceStore.getAcceptorInstance( instanceId );
     }
 
-    public void promise( AcceptorInstance instance, long ballot )
+    /**
+     * @return the highest ballot promised for the instance, either for it alone or for all instances from some
+     *         earlier instance and up.
+     */
+    public long getPromisedBallot( InstanceId instanceId, AcceptorInstance instance )
     {
-        instanceStore.promise( instance, ballot );
+        return instanceStore.getPromisedBallot( instanceId, instance );
     }
 
-    public void accept( AcceptorInstance instance, Object value )
+    public void promise( InstanceId instanceId, AcceptorInstance instance, long ballot )
     {
-        instanceStore.accept( instance, value );
+        instanceStore.promise( instanceId, instance, ballot );
+    }
+
+    /**
+     * Promises the ballot for all instances after the given one as well, so that the proposer can go straight
+     * to accept for them. That can only be done if no value has been accepted for any of those instances, since
+     * the promise reports no values for them.
+     *
+     * @return true if the ballot was promised for all following instances.
+     */
+    public boolean promiseFollowing( InstanceId instanceId, long ballot )
+    {
+        return instanceStore.promiseFollowing( instanceId, ballot );
+    }
+
+    public void accept( InstanceId instanceId, AcceptorInstance instance, Object value )
+    {
+        instanceStore.accept( instanceId, instance, value );
+    }
+
+    /**
+     * Instances up to and including the given one have been delivered by every member of the cluster.
+     */
+    public void delivered( InstanceId instanceId )
+    {
+        instanceStore.lastDelivered( instanceId );
     }
 
     public StringLogger getLogger( Class clazz )
@@ -57,6 +89,15 @@ public class AcceptorContext
         return logging.getLogger( clazz );
     }
 
+    /**
+     * A new cluster was created. Its instances start from the beginning, so anything kept from before, by a store
+     * that survives restarts, must be forgotten.
+     */
+    public void created()
+    {
+        leave();
+    }
+
     public void leave()
     {
         instanceStore.clear();
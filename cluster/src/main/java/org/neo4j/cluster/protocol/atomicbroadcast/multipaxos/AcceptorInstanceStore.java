@@ -25,11 +25,35 @@ package org.neo4j.cluster.protocol.atomicbroadcast.multipaxos;
  */
 public interface AcceptorInstanceStore
 {
+    /**
+     * @return the instance, or null if it has been forgotten, see {@link #lastDelivered(InstanceId)}. Nothing may
+     *         be promised or accepted for a forgotten instance, since what was promised for it is no longer known.
+     */
     AcceptorInstance getAcceptorInstance( InstanceId instanceId );
 
-    void promise( AcceptorInstance instance, long ballot );
+    /**
+     * @return the highest ballot promised for the instance, either for it alone or for all instances from some
+     *         earlier instance and up.
+     */
+    long getPromisedBallot( InstanceId instanceId, AcceptorInstance instance );
 
-    void accept( AcceptorInstance instance, Object value );
+    void promise( InstanceId instanceId, AcceptorInstance instance, long ballot );
+
+    void accept( InstanceId instanceId, AcceptorInstance instance, Object value );
+
+    /**
+     * Promises the ballot for all instances after the given one.
+     *
+     * @return false if a higher ballot is already promised for following instances, or if values have been
+     *         accepted for any of those instances, in which case nothing is promised.
+     */
+    boolean promiseFollowing( InstanceId instanceId, long ballot );
+
+    /**
+     * Instances up to and including the given one have been delivered by every member of the cluster, so no
+     * proposer is going to ask about them again. The store may forget instances some way behind it.
+     */
+    void lastDelivered( InstanceId instanceId );
 
     void clear();
 }
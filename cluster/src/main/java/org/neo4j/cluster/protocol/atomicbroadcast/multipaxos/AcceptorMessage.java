@@ -33,7 +33,8 @@ public enum AcceptorMessage
     failure,
     join, leave,
     prepare, // phase 1a/1b
-    accept; // phase 2a/2b - timeout if resulting learn is not fast enough
+    accept, // phase 2a/2b - timeout if resulting learn is not fast enough
+    created;
 
     public static class PrepareState
             implements Serializable
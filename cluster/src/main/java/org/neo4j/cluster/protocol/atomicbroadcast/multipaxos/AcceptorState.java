@@ -45,6 +45,12 @@ public enum AcceptorState
                         {
                             return acceptor;
                         }
+
+                        case created:
+                        {
+                            context.created();
+                            return acceptor;
+                        }
                     }
 
                     return this;
@@ -68,23 +74,41 @@ public enum AcceptorState
                             InstanceId instanceId = new InstanceId( message );
                             AcceptorInstance instance = context.getAcceptorInstance( instanceId );
 
-                            if ( prepareState.getBallot() >= instance.getBallot() )
+                            if ( instance == null )
+                            {
+                                // Delivered by the whole cluster and forgotten, so what was promised is not known
+                                context.getLogger( AcceptorState.class ).debug( "Reject " + instanceId
+                                        + ", which has been forgotten" );
+                                outgoing.process( message.copyHeadersTo( Message.respond( ProposerMessage
+                                        .rejectPrepare, message,
+                                        new ProposerMessage.RejectPrepare( prepareState.getBallot() ) ),
+                                        InstanceId.INSTANCE ) );
+                                break;
+                            }
+
+                            long promisedBallot = context.getPromisedBallot( instanceId, instance );
+                            if ( prepareState.getBallot() >= promisedBallot )
                             {
-                                context.promise( instance, prepareState.getBallot() );
+                                context.promise( instanceId, instance, prepareState.getBallot() );
 
-                                outgoing.process( message.copyHeadersTo( Message.respond( ProposerMessage.promise,
-                                        message,
+                                Message<ProposerMessage> promise = message.copyHeadersTo( Message.respond(
+                                        ProposerMessage.promise, message,
                                         new ProposerMessage.PromiseState( prepareState.getBallot(),
-                                                instance.getValue() ) ), InstanceId.INSTANCE ) );
+                                                instance.getValue() ) ), InstanceId.INSTANCE );
+                                if ( context.promiseFollowing( instanceId, prepareState.getBallot() ) )
+                                {
+                                    promise.setHeader( ProposerMessage.PROMISED_FOLLOWING, "true" );
+                                }
+                                outgoing.process( promise );
                             }
                             else
                             {
                                 // Optimization - explicit reject
                                 context.getLogger( AcceptorState.class ).debug( "Reject " + instanceId
-                                        + " ballot:" + instance.getBallot() );
+                                        + " ballot:" + promisedBallot );
                                 outgoing.process( message.copyHeadersTo( Message.respond( ProposerMessage
                                         .rejectPrepare, message,
-                                        new ProposerMessage.RejectPrepare( instance.getBallot() ) ),
+                                        new ProposerMessage.RejectPrepare( promisedBallot ) ),
                                         InstanceId.INSTANCE ) );
                             }
                             break;
@@ -97,9 +121,22 @@ public enum AcceptorState
                             InstanceId instanceId = new InstanceId( message );
                             AcceptorInstance instance = context.getAcceptorInstance( instanceId );
 
-                            if ( acceptState.getBallot() == instance.getBallot() )
+                            if ( instance == null )
+                            {
+                                context.getLogger( AcceptorState.class ).debug( "Reject " + instanceId
+                                        + " accept, which has been forgotten" );
+                                outgoing.process( message.copyHeadersTo( Message.respond( ProposerMessage
+                                        .rejectAccept, message,
+                                        new ProposerMessage.RejectAcceptState() ), InstanceId.INSTANCE ) );
+                            }
+                            else if ( acceptState.getBallot() == context.getPromisedBallot( instanceId, instance ) )
                             {
-                                context.accept( instance, acceptState.getValue() );
+                                if ( instance.getBallot() != acceptState.getBallot() )
+                                {
+                                    // Accept without prepare, from a proposer that was promised all instances
+                                    context.promise( instanceId, instance, acceptState.getBallot() );
+                                }
+                                context.accept( instanceId, instance, acceptState.getValue() );
                                 instance.accept( acceptState.getValue() );
 
                                 outgoing.process( message.copyHeadersTo( Message.respond( ProposerMessage.accepted,
@@ -110,7 +147,7 @@ public enum AcceptorState
                             {
                                 context.getLogger( AcceptorState.class ).debug( "Reject " + instanceId
                                         + " accept ballot:" + acceptState.getBallot() + " actual ballot:" +
-                                        instance.getBallot() );
+                                        context.getPromisedBallot( instanceId, instance ) );
                                 outgoing.process( message.copyHeadersTo( Message.respond( ProposerMessage
                                         .rejectAccept, message,
                                         new ProposerMessage.RejectAcceptState() ), InstanceId.INSTANCE ) );
@@ -34,6 +34,7 @@ import org.neo4j.cluster.protocol.atomicbroadcast.Payload;
 import org.neo4j.cluster.protocol.cluster.ClusterMessage;
 import org.neo4j.cluster.statemachine.State;
 import org.neo4j.cluster.timeout.Timeouts;
+import org.neo4j.cluster.timeout.TimeoutKey;
 
 /**
  * State Machine for implementation of Atomic Broadcast client interface
@@ -137,7 +138,8 @@ public enum AtomicBroadcastState
                             {
                                 outgoing.process( to( ProposerMessage.propose, coordinator, message.getPayload() ) );
                                 Timeouts timeouts = context.getClusterContext().timeouts;
-                                timeouts.setTimeout( "broadcast-" + message.getHeader( Message.CONVERSATION_ID ),
+                                timeouts.setTimeout( TimeoutKey.timeoutKey( AtomicBroadcastMessage.broadcast,
+                                        message.getHeader( Message.CONVERSATION_ID ) ),
                                         timeout( AtomicBroadcastMessage.broadcastTimeout, message,
                                                 message.getPayload() ) );
                             }
@@ -151,8 +153,8 @@ public enum AtomicBroadcastState
 
                         case broadcastResponse:
                         {
-                            context.getClusterContext().timeouts.cancelTimeout( "broadcast-" + message.getHeader(
-                                    Message.CONVERSATION_ID ) );
+                            context.getClusterContext().timeouts.cancelTimeout( TimeoutKey.timeoutKey( AtomicBroadcastMessage
+                                    .broadcast, message.getHeader( Message.CONVERSATION_ID ) ) );
 
                             // TODO FILTER MESSAGES
 
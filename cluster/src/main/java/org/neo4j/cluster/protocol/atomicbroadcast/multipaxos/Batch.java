@@ -0,0 +1,92 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.cluster.protocol.atomicbroadcast.multipaxos;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Several broadcast values decided in one Paxos instance. Learners deliver them one at a time in the order they
+ * were proposed, each with the conversation id of the broadcast that it came from.
+ */
+public class Batch
+        implements Serializable
+{
+    private final Object[] values;
+    private final String[] conversationIds;
+
+    public Batch( Object[] values, String[] conversationIds )
+    {
+        if ( values.length != conversationIds.length )
+        {
+            throw new IllegalArgumentException( values.length + " values, but " + conversationIds.length +
+                    " conversation ids" );
+        }
+        this.values = values;
+        this.conversationIds = conversationIds;
+    }
+
+    public int size()
+    {
+        return values.length;
+    }
+
+    public Object getValue( int index )
+    {
+        return values[index];
+    }
+
+    /**
+     * @return the conversation id of the broadcast of the value at index, or null if it didn't have one.
+     */
+    public String getConversationId( int index )
+    {
+        return conversationIds[index];
+    }
+
+    @Override
+    public boolean equals( Object o )
+    {
+        if ( this == o )
+        {
+            return true;
+        }
+        if ( o == null || getClass() != o.getClass() )
+        {
+            return false;
+        }
+
+        Batch batch = (Batch) o;
+        return Arrays.equals( values, batch.values ) && Arrays.equals( conversationIds, batch.conversationIds );
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return 31 * Arrays.hashCode( values ) + Arrays.hashCode( conversationIds );
+    }
+
+    @Override
+    public String toString()
+    {
+        return "Batch" + Arrays.toString( values );
+    }
+}
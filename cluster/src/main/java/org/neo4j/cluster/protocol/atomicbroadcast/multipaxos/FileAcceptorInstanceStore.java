@@ -0,0 +1,631 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.cluster.protocol.atomicbroadcast.multipaxos;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.neo4j.cluster.com.message.Message;
+import org.neo4j.cluster.com.message.MessageCodec;
+import org.neo4j.cluster.com.message.MessageProcessor;
+import org.neo4j.cluster.com.message.MessageType;
+import org.neo4j.kernel.impl.util.StringLogger;
+import org.neo4j.kernel.lifecycle.Lifecycle;
+
+/**
+ * Acceptor instance store that keeps a log of promises and accepted values on disk, so that an acceptor that
+ * crashes and comes back still knows what it has promised.
+ * <p/>
+ * Instances are kept in memory as well, and the log is only read when starting. Records are written by a separate
+ * thread that forces them to disk in groups. Acceptor replies sent through {@link #forceBefore(MessageProcessor)}
+ * are held back until the records written before them have been forced, so that no promise or accepted value is
+ * reported before it is durable. If the log can't be written the store fails: held replies are dropped and the
+ * acceptor can't promise or accept anything more until restarted. When the log has grown to twice its size after
+ * the last compaction it is rewritten with only the instances that are still kept, see
+ * {@link #lastDelivered(InstanceId)}.
+ * <p/>
+ * Each record is an int length, an int checksum and then the record itself. A record that is cut short or has
+ * the wrong checksum ends the log, which happens if the process dies while writing it.
+ */
+public class FileAcceptorInstanceStore
+        implements AcceptorInstanceStore, Lifecycle
+{
+    public static final String LOG_FILE = "paxos.log";
+
+    private static final byte PROMISE = 1;
+    private static final byte ACCEPT = 2;
+    private static final byte PROMISE_FOLLOWING = 3;
+    private static final byte PURGE = 4;
+
+    private static final int MIN_COMPACTION_SIZE = 1024 * 1024;
+
+    private final File directory;
+    private final MessageCodec codec;
+    private final StringLogger logger;
+    private final int maxStored;
+
+    // Used by the acceptor state machine only
+    private final InstanceRing<AcceptorInstance> instances = new InstanceRing<AcceptorInstance>( 256 );
+    private long lowestInstanceId = Long.MAX_VALUE;
+    private long highestInstanceId = -1;
+    private long lastAcceptedInstanceId = -1;
+    private long followingBallot = -1;
+    private long followingInstanceId = -1;
+
+    // Guarded by this
+    private ChannelBuffer pending = ChannelBuffers.dynamicBuffer();
+    private ChannelBuffer compacted;
+    private List<Message<? extends MessageType>> held = new ArrayList<Message<? extends MessageType>>();
+    private MessageProcessor sender;
+    private boolean forcing;
+    private boolean stopped;
+    private volatile IOException failure;
+    private long logSize;
+    private long compactedSize;
+
+    private FileChannel channel;
+    private Thread writer;
+
+    public FileAcceptorInstanceStore( File directory, MessageCodec codec, StringLogger logger )
+    {
+        this( directory, codec, logger, InMemoryAcceptorInstanceStore.DEFAULT_MAX_STORED );
+    }
+
+    public FileAcceptorInstanceStore( File directory, MessageCodec codec, StringLogger logger, int maxStored )
+    {
+        this.directory = directory;
+        this.codec = codec;
+        this.logger = logger;
+        this.maxStored = maxStored;
+    }
+
+    @Override
+    public void init() throws Throwable
+    {
+        directory.mkdirs();
+        new File( directory, LOG_FILE + ".tmp" ).delete();
+        channel = openLog();
+        recover();
+    }
+
+    @Override
+    public void start() throws Throwable
+    {
+        synchronized ( this )
+        {
+            stopped = false;
+        }
+        writer = new Thread( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                writeRecords();
+            }
+        }, "Paxos log writer" );
+        writer.setDaemon( true );
+        writer.start();
+    }
+
+    @Override
+    public void stop() throws Throwable
+    {
+        synchronized ( this )
+        {
+            stopped = true;
+            notifyAll();
+        }
+        writer.join();
+    }
+
+    @Override
+    public void shutdown() throws Throwable
+    {
+        channel.close();
+    }
+
+    /**
+     * @return a processor that passes acceptor replies on to the given one once the records written before them
+     *         are forced to disk. Other messages are passed on straight away.
+     */
+    public synchronized MessageProcessor forceBefore( final MessageProcessor sender )
+    {
+        this.sender = sender;
+        return new MessageProcessor()
+        {
+            @Override
+            public void process( Message<? extends MessageType> message )
+            {
+                if ( !isAcceptorReply( message ) )
+                {
+                    sender.process( message );
+                    return;
+                }
+
+                synchronized ( FileAcceptorInstanceStore.this )
+                {
+                    if ( failure != null )
+                    {
+                        // The promise or value it reports may not be durable
+                        return;
+                    }
+                    if ( pending.readableBytes() > 0 || compacted != null || forcing || !held.isEmpty() )
+                    {
+                        held.add( message );
+                        FileAcceptorInstanceStore.this.notifyAll();
+                        return;
+                    }
+                }
+                sender.process( message );
+            }
+        };
+    }
+
+    @Override
+    public AcceptorInstance getAcceptorInstance( InstanceId instanceId )
+    {
+        checkNotFailed();
+        long id = instanceId.getId();
+        AcceptorInstance instance = instances.get( id );
+        if ( instance == null )
+        {
+            if ( id <= instances.getPurgedUpTo() )
+            {
+                return null;
+            }
+            instance = new AcceptorInstance();
+            instances.put( id, instance );
+            lowestInstanceId = Math.min( lowestInstanceId, id );
+            highestInstanceId = Math.max( highestInstanceId, id );
+        }
+        return instance;
+    }
+
+    @Override
+    public long getPromisedBallot( InstanceId instanceId, AcceptorInstance instance )
+    {
+        if ( followingInstanceId != -1 && instanceId.getId() >= followingInstanceId )
+        {
+            return Math.max( instance.getBallot(), followingBallot );
+        }
+        return instance.getBallot();
+    }
+
+    @Override
+    public void promise( InstanceId instanceId, AcceptorInstance instance, long ballot )
+    {
+        instance.promise( ballot );
+        if ( isStored( instanceId ) )
+        {
+            ChannelBuffer record = startRecord( PROMISE, instanceId.getId() );
+            codec.writeVarLong( ballot, record );
+            endRecord( record );
+        }
+    }
+
+    @Override
+    public void accept( InstanceId instanceId, AcceptorInstance instance, Object value )
+    {
+        instance.accept( value );
+        lastAcceptedInstanceId = Math.max( lastAcceptedInstanceId, instanceId.getId() );
+        if ( isStored( instanceId ) )
+        {
+            ChannelBuffer record = startRecord( ACCEPT, instanceId.getId() );
+            try
+            {
+                codec.writeObject( value, record );
+            }
+            catch ( IOException e )
+            {
+                throw new IllegalArgumentException( "Could not write accepted value " + value, e );
+            }
+            endRecord( record );
+        }
+    }
+
+    @Override
+    public boolean promiseFollowing( InstanceId instanceId, long ballot )
+    {
+        checkNotFailed();
+        if ( ballot < followingBallot || lastAcceptedInstanceId > instanceId.getId() )
+        {
+            return false;
+        }
+
+        followingBallot = ballot;
+        followingInstanceId = followingInstanceId == -1 ? instanceId.getId() + 1 : Math.min( followingInstanceId,
+                instanceId.getId() + 1 );
+        ChannelBuffer record = startRecord( PROMISE_FOLLOWING, followingInstanceId );
+        codec.writeVarLong( followingBallot, record );
+        endRecord( record );
+        return true;
+    }
+
+    @Override
+    public void lastDelivered( InstanceId instanceId )
+    {
+        long purgeUpTo = instanceId.getId() - maxStored;
+        if ( purgeUpTo <= instances.getPurgedUpTo() || failure != null )
+        {
+            return;
+        }
+
+        instances.purge( purgeUpTo );
+        lowestInstanceId = Math.max( lowestInstanceId, purgeUpTo + 1 );
+        endRecord( startRecord( PURGE, purgeUpTo ) );
+
+        boolean compact;
+        synchronized ( this )
+        {
+            compact = compacted == null && logSize >= Math.max( MIN_COMPACTION_SIZE, compactedSize * 2 );
+        }
+        if ( compact )
+        {
+            compact();
+        }
+    }
+
+    @Override
+    public void clear()
+    {
+        instances.clear();
+        lowestInstanceId = Long.MAX_VALUE;
+        highestInstanceId = -1;
+        lastAcceptedInstanceId = -1;
+        followingBallot = -1;
+        followingInstanceId = -1;
+
+        synchronized ( this )
+        {
+            // An empty log replaces the current one
+            compacted = ChannelBuffers.dynamicBuffer();
+            pending.clear();
+            logSize = compactedSize = 0;
+            notifyAll();
+        }
+    }
+
+    private void checkNotFailed()
+    {
+        if ( failure != null )
+        {
+            throw new IllegalStateException( "Paxos log in " + directory + " could not be written, so the acceptor " +
+                    "is stopped until restarted", failure );
+        }
+    }
+
+    private static boolean isAcceptorReply( Message<? extends MessageType> message )
+    {
+        MessageType type = message.getMessageType();
+        return type == ProposerMessage.promise || type == ProposerMessage.rejectPrepare ||
+                type == ProposerMessage.accepted || type == ProposerMessage.rejectAccept;
+    }
+
+    private boolean isStored( InstanceId instanceId )
+    {
+        return instanceId.getId() > instances.getPurgedUpTo();
+    }
+
+    private ChannelBuffer startRecord( byte type, long instanceId )
+    {
+        ChannelBuffer record = ChannelBuffers.dynamicBuffer();
+        record.writeInt( 0 );
+        record.writeInt( 0 );
+        record.writeByte( type );
+        codec.writeVarLong( instanceId, record );
+        return record;
+    }
+
+    private void endRecord( ChannelBuffer record )
+    {
+        finish( record );
+        synchronized ( this )
+        {
+            logSize += record.readableBytes();
+            pending.writeBytes( record );
+            notifyAll();
+        }
+    }
+
+    private static ChannelBuffer finish( ChannelBuffer record )
+    {
+        int length = record.readableBytes() - 8;
+        CRC32 checksum = new CRC32();
+        checksum.update( record.array(), record.arrayOffset() + 8, length );
+        record.setInt( 0, length );
+        record.setInt( 4, (int) checksum.getValue() );
+        return record;
+    }
+
+    /**
+     * Replaces the log with the promises and values of the instances that are still kept. Records written before
+     * this are dropped, since the new log covers them.
+     */
+    private void compact()
+    {
+        ChannelBuffer log = ChannelBuffers.dynamicBuffer();
+        if ( followingInstanceId != -1 )
+        {
+            ChannelBuffer record = startRecord( PROMISE_FOLLOWING, followingInstanceId );
+            codec.writeVarLong( followingBallot, record );
+            log.writeBytes( finish( record ) );
+        }
+        if ( instances.getPurgedUpTo() != Long.MIN_VALUE )
+        {
+            log.writeBytes( finish( startRecord( PURGE, instances.getPurgedUpTo() ) ) );
+        }
+        for ( long id = lowestInstanceId; id <= highestInstanceId; id++ )
+        {
+            AcceptorInstance instance = instances.get( id );
+            if ( instance == null )
+            {
+                continue;
+            }
+            if ( instance.getBallot() != -1 )
+            {
+                ChannelBuffer record = startRecord( PROMISE, id );
+                codec.writeVarLong( instance.getBallot(), record );
+                log.writeBytes( finish( record ) );
+            }
+            if ( instance.getValue() != null )
+            {
+                ChannelBuffer record = startRecord( ACCEPT, id );
+                try
+                {
+                    codec.writeObject( instance.getValue(), record );
+                }
+                catch ( IOException e )
+                {
+                    throw new IllegalArgumentException( "Could not write accepted value " + instance.getValue(), e );
+                }
+                log.writeBytes( finish( record ) );
+            }
+        }
+
+        synchronized ( this )
+        {
+            compacted = log;
+            pending.clear();
+            logSize = compactedSize = log.readableBytes();
+            notifyAll();
+        }
+    }
+
+    private void writeRecords()
+    {
+        while ( true )
+        {
+            ChannelBuffer records;
+            ChannelBuffer log;
+            List<Message<? extends MessageType>> messages;
+            synchronized ( this )
+            {
+                while ( !stopped && pending.readableBytes() == 0 && compacted == null && held.isEmpty() )
+                {
+                    try
+                    {
+                        wait();
+                    }
+                    catch ( InterruptedException e )
+                    {
+                        Thread.interrupted();
+                    }
+                }
+                if ( pending.readableBytes() == 0 && compacted == null && held.isEmpty() )
+                {
+                    return;
+                }
+
+                records = pending;
+                pending = ChannelBuffers.dynamicBuffer();
+                log = compacted;
+                compacted = null;
+                messages = held;
+                held = new ArrayList<Message<? extends MessageType>>();
+                forcing = true;
+            }
+
+            try
+            {
+                if ( log != null )
+                {
+                    replaceLog( log );
+                }
+                if ( records.readableBytes() > 0 )
+                {
+                    write( channel, records );
+                    channel.force( false );
+                }
+            }
+            catch ( IOException e )
+            {
+                // What was promised or accepted may be lost, so the held replies must not be sent
+                logger.logMessage( "Could not write Paxos log in " + directory + ", the acceptor is stopped", e );
+                synchronized ( this )
+                {
+                    failure = e;
+                    pending.clear();
+                    held.clear();
+                    forcing = false;
+                }
+                return;
+            }
+
+            for ( Message<? extends MessageType> message : messages )
+            {
+                try
+                {
+                    sender.process( message );
+                }
+                catch ( Throwable e )
+                {
+                    logger.logMessage( "Message sending threw exception", e );
+                }
+            }
+
+            synchronized ( this )
+            {
+                forcing = false;
+            }
+        }
+    }
+
+    private void replaceLog( ChannelBuffer log ) throws IOException
+    {
+        File file = new File( directory, LOG_FILE );
+        File tmp = new File( directory, LOG_FILE + ".tmp" );
+        FileChannel tmpChannel = new RandomAccessFile( tmp, "rw" ).getChannel();
+        try
+        {
+            tmpChannel.truncate( 0 );
+            write( tmpChannel, log );
+            tmpChannel.force( false );
+        }
+        finally
+        {
+            tmpChannel.close();
+        }
+
+        channel.close();
+        if ( !tmp.renameTo( file ) )
+        {
+            // Not all platforms replace the target of a rename
+            file.delete();
+            if ( !tmp.renameTo( file ) )
+            {
+                throw new IOException( "Could not rename " + tmp + " to " + file );
+            }
+        }
+        channel = openLog();
+    }
+
+    private FileChannel openLog() throws IOException
+    {
+        FileChannel log = new RandomAccessFile( new File( directory, LOG_FILE ), "rw" ).getChannel();
+        log.position( log.size() );
+        return log;
+    }
+
+    private static void write( FileChannel channel, ChannelBuffer buffer ) throws IOException
+    {
+        ByteBuffer bytes = ByteBuffer.wrap( buffer.array(), buffer.arrayOffset() + buffer.readerIndex(),
+                buffer.readableBytes() );
+        while ( bytes.hasRemaining() )
+        {
+            channel.write( bytes );
+        }
+    }
+
+    private void recover() throws IOException
+    {
+        byte[] bytes = new byte[(int) channel.size()];
+        ByteBuffer read = ByteBuffer.wrap( bytes );
+        channel.position( 0 );
+        while ( read.hasRemaining() && channel.read( read ) != -1 )
+        {
+            // Keep reading
+        }
+
+        ChannelBuffer log = ChannelBuffers.wrappedBuffer( bytes );
+        CRC32 checksum = new CRC32();
+        int end = 0;
+        while ( log.readableBytes() >= 8 )
+        {
+            int length = log.readInt();
+            int expected = log.readInt();
+            if ( length <= 0 || length > log.readableBytes() )
+            {
+                break;
+            }
+            checksum.reset();
+            checksum.update( bytes, log.readerIndex(), length );
+            if ( (int) checksum.getValue() != expected )
+            {
+                break;
+            }
+
+            int next = log.readerIndex() + length;
+            replay( log );
+            log.readerIndex( next );
+            end = next;
+        }
+
+        if ( end < bytes.length )
+        {
+            logger.logMessage( "Paxos log in " + directory + " ends with an incomplete record at " + end +
+                    ", which has been removed" );
+            channel.truncate( end );
+        }
+        channel.position( end );
+        logSize = compactedSize = end;
+    }
+
+    private void replay( ChannelBuffer record ) throws IOException
+    {
+        byte type = record.readByte();
+        long id = codec.readVarLong( record );
+        switch ( type )
+        {
+            case PROMISE:
+            {
+                AcceptorInstance instance = getAcceptorInstance( new InstanceId( id ) );
+                if ( instance != null )
+                {
+                    instance.promise( codec.readVarLong( record ) );
+                }
+                break;
+            }
+            case ACCEPT:
+            {
+                AcceptorInstance instance = getAcceptorInstance( new InstanceId( id ) );
+                if ( instance != null )
+                {
+                    instance.accept( codec.readObject( record ) );
+                }
+                lastAcceptedInstanceId = Math.max( lastAcceptedInstanceId, id );
+                break;
+            }
+            case PROMISE_FOLLOWING:
+            {
+                // Covers all instances from the id and up, including those read before it
+                followingInstanceId = id;
+                followingBallot = Math.max( followingBallot, codec.readVarLong( record ) );
+                break;
+            }
+            case PURGE:
+            {
+                instances.purge( id );
+                lowestInstanceId = Math.max( lowestInstanceId, id + 1 );
+                break;
+            }
+            default:
+                throw new IOException( "Unknown record type " + type + " in Paxos log in " + directory );
+        }
+    }
+}
@@ -20,46 +20,99 @@
 
 package org.neo4j.cluster.protocol.atomicbroadcast.multipaxos;
 
-import java.util.HashMap;
-import java.util.Map;
-
 /**
- * In memory version of an acceptor instance store.
+ * In memory version of an acceptor instance store. Instances more than a given number of instances behind the last
+ * one delivered by the whole cluster are forgotten.
  */
 public class InMemoryAcceptorInstanceStore
         implements AcceptorInstanceStore
 {
-    // TODO Add mechanism to purge these
-    Map<InstanceId, AcceptorInstance> instances = new HashMap<InstanceId, AcceptorInstance>();
+    public static final int DEFAULT_MAX_STORED = 1000;
+
+    private final int maxStored;
+    private final InstanceRing<AcceptorInstance> instances = new InstanceRing<AcceptorInstance>( 256 );
+
+    // Ballot promised for all instances from followingInstanceId and up, or -1 if none
+    private long followingBallot = -1;
+    private long followingInstanceId = -1;
+    private long lastAcceptedInstanceId = -1;
+
+    public InMemoryAcceptorInstanceStore()
+    {
+        this( DEFAULT_MAX_STORED );
+    }
+
+    public InMemoryAcceptorInstanceStore( int maxStored )
+    {
+        this.maxStored = maxStored;
+    }
 
     @Override
     public AcceptorInstance getAcceptorInstance( InstanceId instanceId )
     {
-        AcceptorInstance instance = instances.get( instanceId );
+        AcceptorInstance instance = instances.get( instanceId.getId() );
         if ( instance == null )
         {
+            if ( instanceId.getId() <= instances.getPurgedUpTo() )
+            {
+                return null;
+            }
             instance = new AcceptorInstance();
-            instances.put( instanceId, instance );
+            instances.put( instanceId.getId(), instance );
         }
 
         return instance;
     }
 
     @Override
-    public void promise( AcceptorInstance instance, long ballot )
+    public long getPromisedBallot( InstanceId instanceId, AcceptorInstance instance )
+    {
+        if ( followingInstanceId != -1 && instanceId.getId() >= followingInstanceId )
+        {
+            return Math.max( instance.getBallot(), followingBallot );
+        }
+        return instance.getBallot();
+    }
+
+    @Override
+    public void promise( InstanceId instanceId, AcceptorInstance instance, long ballot )
     {
         instance.promise( ballot );
     }
 
     @Override
-    public void accept( AcceptorInstance instance, Object value )
+    public void accept( InstanceId instanceId, AcceptorInstance instance, Object value )
     {
         instance.accept( value );
+        lastAcceptedInstanceId = Math.max( lastAcceptedInstanceId, instanceId.getId() );
+    }
+
+    @Override
+    public boolean promiseFollowing( InstanceId instanceId, long ballot )
+    {
+        if ( ballot < followingBallot || lastAcceptedInstanceId > instanceId.getId() )
+        {
+            return false;
+        }
+
+        followingBallot = ballot;
+        followingInstanceId = followingInstanceId == -1 ? instanceId.getId() + 1 : Math.min( followingInstanceId,
+                instanceId.getId() + 1 );
+        return true;
+    }
+
+    @Override
+    public void lastDelivered( InstanceId instanceId )
+    {
+        instances.purge( instanceId.getId() - maxStored );
     }
 
     @Override
     public void clear()
     {
         instances.clear();
+        followingBallot = -1;
+        followingInstanceId = -1;
+        lastAcceptedInstanceId = -1;
     }
 }
@@ -0,0 +1,165 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.cluster.protocol.atomicbroadcast.multipaxos;
+
+import java.util.Arrays;
+
+/**
+ * Values for Paxos instances, kept in an array at the instance id modulo the array length. Instance ids are handed
+ * out in sequence, so the instances in use are close together and seldom share a slot. When two of them do, the
+ * array is doubled. Values for instances up to the purge point are dropped, and their slots reused.
+ */
+class InstanceRing<T>
+{
+    private long[] ids;
+    private Object[] values;
+    private long purgedUpTo = Long.MIN_VALUE;
+
+    InstanceRing( int capacity )
+    {
+        if ( Integer.bitCount( capacity ) != 1 )
+        {
+            throw new IllegalArgumentException( "Capacity " + capacity + " must be a power of two" );
+        }
+        ids = new long[capacity];
+        values = new Object[capacity];
+    }
+
+    @SuppressWarnings("unchecked")
+    T get( long id )
+    {
+        if ( id <= purgedUpTo )
+        {
+            return null;
+        }
+        int slot = slot( id, values.length );
+        return values[slot] != null && ids[slot] == id ? (T) values[slot] : null;
+    }
+
+    /**
+     * @return false if the instance is purged, in which case the value is not kept.
+     */
+    boolean put( long id, T value )
+    {
+        if ( id <= purgedUpTo )
+        {
+            return false;
+        }
+        while ( !put( ids, values, id, value ) )
+        {
+            grow();
+        }
+        return true;
+    }
+
+    /**
+     * Drops the values for all instances up to and including the given one.
+     */
+    void purge( long upTo )
+    {
+        if ( upTo <= purgedUpTo )
+        {
+            return;
+        }
+
+        long from = purgedUpTo;
+        purgedUpTo = upTo;
+        if ( from == Long.MIN_VALUE || upTo - from >= values.length )
+        {
+            for ( int slot = 0; slot < values.length; slot++ )
+            {
+                if ( ids[slot] <= upTo )
+                {
+                    values[slot] = null;
+                }
+            }
+        }
+        else
+        {
+            for ( long id = from + 1; id <= upTo; id++ )
+            {
+                int slot = slot( id, values.length );
+                if ( ids[slot] == id )
+                {
+                    values[slot] = null;
+                }
+            }
+        }
+    }
+
+    long getPurgedUpTo()
+    {
+        return purgedUpTo;
+    }
+
+    int capacity()
+    {
+        return values.length;
+    }
+
+    void clear()
+    {
+        Arrays.fill( values, null );
+        purgedUpTo = Long.MIN_VALUE;
+    }
+
+    private boolean put( long[] ids, Object[] values, long id, Object value )
+    {
+        int slot = slot( id, values.length );
+        if ( values[slot] != null && ids[slot] != id && ids[slot] > purgedUpTo )
+        {
+            return false;
+        }
+        ids[slot] = id;
+        values[slot] = value;
+        return true;
+    }
+
+    private void grow()
+    {
+        int capacity = values.length;
+        long[] newIds;
+        Object[] newValues;
+        boolean moved;
+        do
+        {
+            capacity *= 2;
+            newIds = new long[capacity];
+            newValues = new Object[capacity];
+            moved = true;
+            for ( int slot = 0; slot < values.length && moved; slot++ )
+            {
+                if ( values[slot] != null && ids[slot] > purgedUpTo )
+                {
+                    moved = put( newIds, newValues, ids[slot], values[slot] );
+                }
+            }
+        }
+        while ( !moved );
+        ids = newIds;
+        values = newValues;
+    }
+
+    private static int slot( long id, int capacity )
+    {
+        return (int) (id & (capacity - 1));
+    }
+}
@@ -20,15 +20,22 @@
 
 package org.neo4j.cluster.protocol.atomicbroadcast.multipaxos;
 
+import java.net.URI;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * Context for the Learner Paxos state machine.
  */
 public class LearnerContext
 {
     // Learner state
-    private long lastDeliveredInstanceId = -1;
-    private long lastLearnedInstanceId = -1;
-    private long lastKnownLearnedInstanceInCluster = -1;
+    // Read by the heartbeat state machine, which runs on its own thread
+    private volatile long lastDeliveredInstanceId = -1;
+    private volatile long lastLearnedInstanceId = -1;
+    private volatile long lastKnownLearnedInstanceInCluster = -1;
+    private final Map<URI, Long> lastDeliveredByMember = new ConcurrentHashMap<URI, Long>();
 
     public long getLastDeliveredInstanceId()
     {
@@ -64,6 +71,34 @@ public class LearnerContext
         }
     }
 
+    /**
+     * Another member reported the last instance it has delivered.
+     */
+    public void delivered( URI member, long instanceId )
+    {
+        lastDeliveredByMember.put( member, instanceId );
+    }
+
+    /**
+     * @return the last instance that all the given members have delivered, as far as this member knows. Failed
+     *         members are left out, so that one that never comes back doesn't hold the rest of the cluster up.
+     *         Members that haven't reported what they have delivered, such as ones running an older version, count
+     *         as having delivered nothing.
+     */
+    public long getLastDeliveredInstanceInCluster( URI me, Iterable<URI> members, Collection<URI> failed )
+    {
+        long lastDelivered = lastDeliveredInstanceId;
+        for ( URI member : members )
+        {
+            if ( !member.equals( me ) && !failed.contains( member ) )
+            {
+                Long delivered = lastDeliveredByMember.get( member );
+                lastDelivered = Math.min( lastDelivered, delivered == null ? -1 : delivered );
+            }
+        }
+        return lastDelivered;
+    }
+
     public boolean hasDeliveredAllKnownInstances()
     {
         return lastDeliveredInstanceId == lastKnownLearnedInstanceInCluster;
@@ -74,5 +109,6 @@ public class LearnerContext
         lastDeliveredInstanceId = -1;
         lastLearnedInstanceId = -1;
         lastKnownLearnedInstanceInCluster = -1;
+        lastDeliveredByMember.clear();
     }
 }
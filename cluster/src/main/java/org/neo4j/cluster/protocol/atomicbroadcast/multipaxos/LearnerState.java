@@ -82,13 +82,21 @@ public enum LearnerState
 
                             instance.closed( learnState.getValue(), message.getHeader( Message.CONVERSATION_ID ) );
 
+                            // Our proposer may still have this instance booked, if another proposer decided it
+                            Message<ProposerMessage> proposal = context.proposerContext.learned( instanceId,
+                                    learnState.getValue() );
+                            if ( proposal != null )
+                            {
+                                outgoing.process( proposal );
+                            }
+
                             // If this is the next instance to be learned, then do so and check if we have anything
                             // pending to be learnt
                             if ( instanceId.getId() == context.learnerContext.getLastDeliveredInstanceId() + 1 )
                             {
                                 instance.delivered();
-                                outgoing.process( Message.internal( AtomicBroadcastMessage.broadcastResponse,
-                                        learnState.getValue() ) );
+                                deliver( instance.id, learnState.getValue(), message.getHeader( Message
+                                        .CONVERSATION_ID ), outgoing );
                                 context.learnerContext.setLastDeliveredInstanceId( instanceId.getId() );
 
                                 long checkInstanceId = instanceId.getId() + 1;
@@ -97,14 +105,14 @@ public enum LearnerState
                                 {
                                     instance.delivered();
                                     context.learnerContext.setLastDeliveredInstanceId( checkInstanceId );
-                                    Message<AtomicBroadcastMessage> learnMessage = Message.internal(
-                                            AtomicBroadcastMessage.broadcastResponse, instance.value_2 )
-                                            .setHeader( InstanceId.INSTANCE, instance.id.toString() )
-                                            .setHeader( Message.CONVERSATION_ID, instance.conversationIdHeader );
-                                    outgoing.process( learnMessage );
+                                    deliver( instance.id, instance.value_2, instance.conversationIdHeader, outgoing );
 
                                     checkInstanceId++;
                                 }
+                                context.acceptorContext.delivered( new InstanceId( context.learnerContext
+                                        .getLastDeliveredInstanceInCluster( context.clusterContext.getMe(),
+                                                context.clusterContext.getConfiguration().getMembers(),
+                                                context.heartbeatContext.getFailed() ) ) );
 
                                 if ( checkInstanceId == context.learnerContext.getLastKnownLearnedInstanceInCluster()
                                         + 1 )
@@ -262,5 +270,33 @@ public enum LearnerState
 
                     return this;
                 }
+            };
+
+    /**
+     * Delivers a learned value as a broadcast response. A {@link Batch} is delivered as one response per value,
+     * each with the conversation id of the broadcast it came from.
+     */
+    private static void deliver( InstanceId instanceId, Object value, String conversationId,
+                                 MessageProcessor outgoing )
+    {
+        if ( value instanceof Batch )
+        {
+            Batch batch = (Batch) value;
+            for ( int i = 0; i < batch.size(); i++ )
+            {
+                String valueConversationId = batch.getConversationId( i );
+                deliver( instanceId, batch.getValue( i ), valueConversationId == null ? conversationId :
+                        valueConversationId, outgoing );
             }
+            return;
+        }
+
+        Message<AtomicBroadcastMessage> learnMessage = Message.internal( AtomicBroadcastMessage.broadcastResponse,
+                value ).setHeader( InstanceId.INSTANCE, instanceId.toString() );
+        if ( conversationId != null )
+        {
+            learnMessage.setHeader( Message.CONVERSATION_ID, conversationId );
+        }
+        outgoing.process( learnMessage );
+    }
 }
@@ -37,6 +37,7 @@ public class MultiPaxosContext
 {
     ClusterContext clusterContext;
     ProposerContext proposerContext;
+    AcceptorContext acceptorContext;
     LearnerContext learnerContext;
     HeartbeatContext heartbeatContext;
     Timeouts timeouts;
@@ -45,6 +46,7 @@ public class MultiPaxosContext
 
     public MultiPaxosContext( ClusterContext clusterContext,
                               ProposerContext proposerContext,
+                              AcceptorContext acceptorContext,
                               LearnerContext learnerContext,
                               HeartbeatContext heartbeatContext,
                               Timeouts timeouts
@@ -52,6 +54,7 @@ public class MultiPaxosContext
     {
         this.clusterContext = clusterContext;
         this.proposerContext = proposerContext;
+        this.acceptorContext = acceptorContext;
         this.learnerContext = learnerContext;
         this.heartbeatContext = heartbeatContext;
         this.timeouts = timeouts;
@@ -86,6 +89,11 @@ public class MultiPaxosContext
         return clusterContext.getConfiguration().getMembers();
     }
 
+    public ProposerContext getProposerContext()
+    {
+        return proposerContext;
+    }
+
     public PaxosInstanceStore getPaxosInstances()
     {
         return paxosInstances;
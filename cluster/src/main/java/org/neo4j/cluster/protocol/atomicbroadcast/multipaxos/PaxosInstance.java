@@ -43,8 +43,10 @@ public class PaxosInstance
     InstanceId id = null;
     State state = State.empty;
     long ballot = 0;
+    int phase1Retries = 0;
     List<URI> acceptors;
     List<ProposerMessage.PromiseState> promises = new ArrayList<ProposerMessage.PromiseState>();
+    int promisesForFollowing = 0;
     List<ProposerMessage.AcceptedState> accepts = new ArrayList<ProposerMessage.AcceptedState>();
     List<ProposerMessage.RejectAcceptState> rejectedAccepts = new ArrayList<ProposerMessage.RejectAcceptState>();
     Object value_1;
@@ -69,18 +71,25 @@ public class PaxosInstance
         this.state = State.p1_pending;
         this.acceptors = acceptors;
         this.ballot = ballot;
+        phase1Retries = 0;
     }
 
     public void phase1Timeout( long ballot, List<URI> newAcceptors )
     {
         this.ballot = ballot;
+        phase1Retries++;
         promises.clear();
+        promisesForFollowing = 0;
         this.acceptors = newAcceptors;
     }
 
-    public void promise( ProposerMessage.PromiseState promiseState )
+    public void promise( ProposerMessage.PromiseState promiseState, boolean forFollowing )
     {
         promises.add( promiseState );
+        if ( forFollowing )
+        {
+            promisesForFollowing++;
+        }
         if ( promiseState.getValue() != null && promiseState.getBallot() > phase1Ballot )
         {
             value_1 = promiseState.getValue();
@@ -93,10 +102,29 @@ public class PaxosInstance
         return promises.size() == minimumQuorumSize;
     }
 
+    /**
+     * @return true if all promises so far also promised the ballot for all following instances.
+     */
+    public boolean isPromisedForFollowing()
+    {
+        return promisesForFollowing == promises.size();
+    }
+
+    /**
+     * Skips phase 1, for a proposer that was promised the ballot for this instance by promises for an earlier one.
+     */
+    public void ready( long ballot, List<URI> acceptors, Object value )
+    {
+        this.acceptors = acceptors;
+        this.ballot = ballot;
+        ready( value, true );
+    }
+
     public void ready( Object value, boolean clientValue )
     {
         state = State.p1_ready;
         promises.clear();
+        promisesForFollowing = 0;
         value_1 = null;
         phase1Ballot = 0;
         value_2 = value;
@@ -113,6 +141,9 @@ public class PaxosInstance
         state = State.p1_pending;
         this.ballot = ballot;
         promises.clear();
+        promisesForFollowing = 0;
+        accepts.clear();
+        rejectedAccepts.clear();
         value_1 = null;
         phase1Ballot = 0;
     }
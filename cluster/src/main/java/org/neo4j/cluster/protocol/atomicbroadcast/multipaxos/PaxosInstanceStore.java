@@ -20,21 +20,15 @@
 
 package org.neo4j.cluster.protocol.atomicbroadcast.multipaxos;
 
-import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.Map;
-import java.util.Queue;
-
 /**
- * Store of Paxos instances, from a proposer perspective
+ * Store of Paxos instances, from a proposer perspective. The last instances delivered are kept so that learners
+ * that are behind can learn them from here, and earlier ones are dropped.
  */
 public class PaxosInstanceStore
 {
     private static final int MAX_STORED = 100;
 
-    private int queued = 0;
-    private Queue<InstanceId> delivered = new LinkedList<InstanceId>();
-    private Map<InstanceId, PaxosInstance> instances = new HashMap<InstanceId, PaxosInstance>();
+    private final InstanceRing<PaxosInstance> instances = new InstanceRing<PaxosInstance>( 256 );
 
     public PaxosInstance getPaxosInstance( InstanceId instanceId )
     {
@@ -43,32 +37,24 @@ public class PaxosInstanceStore
             throw new NullPointerException( "InstanceId may not be null" );
         }
 
-        PaxosInstance instance = instances.get( instanceId );
+        PaxosInstance instance = instances.get( instanceId.getId() );
         if ( instance == null )
         {
+            // Instances that have been dropped are not stored again
             instance = new PaxosInstance( this, instanceId );
-            instances.put( instanceId, instance );
+            instances.put( instanceId.getId(), instance );
         }
         return instance;
     }
 
     public void delivered( InstanceId instanceId )
     {
-        queued++;
-        delivered.offer( instanceId );
-
-        if ( queued > MAX_STORED )
-        {
-            InstanceId removeInstanceId = delivered.poll();
-            instances.remove( removeInstanceId );
-            queued--;
-        }
+        // Instances are delivered in order
+        instances.purge( instanceId.getId() - MAX_STORED );
     }
 
     public void leave()
     {
-        queued = 0;
-        delivered.clear();
         instances.clear();
     }
 }
@@ -20,22 +20,81 @@
 
 package org.neo4j.cluster.protocol.atomicbroadcast.multipaxos;
 
+import java.net.URI;
+import java.util.ArrayList;
 import java.util.Deque;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.LinkedBlockingDeque;
+
+import org.neo4j.cluster.com.message.Message;
+import org.neo4j.cluster.protocol.atomicbroadcast.Payload;
 
 /**
  * Context used by {@link ProposerState} state machine.
  */
 public class ProposerContext
 {
+    /**
+     * Limits on how many waiting values to propose together as one {@link Batch}, and how many bytes of
+     * {@link Payload} they may have in total. A single value larger than that is still proposed on its own.
+     */
+    static final int MAX_BATCH_VALUES = 64;
+    static final int MAX_BATCH_BYTES = 64 * 1024;
+
     // Proposer/coordinator state
-    Deque<Object> pendingValues = new LinkedList<Object>();
-    Map<InstanceId, Object> bookedInstances = new HashMap<InstanceId, Object>();
+    // Propose messages, so that values keep the conversation id of their broadcast while they wait. Only changed by
+    // the proposer, but a blocking deque so that its size can be read from other threads
+    Deque<Message> pendingValues = new LinkedBlockingDeque<Message>();
+    Map<InstanceId, Message> bookedInstances = new HashMap<InstanceId, Message>();
 
     public long nextInstanceId = 0;
 
+    private final ProposerWindow window;
+    private final boolean batching;
+
+    // Ballot that a quorum of leaderAcceptors promised for all instances after leaderInstanceId, or -1 if none
+    long leaderBallot = -1;
+    long leaderInstanceId = -1;
+    List<URI> leaderAcceptors;
+
+    public ProposerContext()
+    {
+        this( new ProposerWindow( ProposerWindow.DEFAULT_SIZE, ProposerWindow.DEFAULT_MAX_SIZE ), false );
+    }
+
+    /**
+     * @param batching whether waiting broadcast values may be proposed together as one {@link Batch}. Instances
+     * that predate batches can't learn them, so this must only be enabled once all instances can.
+     */
+    public ProposerContext( ProposerWindow window, boolean batching )
+    {
+        this.window = window;
+        this.batching = batching;
+    }
+
+    public ProposerWindow getWindow()
+    {
+        return window;
+    }
+
+    /**
+     * @return true if the window has room for another instance.
+     */
+    public boolean canBook()
+    {
+        return bookedInstances.size() < window.getSize();
+    }
+
+    /**
+     * @return the number of values waiting for room in the window. Safe to call from any thread.
+     */
+    public int getPendingValueCount()
+    {
+        return pendingValues.size();
+    }
+
     public InstanceId newInstanceId( long lastLearnedInstanceId )
     {
         // Never propose something lower than last received instance id
@@ -47,10 +106,143 @@ public class ProposerContext
         return new InstanceId( nextInstanceId++ );
     }
 
+    /**
+     * Records that a quorum of acceptors promised the ballot for all instances after the given one, so that
+     * values can be proposed in new instances without phase 1 until another proposer takes over.
+     */
+    public void lead( long ballot, InstanceId instanceId, List<URI> acceptors )
+    {
+        if ( ballot >= leaderBallot )
+        {
+            leaderBallot = ballot;
+            leaderInstanceId = Math.max( leaderInstanceId, instanceId.getId() );
+            leaderAcceptors = acceptors;
+        }
+    }
+
+    /**
+     * @return the ballot to go straight to accept with for a new instance, or -1 if phase 1 is needed.
+     */
+    public long getLeaderBallot( InstanceId instanceId, List<URI> acceptors )
+    {
+        if ( leaderBallot != -1 && instanceId.getId() > leaderInstanceId && acceptors.equals( leaderAcceptors ) )
+        {
+            return leaderBallot;
+        }
+        return -1;
+    }
+
+    public void stopLeading()
+    {
+        leaderBallot = -1;
+        leaderInstanceId = -1;
+        leaderAcceptors = null;
+    }
+
+    public void bookInstance( InstanceId instanceId, Message proposal )
+    {
+        bookedInstances.put( instanceId, proposal );
+    }
+
+    public Object getBookedValue( InstanceId instanceId )
+    {
+        Message proposal = bookedInstances.get( instanceId );
+        return proposal == null ? null : proposal.getPayload();
+    }
+
+    /**
+     * Puts the value booked for an instance first in line to be proposed again, because the instance got
+     * another value.
+     */
+    public void unbookInstance( InstanceId instanceId )
+    {
+        window.forget( instanceId );
+        Message proposal = bookedInstances.remove( instanceId );
+        if ( proposal != null )
+        {
+            pendingValues.offerFirst( proposal );
+        }
+    }
+
+    /**
+     * Releases the booking of an instance that has been learned. If it was learned with another value than the one
+     * booked, for instance because another proposer took over the instance, then the booked value has to be
+     * proposed again.
+     *
+     * @return a propose message for the booked value if it was not learned, or for the next waiting value if the
+     *         booking made room for it, or null.
+     */
+    public Message<ProposerMessage> learned( InstanceId instanceId, Object value )
+    {
+        window.forget( instanceId );
+        Message proposal = bookedInstances.remove( instanceId );
+        if ( proposal == null )
+        {
+            return null;
+        }
+        if ( !proposal.getPayload().equals( value ) )
+        {
+            return proposal;
+        }
+        return canBook() ? nextPendingProposal() : null;
+    }
+
+    /**
+     * Takes the next waiting value to propose. If batching is enabled, waiting broadcast values are packed into
+     * one {@link Batch}, within {@link #MAX_BATCH_VALUES} and {@link #MAX_BATCH_BYTES}, so that a burst of
+     * broadcasts that had to wait for the proposer needs as few instances as possible. Other values, like
+     * configuration changes, are always proposed on their own.
+     *
+     * @return an internal propose message, or null if nothing is waiting.
+     */
+    public Message<ProposerMessage> nextPendingProposal()
+    {
+        Message first = pendingValues.poll();
+        if ( first == null )
+        {
+            return null;
+        }
+
+        Object value = first.getPayload();
+        List<Object> values = new ArrayList<Object>();
+        List<String> conversationIds = new ArrayList<String>();
+        if ( batching && value instanceof Payload )
+        {
+            int bytes = ((Payload) value).getLen();
+            values.add( value );
+            conversationIds.add( conversationIdOf( first ) );
+            Message next;
+            while ( values.size() < MAX_BATCH_VALUES && (next = pendingValues.peek()) != null &&
+                    next.getPayload() instanceof Payload &&
+                    bytes + ((Payload) next.getPayload()).getLen() <= MAX_BATCH_BYTES )
+            {
+                pendingValues.poll();
+                bytes += ((Payload) next.getPayload()).getLen();
+                values.add( next.getPayload() );
+                conversationIds.add( conversationIdOf( next ) );
+            }
+        }
+
+        if ( values.size() > 1 )
+        {
+            return Message.internal( ProposerMessage.propose, new Batch( values.toArray(),
+                    conversationIds.toArray( new String[conversationIds.size()] ) ) );
+        }
+        return first.copyHeadersTo( Message.internal( ProposerMessage.propose, value ), Message.CONVERSATION_ID,
+                Message.CREATED_BY );
+    }
+
+    private String conversationIdOf( Message message )
+    {
+        return message.hasHeader( Message.CONVERSATION_ID ) ? message.getHeader( Message.CONVERSATION_ID ) : null;
+    }
+
     public void leave()
     {
         pendingValues.clear();
         bookedInstances.clear();
         nextInstanceId = 0;
+        stopLeading();
+        window.clear();
     }
 }
@@ -37,6 +37,11 @@ public enum ProposerMessage
     phase2Timeout,
     accepted, rejectAccept; // phase 2b
 
+    /**
+     * Header of a promise from an acceptor that also promised the ballot for all instances after this one.
+     */
+    public static final String PROMISED_FOLLOWING = "promised-following";
+
     public static class PromiseState
             implements Serializable
     {
@@ -85,6 +85,11 @@ public enum ProposerState
 
                                 propose( context, message, outgoing, payload, acceptors );
                             }
+                            else if ( !context.proposerContext.canBook() )
+                            {
+                                // Wait until an instance closes, and then propose together with other waiting values
+                                context.proposerContext.pendingValues.offer( message );
+                            }
                             else
                             {
                                 propose( context, message, outgoing, payload, context.getAcceptors() );
@@ -101,6 +106,23 @@ public enum ProposerState
                             PaxosInstance instance = context.getPaxosInstances().getPaxosInstance( instanceId );
                             if ( instance.isState( PaxosInstance.State.p1_pending ) )
                             {
+                                // Another proposer has a higher ballot, so new instances need phase 1 again
+                                context.proposerContext.stopLeading();
+                                context.proposerContext.getWindow().failed( instanceId, context.timeouts.getTime() );
+
+                                if ( instance.phase1Retries >= MAX_PHASE1_RETRIES )
+                                {
+                                    // Acceptors that have forgotten the instance reject every ballot
+                                    context.timeouts.cancelTimeout( instanceId );
+                                    context.clusterContext.getLogger( ProposerState.class ).warn( "Propose failed due" +
+                                            " to phase 1 rejections" );
+
+                                    // Fail this propose
+                                    outgoing.process( Message.internal( AtomicBroadcastMessage.failed,
+                                            context.proposerContext.getBookedValue( instance.id ) ) );
+                                    break;
+                                }
+
                                 long ballot = instance.ballot;
                                 while ( ballot <= rejectPropose.getBallot() )
                                 {
@@ -134,14 +156,18 @@ public enum ProposerState
                             PaxosInstance instance = context.getPaxosInstances().getPaxosInstance( instanceId );
                             if ( instance.isState( PaxosInstance.State.p1_pending ) )
                             {
-                                if ( instance.ballot > 10000 )
+                                context.proposerContext.getWindow().failed( instanceId, context.timeouts.getTime() );
+
+                                // Ballots are no longer small once proposers have taken over from each other, so
+                                // count the retries instead
+                                if ( instance.phase1Retries >= MAX_PHASE1_RETRIES )
                                 {
                                     context.clusterContext.getLogger( ProposerState.class ).warn( "Propose failed due" +
                                             " to phase 1 timeout" );
 
                                     // Fail this propose
                                     outgoing.process( Message.internal( AtomicBroadcastMessage.failed,
-                                            context.proposerContext.bookedInstances.get( instance.id ) ) );
+                                            context.proposerContext.getBookedValue( instance.id ) ) );
                                 }
                                 else
                                 {
@@ -173,18 +199,26 @@ public enum ProposerState
                             if ( instance.isState( PaxosInstance.State.p1_pending ) && instance.ballot ==
                                     promiseState.getBallot() )
                             {
-                                instance.promise( promiseState );
+                                instance.promise( promiseState, message.hasHeader( ProposerMessage
+                                        .PROMISED_FOLLOWING ) );
 
                                 if ( instance.isPromised( context.getMinimumQuorumSize( instance.getAcceptors() ) ) )
                                 {
                                     context.timeouts.cancelTimeout( instance.id );
 
+                                    if ( instance.isPromisedForFollowing() )
+                                    {
+                                        // Skip phase 1 for new instances until another proposer takes over
+                                        context.proposerContext.lead( instance.ballot, instance.id,
+                                                instance.getAcceptors() );
+                                    }
+
                                     // No promises contained a value
                                     if ( instance.value_1 == null )
                                     {
                                         // R0
                                         instance.ready( instance.value_2 == null ? context.proposerContext
-                                                .bookedInstances.get( instance.id ) : instance.value_2, true );
+                                                .getBookedValue( instance.id ) : instance.value_2, true );
                                     }
                                     else
                                     {
@@ -193,13 +227,12 @@ public enum ProposerState
                                         {
                                             // Another value was already associated with this instance. Push value
                                             // back onto pending list
-                                            context.proposerContext.pendingValues.offerFirst( context.proposerContext
-                                                    .bookedInstances.remove( instance.id ) );
+                                            context.proposerContext.unbookInstance( instance.id );
 
                                             instance.ready( instance.value_1, false );
                                         }
                                         else if ( instance.value_1.equals( instance.value_2 == null ? context
-                                                .proposerContext.bookedInstances.get( instance.id ) : instance
+                                                .proposerContext.getBookedValue( instance.id ) : instance
                                                 .value_2 ) )
                                         {
                                             instance.ready( instance.value_2, instance.clientValue );
@@ -208,8 +241,7 @@ public enum ProposerState
                                         {
                                             // Another value was already associated with this instance. Push value
                                             // back onto pending list
-                                            context.proposerContext.pendingValues.offerFirst( context.proposerContext
-                                                    .bookedInstances.remove( instance.id ) );
+                                            context.proposerContext.unbookInstance( instance.id );
 
                                             instance.ready( instance.value_1, false );
                                         }
@@ -217,8 +249,7 @@ public enum ProposerState
                                         {
                                             // Another value was already associated with this instance. Push value
                                             // back onto pending list
-                                            context.proposerContext.pendingValues.offerFirst( context.proposerContext
-                                                    .bookedInstances.remove( instance.id ) );
+                                            context.proposerContext.unbookInstance( instance.id );
                                             instance.ready( instance.value_1, false );
                                         }
                                     }
@@ -263,12 +294,25 @@ public enum ProposerState
 
                                     context.clusterContext.getLogger( ProposerState.class ).warn( "Accept rejected:" +
                                             instance.state );
+                                    context.proposerContext.stopLeading();
+                                    context.proposerContext.getWindow().failed( instanceId, context.timeouts
+                                            .getTime() );
 
-                                    if ( instance.clientValue )
+                                    // Run phase 1 again for this instance. The acceptors may have promised a higher
+                                    // ballot for all instances, in which case no other proposer is going to decide
+                                    // this one, and moving the value to a new instance would leave a hole
+                                    long ballot = instance.ballot + 1000;
+                                    instance.phase2Timeout( ballot );
+
+                                    for ( URI acceptor : instance.getAcceptors() )
                                     {
-                                        propose( context, message, outgoing, instance.value_2,
-                                                instance.getAcceptors() );
+                                        outgoing.process( message.copyHeadersTo( Message.to( AcceptorMessage.prepare,
+                                                acceptor, new AcceptorMessage.PrepareState( ballot ) ),
+                                                InstanceId.INSTANCE ) );
                                     }
+
+                                    context.timeouts.setTimeout( instanceId, message.copyHeadersTo( Message.timeout(
+                                            ProposerMessage.phase1Timeout, message ), InstanceId.INSTANCE ) );
                                 }
                             }
                             break;
@@ -281,6 +325,9 @@ public enum ProposerState
 
                             if ( instance.isState( PaxosInstance.State.p2_pending ) )
                             {
+                                context.proposerContext.stopLeading();
+                                context.proposerContext.getWindow().failed( instanceId, context.timeouts.getTime() );
+
                                 long ballot = instance.ballot + 1000;
                                 instance.phase2Timeout( ballot );
 
@@ -351,17 +398,22 @@ public enum ProposerState
                                         }
                                     }
 
+                                    context.proposerContext.getWindow().closed( instance.id, context.timeouts
+                                            .getTime(), !context.proposerContext.pendingValues.isEmpty() );
                                     context.proposerContext.bookedInstances.remove( instance.id );
 
-                                    // Check if we have anything pending - try to start process for it
-                                    if ( !context.proposerContext.pendingValues.isEmpty() && context.proposerContext
-                                            .bookedInstances.size() < MAX_CONCURRENT_INSTANCES )
+                                    // Check if we have anything pending - try to start process for it, and for
+                                    // more if the window grew
+                                    int room = context.proposerContext.getWindow().getSize() - context
+                                            .proposerContext.bookedInstances.size();
+                                    for ( ; room > 0 && !context.proposerContext.pendingValues.isEmpty(); room-- )
                                     {
-                                        Object value = context.proposerContext.pendingValues.remove();
+                                        Message<ProposerMessage> proposal = context.proposerContext
+                                                .nextPendingProposal();
                                         context.clusterContext.getLogger( ProposerState.class ).debug( "Restarting "
-                                                + value + " booked:"
+                                                + proposal.getPayload() + " booked:"
                                                 + context.proposerContext.bookedInstances.size() );
-                                        outgoing.process( Message.internal( ProposerMessage.propose, value ) );
+                                        outgoing.process( proposal );
                                     }
                                 }
                                 else
@@ -384,7 +436,7 @@ public enum ProposerState
 
             };
 
-    public final int MAX_CONCURRENT_INSTANCES = 10;
+    private static final int MAX_PHASE1_RETRIES = 9;
 
     private static void propose( MultiPaxosContext context, Message message, MessageProcessor outgoing,
                                  Object payload, List<URI> acceptors )
@@ -392,7 +444,9 @@ public enum ProposerState
         InstanceId instanceId = context.proposerContext.newInstanceId( context.learnerContext
                 .getLastKnownLearnedInstanceInCluster() );
 
-        context.proposerContext.bookedInstances.put( instanceId, payload );
+        context.proposerContext.bookInstance( instanceId, message.copyHeadersTo( Message.internal( ProposerMessage
+                .propose, payload ), Message.CONVERSATION_ID, Message.CREATED_BY ) );
+        context.proposerContext.getWindow().opened( instanceId, context.timeouts.getTime() );
 
         long ballot = 1000 + context.getServerId(); // First server will have first ballot id be 1001
 
@@ -400,6 +454,23 @@ public enum ProposerState
 
         if ( !(instance.isState( PaxosInstance.State.closed ) || instance.isState( PaxosInstance.State.delivered )) )
         {
+            long leaderBallot = context.proposerContext.getLeaderBallot( instanceId, acceptors );
+            if ( leaderBallot != -1 )
+            {
+                // Acceptors have already promised this ballot for all new instances - go straight to phase 2
+                instance.ready( leaderBallot, acceptors, payload );
+                instance.pending();
+                for ( URI acceptor : acceptors )
+                {
+                    outgoing.process( Message.to( AcceptorMessage.accept, acceptor, new AcceptorMessage.AcceptState(
+                            leaderBallot, payload ) ).setHeader( InstanceId.INSTANCE, instanceId.toString() ) );
+                }
+
+                context.timeouts.setTimeout( instanceId, Message.timeout( ProposerMessage.phase2Timeout, message,
+                        instanceId ).setHeader( InstanceId.INSTANCE, instanceId.toString() ) );
+                return;
+            }
+
             instance.propose( ballot, acceptors );
 
             for ( URI acceptor : acceptors )
@@ -414,7 +485,7 @@ public enum ProposerState
         else
         {
             // Wait with this value - we have our hands full right now
-            context.proposerContext.pendingValues.offerFirst( payload );
+            context.proposerContext.unbookInstance( instanceId );
         }
     }
 }
@@ -0,0 +1,168 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.cluster.protocol.atomicbroadcast.multipaxos;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Number of instances a proposer may have open at once. The window grows by one for every window's worth of
+ * instances that close without delay while values are waiting for room, and is halved when an instance times out
+ * or is rejected. An instance only halves the window if it was opened after the window was last halved, so that
+ * one slow period, which fails all open instances, halves it once.
+ * <p/>
+ * Updated by the proposer state machine only. The statistics can be read from any thread.
+ */
+public class ProposerWindow
+{
+    public static final int DEFAULT_SIZE = 10;
+    public static final int DEFAULT_MAX_SIZE = 100;
+
+    private final int maxSize;
+    private volatile int size;
+    private int growth;
+    private long lastShrink = -1;
+
+    private final Map<InstanceId, Long> openedAt = new HashMap<InstanceId, Long>();
+    private volatile int open;
+    private volatile long closeLatency = -1;
+    private volatile long closed;
+    private volatile long shrinks;
+
+    /**
+     * @param size the size to start with, which is lowered to {@code maxSize} if larger.
+     */
+    public ProposerWindow( int size, int maxSize )
+    {
+        if ( size < 1 || maxSize < 1 )
+        {
+            throw new IllegalArgumentException( "Window size " + size + " and max size " + maxSize +
+                    " must be at least 1" );
+        }
+        this.size = Math.min( size, maxSize );
+        this.maxSize = maxSize;
+    }
+
+    public int getSize()
+    {
+        return size;
+    }
+
+    public int getMaxSize()
+    {
+        return maxSize;
+    }
+
+    /**
+     * @return the number of instances opened by this proposer that haven't closed yet.
+     */
+    public int getOpenInstances()
+    {
+        return open;
+    }
+
+    /**
+     * @return the average time from opening to closing of recent instances, in milliseconds, or -1 if none has
+     *         closed yet.
+     */
+    public long getCloseLatency()
+    {
+        return closeLatency;
+    }
+
+    public long getClosedInstances()
+    {
+        return closed;
+    }
+
+    public long getShrinks()
+    {
+        return shrinks;
+    }
+
+    public void opened( InstanceId instanceId, long now )
+    {
+        if ( !openedAt.containsKey( instanceId ) )
+        {
+            openedAt.put( instanceId, now );
+            open = openedAt.size();
+        }
+    }
+
+    /**
+     * @param valuesWaiting whether there are values waiting for room in the window, which is the only time
+     *                      a larger window would have helped.
+     */
+    public void closed( InstanceId instanceId, long now, boolean valuesWaiting )
+    {
+        Long opened = openedAt.remove( instanceId );
+        if ( opened == null )
+        {
+            return;
+        }
+        open = openedAt.size();
+        closed++;
+
+        long latency = now - opened;
+        long average = closeLatency == -1 ? latency : (7 * closeLatency + latency) / 8;
+        closeLatency = average;
+
+        if ( valuesWaiting && latency <= 2 * average && size < maxSize && ++growth >= size )
+        {
+            size++;
+            growth = 0;
+        }
+    }
+
+    /**
+     * An instance timed out or was rejected.
+     */
+    public void failed( InstanceId instanceId, long now )
+    {
+        Long opened = openedAt.get( instanceId );
+        if ( opened == null || opened <= lastShrink )
+        {
+            return;
+        }
+
+        size = Math.max( 1, size / 2 );
+        growth = 0;
+        lastShrink = now;
+        shrinks++;
+    }
+
+    /**
+     * Stops tracking an instance that was decided by another proposer.
+     */
+    public void forget( InstanceId instanceId )
+    {
+        openedAt.remove( instanceId );
+        open = openedAt.size();
+    }
+
+    public void clear()
+    {
+        openedAt.clear();
+        open = 0;
+        lastShrink = -1;
+        growth = 0;
+    }
+}
@@ -35,6 +35,9 @@ import org.neo4j.helpers.collection.Iterables;
 
 /**
  * Cluster configuration. Includes name of cluster, list of nodes, and role mappings
+ * <p/>
+ * State machines that run on different threads read the configuration, so changes never modify the member list
+ * or role map in place. They build new ones and replace the old ones.
  */
 public class ClusterConfiguration
 {
@@ -42,8 +45,8 @@ public class ClusterConfiguration
     public static final String SLAVE = "slave";
 
     private final String name;
-    private List<URI> members;
-    private Map<String, URI> roles = new HashMap<String, URI>();
+    private volatile List<URI> members;
+    private volatile Map<String, URI> roles = new HashMap<String, URI>();
     private int allowedFailures = 1;
 
     public ClusterConfiguration( String name, String... members )
@@ -76,24 +79,27 @@ public class ClusterConfiguration
         this.roles = new HashMap<String, URI>( copy.roles );
     }
 
-    public void joined( URI nodeUrl )
+    public synchronized void joined( URI nodeUrl )
     {
         if ( members.contains( nodeUrl ) )
         {
             return;
         }
 
-        this.members = new ArrayList<URI>( members );
-        members.add( nodeUrl );
+        List<URI> newMembers = new ArrayList<URI>( members );
+        newMembers.add( nodeUrl );
+        this.members = newMembers;
     }
 
-    public void left( URI nodeUrl )
+    public synchronized void left( URI nodeUrl )
     {
-        this.members = new ArrayList<URI>( members );
-        members.remove( nodeUrl );
+        List<URI> newMembers = new ArrayList<URI>( members );
+        newMembers.remove( nodeUrl );
+        this.members = newMembers;
 
         // Remove any roles that this node had
-        Iterator<Map.Entry<String, URI>> entries = roles.entrySet().iterator();
+        Map<String, URI> newRoles = new HashMap<String, URI>( roles );
+        Iterator<Map.Entry<String, URI>> entries = newRoles.entrySet().iterator();
         while ( entries.hasNext() )
         {
             Map.Entry<String, URI> roleEntry = entries.next();
@@ -103,33 +109,35 @@ public class ClusterConfiguration
                 entries.remove();
             }
         }
+        this.roles = newRoles;
     }
 
-    public void elected( String name, URI node )
+    public synchronized void elected( String name, URI node )
     {
         assert members.contains( node );
-        roles = new HashMap<String, URI>( roles );
-        roles.put( name, node );
+        Map<String, URI> newRoles = new HashMap<String, URI>( roles );
+        newRoles.put( name, node );
+        this.roles = newRoles;
     }
 
-    public void setMembers( Iterable<URI> members )
+    public synchronized void setMembers( Iterable<URI> members )
     {
-        this.members = new ArrayList<URI>();
+        List<URI> newMembers = new ArrayList<URI>();
         for ( URI node : members )
         {
-            this.members.add( node );
+            newMembers.add( node );
         }
+        this.members = newMembers;
     }
 
-    public void setRoles( Map<String, URI> roles )
+    public synchronized void setRoles( Map<String, URI> roles )
     {
         for ( URI uri : roles.values() )
         {
             assert members.contains( uri );
         }
 
-        this.roles.clear();
-        this.roles.putAll( roles );
+        this.roles = new HashMap<String, URI>( roles );
     }
 
     public List<URI> getMembers()
@@ -152,16 +160,17 @@ public class ClusterConfiguration
         return allowedFailures;
     }
 
-    public void left()
+    public synchronized void left()
     {
         this.members = new ArrayList<URI>();
         roles = new HashMap<String, URI>();
     }
 
-    public void removeElected( String roleName )
+    public synchronized void removeElected( String roleName )
     {
-        roles = new HashMap<String, URI>( roles );
-        roles.remove( roleName );
+        Map<String, URI> newRoles = new HashMap<String, URI>( roles );
+        newRoles.remove( roleName );
+        this.roles = newRoles;
     }
 
     public URI getElected( String roleName )
@@ -40,11 +40,11 @@ import org.neo4j.kernel.logging.Logging;
  */
 public class ClusterContext
 {
-    URI me;
+    volatile URI me;
     Iterable<ClusterListener> listeners = Listeners.newListeners();
     ProposerContext proposerContext;
     LearnerContext learnerContext;
-    public ClusterConfiguration configuration;
+    public volatile ClusterConfiguration configuration;
     public final Timeouts timeouts;
     private Executor executor;
     private Logging logging;
@@ -119,6 +119,16 @@ public enum ClusterMessage
             return leave;
         }
 
+        public String getRole()
+        {
+            return role;
+        }
+
+        public URI getWinner()
+        {
+            return winner;
+        }
+
         public void apply( ClusterContext context )
         {
             if ( join != null )
@@ -156,6 +166,38 @@ public enum ClusterMessage
 
             return "Change cluster config, elected:" + winner + " as " + role;
         }
+
+        @Override
+        public boolean equals( Object o )
+        {
+            if ( this == o )
+            {
+                return true;
+            }
+            if ( o == null || getClass() != o.getClass() )
+            {
+                return false;
+            }
+
+            ConfigurationChangeState that = (ConfigurationChangeState) o;
+            return equal( join, that.join ) && equal( leave, that.leave ) && equal( role, that.role ) &&
+                    equal( winner, that.winner );
+        }
+
+        @Override
+        public int hashCode()
+        {
+            int result = join != null ? join.hashCode() : 0;
+            result = 31 * result + (leave != null ? leave.hashCode() : 0);
+            result = 31 * result + (role != null ? role.hashCode() : 0);
+            result = 31 * result + (winner != null ? winner.hashCode() : 0);
+            return result;
+        }
+
+        private static boolean equal( Object first, Object second )
+        {
+            return first == null ? second == null : first.equals( second );
+        }
     }
 
 }
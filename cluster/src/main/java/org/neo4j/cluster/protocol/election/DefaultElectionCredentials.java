@@ -39,6 +39,16 @@ public final class DefaultElectionCredentials implements ElectionCredentials, Ex
         this.latestTxId = latestTxId;
     }
 
+    public int getServerId()
+    {
+        return serverId;
+    }
+
+    public long getLatestTxId()
+    {
+        return latestTxId;
+    }
+
     @Override
     public int compareTo( Object o )
     {
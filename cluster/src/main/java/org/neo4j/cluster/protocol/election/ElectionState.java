@@ -27,6 +27,7 @@ import org.neo4j.cluster.com.message.MessageProcessor;
 import org.neo4j.cluster.protocol.atomicbroadcast.multipaxos.ProposerMessage;
 import org.neo4j.cluster.protocol.cluster.ClusterMessage;
 import org.neo4j.cluster.statemachine.State;
+import org.neo4j.cluster.timeout.TimeoutKey;
 
 /**
  * State machine that implements the {@link Election} API.
@@ -102,7 +103,7 @@ public enum ElectionState
                                 {
                                     context.getClusterContext()
                                             .timeouts
-                                            .setTimeout( "delayed-demote-" + demoteNode.toString(),
+                                            .setTimeout( TimeoutKey.timeoutKey( ElectionMessage.demote, demoteNode ),
                                                     Message.timeout( ElectionMessage.demote, message,
                                                             demoteNode ).setHeader( "delays",
                                                             (remainingDelays - 1) + "" ) );
@@ -135,7 +136,7 @@ public enum ElectionState
                                             }
                                             context.getClusterContext()
                                                     .timeouts
-                                                    .setTimeout( "election-" + role,
+                                                    .setTimeout( TimeoutKey.timeoutKey( ElectionMessage.electionTimeout, role ),
                                                             Message.timeout( ElectionMessage.electionTimeout, message,
                                                                     role ) );
                                         }
@@ -175,7 +176,7 @@ public enum ElectionState
                                     }
                                     context.getClusterContext()
                                             .timeouts
-                                            .setTimeout( "election-" + role, Message.timeout( ElectionMessage
+                                            .setTimeout( TimeoutKey.timeoutKey( ElectionMessage.electionTimeout, role ), Message.timeout( ElectionMessage
                                                     .electionTimeout, message, role ) );
                                 }
                             }
@@ -223,7 +224,8 @@ public enum ElectionState
                                             "winner" );
                                 }
 
-                                context.getClusterContext().timeouts.cancelTimeout( "election-" + data.getRole() );
+                                context.getClusterContext().timeouts.cancelTimeout( TimeoutKey.timeoutKey( ElectionMessage
+                                        .electionTimeout, data.getRole() ) );
                             }
                             break;
                         }
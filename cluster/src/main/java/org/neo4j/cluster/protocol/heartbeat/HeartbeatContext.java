@@ -24,38 +24,52 @@ import static org.neo4j.cluster.com.message.Message.timeout;
 
 import java.net.URI;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executor;
 
 import org.neo4j.cluster.com.message.Message;
 import org.neo4j.cluster.protocol.atomicbroadcast.multipaxos.LearnerContext;
 import org.neo4j.cluster.protocol.cluster.ClusterContext;
+import org.neo4j.cluster.timeout.TimeoutKey;
 import org.neo4j.helpers.Listeners;
 import org.neo4j.helpers.Specification;
 import org.neo4j.helpers.collection.Iterables;
 
 /**
- * Context used by the {@link HeartbeatState} state machine.
+ * Context used by the {@link HeartbeatState} state machine. The failed members and suspicions are read by
+ * state machines that run on other threads, so they are kept in concurrent collections.
  */
 public class HeartbeatContext
 {
     private ClusterContext clusterContext;
     private LearnerContext learnerContext;
     private Executor executor;
-    List<URI> failed = new ArrayList<URI>();
+    private PhiAccrualFailureDetector failureDetector;
+    List<URI> failed = new CopyOnWriteArrayList<URI>();
 
-    Map<URI, Set<URI>> nodeSuspicions = new HashMap<URI, Set<URI>>();
+    Map<URI, Set<URI>> nodeSuspicions = new ConcurrentHashMap<URI, Set<URI>>();
 
     Iterable<HeartbeatListener> listeners = Listeners.newListeners();
 
     public HeartbeatContext( ClusterContext clusterContext, LearnerContext learnerContext, Executor executor )
+    {
+        this( clusterContext, learnerContext, null, executor );
+    }
+
+    /**
+     * @param failureDetector decides whether a member that timed out is suspected, or null to always suspect it
+     */
+    public HeartbeatContext( ClusterContext clusterContext, LearnerContext learnerContext,
+                             PhiAccrualFailureDetector failureDetector, Executor executor )
     {
         this.clusterContext = clusterContext;
         this.learnerContext = learnerContext;
+        this.failureDetector = failureDetector;
         this.executor = executor;
     }
 
@@ -66,6 +80,11 @@ public class HeartbeatContext
 
     public boolean alive( final URI node )
     {
+        if ( failureDetector != null )
+        {
+            failureDetector.heartbeat( node, clusterContext.timeouts.getTime() );
+        }
+
         Set<URI> serverSuspicions = getSuspicionsFor( clusterContext.getMe() );
         boolean suspected = serverSuspicions.remove( node );
 
@@ -86,6 +105,12 @@ public class HeartbeatContext
 
     public void suspect( final URI node )
     {
+        if ( failureDetector != null && failureDetector.isAvailable( node, clusterContext.timeouts.getTime() ) )
+        {
+            // Messages from this member have arrived unevenly enough that the silence is not yet suspicious
+            return;
+        }
+
         Set<URI> serverSuspicions = getSuspicionsFor( clusterContext.getMe() );
         serverSuspicions.add( node );
 
@@ -153,6 +178,11 @@ public class HeartbeatContext
         return learnerContext;
     }
 
+    public PhiAccrualFailureDetector getFailureDetector()
+    {
+        return failureDetector;
+    }
+
     public void addHeartbeatListener( HeartbeatListener listener )
     {
         listeners = Listeners.addListener( listener, listeners );
@@ -170,9 +200,9 @@ public class HeartbeatContext
         {
             if ( !clusterContext.isMe( server ) )
             {
-                clusterContext.timeouts.setTimeout( HeartbeatMessage.i_am_alive + "-" + server,
+                clusterContext.timeouts.setTimeout( TimeoutKey.timeoutKey( HeartbeatMessage.i_am_alive, server ),
                         timeout( HeartbeatMessage.timed_out, message, server ) );
-                clusterContext.timeouts.setTimeout( HeartbeatMessage.sendHeartbeat + "-" + server,
+                clusterContext.timeouts.setTimeout( TimeoutKey.timeoutKey( HeartbeatMessage.sendHeartbeat, server ),
                         timeout( HeartbeatMessage.sendHeartbeat, message, server ) );
             }
         }
@@ -180,6 +210,10 @@ public class HeartbeatContext
 
     public void serverLeftCluster( URI node )
     {
+        if ( failureDetector != null )
+        {
+            failureDetector.forget( node );
+        }
         failed.remove( node );
         for ( Set<URI> uris : nodeSuspicions.values() )
         {
@@ -213,7 +247,7 @@ public class HeartbeatContext
         Set<URI> serverSuspicions = nodeSuspicions.get( uri );
         if ( serverSuspicions == null )
         {
-            serverSuspicions = new HashSet<URI>();
+            serverSuspicions = Collections.newSetFromMap( new ConcurrentHashMap<URI, Boolean>() );
             nodeSuspicions.put( uri, serverSuspicions );
         }
         return serverSuspicions;
@@ -30,6 +30,7 @@ import org.neo4j.cluster.com.message.Message;
 import org.neo4j.cluster.com.message.MessageProcessor;
 import org.neo4j.cluster.protocol.atomicbroadcast.multipaxos.LearnerMessage;
 import org.neo4j.cluster.statemachine.State;
+import org.neo4j.cluster.timeout.TimeoutKey;
 
 /**
  * State machine that implements the {@link Heartbeat} API
@@ -103,10 +104,10 @@ public enum HeartbeatState
                                 }
                             }
 
-                            context.getClusterContext().timeouts.cancelTimeout( HeartbeatMessage.i_am_alive + "-" +
-                                    state.getServer() );
-                            context.getClusterContext().timeouts.setTimeout( HeartbeatMessage.i_am_alive + "-" +
-                                    state.getServer(), timeout( HeartbeatMessage.timed_out, message, state
+                            context.getClusterContext().timeouts.cancelTimeout( TimeoutKey.timeoutKey( HeartbeatMessage
+                                    .i_am_alive, state.getServer() ) );
+                            context.getClusterContext().timeouts.setTimeout( TimeoutKey.timeoutKey( HeartbeatMessage
+                                    .i_am_alive, state.getServer() ), timeout( HeartbeatMessage.timed_out, message, state
                                     .getServer() ) );
 
                             // Check if this server knows something that we don't
@@ -119,6 +120,13 @@ public enum HeartbeatState
                                 }
                             }
 
+                            // Acceptors may forget instances once every member has delivered them
+                            if ( message.hasHeader( "last-delivered" ) )
+                            {
+                                context.getLearnerContext().delivered( state.getServer(),
+                                        Long.parseLong( message.getHeader( "last-delivered" ) ) );
+                            }
+
                             break;
                         }
 
@@ -130,8 +138,8 @@ public enum HeartbeatState
                             {
                                 context.suspect( server );
 
-                                context.getClusterContext().timeouts.setTimeout( HeartbeatMessage.i_am_alive + "-" +
-                                        server, timeout( HeartbeatMessage.timed_out, message, server ) );
+                                context.getClusterContext().timeouts.setTimeout( TimeoutKey.timeoutKey( HeartbeatMessage
+                                        .i_am_alive, server ), timeout( HeartbeatMessage.timed_out, message, server ) );
 
                                 // Send suspicions messages to all non-failed servers
                                 for ( URI aliveServer : context.getAlive() )
@@ -165,11 +173,13 @@ public enum HeartbeatState
                                 outgoing.process( to( HeartbeatMessage.i_am_alive, to,
                                         new HeartbeatMessage.IAmAliveState( context.getClusterContext().getMe() ) )
                                         .setHeader( "last-learned",
-                                                context.getLearnerContext().getLastLearnedInstanceId() + "" ) );
+                                                context.getLearnerContext().getLastLearnedInstanceId() + "" )
+                                        .setHeader( "last-delivered",
+                                                context.getLearnerContext().getLastDeliveredInstanceId() + "" ) );
 
                                 // Set new timeout to send heartbeat to this host
-                                context.getClusterContext().timeouts.setTimeout( HeartbeatMessage.sendHeartbeat + "-"
-                                        + to, timeout( HeartbeatMessage.sendHeartbeat, message, to ) );
+                                context.getClusterContext().timeouts.setTimeout( TimeoutKey.timeoutKey( HeartbeatMessage
+                                        .sendHeartbeat, to ), timeout( HeartbeatMessage.sendHeartbeat, message, to ) );
                             }
                             break;
                         }
@@ -177,7 +187,7 @@ public enum HeartbeatState
                         case reset_send_heartbeat:
                         {
                             URI to = message.getPayload();
-                            String timeoutName = HeartbeatMessage.sendHeartbeat + "-" + to;
+                            TimeoutKey timeoutName = TimeoutKey.timeoutKey( HeartbeatMessage.sendHeartbeat, to );
                             context.getClusterContext().timeouts.cancelTimeout( timeoutName );
                             context.getClusterContext().timeouts.setTimeout( timeoutName, Message.timeout( HeartbeatMessage.sendHeartbeat, message, to ) );
                             break;
@@ -0,0 +1,311 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.cluster.protocol.heartbeat;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.neo4j.cluster.timeout.LatencyCalculator;
+
+/**
+ * Phi accrual failure detector, as described by Hayashibara et al. Instead of suspecting a member once a fixed
+ * time has passed without hearing from it, this keeps a window of the times between messages from each member
+ * and computes phi, how unlikely it is that the silence so far is only a late message. A member is suspected
+ * once phi reaches the threshold, so members that are heard from regularly are suspected soon after they stop,
+ * while members whose messages arrive unevenly, for example because of GC pauses, are given more time.
+ * <p/>
+ * Measured round trip times to each member are added to the expected interval, since a message held up by
+ * traffic on the way arrives about that much late. An acceptable pause is added on top, as Akka does, so that
+ * a member heard from like clockwork isn't suspected as soon as a single heartbeat is a little late. A member is
+ * never suspected before one heartbeat interval, round trip and acceptable pause have passed, which is the
+ * longest a member that is up but has nothing else to send stays quiet.
+ */
+public class PhiAccrualFailureDetector
+    implements LatencyCalculator.LatencyListener
+{
+    public static final double DEFAULT_THRESHOLD = 8.0;
+    public static final int DEFAULT_MAX_SAMPLE_SIZE = 200;
+    public static final long DEFAULT_MIN_STD_DEVIATION = 500;
+
+    private final double threshold;
+    private final int maxSampleSize;
+    private final long minStdDeviation;
+    private final long heartbeatInterval;
+    private final long acceptablePause;
+
+    private final Map<URI, ArrivalWindow> windows = new HashMap<URI, ArrivalWindow>();
+
+    public PhiAccrualFailureDetector( double threshold, long heartbeatInterval, long acceptablePause )
+    {
+        this( threshold, DEFAULT_MAX_SAMPLE_SIZE, DEFAULT_MIN_STD_DEVIATION, heartbeatInterval, acceptablePause );
+    }
+
+    public PhiAccrualFailureDetector( double threshold, int maxSampleSize, long minStdDeviation,
+                                      long heartbeatInterval )
+    {
+        this( threshold, maxSampleSize, minStdDeviation, heartbeatInterval, 0 );
+    }
+
+    public PhiAccrualFailureDetector( double threshold, int maxSampleSize, long minStdDeviation,
+                                      long heartbeatInterval, long acceptablePause )
+    {
+        if ( threshold <= 0 )
+        {
+            throw new IllegalArgumentException( "Threshold must be positive, was " + threshold );
+        }
+        if ( maxSampleSize < 1 )
+        {
+            throw new IllegalArgumentException( "Sample size must be at least 1, was " + maxSampleSize );
+        }
+        if ( minStdDeviation < 1 || heartbeatInterval < 1 )
+        {
+            throw new IllegalArgumentException( "Standard deviation and heartbeat interval must be positive" );
+        }
+        if ( acceptablePause < 0 )
+        {
+            throw new IllegalArgumentException( "Acceptable pause must not be negative, was " + acceptablePause );
+        }
+
+        this.threshold = threshold;
+        this.maxSampleSize = maxSampleSize;
+        this.minStdDeviation = minStdDeviation;
+        this.heartbeatInterval = heartbeatInterval;
+        this.acceptablePause = acceptablePause;
+    }
+
+    public double getThreshold()
+    {
+        return threshold;
+    }
+
+    /**
+     * Record that a message from the given member arrived at the given time.
+     */
+    public synchronized void heartbeat( URI member, long now )
+    {
+        window( member ).arrived( now );
+    }
+
+    @Override
+    public synchronized void roundTrip( URI member, long latency )
+    {
+        window( member ).roundTrip( latency );
+    }
+
+    public synchronized void forget( URI member )
+    {
+        windows.remove( member );
+    }
+
+    public synchronized List<URI> getMembers()
+    {
+        return new ArrayList<URI>( windows.keySet() );
+    }
+
+    /**
+     * @return phi for the given member at the given time. 0 until a heartbeat interval, a round trip and the
+     *         acceptable pause have passed since the last message, and infinite if nothing has been heard from the
+     *         member yet.
+     */
+    public synchronized double phi( URI member, long now )
+    {
+        ArrivalWindow window = windows.get( member );
+        if ( window == null || window.lastArrival < 0 )
+        {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        long elapsed = now - window.lastArrival;
+        if ( elapsed < window.minimumDelay() )
+        {
+            return 0;
+        }
+
+        double mean = window.mean() + acceptablePause;
+        double y = (elapsed - mean) / window.stdDeviation();
+        double e = Math.exp( -y * (1.5976 + 0.070566 * y * y) );
+        if ( elapsed > mean )
+        {
+            return -Math.log10( e / (1.0 + e) );
+        }
+        else
+        {
+            return -Math.log10( 1.0 - 1.0 / (1.0 + e) );
+        }
+    }
+
+    public synchronized boolean isAvailable( URI member, long now )
+    {
+        return phi( member, now ) < threshold;
+    }
+
+    /**
+     * @return how long after the last message from the given member phi reaches the threshold,
+     *         or -1 if nothing has been heard from the member yet.
+     */
+    public synchronized long getSuspicionDelay( URI member )
+    {
+        ArrivalWindow window = windows.get( member );
+        if ( window == null || window.lastArrival < 0 )
+        {
+            return -1;
+        }
+
+        // phi is -log10 of 1 / (1 + exp( a*y^3 + b*y )), so solve a*y^3 + b*y = ln( 10^threshold - 1 ) for y
+        double a = 0.070566;
+        double b = 1.5976;
+        double c = threshold * Math.log( 10 ) + Math.log1p( -Math.pow( 10, -threshold ) );
+        double p = b / a;
+        double q = c / a;
+        double s = Math.sqrt( q * q / 4 + p * p * p / 27 );
+        double y = Math.cbrt( q / 2 + s ) + Math.cbrt( q / 2 - s );
+
+        long delay = (long) Math.ceil( window.mean() + acceptablePause + y * window.stdDeviation() );
+        return Math.max( delay, window.minimumDelay() );
+    }
+
+    /**
+     * @return how long from now until the given member is suspected, or -1 if it already is or if nothing
+     *         has been heard from it yet.
+     */
+    public synchronized long getTimeUntilSuspected( URI member, long now )
+    {
+        long delay = getSuspicionDelay( member );
+        if ( delay < 0 )
+        {
+            return -1;
+        }
+
+        long remaining = windows.get( member ).lastArrival + delay - now;
+        return remaining > 0 ? remaining : -1;
+    }
+
+    public synchronized long getLastHeartbeat( URI member )
+    {
+        ArrivalWindow window = windows.get( member );
+        return window == null ? -1 : window.lastArrival;
+    }
+
+    public synchronized long getMeanInterval( URI member )
+    {
+        ArrivalWindow window = windows.get( member );
+        return window == null ? -1 : Math.round( window.mean() );
+    }
+
+    public synchronized long getStdDeviation( URI member )
+    {
+        ArrivalWindow window = windows.get( member );
+        return window == null ? -1 : Math.round( window.stdDeviation() );
+    }
+
+    public synchronized long getRoundTrip( URI member )
+    {
+        ArrivalWindow window = windows.get( member );
+        return window == null ? -1 : window.roundTrip;
+    }
+
+    public synchronized int getSampleCount( URI member )
+    {
+        ArrivalWindow window = windows.get( member );
+        return window == null ? 0 : window.count;
+    }
+
+    private ArrivalWindow window( URI member )
+    {
+        ArrivalWindow window = windows.get( member );
+        if ( window == null )
+        {
+            window = new ArrivalWindow();
+            windows.put( member, window );
+        }
+        return window;
+    }
+
+    /**
+     * The latest intervals between messages from one member, with their running sum and sum of squares.
+     */
+    private class ArrivalWindow
+    {
+        private final long[] intervals = new long[maxSampleSize];
+        private int count;
+        private int next;
+        private double sum;
+        private double squareSum;
+
+        private long lastArrival = -1;
+        private long roundTrip = -1;
+
+        void arrived( long now )
+        {
+            if ( lastArrival >= 0 && now >= lastArrival )
+            {
+                long interval = now - lastArrival;
+                if ( count == intervals.length )
+                {
+                    long oldest = intervals[next];
+                    sum -= oldest;
+                    squareSum -= (double) oldest * oldest;
+                }
+                else
+                {
+                    count++;
+                }
+                intervals[next] = interval;
+                next = (next + 1) % intervals.length;
+                sum += interval;
+                squareSum += (double) interval * interval;
+            }
+            lastArrival = now;
+        }
+
+        void roundTrip( long latency )
+        {
+            // Smoothed the way TCP smooths its round trip time, so that one slow reply counts for little
+            roundTrip = roundTrip < 0 ? latency : (7 * roundTrip + latency) / 8;
+        }
+
+        double mean()
+        {
+            // Until there is an interval to go by, expect heartbeats to be a heartbeat interval apart
+            double mean = count == 0 ? heartbeatInterval : sum / count;
+            return mean + Math.max( roundTrip, 0 );
+        }
+
+        double stdDeviation()
+        {
+            if ( count == 0 )
+            {
+                return Math.max( heartbeatInterval / 4.0, minStdDeviation );
+            }
+            double mean = sum / count;
+            double variance = Math.max( squareSum / count - mean * mean, 0 );
+            return Math.max( Math.sqrt( variance ), minStdDeviation );
+        }
+
+        long minimumDelay()
+        {
+            return heartbeatInterval + acceptablePause + Math.max( roundTrip, 0 );
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.cluster.protocol.heartbeat;
+
+import java.net.URI;
+
+import org.neo4j.cluster.com.message.Message;
+import org.neo4j.cluster.timeout.TimeoutStrategy;
+
+/**
+ * Times out heartbeats from a member when the {@link PhiAccrualFailureDetector} would start suspecting it,
+ * rather than after a fixed time. The delegate decides all other timeouts, and heartbeat timeouts for members
+ * that nothing has been heard from yet or that are already suspected.
+ */
+public class PhiAccrualTimeoutStrategy
+    implements TimeoutStrategy
+{
+    private final TimeoutStrategy delegate;
+    private final PhiAccrualFailureDetector failureDetector;
+    private long now;
+
+    public PhiAccrualTimeoutStrategy( TimeoutStrategy delegate, PhiAccrualFailureDetector failureDetector )
+    {
+        this.delegate = delegate;
+        this.failureDetector = failureDetector;
+    }
+
+    @Override
+    public long timeoutFor( Message message )
+    {
+        if ( message.getMessageType() == HeartbeatMessage.timed_out )
+        {
+            long timeout = failureDetector.getTimeUntilSuspected( (URI) message.getPayload(), now );
+            if ( timeout > 0 )
+            {
+                return timeout;
+            }
+        }
+        return delegate.timeoutFor( message );
+    }
+
+    @Override
+    public void timeoutTriggered( Message timeoutMessage )
+    {
+        delegate.timeoutTriggered( timeoutMessage );
+    }
+
+    @Override
+    public void timeoutCancelled( Message timeoutMessage )
+    {
+        delegate.timeoutCancelled( timeoutMessage );
+    }
+
+    @Override
+    public void tick( long now )
+    {
+        this.now = now;
+        delegate.tick( now );
+    }
+}
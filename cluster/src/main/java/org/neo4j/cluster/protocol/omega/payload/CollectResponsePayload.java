@@ -45,6 +45,16 @@ public final class CollectResponsePayload implements Serializable
         return readNum;
     }
 
+    public URI[] getServers()
+    {
+        return servers;
+    }
+
+    public RefreshPayload[] getRegistry()
+    {
+        return registry;
+    }
+
     public static CollectResponsePayload fromRegistry( Map<URI, State> registry, int readNum )
     {
         URI[] servers = new URI[registry.size()];
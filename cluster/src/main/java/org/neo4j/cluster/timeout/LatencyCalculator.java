@@ -20,6 +20,7 @@
 
 package org.neo4j.cluster.timeout;
 
+import java.net.URI;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -29,6 +30,7 @@ import org.neo4j.cluster.com.message.Message;
 import org.neo4j.cluster.com.message.MessageProcessor;
 import org.neo4j.cluster.com.message.MessageSource;
 import org.neo4j.cluster.com.message.MessageType;
+import org.neo4j.helpers.Listeners;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -38,6 +40,14 @@ import org.slf4j.LoggerFactory;
 public class LatencyCalculator
     implements MessageProcessor, TimeoutStrategy
 {
+    /**
+     * Told the average of every few round trip times measured to a host.
+     */
+    public interface LatencyListener
+    {
+        void roundTrip( URI host, long latency );
+    }
+
     TimeoutStrategy delegate;
 
     Map<String, Long> conversations = new HashMap<String, Long>(  );
@@ -50,6 +60,8 @@ public class LatencyCalculator
 
     int latencyCount = 5;
 
+    Iterable<LatencyListener> listeners = Listeners.newListeners();
+
     public LatencyCalculator(TimeoutStrategy delegate, MessageSource incoming)
     {
         this.delegate = delegate;
@@ -86,11 +98,21 @@ public class LatencyCalculator
                                 latencySum += hostLatency;
                             }
 
-                            long latencyAvg = latencySum / latencyCount;
+                            final long latencyAvg = latencySum / latencyCount;
 
 //                            logger.info( from+" roundtrip latency: "+latencyAvg );
 
                             hostLatencies.clear();
+
+                            final URI host = URI.create( from );
+                            Listeners.notifyListeners( listeners, new Listeners.Notification<LatencyListener>()
+                            {
+                                @Override
+                                public void notify( LatencyListener listener )
+                                {
+                                    listener.roundTrip( host, latencyAvg );
+                                }
+                            } );
                         }
                     }
                 }
@@ -98,8 +120,13 @@ public class LatencyCalculator
         } );
     }
 
+    public void addLatencyListener( LatencyListener listener )
+    {
+        listeners = Listeners.addListener( listener, listeners );
+    }
+
     @Override
-    public void process( Message<? extends MessageType> message )
+    public synchronized void process( Message<? extends MessageType> message )
     {
         if (!message.isInternal() && !message.getHeader( Message.TO ).equals( message.getHeader( Message.CREATED_BY ) ))
         {
@@ -0,0 +1,81 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.cluster.timeout;
+
+/**
+ * Key for a timeout that exists once per some target, such as the heartbeat timeout of each member.
+ * Compares by value, so a timeout set with one instance can be cancelled with another built from the
+ * same kind and target.
+ */
+public final class TimeoutKey
+{
+    public static TimeoutKey timeoutKey( Object kind, Object target )
+    {
+        return new TimeoutKey( kind, target );
+    }
+
+    private final Object kind;
+    private final Object target;
+
+    private TimeoutKey( Object kind, Object target )
+    {
+        this.kind = kind;
+        this.target = target;
+    }
+
+    public Object getKind()
+    {
+        return kind;
+    }
+
+    public Object getTarget()
+    {
+        return target;
+    }
+
+    @Override
+    public boolean equals( Object o )
+    {
+        if ( this == o )
+        {
+            return true;
+        }
+        if ( o == null || getClass() != o.getClass() )
+        {
+            return false;
+        }
+
+        TimeoutKey that = (TimeoutKey) o;
+        return kind.equals( that.kind ) && (target == null ? that.target == null : target.equals( that.target ));
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return 31 * kind.hashCode() + (target == null ? 0 : target.hashCode());
+    }
+
+    @Override
+    public String toString()
+    {
+        return kind + "-" + target;
+    }
+}
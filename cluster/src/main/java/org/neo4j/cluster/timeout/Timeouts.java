@@ -33,21 +33,65 @@ import org.neo4j.cluster.com.message.MessageType;
  * Timeout management for state machines. First call setTimeout to setup a timeout.
  * Then either the timeout will trigger or cancelTimeout will have been called with
  * the key used to create the timeout.
+ * <p/>
+ * Pending timeouts are kept in a hashed timing wheel: each slot covers a fixed span of time and
+ * holds a linked list of the timeouts that are due within that span on some revolution of the wheel.
+ * Setting and cancelling a timeout are constant time, and a tick only visits the slots that time has
+ * passed over, so its cost follows the number of timeouts that are due rather than the number pending.
+ * <p/>
+ * State machines running on different threads set and cancel timeouts, so all access is synchronized on this.
  */
 public class Timeouts
 {
+    public static final long DEFAULT_TICK_DURATION = 10;
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+
     private long now = 0;
 
     private MessageProcessor receiver;
     private TimeoutStrategy timeoutStrategy;
 
+    private final long tickDuration;
+    private final Timeout[] wheel;
+    private final int mask;
+
+    // All slots up to and including this tick have been visited for the current time
+    private long processedTick = -1;
+
     private Map<Object, Timeout> timeouts = new HashMap<Object, Timeout>();
-    private List<Map.Entry<Object, Timeout>> triggeredTimeouts = new ArrayList<Map.Entry<Object, Timeout>>();
+    private List<Timeout> triggeredTimeouts = new ArrayList<Timeout>();
 
     public Timeouts( MessageProcessor receiver, TimeoutStrategy timeoutStrategy )
     {
+        this( receiver, timeoutStrategy, DEFAULT_TICK_DURATION, DEFAULT_WHEEL_SIZE );
+    }
+
+    /**
+     * @param tickDuration how many milliseconds each slot of the wheel covers
+     * @param wheelSize    number of slots in the wheel, rounded up to a power of two
+     */
+    public Timeouts( MessageProcessor receiver, TimeoutStrategy timeoutStrategy, long tickDuration, int wheelSize )
+    {
+        if ( tickDuration < 1 )
+        {
+            throw new IllegalArgumentException( "Tick duration must be at least 1 ms, was " + tickDuration );
+        }
+        if ( wheelSize < 1 || wheelSize > (1 << 30) )
+        {
+            throw new IllegalArgumentException( "Wheel size must be between 1 and 2^30, was " + wheelSize );
+        }
+
         this.receiver = receiver;
         this.timeoutStrategy = timeoutStrategy;
+        this.tickDuration = tickDuration;
+
+        int size = Integer.highestOneBit( wheelSize );
+        if ( size < wheelSize )
+        {
+            size <<= 1;
+        }
+        this.wheel = new Timeout[size];
+        this.mask = size - 1;
     }
 
     /**
@@ -57,10 +101,18 @@ public class Timeouts
      * @param key
      * @param timeoutMessage
      */
-    public void setTimeout( Object key, Message<? extends MessageType> timeoutMessage )
+    public synchronized void setTimeout( Object key, Message<? extends MessageType> timeoutMessage )
     {
         long timeoutAt = now + timeoutStrategy.timeoutFor( timeoutMessage );
-        timeouts.put( key, new Timeout( timeoutAt, timeoutMessage ) );
+        Timeout timeout = new Timeout( timeoutAt, timeoutMessage );
+        timeout.key = key;
+
+        Timeout replaced = timeouts.put( key, timeout );
+        if ( replaced != null )
+        {
+            unlink( replaced );
+        }
+        link( timeout );
     }
 
     /**
@@ -69,11 +121,12 @@ public class Timeouts
      *
      * @param key
      */
-    public void cancelTimeout( Object key )
+    public synchronized void cancelTimeout( Object key )
     {
         Timeout timeout = timeouts.remove( key );
         if ( timeout != null )
         {
+            unlink( timeout );
             timeoutStrategy.timeoutCancelled( timeout.timeoutMessage );
         }
     }
@@ -81,23 +134,30 @@ public class Timeouts
     /**
      * Cancel all current timeouts. This is typically used when shutting down.
      */
-    public void cancelAllTimeouts()
+    public synchronized void cancelAllTimeouts()
     {
         for ( Timeout timeout : timeouts.values() )
         {
             timeoutStrategy.timeoutCancelled( timeout.getTimeoutMessage() );
         }
         timeouts.clear();
+        for ( int i = 0; i < wheel.length; i++ )
+        {
+            wheel[i] = null;
+        }
     }
 
+    /**
+     * @return the pending timeouts. Synchronize on this while iterating over them.
+     */
     public Map<Object, Timeout> getTimeouts()
     {
         return timeouts;
     }
 
-    public Message<? extends MessageType> getTimeoutMessage( String timeoutName )
+    public synchronized Message<? extends MessageType> getTimeoutMessage( Object key )
     {
-        Timeout timeout = timeouts.get( timeoutName );
+        Timeout timeout = timeouts.get( key );
         if ( timeout != null )
         {
             return timeout.getTimeoutMessage();
@@ -108,6 +168,11 @@ public class Timeouts
         }
     }
 
+    public long getTime()
+    {
+        return now;
+    }
+
     public void tick( long time )
     {
         synchronized ( this )
@@ -117,37 +182,111 @@ public class Timeouts
 
             timeoutStrategy.tick( now );
 
-            // Check if any timeouts needs to be triggered
+            // Visit every slot that time has passed over since the last tick, including the current one
+            // since it may hold timeouts due later within its span. One revolution covers all slots.
             triggeredTimeouts.clear();
-            for ( Map.Entry<Object, Timeout> timeout : timeouts.entrySet() )
+            long currentTick = now / tickDuration;
+            long fromTick = Math.max( processedTick + 1, currentTick - mask );
+            for ( long tick = fromTick; tick <= currentTick; tick++ )
             {
-                if ( timeout.getValue().checkTimeout( now ) )
-                {
-                    triggeredTimeouts.add( timeout );
-                }
+                expire( wheel[(int) (tick & mask)] );
             }
+            processedTick = Math.max( processedTick, currentTick - 1 );
+        }
+
+        // Trigger timeouts
+        // This needs to be done outside of the synchronized block as it will trigger a message
+        // which may be handled right away by a state machine that sets timeouts
+        for ( Timeout triggeredTimeout : triggeredTimeouts )
+        {
+            triggeredTimeout.trigger( receiver );
+        }
+    }
 
-            // Remove all timeouts that were triggered
-            for ( Map.Entry<Object, Timeout> triggeredTimeout : triggeredTimeouts )
+    private void expire( Timeout timeout )
+    {
+        while ( timeout != null )
+        {
+            Timeout next = timeout.next;
+            if ( timeout.checkTimeout( now ) )
             {
-                timeouts.remove( triggeredTimeout.getKey() );
+                timeouts.remove( timeout.key );
+                unlink( timeout );
+                triggeredTimeouts.add( timeout );
             }
+            timeout = next;
         }
+    }
 
-        // Trigger timeouts
-        // This needs to be done outside of the synchronized block as it will trigger a message
-        // which will cause the statemachine to synchronize on Timeouts
-        for ( Map.Entry<Object, Timeout> triggeredTimeout : triggeredTimeouts )
+    private void link( Timeout timeout )
+    {
+        // Timeouts due in a slot that has already been visited go in the next one to be visited
+        long tick = Math.max( timeout.timeout / tickDuration, processedTick + 1 );
+        int slot = (int) (tick & mask);
+
+        Timeout head = wheel[slot];
+        timeout.slot = slot;
+        if ( head == null )
+        {
+            timeout.previous = timeout;
+            timeout.next = null;
+            wheel[slot] = timeout;
+        }
+        else
         {
-            triggeredTimeout.getValue().trigger( receiver );
+            // Head's previous points at the tail, so that appending keeps timeouts in the order they were set
+            Timeout tail = head.previous;
+            tail.next = timeout;
+            timeout.previous = tail;
+            timeout.next = null;
+            head.previous = timeout;
         }
     }
 
+    private void unlink( Timeout timeout )
+    {
+        int slot = timeout.slot;
+        if ( slot < 0 )
+        {
+            return;
+        }
+
+        Timeout head = wheel[slot];
+        if ( timeout == head )
+        {
+            wheel[slot] = timeout.next;
+            if ( timeout.next != null )
+            {
+                timeout.next.previous = timeout.previous;
+            }
+        }
+        else
+        {
+            timeout.previous.next = timeout.next;
+            if ( timeout.next != null )
+            {
+                timeout.next.previous = timeout.previous;
+            }
+            else
+            {
+                head.previous = timeout.previous;
+            }
+        }
+        timeout.slot = -1;
+        timeout.next = null;
+        timeout.previous = null;
+    }
+
     public class Timeout
     {
         private long timeout;
         private Message<? extends MessageType> timeoutMessage;
 
+        private Object key;
+        private int slot = -1;
+        private Timeout next;
+        private Timeout previous;
+
         public Timeout( long timeout, Message<? extends MessageType> timeoutMessage )
         {
             this.timeout = timeout;
@@ -0,0 +1,261 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.cluster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.neo4j.cluster.com.message.Message.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+import org.neo4j.cluster.com.message.Message;
+import org.neo4j.cluster.com.message.MessageProcessor;
+import org.neo4j.cluster.com.message.MessageSource;
+import org.neo4j.cluster.com.message.MessageType;
+import org.neo4j.cluster.statemachine.State;
+import org.neo4j.cluster.statemachine.StateMachine;
+import org.neo4j.cluster.timeout.FixedTimeoutStrategy;
+
+public class ConnectedStateMachinesTest
+{
+    private final ExecutorService dispatcher = Executors.newCachedThreadPool();
+
+    @After
+    public void shutdownDispatcher()
+    {
+        dispatcher.shutdownNow();
+    }
+
+    @Test
+    public void shouldHandleMessagesInOtherMailboxWhileOneIsBusy() throws Exception
+    {
+        ConnectedStateMachines stateMachines = stateMachines( dispatcher );
+        Recorder slow = new Recorder();
+        slow.blocked = new CountDownLatch( 1 );
+        Recorder fast = new Recorder();
+        stateMachines.addStateMachine( new StateMachine( slow, Slow.class, Recording.state ) );
+        stateMachines.addStateMachine( new StateMachine( fast, Fast.class, Recording.state ) );
+
+        stateMachines.process( internal( Slow.message, "slow" ) );
+        stateMachines.process( internal( Fast.message, "fast" ) );
+
+        assertTrue( fast.await( 1 ) );
+        assertEquals( 0, slow.handled().size() );
+
+        slow.blocked.countDown();
+        assertTrue( slow.await( 1 ) );
+    }
+
+    @Test
+    public void shouldHandleMessagesInAMailboxOneAtATimeInOrder() throws Exception
+    {
+        final ConnectedStateMachines stateMachines = stateMachines( dispatcher );
+        Recorder recorder = new Recorder();
+        stateMachines.addStateMachine( new StateMachine( recorder, Slow.class, Recording.state ), "shared" );
+        stateMachines.addStateMachine( new StateMachine( recorder, Fast.class, Recording.state ), "shared" );
+
+        final int senders = 4;
+        final int messages = 500;
+        List<Thread> threads = new ArrayList<Thread>();
+        for ( int i = 0; i < senders; i++ )
+        {
+            final int sender = i;
+            threads.add( new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    for ( int j = 0; j < messages; j++ )
+                    {
+                        MessageType type = j % 2 == 0 ? Slow.message : Fast.message;
+                        stateMachines.process( internal( type, sender + ":" + j ) );
+                    }
+                }
+            } );
+        }
+        for ( Thread thread : threads )
+        {
+            thread.start();
+        }
+        for ( Thread thread : threads )
+        {
+            thread.join();
+        }
+
+        assertTrue( recorder.await( senders * messages ) );
+        assertEquals( 0, recorder.overlaps.get() );
+
+        int[] next = new int[senders];
+        for ( Object payload : recorder.handled() )
+        {
+            String[] parts = ((String) payload).split( ":" );
+            int sender = Integer.parseInt( parts[0] );
+            assertEquals( next[sender]++, Integer.parseInt( parts[1] ) );
+        }
+    }
+
+    @Test
+    public void shouldHandleMessagesSentWithinMailboxBeforeItsNextMessage() throws Exception
+    {
+        ConnectedStateMachines stateMachines = stateMachines( dispatcher );
+        Recorder recorder = new Recorder();
+        stateMachines.addStateMachine( new StateMachine( recorder, Slow.class, Forwarding.state ), "shared" );
+        stateMachines.addStateMachine( new StateMachine( recorder, Fast.class, Recording.state ), "shared" );
+
+        stateMachines.process( internal( Slow.message, "first" ) );
+        stateMachines.process( internal( Slow.message, "second" ) );
+
+        assertTrue( recorder.await( 4 ) );
+        assertEquals( list( "first", "first forwarded", "second", "second forwarded" ), recorder.handled() );
+    }
+
+    @Test
+    public void shouldRunMailboxesOnCallingThreadWithoutDispatcher() throws Exception
+    {
+        ConnectedStateMachines stateMachines = stateMachines( null );
+        Recorder recorder = new Recorder();
+        stateMachines.addStateMachine( new StateMachine( recorder, Slow.class, Forwarding.state ) );
+        stateMachines.addStateMachine( new StateMachine( recorder, Fast.class, Recording.state ) );
+
+        stateMachines.process( internal( Slow.message, "first" ) );
+
+        assertEquals( list( "first", "first forwarded" ), recorder.handled() );
+    }
+
+    private ConnectedStateMachines stateMachines( ExecutorService dispatcher )
+    {
+        MessageSource source = new MessageSource()
+        {
+            @Override
+            public void addMessageProcessor( MessageProcessor messageProcessor )
+            {
+            }
+        };
+        MessageProcessor sender = new MessageProcessor()
+        {
+            @Override
+            public void process( Message<? extends MessageType> message )
+            {
+            }
+        };
+
+        if ( dispatcher == null )
+        {
+            return new ConnectedStateMachines( source, sender, new FixedTimeoutStrategy( 1000 ),
+                    new DelayedDirectExecutor() );
+        }
+        return new ConnectedStateMachines( source, sender, new FixedTimeoutStrategy( 1000 ),
+                new DelayedDirectExecutor(), dispatcher );
+    }
+
+    private List<Object> list( Object... values )
+    {
+        List<Object> list = new ArrayList<Object>();
+        Collections.addAll( list, values );
+        return list;
+    }
+
+    private enum Slow implements MessageType
+    {
+        message
+    }
+
+    private enum Fast implements MessageType
+    {
+        message
+    }
+
+    private static class Recorder
+    {
+        private final List<Object> handled = new ArrayList<Object>();
+        private final AtomicInteger inside = new AtomicInteger();
+        private final AtomicInteger overlaps = new AtomicInteger();
+        private volatile CountDownLatch blocked = new CountDownLatch( 0 );
+
+        void handle( Object payload ) throws InterruptedException
+        {
+            if ( inside.incrementAndGet() > 1 )
+            {
+                overlaps.incrementAndGet();
+            }
+            blocked.await();
+            synchronized ( this )
+            {
+                handled.add( payload );
+                notifyAll();
+            }
+            inside.decrementAndGet();
+        }
+
+        synchronized List<Object> handled()
+        {
+            return new ArrayList<Object>( handled );
+        }
+
+        synchronized boolean await( int count ) throws InterruptedException
+        {
+            long end = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis( 10 );
+            while ( handled.size() < count && System.currentTimeMillis() < end )
+            {
+                wait( 100 );
+            }
+            return handled.size() >= count;
+        }
+    }
+
+    private enum Recording implements State<Recorder, MessageType>
+    {
+        state
+                {
+                    @Override
+                    public State<?, ?> handle( Recorder recorder, Message<MessageType> message,
+                                               MessageProcessor outgoing ) throws Throwable
+                    {
+                        recorder.handle( message.getPayload() );
+                        return this;
+                    }
+                }
+    }
+
+    private enum Forwarding implements State<Recorder, MessageType>
+    {
+        state
+                {
+                    @Override
+                    public State<?, ?> handle( Recorder recorder, Message<MessageType> message,
+                                               MessageProcessor outgoing ) throws Throwable
+                    {
+                        recorder.handle( message.getPayload() );
+                        outgoing.process( internal( Fast.message, message.getPayload() + " forwarded" ) );
+                        return this;
+                    }
+                }
+    }
+}
@@ -0,0 +1,204 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.cluster.com;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.handler.codec.embedder.DecoderEmbedder;
+import org.jboss.netty.handler.codec.embedder.EncoderEmbedder;
+import org.jboss.netty.handler.codec.serialization.ObjectDecoder;
+import org.jboss.netty.handler.codec.serialization.ObjectEncoder;
+import org.junit.Test;
+import org.neo4j.cluster.com.message.Message;
+import org.neo4j.cluster.com.message.MessageCodec;
+import org.neo4j.cluster.protocol.atomicbroadcast.multipaxos.AcceptorMessage;
+
+public class MessageFrameNegotiationTest
+{
+    private static final String INITIATOR = "cluster://127.0.0.1:5001";
+    private static final String ACCEPTOR = "cluster://127.0.0.1:5002";
+
+    @Test
+    public void newInstancesShouldSwitchToTheCodecAfterTheFirstMessage() throws Exception
+    {
+        // given
+        Peer initiator = Peer.current( true );
+        Peer acceptor = Peer.current( false );
+
+        // when
+        ChannelBuffer first = initiator.write( prepare( 1 ) );
+        boolean firstIsSerialized = first.getUnsignedByte( 4 ) != MessageFrameEncoder.MAGIC;
+        Message<?> received = send( first, initiator, acceptor );
+
+        // then
+        assertTrue( firstIsSerialized );
+        assertEquals( 1, ((AcceptorMessage.PrepareState) received.getPayload()).getBallot() );
+        assertFalse( received.hasHeader( MessageCodec.VERSION_HEADER ) );
+        assertTrue( initiator.encoder.isCompact() );
+        assertTrue( acceptor.encoder.isCompact() );
+
+        // when
+        ChannelBuffer second = initiator.write( prepare( 2 ) );
+        boolean secondIsCompact = second.getUnsignedByte( 4 ) == MessageFrameEncoder.MAGIC;
+        received = send( second, initiator, acceptor );
+
+        // then
+        assertTrue( secondIsCompact );
+        assertEquals( 2, ((AcceptorMessage.PrepareState) received.getPayload()).getBallot() );
+    }
+
+    @Test
+    public void olderAcceptorShouldReadTheAnnouncementAsAnOrdinaryMessage() throws Exception
+    {
+        // given
+        Peer initiator = Peer.current( true );
+        Peer acceptor = Peer.old();
+
+        for ( int ballot = 1; ballot <= 3; ballot++ )
+        {
+            // when
+            ChannelBuffer frame = initiator.write( prepare( ballot ) );
+            boolean serialized = frame.getUnsignedByte( 4 ) != MessageFrameEncoder.MAGIC;
+            Message<?> received = send( frame, initiator, acceptor );
+
+            // then
+            assertTrue( serialized );
+            assertEquals( ballot, ((AcceptorMessage.PrepareState) received.getPayload()).getBallot() );
+            assertFalse( initiator.encoder.isCompact() );
+        }
+    }
+
+    @Test
+    public void newerAcceptorShouldNotAnswerAnOlderInitiator() throws Exception
+    {
+        // given
+        Peer initiator = Peer.old();
+        Peer acceptor = Peer.current( false );
+
+        // when
+        Message<?> received = send( initiator.write( prepare( 1 ) ), initiator, acceptor );
+
+        // then
+        assertEquals( 1, ((AcceptorMessage.PrepareState) received.getPayload()).getBallot() );
+        assertFalse( acceptor.encoder.isPeerKnown() );
+        assertFalse( acceptor.encoder.isCompact() );
+    }
+
+    @Test
+    public void shouldIgnoreAnnouncementCopiedByAnOlderInstance() throws Exception
+    {
+        // given
+        Peer initiator = Peer.old();
+        Peer acceptor = Peer.current( false );
+        Message<AcceptorMessage> copied = prepare( 1 ).setHeader( Message.FROM, "cluster://127.0.0.1:5003" );
+        copied = MessageCodec.announceVersion( copied ).setHeader( Message.FROM, INITIATOR );
+
+        // when
+        Message<?> received = send( initiator.write( copied ), initiator, acceptor );
+
+        // then
+        assertFalse( received.hasHeader( MessageCodec.VERSION_HEADER ) );
+        assertFalse( acceptor.encoder.isPeerKnown() );
+    }
+
+    @Test
+    public void announcingShouldNotChangeTheMessageBeingSent() throws Exception
+    {
+        // given
+        Message<AcceptorMessage> message = prepare( 1 );
+
+        // when
+        Message<AcceptorMessage> announced = MessageCodec.announceVersion( message );
+
+        // then
+        assertFalse( message.hasHeader( MessageCodec.VERSION_HEADER ) );
+        assertEquals( MessageCodec.VERSION, MessageCodec.announcedVersion( announced ) );
+        assertFalse( announced.hasHeader( MessageCodec.VERSION_HEADER ) );
+        assertEquals( ACCEPTOR, announced.getHeader( Message.TO ) );
+    }
+
+    private static Message<AcceptorMessage> prepare( long ballot )
+    {
+        return Message.to( AcceptorMessage.prepare, ACCEPTOR, new AcceptorMessage.PrepareState( ballot ) )
+                .setHeader( Message.FROM, INITIATOR );
+    }
+
+    /**
+     * Hands a frame written by one end of a channel to the other end, and anything the other end writes back in
+     * return, like a hello, to the first end.
+     */
+    private static Message<?> send( ChannelBuffer frame, Peer from, Peer to )
+    {
+        to.in.offer( frame );
+        Message<?> received = null;
+        for ( Object product; (product = to.in.poll()) != null; )
+        {
+            if ( product instanceof ChannelBuffer )
+            {
+                from.in.offer( product );
+                assertNull( from.in.poll() );
+            }
+            else
+            {
+                received = (Message<?>) product;
+            }
+        }
+        return received;
+    }
+
+    private static class Peer
+    {
+        private final MessageFrameEncoder encoder;
+        private final EncoderEmbedder<ChannelBuffer> out;
+        private final DecoderEmbedder<Object> in;
+
+        static Peer current( boolean initiator )
+        {
+            MessageCodec codec = new MessageCodec();
+            MessageFrameEncoder encoder = new MessageFrameEncoder( codec );
+            return new Peer( encoder, new EncoderEmbedder<ChannelBuffer>( encoder ), new DecoderEmbedder<Object>(
+                    new MessageFrameDecoder( 1024 * 1000, Peer.class.getClassLoader(), codec, encoder, initiator ) ) );
+        }
+
+        static Peer old()
+        {
+            return new Peer( null, new EncoderEmbedder<ChannelBuffer>( new ObjectEncoder( 2048 ) ),
+                    new DecoderEmbedder<Object>( new ObjectDecoder( 1024 * 1000, Peer.class.getClassLoader() ) ) );
+        }
+
+        private Peer( MessageFrameEncoder encoder, EncoderEmbedder<ChannelBuffer> out, DecoderEmbedder<Object> in )
+        {
+            this.encoder = encoder;
+            this.out = out;
+            this.in = in;
+        }
+
+        ChannelBuffer write( Message<?> message )
+        {
+            out.offer( message );
+            return out.poll();
+        }
+    }
+}
@@ -0,0 +1,252 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.cluster.com.message;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.Test;
+import org.neo4j.cluster.protocol.atomicbroadcast.Payload;
+import org.neo4j.cluster.protocol.atomicbroadcast.multipaxos.AcceptorMessage;
+import org.neo4j.cluster.protocol.atomicbroadcast.multipaxos.Batch;
+import org.neo4j.cluster.protocol.atomicbroadcast.multipaxos.InstanceId;
+import org.neo4j.cluster.protocol.atomicbroadcast.multipaxos.LearnerMessage;
+import org.neo4j.cluster.protocol.cluster.ClusterMessage;
+import org.neo4j.cluster.protocol.election.DefaultElectionCredentials;
+import org.neo4j.cluster.protocol.election.ElectionMessage;
+import org.neo4j.cluster.protocol.heartbeat.HeartbeatMessage;
+import org.neo4j.cluster.protocol.omega.OmegaMessage;
+import org.neo4j.cluster.protocol.omega.payload.CollectResponsePayload;
+import org.neo4j.cluster.protocol.omega.payload.RefreshPayload;
+
+public class MessageCodecTest
+{
+    private final MessageCodec codec = new MessageCodec();
+
+    @Test
+    public void shouldRoundTripMessageTypeAndHeaders() throws Exception
+    {
+        Message<AcceptorMessage> message = Message.to( AcceptorMessage.prepare, "cluster://127.0.0.1:5001",
+                new AcceptorMessage.PrepareState( 4711 ) ).setHeader( Message.FROM, "cluster://127.0.0.1:5002" )
+                .setHeader( InstanceId.INSTANCE, "42" ).setHeader( "custom", "value" );
+
+        Message<MessageType> read = roundTrip( message );
+
+        assertEquals( AcceptorMessage.prepare, read.getMessageType() );
+        assertEquals( "cluster://127.0.0.1:5001", read.getHeader( Message.TO ) );
+        assertEquals( "cluster://127.0.0.1:5002", read.getHeader( Message.FROM ) );
+        assertEquals( "42", read.getHeader( InstanceId.INSTANCE ) );
+        assertEquals( "value", read.getHeader( "custom" ) );
+        assertEquals( 4711, ((AcceptorMessage.PrepareState) read.getPayload()).getBallot() );
+    }
+
+    @Test
+    public void shouldRoundTripNestedPayloads() throws Exception
+    {
+        byte[] bytes = {1, 2, 3, 4, 5};
+        Message<MessageType> read = roundTrip( Message.internal( AcceptorMessage.accept,
+                new AcceptorMessage.AcceptState( -3, new Payload( bytes, 4 ) ) ) );
+
+        AcceptorMessage.AcceptState state = read.getPayload();
+        assertEquals( -3, state.getBallot() );
+        Payload payload = (Payload) state.getValue();
+        assertEquals( 4, payload.getLen() );
+        assertArrayEquals( new byte[]{1, 2, 3, 4}, payload.getBuf() );
+
+        ClusterMessage.ConfigurationChangeState change = new ClusterMessage.ConfigurationChangeState();
+        change.elected( "coordinator", new URI( "cluster://127.0.0.1:5001" ) );
+        read = roundTrip( Message.internal( LearnerMessage.learn, new LearnerMessage.LearnState( change ) ) );
+
+        change = (ClusterMessage.ConfigurationChangeState) ((LearnerMessage.LearnState) read.getPayload()).getValue();
+        assertNull( change.getJoin() );
+        assertNull( change.getLeave() );
+        assertEquals( "coordinator", change.getRole() );
+        assertEquals( new URI( "cluster://127.0.0.1:5001" ), change.getWinner() );
+    }
+
+    @Test
+    public void shouldRoundTripClusterPayloads() throws Exception
+    {
+        URI one = new URI( "cluster://127.0.0.1:5001" );
+        URI two = new URI( "cluster://127.0.0.1:5002" );
+
+        Message<MessageType> read = roundTrip( Message.internal( ClusterMessage.configurationResponse,
+                new ClusterMessage.ConfigurationResponseState( Collections.singletonMap( "coordinator", one ),
+                        Arrays.asList( one, two ), new InstanceId( 17 ), "neo4j.ha" ) ) );
+        ClusterMessage.ConfigurationResponseState configuration = read.getPayload();
+        assertEquals( Collections.singletonMap( "coordinator", one ), configuration.getRoles() );
+        assertEquals( Arrays.asList( one, two ), configuration.getMembers() );
+        assertEquals( new InstanceId( 17 ), configuration.getLatestReceivedInstanceId() );
+        assertEquals( "neo4j.ha", configuration.getClusterName() );
+
+        read = roundTrip( Message.internal( HeartbeatMessage.suspicions,
+                new HeartbeatMessage.SuspicionsState( new HashSet<URI>( Arrays.asList( one, two ) ) ) ) );
+        assertEquals( new HashSet<URI>( Arrays.asList( one, two ) ),
+                ((HeartbeatMessage.SuspicionsState) read.getPayload()).getSuspicions() );
+
+        read = roundTrip( Message.internal( ElectionMessage.voted,
+                new ElectionMessage.VotedData( "coordinator", (Comparable) new DefaultElectionCredentials( 2, 1000 ) ) ) );
+        ElectionMessage.VotedData voted = read.getPayload();
+        assertEquals( "coordinator", voted.getRole() );
+        assertEquals( new DefaultElectionCredentials( 2, 1000 ), voted.getVoteCredentials() );
+
+        CollectResponsePayload collected = new CollectResponsePayload( new URI[]{one, two},
+                new RefreshPayload[]{new RefreshPayload( 1, 2, 3, -1 ), new RefreshPayload( 4, 5, 6, -1 )}, 7 );
+        read = roundTrip( Message.internal( OmegaMessage.status, collected ) );
+        // RefreshPayload has no equals
+        assertEquals( collected.toString(), read.getPayload().toString() );
+    }
+
+    @Test
+    public void shouldRoundTripBatchesWithTheirConversationIds() throws Exception
+    {
+        Batch batch = new Batch( new Object[]{new Payload( new byte[]{1, 2}, 2 ), new Payload( new byte[]{3}, 1 )},
+                new String[]{"conversation-1", null} );
+
+        Message<MessageType> read = roundTrip( Message.internal( AcceptorMessage.accept,
+                new AcceptorMessage.AcceptState( 1001, batch ) ) );
+
+        Batch readBatch = (Batch) ((AcceptorMessage.AcceptState) read.getPayload()).getValue();
+        assertEquals( 2, readBatch.size() );
+        assertArrayEquals( new byte[]{1, 2}, ((Payload) readBatch.getValue( 0 )).getBuf() );
+        assertArrayEquals( new byte[]{3}, ((Payload) readBatch.getValue( 1 )).getBuf() );
+        assertEquals( "conversation-1", readBatch.getConversationId( 0 ) );
+        assertNull( readBatch.getConversationId( 1 ) );
+    }
+
+    @Test
+    public void shouldSerializeWhatItHasNoCodecFor() throws Exception
+    {
+        Message<MessageType> read = roundTrip( Message.internal( NetworkSendReceiveTest.TestMessage.helloWorld,
+                new Thing( "thing" ) ) );
+
+        assertEquals( NetworkSendReceiveTest.TestMessage.helloWorld, read.getMessageType() );
+        assertEquals( "thing", ((Thing) read.getPayload()).name );
+    }
+
+    @Test
+    public void shouldUseRegisteredPayloadCodec() throws Exception
+    {
+        codec.registerPayload( MessageCodec.FIRST_EXTENSION_ID, Thing.class, new PayloadCodec<Thing>()
+        {
+            @Override
+            public void write( Thing payload, ChannelBuffer buffer, MessageCodec codec )
+            {
+                codec.writeString( payload.name.toUpperCase(), buffer );
+            }
+
+            @Override
+            public Thing read( ChannelBuffer buffer, MessageCodec codec ) throws IOException
+            {
+                return new Thing( codec.readString( buffer ) );
+            }
+        } );
+
+        Message<MessageType> read = roundTrip( Message.internal( AcceptorMessage.accept,
+                new AcceptorMessage.AcceptState( 1, new Thing( "thing" ) ) ) );
+
+        assertEquals( "THING", ((Thing) ((AcceptorMessage.AcceptState) read.getPayload()).getValue()).name );
+    }
+
+    @Test
+    public void shouldNotAllowPayloadIdsReservedForBuiltInPayloads() throws Exception
+    {
+        try
+        {
+            codec.registerPayload( MessageCodec.FIRST_EXTENSION_ID - 1, Thing.class, null );
+            fail( "Should not be allowed" );
+        }
+        catch ( IllegalArgumentException e )
+        {
+            // Good
+        }
+    }
+
+    @Test
+    public void shouldWriteHeartbeatsInAFractionOfTheSerializedSize() throws Exception
+    {
+        Message<HeartbeatMessage> message = Message.to( HeartbeatMessage.i_am_alive, "cluster://127.0.0.1:5001",
+                new HeartbeatMessage.IAmAliveState( new URI( "cluster://127.0.0.1:5002" ) ) )
+                .setHeader( Message.FROM, "cluster://127.0.0.1:5002" );
+
+        ChannelBuffer buffer = ChannelBuffers.dynamicBuffer();
+        codec.encode( message, buffer );
+
+        ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream( serialized );
+        out.writeObject( message );
+        out.close();
+
+        assertTrue( buffer.readableBytes() + " bytes compared to " + serialized.size() + " serialized",
+                buffer.readableBytes() * 4 < serialized.size() );
+    }
+
+    @Test
+    public void shouldWriteSmallNumbersInOneByte() throws Exception
+    {
+        ChannelBuffer buffer = ChannelBuffers.dynamicBuffer();
+        long[] values = {0, 1, -1, 63, -64, 64, Integer.MAX_VALUE, Long.MIN_VALUE, Long.MAX_VALUE};
+        for ( long value : values )
+        {
+            codec.writeVarLong( value, buffer );
+        }
+
+        assertEquals( 5 + 2 + 5 + 10 + 10, buffer.readableBytes() );
+        for ( long value : values )
+        {
+            assertEquals( value, codec.readVarLong( buffer ) );
+        }
+    }
+
+    private Message<MessageType> roundTrip( Message<?> message ) throws IOException
+    {
+        ChannelBuffer buffer = ChannelBuffers.dynamicBuffer();
+        codec.encode( message, buffer );
+        Message<MessageType> read = codec.decode( buffer );
+        assertEquals( 0, buffer.readableBytes() );
+        return read;
+    }
+
+    private static class Thing
+            implements Serializable
+    {
+        private final String name;
+
+        Thing( String name )
+        {
+            this.name = name;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.cluster.protocol.atomicbroadcast;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.neo4j.cluster.com.message.MessageCodec;
+
+public class AtomicBroadcastSerializerTest
+{
+    private final AtomicBroadcastSerializer serializer = new AtomicBroadcastSerializer( new MessageCodec(), true );
+
+    @Test
+    public void shouldRoundTripMapCommandsCompactly() throws Exception
+    {
+        AtomicBroadcastMap.Put put = new AtomicBroadcastMap.Put( "key", 42L );
+        Payload payload = serializer.broadcast( put );
+
+        assertEquals( put, serializer.receive( payload ) );
+        assertTrue( payload.getLen() + " bytes", payload.getLen() < serializedSize( put ) / 4 );
+
+        Map<Object, Object> map = new HashMap<Object, Object>();
+        map.put( "one", 1 );
+        map.put( 2L, "two" );
+        AtomicBroadcastMap.PutAll putAll = new AtomicBroadcastMap.PutAll( map );
+        assertEquals( putAll, serializer.receive( serializer.broadcast( putAll ) ) );
+
+        AtomicBroadcastMap.Remove remove = new AtomicBroadcastMap.Remove( "key" );
+        assertEquals( remove, serializer.receive( serializer.broadcast( remove ) ) );
+    }
+
+    @Test
+    public void shouldSerializeValuesWithoutCodecSoThatAnyVersionCanReadThem() throws Exception
+    {
+        Date value = new Date( 1234 );
+        Payload payload = serializer.broadcast( value );
+
+        ObjectInputStream in = new ObjectInputStream( new ByteArrayInputStream( payload.getBuf(), 0,
+                payload.getLen() ) );
+        assertEquals( value, in.readObject() );
+        assertEquals( value, serializer.receive( payload ) );
+    }
+
+    @Test
+    public void shouldReadSerializedPayloads() throws Exception
+    {
+        AtomicBroadcastMap.Put put = new AtomicBroadcastMap.Put( "key", "value" );
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream( bytes );
+        out.writeObject( put );
+        out.close();
+
+        assertEquals( put, serializer.receive( new Payload( bytes.toByteArray(), bytes.size() ) ) );
+    }
+
+    @Test
+    public void shouldOnlyWriteCompactPayloadsWhenEnabled() throws Exception
+    {
+        AtomicBroadcastSerializer olderClusterSerializer = new AtomicBroadcastSerializer();
+        AtomicBroadcastMap.Put put = new AtomicBroadcastMap.Put( "key", 42L );
+
+        Payload payload = olderClusterSerializer.broadcast( put );
+
+        ObjectInputStream in = new ObjectInputStream( new ByteArrayInputStream( payload.getBuf(), 0,
+                payload.getLen() ) );
+        assertEquals( put, in.readObject() );
+        assertEquals( put, olderClusterSerializer.receive( serializer.broadcast( put ) ) );
+    }
+
+    private int serializedSize( Object value ) throws Exception
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream( bytes );
+        out.writeObject( value );
+        out.close();
+        return bytes.size();
+    }
+}
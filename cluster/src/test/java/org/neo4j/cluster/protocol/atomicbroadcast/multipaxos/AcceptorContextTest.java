@@ -0,0 +1,107 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.cluster.protocol.atomicbroadcast.multipaxos;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class AcceptorContextTest
+{
+    private final AcceptorContext context = new AcceptorContext( null, new InMemoryAcceptorInstanceStore() );
+
+    @Test
+    public void shouldPromiseBallotForFollowingInstances() throws Exception
+    {
+        prepare( 3, 1001 );
+
+        assertTrue( context.promiseFollowing( new InstanceId( 3 ), 1001 ) );
+        assertEquals( 1001, promisedBallot( 3 ) );
+        assertEquals( 1001, promisedBallot( 4 ) );
+        assertEquals( 1001, promisedBallot( 100 ) );
+        assertEquals( -1, promisedBallot( 2 ) );
+    }
+
+    @Test
+    public void shouldNotPromiseFollowingInstancesThatHaveAcceptedValues() throws Exception
+    {
+        InstanceId five = new InstanceId( 5 );
+        context.promise( five, context.getAcceptorInstance( five ), 1001 );
+        context.accept( five, context.getAcceptorInstance( five ), "value" );
+
+        assertFalse( context.promiseFollowing( new InstanceId( 3 ), 1002 ) );
+        assertEquals( -1, promisedBallot( 6 ) );
+        assertTrue( context.promiseFollowing( new InstanceId( 5 ), 1002 ) );
+        assertEquals( 1002, promisedBallot( 6 ) );
+    }
+
+    @Test
+    public void shouldOnlyPromiseHigherBallotsForFollowingInstances() throws Exception
+    {
+        assertTrue( context.promiseFollowing( new InstanceId( 3 ), 2001 ) );
+
+        assertFalse( context.promiseFollowing( new InstanceId( 7 ), 1002 ) );
+        assertEquals( 2001, promisedBallot( 8 ) );
+
+        assertTrue( context.promiseFollowing( new InstanceId( 7 ), 2002 ) );
+        assertEquals( 2002, promisedBallot( 4 ) );
+    }
+
+    @Test
+    public void shouldNotRecreateForgottenInstances() throws Exception
+    {
+        AcceptorContext context = new AcceptorContext( null, new InMemoryAcceptorInstanceStore( 10 ) );
+        InstanceId five = new InstanceId( 5 );
+        context.promise( five, context.getAcceptorInstance( five ), 1001 );
+
+        context.delivered( new InstanceId( 15 ) );
+
+        assertNull( context.getAcceptorInstance( five ) );
+        assertNull( context.getAcceptorInstance( new InstanceId( 3 ) ) );
+        assertNotNull( context.getAcceptorInstance( new InstanceId( 6 ) ) );
+    }
+
+    @Test
+    public void shouldForgetPromisesWhenLeaving() throws Exception
+    {
+        assertTrue( context.promiseFollowing( new InstanceId( 3 ), 1001 ) );
+
+        context.leave();
+
+        assertEquals( -1, promisedBallot( 4 ) );
+    }
+
+    private void prepare( long instanceId, long ballot )
+    {
+        context.promise( new InstanceId( instanceId ), context.getAcceptorInstance( new InstanceId( instanceId ) ),
+                ballot );
+    }
+
+    private long promisedBallot( long instanceId )
+    {
+        InstanceId id = new InstanceId( instanceId );
+        return context.getPromisedBallot( id, context.getAcceptorInstance( id ) );
+    }
+}
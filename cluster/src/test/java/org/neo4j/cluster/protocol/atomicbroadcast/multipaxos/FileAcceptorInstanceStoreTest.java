@@ -0,0 +1,332 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.cluster.protocol.atomicbroadcast.multipaxos;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+import org.neo4j.cluster.com.message.Message;
+import org.neo4j.cluster.com.message.MessageCodec;
+import org.neo4j.cluster.com.message.MessageProcessor;
+import org.neo4j.cluster.com.message.MessageType;
+import org.neo4j.cluster.protocol.heartbeat.HeartbeatMessage;
+import org.neo4j.kernel.impl.util.StringLogger;
+import org.neo4j.kernel.logging.Logging;
+import org.neo4j.test.TargetDirectory;
+
+public class FileAcceptorInstanceStoreTest
+{
+    private final File directory = TargetDirectory.forTest( getClass() ).directory( "paxos", true );
+    private final List<FileAcceptorInstanceStore> stores = new ArrayList<FileAcceptorInstanceStore>();
+
+    @After
+    public void stopStores() throws Throwable
+    {
+        for ( FileAcceptorInstanceStore store : new ArrayList<FileAcceptorInstanceStore>( stores ) )
+        {
+            stop( store );
+        }
+    }
+
+    @Test
+    public void shouldRecoverPromisesAndAcceptedValues() throws Throwable
+    {
+        FileAcceptorInstanceStore store = start( 1000 );
+        promise( store, 5, 1001 );
+        accept( store, 5, "value" );
+        promise( store, 6, 2002 );
+        assertTrue( store.promiseFollowing( new InstanceId( 6 ), 2002 ) );
+        stop( store );
+
+        store = start( 1000 );
+        assertEquals( 1001, instance( store, 5 ).getBallot() );
+        assertEquals( "value", instance( store, 5 ).getValue() );
+        assertEquals( 2002, instance( store, 6 ).getBallot() );
+        assertNull( instance( store, 6 ).getValue() );
+        assertEquals( 2002, store.getPromisedBallot( new InstanceId( 100 ), instance( store, 100 ) ) );
+        assertFalse( store.promiseFollowing( new InstanceId( 3 ), 3003 ) );
+    }
+
+    @Test
+    public void shouldRejectLowerBallotsForFollowingInstancesAfterRestart() throws Throwable
+    {
+        FileAcceptorInstanceStore store = start( 1000 );
+        AcceptorContext context = new AcceptorContext( logging(), store );
+        // Read from the log before the promise for following instances
+        promise( store, 7, 1500 );
+        Message<?> reply = prepare( context, 5, 2002 );
+        assertEquals( ProposerMessage.promise, reply.getMessageType() );
+        assertEquals( "true", reply.getHeader( ProposerMessage.PROMISED_FOLLOWING ) );
+        stop( store );
+
+        store = start( 1000 );
+        context = new AcceptorContext( logging(), store );
+        assertFalse( context.promiseFollowing( new InstanceId( 5 ), 1001 ) );
+        for ( long id : new long[]{6, 7, 100} )
+        {
+            reply = prepare( context, id, 1001 );
+            assertEquals( ProposerMessage.rejectPrepare, reply.getMessageType() );
+            assertEquals( 2002, ((ProposerMessage.RejectPrepare) reply.getPayload()).getBallot() );
+        }
+        assertEquals( ProposerMessage.promise, prepare( context, 4, 1001 ).getMessageType() );
+    }
+
+    @Test
+    public void shouldOnlyHoldBackAcceptorReplies() throws Throwable
+    {
+        FileAcceptorInstanceStore store = start( 1000 );
+        final List<Message> sent = new ArrayList<Message>();
+        MessageProcessor sender = store.forceBefore( new MessageProcessor()
+        {
+            @Override
+            public void process( Message<? extends MessageType> message )
+            {
+                synchronized ( sent )
+                {
+                    sent.add( message );
+                }
+            }
+        } );
+
+        // The promise is never forced, so the reply is never sent
+        shutdownLog( store );
+        promise( store, 1, 1001 );
+        sender.process( Message.to( ProposerMessage.promise, "cluster://proposer", 1 ) );
+        sender.process( Message.to( HeartbeatMessage.i_am_alive, "cluster://proposer", 2 ) );
+
+        synchronized ( sent )
+        {
+            assertEquals( 1, sent.size() );
+            assertEquals( HeartbeatMessage.i_am_alive, sent.get( 0 ).getMessageType() );
+        }
+    }
+
+    @Test
+    public void shouldDropHeldRepliesAndStopAcceptingWhenLogCannotBeWritten() throws Throwable
+    {
+        FileAcceptorInstanceStore store = start( 1000 );
+        final List<Message> sent = new ArrayList<Message>();
+        MessageProcessor sender = store.forceBefore( new MessageProcessor()
+        {
+            @Override
+            public void process( Message<? extends MessageType> message )
+            {
+                synchronized ( sent )
+                {
+                    sent.add( message );
+                }
+            }
+        } );
+
+        shutdownLog( store );
+        promise( store, 1, 1001 );
+        sender.process( Message.to( ProposerMessage.promise, "cluster://proposer", 1 ) );
+        stop( store );
+
+        assertTrue( sent.isEmpty() );
+        try
+        {
+            instance( store, 2 );
+            fail( "Should not hand out instances once the log has failed" );
+        }
+        catch ( IllegalStateException e )
+        {
+            // Expected
+        }
+        sender.process( Message.to( ProposerMessage.accepted, "cluster://proposer", 2 ) );
+        assertTrue( sent.isEmpty() );
+    }
+
+    @Test
+    public void shouldSendMessagesInOrderAfterForcingRecords() throws Throwable
+    {
+        FileAcceptorInstanceStore store = start( 1000 );
+        final List<Message> sent = new ArrayList<Message>();
+        MessageProcessor sender = store.forceBefore( new MessageProcessor()
+        {
+            @Override
+            public void process( Message<? extends MessageType> message )
+            {
+                synchronized ( sent )
+                {
+                    sent.add( message );
+                }
+            }
+        } );
+
+        for ( int i = 0; i < 100; i++ )
+        {
+            promise( store, i, 1001 );
+            sender.process( Message.to( ProposerMessage.promise, "cluster://proposer", i ) );
+        }
+        stop( store );
+
+        assertEquals( 100, sent.size() );
+        for ( int i = 0; i < 100; i++ )
+        {
+            assertEquals( i, sent.get( i ).getPayload() );
+        }
+    }
+
+    @Test
+    public void shouldRemoveIncompleteRecordAtEndOfLog() throws Throwable
+    {
+        FileAcceptorInstanceStore store = start( 1000 );
+        accept( store, 1, "one" );
+        accept( store, 2, "two" );
+        stop( store );
+
+        File log = new File( directory, FileAcceptorInstanceStore.LOG_FILE );
+        long length = log.length();
+        RandomAccessFile file = new RandomAccessFile( log, "rw" );
+        file.setLength( length - 1 );
+        file.close();
+
+        store = start( 1000 );
+        assertEquals( "one", instance( store, 1 ).getValue() );
+        assertNull( instance( store, 2 ).getValue() );
+        accept( store, 3, "three" );
+        stop( store );
+
+        store = start( 1000 );
+        assertEquals( "one", instance( store, 1 ).getValue() );
+        assertEquals( "three", instance( store, 3 ).getValue() );
+    }
+
+    @Test
+    public void shouldCompactLogToInstancesThatAreKept() throws Throwable
+    {
+        FileAcceptorInstanceStore store = start( 10 );
+        char[] chars = new char[1024];
+        java.util.Arrays.fill( chars, 'x' );
+        String value = new String( chars );
+        for ( int i = 0; i < 2000; i++ )
+        {
+            promise( store, i, 1001 );
+            accept( store, i, value + i );
+        }
+        store.lastDelivered( new InstanceId( 1999 ) );
+        stop( store );
+
+        assertTrue( new File( directory, FileAcceptorInstanceStore.LOG_FILE ).length() < 100 * 1024 );
+
+        store = start( 10 );
+        assertNull( instance( store, 1989 ) );
+        assertEquals( value + 1990, instance( store, 1990 ).getValue() );
+        assertEquals( value + 1999, instance( store, 1999 ).getValue() );
+    }
+
+    @Test
+    public void shouldStartFromEmptyLogAfterClear() throws Throwable
+    {
+        FileAcceptorInstanceStore store = start( 1000 );
+        promise( store, 1, 1001 );
+        accept( store, 1, "one" );
+        store.clear();
+        promise( store, 2, 1001 );
+        stop( store );
+
+        store = start( 1000 );
+        assertEquals( -1, instance( store, 1 ).getBallot() );
+        assertNull( instance( store, 1 ).getValue() );
+        assertEquals( 1001, instance( store, 2 ).getBallot() );
+    }
+
+    private FileAcceptorInstanceStore start( int maxStored ) throws Throwable
+    {
+        FileAcceptorInstanceStore store = new FileAcceptorInstanceStore( directory, new MessageCodec(),
+                StringLogger.DEV_NULL, maxStored );
+        store.init();
+        store.start();
+        stores.add( store );
+        return store;
+    }
+
+    private void stop( FileAcceptorInstanceStore store ) throws Throwable
+    {
+        if ( stores.remove( store ) )
+        {
+            store.stop();
+            store.shutdown();
+        }
+    }
+
+    private void shutdownLog( FileAcceptorInstanceStore store ) throws Throwable
+    {
+        // Writing to a closed log fails just like a full or broken disk would
+        store.shutdown();
+    }
+
+    private Message<?> prepare( AcceptorContext context, long id, long ballot ) throws Throwable
+    {
+        final List<Message> replies = new ArrayList<Message>();
+        Message<AcceptorMessage> prepare = Message.to( AcceptorMessage.prepare, "cluster://acceptor",
+                new AcceptorMessage.PrepareState( ballot ) ).setHeader( Message.FROM, "cluster://proposer" )
+                .setHeader( InstanceId.INSTANCE, Long.toString( id ) );
+        AcceptorState.acceptor.handle( context, prepare, new MessageProcessor()
+        {
+            @Override
+            public void process( Message<? extends MessageType> message )
+            {
+                replies.add( message );
+            }
+        } );
+        assertEquals( 1, replies.size() );
+        return replies.get( 0 );
+    }
+
+    private Logging logging()
+    {
+        return new Logging()
+        {
+            @Override
+            public StringLogger getLogger( Class loggingClass )
+            {
+                return StringLogger.DEV_NULL;
+            }
+        };
+    }
+
+    private AcceptorInstance instance( FileAcceptorInstanceStore store, long id )
+    {
+        return store.getAcceptorInstance( new InstanceId( id ) );
+    }
+
+    private void promise( FileAcceptorInstanceStore store, long id, long ballot )
+    {
+        store.promise( new InstanceId( id ), instance( store, id ), ballot );
+    }
+
+    private void accept( FileAcceptorInstanceStore store, long id, Object value )
+    {
+        store.accept( new InstanceId( id ), instance( store, id ), value );
+    }
+}
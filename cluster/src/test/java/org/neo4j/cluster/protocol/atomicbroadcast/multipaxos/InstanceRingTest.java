@@ -0,0 +1,82 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.cluster.protocol.atomicbroadcast.multipaxos;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class InstanceRingTest
+{
+    private final InstanceRing<String> ring = new InstanceRing<String>( 4 );
+
+    @Test
+    public void shouldReuseSlotsOfPurgedInstances() throws Exception
+    {
+        for ( long id = 0; id < 100; id++ )
+        {
+            assertTrue( ring.put( id, "" + id ) );
+            ring.purge( id - 2 );
+        }
+
+        assertEquals( 4, ring.capacity() );
+        assertEquals( "99", ring.get( 99 ) );
+        assertEquals( "98", ring.get( 98 ) );
+        assertNull( ring.get( 97 ) );
+    }
+
+    @Test
+    public void shouldGrowWhenLiveInstancesShareASlot() throws Exception
+    {
+        ring.put( 1, "1" );
+        ring.put( 5, "5" );
+        ring.put( 13, "13" );
+
+        assertEquals( 16, ring.capacity() );
+        assertEquals( "1", ring.get( 1 ) );
+        assertEquals( "5", ring.get( 5 ) );
+        assertEquals( "13", ring.get( 13 ) );
+        assertNull( ring.get( 9 ) );
+    }
+
+    @Test
+    public void shouldNotKeepPurgedInstances() throws Exception
+    {
+        ring.put( 1, "1" );
+        ring.put( 2, "2" );
+        ring.purge( 1 );
+
+        assertNull( ring.get( 1 ) );
+        assertFalse( ring.put( 1, "1" ) );
+        assertNull( ring.get( 1 ) );
+        assertEquals( "2", ring.get( 2 ) );
+
+        ring.purge( 1000 );
+        assertNull( ring.get( 2 ) );
+
+        ring.clear();
+        assertTrue( ring.put( 1, "1" ) );
+        assertEquals( "1", ring.get( 1 ) );
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.cluster.protocol.atomicbroadcast.multipaxos;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertEquals;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class LearnerContextTest
+{
+    private final URI me = URI.create( "cluster://me" );
+    private final URI other = URI.create( "cluster://other" );
+    private final URI third = URI.create( "cluster://third" );
+    private final List<URI> members = asList( me, other, third );
+    private final List<URI> none = Collections.emptyList();
+
+    @Test
+    public void shouldOnlyCountInstancesDeliveredByAllMembers() throws Exception
+    {
+        LearnerContext context = new LearnerContext();
+        context.setLastDeliveredInstanceId( 20 );
+        context.delivered( other, 15 );
+
+        assertEquals( -1, context.getLastDeliveredInstanceInCluster( me, members, none ) );
+
+        context.delivered( third, 30 );
+        assertEquals( 15, context.getLastDeliveredInstanceInCluster( me, members, none ) );
+
+        context.delivered( other, 25 );
+        assertEquals( 20, context.getLastDeliveredInstanceInCluster( me, members, none ) );
+    }
+
+    @Test
+    public void shouldLeaveFailedMembersOut() throws Exception
+    {
+        LearnerContext context = new LearnerContext();
+        context.setLastDeliveredInstanceId( 20 );
+        context.delivered( other, 15 );
+
+        assertEquals( 15, context.getLastDeliveredInstanceInCluster( me, members, singletonList( third ) ) );
+    }
+
+    @Test
+    public void shouldForgetDeliveredInstancesWhenLeaving() throws Exception
+    {
+        LearnerContext context = new LearnerContext();
+        context.setLastDeliveredInstanceId( 20 );
+        context.delivered( other, 20 );
+        context.delivered( third, 20 );
+
+        context.leave();
+        context.setLastDeliveredInstanceId( 20 );
+
+        assertEquals( -1, context.getLastDeliveredInstanceInCluster( me, members, none ) );
+    }
+}
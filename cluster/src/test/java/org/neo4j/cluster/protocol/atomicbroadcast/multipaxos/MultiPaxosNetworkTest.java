@@ -38,7 +38,9 @@ import org.neo4j.cluster.NetworkedServerFactory;
 import org.neo4j.cluster.ProtocolServer;
 import org.neo4j.cluster.com.NetworkInstance;
 import org.neo4j.cluster.protocol.atomicbroadcast.AtomicBroadcast;
+import org.neo4j.cluster.com.message.MessageCodec;
 import org.neo4j.cluster.protocol.atomicbroadcast.AtomicBroadcastMap;
+import org.neo4j.cluster.protocol.atomicbroadcast.AtomicBroadcastSerializer;
 import org.neo4j.cluster.protocol.cluster.Cluster;
 import org.neo4j.cluster.protocol.cluster.ClusterConfiguration;
 import org.neo4j.cluster.protocol.cluster.ClusterListener;
@@ -142,11 +144,11 @@ public class MultiPaxosNetworkTest
         Snapshot snapshot3 = server3.newClient( Snapshot.class );
 
         final AtomicBroadcastMap<String, String> map = new AtomicBroadcastMap<String, String>( atomicBroadcast1,
-                snapshot1 );
+                snapshot1, new AtomicBroadcastSerializer( new MessageCodec(), true ) );
         final AtomicBroadcastMap<String, String> map2 = new AtomicBroadcastMap<String, String>( atomicBroadcast2,
-                snapshot2 );
+                snapshot2, new AtomicBroadcastSerializer( new MessageCodec(), true ) );
         final AtomicBroadcastMap<String, String> map3 = new AtomicBroadcastMap<String, String>( atomicBroadcast3,
-                snapshot3 );
+                snapshot3, new AtomicBroadcastSerializer( new MessageCodec(), true ) );
 
         final Semaphore semaphore = new Semaphore( -2 );
 
@@ -34,7 +34,9 @@ import org.neo4j.cluster.FixedNetworkLatencyStrategy;
 import org.neo4j.cluster.MultipleFailureLatencyStrategy;
 import org.neo4j.cluster.NetworkMock;
 import org.neo4j.cluster.protocol.atomicbroadcast.AtomicBroadcast;
+import org.neo4j.cluster.com.message.MessageCodec;
 import org.neo4j.cluster.protocol.atomicbroadcast.AtomicBroadcastMap;
+import org.neo4j.cluster.protocol.atomicbroadcast.AtomicBroadcastSerializer;
 import org.neo4j.cluster.protocol.cluster.ClusterRule;
 import org.neo4j.cluster.protocol.snapshot.Snapshot;
 import org.neo4j.cluster.timeout.FixedTimeoutStrategy;
@@ -57,9 +59,11 @@ public class MultiPaxosTest
             throws ExecutionException, InterruptedException, URISyntaxException
     {
         Map<String, String> map1 = new AtomicBroadcastMap<String, String>( cluster.getNodes().get( 0 ).newClient(
-                AtomicBroadcast.class ), cluster.getNodes().get( 0 ).newClient( Snapshot.class ) );
+                AtomicBroadcast.class ), cluster.getNodes().get( 0 ).newClient( Snapshot.class ),
+                new AtomicBroadcastSerializer( new MessageCodec(), true ) );
         Map<String, String> map2 = new AtomicBroadcastMap<String, String>( cluster.getNodes().get( 1 ).newClient(
-                AtomicBroadcast.class ), cluster.getNodes().get( 1 ).newClient( Snapshot.class ) );
+                AtomicBroadcast.class ), cluster.getNodes().get( 1 ).newClient( Snapshot.class ),
+                new AtomicBroadcastSerializer( new MessageCodec(), true ) );
 
         map1.put( "foo", "bar" );
 
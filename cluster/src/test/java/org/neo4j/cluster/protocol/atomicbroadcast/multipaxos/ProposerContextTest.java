@@ -0,0 +1,151 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.cluster.protocol.atomicbroadcast.multipaxos;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.neo4j.cluster.com.message.Message;
+import org.neo4j.cluster.protocol.atomicbroadcast.Payload;
+import org.neo4j.cluster.protocol.cluster.ClusterMessage;
+
+public class ProposerContextTest
+{
+    private final ProposerContext context = new ProposerContext(
+            new ProposerWindow( ProposerWindow.DEFAULT_SIZE, ProposerWindow.DEFAULT_MAX_SIZE ), true );
+
+    @Test
+    public void shouldProposeWaitingBroadcastsOneByOneUnlessBatchingIsEnabled() throws Exception
+    {
+        ProposerContext context = new ProposerContext();
+        context.pendingValues.offer( broadcast( "1", 10 ) );
+        context.pendingValues.offer( broadcast( "2", 10 ) );
+
+        Message<ProposerMessage> proposal = context.nextPendingProposal();
+
+        assertTrue( proposal.getPayload() instanceof Payload );
+        assertEquals( "1", proposal.getHeader( Message.CONVERSATION_ID ) );
+        assertEquals( 1, context.pendingValues.size() );
+    }
+
+    @Test
+    public void shouldProposeWaitingBroadcastsTogether() throws Exception
+    {
+        context.pendingValues.offer( broadcast( "1", 10 ) );
+        context.pendingValues.offer( broadcast( "2", 10 ) );
+        context.pendingValues.offer( broadcast( "3", 10 ) );
+
+        Message<ProposerMessage> proposal = context.nextPendingProposal();
+
+        Batch batch = proposal.getPayload();
+        assertEquals( 3, batch.size() );
+        assertEquals( "1", batch.getConversationId( 0 ) );
+        assertEquals( "3", batch.getConversationId( 2 ) );
+        assertTrue( context.pendingValues.isEmpty() );
+        assertNull( context.nextPendingProposal() );
+    }
+
+    @Test
+    public void shouldKeepBatchesWithinLimits() throws Exception
+    {
+        for ( int i = 0; i < ProposerContext.MAX_BATCH_VALUES + 1; i++ )
+        {
+            context.pendingValues.offer( broadcast( "" + i, 1 ) );
+        }
+        assertEquals( ProposerContext.MAX_BATCH_VALUES, ((Batch) context.nextPendingProposal().getPayload()).size() );
+        assertTrue( context.nextPendingProposal().getPayload() instanceof Payload );
+
+        context.pendingValues.offer( broadcast( "big", ProposerContext.MAX_BATCH_BYTES ) );
+        context.pendingValues.offer( broadcast( "small", 1 ) );
+        Message<ProposerMessage> proposal = context.nextPendingProposal();
+        assertTrue( proposal.getPayload() instanceof Payload );
+        assertEquals( "big", proposal.getHeader( Message.CONVERSATION_ID ) );
+    }
+
+    @Test
+    public void shouldProposeConfigurationChangesOnTheirOwn() throws Exception
+    {
+        context.pendingValues.offer( broadcast( "1", 10 ) );
+        context.pendingValues.offer( Message.internal( ProposerMessage.propose,
+                new ClusterMessage.ConfigurationChangeState() ) );
+        context.pendingValues.offer( broadcast( "2", 10 ) );
+
+        assertTrue( context.nextPendingProposal().getPayload() instanceof Payload );
+        assertTrue( context.nextPendingProposal().getPayload() instanceof ClusterMessage.ConfigurationChangeState );
+        assertTrue( context.nextPendingProposal().getPayload() instanceof Payload );
+    }
+
+    @Test
+    public void shouldProposeUnbookedValueFirst() throws Exception
+    {
+        context.pendingValues.offer( broadcast( "waiting", 10 ) );
+        context.bookInstance( new InstanceId( 1 ), broadcast( "booked", 10 ) );
+
+        context.unbookInstance( new InstanceId( 1 ) );
+
+        assertTrue( context.bookedInstances.isEmpty() );
+        assertEquals( "booked", ((Batch) context.nextPendingProposal().getPayload()).getConversationId( 0 ) );
+    }
+
+    @Test
+    public void shouldProposeAgainWhenInstanceIsLearnedWithAnotherValue() throws Exception
+    {
+        Message booked = broadcast( "booked", 10 );
+        context.bookInstance( new InstanceId( 1 ), booked );
+        context.bookInstance( new InstanceId( 2 ), broadcast( "learned", 10 ) );
+        context.pendingValues.offer( broadcast( "waiting", 10 ) );
+
+        assertEquals( booked, context.learned( new InstanceId( 1 ), new Payload( new byte[]{1}, 1 ) ) );
+        assertEquals( "waiting", context.learned( new InstanceId( 2 ), new Payload( new byte[10], 10 ) )
+                .getHeader( Message.CONVERSATION_ID ) );
+        assertNull( context.learned( new InstanceId( 3 ), new Payload( new byte[10], 10 ) ) );
+        assertTrue( context.bookedInstances.isEmpty() );
+    }
+
+    @Test
+    public void shouldSkipPhase1ForNewInstancesUntilPreempted() throws Exception
+    {
+        List<URI> acceptors = Arrays.asList( new URI( "cluster://a" ), new URI( "cluster://b" ) );
+        assertEquals( -1, context.getLeaderBallot( new InstanceId( 6 ), acceptors ) );
+
+        context.lead( 1001, new InstanceId( 5 ), acceptors );
+
+        assertEquals( -1, context.getLeaderBallot( new InstanceId( 5 ), acceptors ) );
+        assertEquals( 1001, context.getLeaderBallot( new InstanceId( 6 ), acceptors ) );
+        assertEquals( -1, context.getLeaderBallot( new InstanceId( 6 ), acceptors.subList( 0, 1 ) ) );
+
+        context.stopLeading();
+
+        assertEquals( -1, context.getLeaderBallot( new InstanceId( 6 ), acceptors ) );
+    }
+
+    private Message broadcast( String conversationId, int length )
+    {
+        return Message.internal( ProposerMessage.propose, new Payload( new byte[length], length ) )
+                .setHeader( Message.CONVERSATION_ID, conversationId );
+    }
+}
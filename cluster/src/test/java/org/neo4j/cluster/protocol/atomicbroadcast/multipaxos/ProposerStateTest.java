@@ -0,0 +1,244 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.cluster.protocol.atomicbroadcast.multipaxos;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+import org.junit.Test;
+import org.neo4j.cluster.com.message.Message;
+import org.neo4j.cluster.com.message.MessageProcessor;
+import org.neo4j.cluster.com.message.MessageType;
+import org.neo4j.cluster.protocol.atomicbroadcast.Payload;
+import org.neo4j.cluster.protocol.cluster.ClusterConfiguration;
+import org.neo4j.cluster.protocol.cluster.ClusterContext;
+import org.neo4j.cluster.protocol.heartbeat.HeartbeatContext;
+import org.neo4j.cluster.statemachine.State;
+import org.neo4j.cluster.timeout.FixedTimeoutStrategy;
+import org.neo4j.cluster.timeout.Timeouts;
+import org.neo4j.kernel.impl.util.StringLogger;
+import org.neo4j.kernel.logging.Logging;
+
+/**
+ * Runs the proposer, acceptor and learner state machines of three members against each other, delivering
+ * messages in the order they were sent.
+ */
+public class ProposerStateTest
+{
+    private final Queue<Message<?>> network = new LinkedList<Message<?>>();
+    private final Map<URI, Member> members = new LinkedHashMap<URI, Member>();
+    private final List<String> sent = new ArrayList<String>();
+
+    @Test
+    public void shouldSkipPhase1AfterTheFirstInstanceOfTheSameProposer() throws Throwable
+    {
+        // given
+        Member a = cluster( "a", "b", "c" );
+
+        // when
+        broadcast( a, "1" );
+
+        // then
+        assertEquals( 3, count( "prepare" ) );
+
+        // when
+        sent.clear();
+        broadcast( a, "2" );
+
+        // then
+        assertEquals( 0, count( "prepare" ) );
+        assertEquals( 3, count( "accept" ) );
+        assertAllDelivered( "1", "2" );
+    }
+
+    @Test
+    public void shouldFallBackToPhase1WhenAnotherProposerTakesOverWithAHigherBallot() throws Throwable
+    {
+        // given a leads, and skips phase 1
+        Member a = cluster( "a", "b", "c" );
+        Member b = members.get( new URI( "cluster://b" ) );
+        broadcast( a, "a1" );
+        broadcast( a, "a2" );
+
+        // when b takes over with a higher ballot
+        sent.clear();
+        broadcast( b, "b1" );
+
+        // then b had to run phase 1, since the acceptors promised a's ballot
+        assertEquals( 3, count( "prepare" ) );
+        assertTrue( b.multiPaxos.proposerContext.leaderBallot > a.multiPaxos.proposerContext.leaderBallot );
+
+        // when a goes on as if it still led
+        sent.clear();
+        broadcast( a, "a3" );
+
+        // then its accept is rejected and it runs phase 1 again with a higher ballot
+        assertEquals( 3, count( "rejectAccept" ) );
+        assertTrue( count( "prepare" ) >= 3 );
+        assertAllDelivered( "a1", "a2", "b1", "a3" );
+
+        // when
+        sent.clear();
+        broadcast( b, "b2" );
+        broadcast( a, "a4" );
+
+        // then every value is learned once, in the same order everywhere
+        assertAllDelivered( "a1", "a2", "b1", "a3", "b2", "a4" );
+    }
+
+    private Member cluster( String... names ) throws Exception
+    {
+        List<URI> uris = new ArrayList<URI>();
+        for ( String name : names )
+        {
+            uris.add( new URI( "cluster://" + name ) );
+        }
+        for ( URI uri : uris )
+        {
+            members.put( uri, new Member( uri, uris ) );
+        }
+        return members.get( uris.get( 0 ) );
+    }
+
+    private void broadcast( Member member, String value ) throws Throwable
+    {
+        member.handle( Message.internal( ProposerMessage.propose, new Payload( value.getBytes( "UTF-8" ),
+                value.length() ) ).setHeader( Message.CONVERSATION_ID, value ) );
+        for ( Message<?> message; (message = network.poll()) != null; )
+        {
+            members.get( new URI( message.getHeader( Message.TO ) ) ).handle( message );
+        }
+    }
+
+    private int count( String messageType )
+    {
+        int count = 0;
+        for ( String type : sent )
+        {
+            if ( type.equals( messageType ) )
+            {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void assertAllDelivered( String... values )
+    {
+        for ( Member member : members.values() )
+        {
+            assertEquals( member.uri.toString(), Arrays.asList( values ), member.delivered );
+        }
+        assertEquals( values.length, new HashSet<String>( Arrays.asList( values ) ).size() );
+    }
+
+    private class Member implements MessageProcessor
+    {
+        private final URI uri;
+        private final MultiPaxosContext multiPaxos;
+        private final AcceptorContext acceptorContext;
+        private final Queue<Message<?>> internal = new LinkedList<Message<?>>();
+        private final List<String> delivered = new ArrayList<String>();
+        private State proposer = ProposerState.proposer;
+        private State acceptor = AcceptorState.acceptor;
+        private State learner = LearnerState.learner;
+        private Message<?> current;
+
+        Member( URI uri, List<URI> members )
+        {
+            this.uri = uri;
+            Logging logging = new Logging()
+            {
+                @Override
+                public StringLogger getLogger( Class loggingClass )
+                {
+                    return StringLogger.DEV_NULL;
+                }
+            };
+            ProposerContext proposerContext = new ProposerContext();
+            LearnerContext learnerContext = new LearnerContext();
+            Timeouts timeouts = new Timeouts( this, new FixedTimeoutStrategy( 1000 ) );
+            ClusterContext clusterContext = new ClusterContext( proposerContext, learnerContext,
+                    new ClusterConfiguration( "default", members ), timeouts, null, logging );
+            clusterContext.setMe( uri );
+            acceptorContext = new AcceptorContext( logging, new InMemoryAcceptorInstanceStore() );
+            multiPaxos = new MultiPaxosContext( clusterContext, proposerContext, acceptorContext, learnerContext,
+                    new HeartbeatContext( clusterContext, learnerContext, null ), timeouts );
+        }
+
+        @Override
+        public void process( Message<? extends MessageType> message )
+        {
+            if ( current != null && current.hasHeader( Message.CONVERSATION_ID ) &&
+                    !message.hasHeader( Message.CONVERSATION_ID ) )
+            {
+                message.setHeader( Message.CONVERSATION_ID, current.getHeader( Message.CONVERSATION_ID ) );
+            }
+            if ( message.hasHeader( Message.TO ) )
+            {
+                message.setHeader( Message.FROM, uri.toString() );
+                sent.add( message.getMessageType().name() );
+                network.offer( message );
+            }
+            else
+            {
+                internal.offer( message );
+            }
+        }
+
+        @SuppressWarnings( "unchecked" )
+        void handle( Message<?> message ) throws Throwable
+        {
+            internal.offer( message );
+            while ( (current = internal.poll()) != null )
+            {
+                MessageType type = current.getMessageType();
+                if ( type instanceof ProposerMessage )
+                {
+                    proposer = proposer.handle( multiPaxos, current, this );
+                }
+                else if ( type instanceof AcceptorMessage )
+                {
+                    acceptor = acceptor.handle( acceptorContext, current, this );
+                }
+                else if ( type instanceof LearnerMessage )
+                {
+                    learner = learner.handle( multiPaxos, current, this );
+                }
+                else if ( type == AtomicBroadcastMessage.broadcastResponse )
+                {
+                    Payload payload = current.getPayload();
+                    delivered.add( new String( payload.getBuf(), 0, payload.getLen(), "UTF-8" ) );
+                }
+            }
+        }
+    }
+}
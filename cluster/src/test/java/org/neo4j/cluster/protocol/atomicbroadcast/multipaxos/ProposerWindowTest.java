@@ -0,0 +1,116 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.cluster.protocol.atomicbroadcast.multipaxos;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class ProposerWindowTest
+{
+    private final ProposerWindow window = new ProposerWindow( 2, 4 );
+
+    @Test
+    public void shouldGrowWhenInstancesCloseQuicklyAndValuesAreWaiting() throws Exception
+    {
+        closeInstances( 0, 2, 10, true );
+        assertEquals( 3, window.getSize() );
+
+        closeInstances( 2, 3, 10, true );
+        assertEquals( 4, window.getSize() );
+
+        closeInstances( 5, 10, 10, true );
+        assertEquals( 4, window.getSize() );
+        assertEquals( 10, window.getCloseLatency() );
+        assertEquals( 15, window.getClosedInstances() );
+    }
+
+    @Test
+    public void shouldStartAtMaxSizeIfConfiguredLarger() throws Exception
+    {
+        ProposerWindow window = new ProposerWindow( 10, 4 );
+
+        assertEquals( 4, window.getSize() );
+        assertEquals( 4, window.getMaxSize() );
+    }
+
+    @Test
+    public void shouldNotGrowWhenNothingIsWaiting() throws Exception
+    {
+        closeInstances( 0, 10, 10, false );
+        assertEquals( 2, window.getSize() );
+    }
+
+    @Test
+    public void shouldHalveOnceForInstancesFailingTogether() throws Exception
+    {
+        ProposerWindow window = new ProposerWindow( 8, 8 );
+        for ( int i = 0; i < 8; i++ )
+        {
+            window.opened( new InstanceId( i ), 0 );
+        }
+        assertEquals( 8, window.getOpenInstances() );
+
+        for ( int i = 0; i < 8; i++ )
+        {
+            window.failed( new InstanceId( i ), 100 );
+        }
+        assertEquals( 4, window.getSize() );
+        assertEquals( 1, window.getShrinks() );
+
+        window.opened( new InstanceId( 8 ), 200 );
+        window.failed( new InstanceId( 8 ), 300 );
+        assertEquals( 2, window.getSize() );
+    }
+
+    @Test
+    public void shouldNotShrinkBelowOne() throws Exception
+    {
+        for ( int i = 0; i < 5; i++ )
+        {
+            window.opened( new InstanceId( i ), i * 10 + 1 );
+            window.failed( new InstanceId( i ), i * 10 + 5 );
+        }
+        assertEquals( 1, window.getSize() );
+    }
+
+    @Test
+    public void shouldStopTrackingForgottenInstances() throws Exception
+    {
+        window.opened( new InstanceId( 1 ), 0 );
+        window.forget( new InstanceId( 1 ) );
+        window.failed( new InstanceId( 1 ), 10 );
+        window.closed( new InstanceId( 1 ), 10, true );
+
+        assertEquals( 0, window.getOpenInstances() );
+        assertEquals( 2, window.getSize() );
+        assertEquals( 0, window.getClosedInstances() );
+    }
+
+    private void closeInstances( long first, int count, long latency, boolean valuesWaiting )
+    {
+        for ( long id = first; id < first + count; id++ )
+        {
+            window.opened( new InstanceId( id ), id * 100 );
+            window.closed( new InstanceId( id ), id * 100 + latency, valuesWaiting );
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.cluster.protocol.heartbeat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URI;
+
+import org.junit.Test;
+
+public class PhiAccrualFailureDetectorTest
+{
+    private final URI member = URI.create( "cluster://server1" );
+    private final PhiAccrualFailureDetector detector = new PhiAccrualFailureDetector( 8.0, 100, 100, 1000 );
+
+    @Test
+    public void shouldSuspectRegularMemberShortlyAfterItMissesAHeartbeat() throws Exception
+    {
+        long last = heartbeats( 0, 1000, 20 );
+
+        long delay = detector.getSuspicionDelay( member );
+        assertEquals( 1523, delay );
+
+        assertEquals( 0.0, detector.phi( member, last + 500 ), 0.0 );
+        assertTrue( detector.isAvailable( member, last + delay - 1 ) );
+        assertFalse( detector.isAvailable( member, last + delay ) );
+        assertEquals( delay - 200, detector.getTimeUntilSuspected( member, last + 200 ) );
+        assertEquals( -1, detector.getTimeUntilSuspected( member, last + delay ) );
+    }
+
+    @Test
+    public void shouldGiveMemberWithUnevenHeartbeatsMoreTime() throws Exception
+    {
+        long now = 0;
+        for ( int i = 0; i < 20; i++ )
+        {
+            // Every fifth heartbeat is held up by a pause
+            now += i % 5 == 4 ? 3000 : 1000;
+            detector.heartbeat( member, now );
+        }
+
+        long delay = detector.getSuspicionDelay( member );
+        assertTrue( "Delay was " + delay, delay > 5000 );
+        assertTrue( detector.isAvailable( member, now + 3000 ) );
+    }
+
+    @Test
+    public void shouldAddRoundTripToExpectedInterval() throws Exception
+    {
+        heartbeats( 0, 1000, 20 );
+        detector.roundTrip( member, 400 );
+
+        assertEquals( 1923, detector.getSuspicionDelay( member ) );
+        assertEquals( 400, detector.getRoundTrip( member ) );
+    }
+
+    @Test
+    public void shouldNotSuspectMemberBeforeAHeartbeatIntervalHasPassed() throws Exception
+    {
+        // Busy members send other messages much more often than heartbeats, but go quiet for up to an interval
+        long last = heartbeats( 0, 10, 100 );
+
+        assertEquals( 1000, detector.getSuspicionDelay( member ) );
+        assertTrue( detector.isAvailable( member, last + 999 ) );
+        assertFalse( detector.isAvailable( member, last + 1000 ) );
+    }
+
+    @Test
+    public void shouldNotSuspectRegularMemberDuringAnAcceptablePause() throws Exception
+    {
+        // Heartbeat interval and timeout of a cluster client
+        PhiAccrualFailureDetector detector = new PhiAccrualFailureDetector(
+                PhiAccrualFailureDetector.DEFAULT_THRESHOLD, 10000, 5000 );
+        long now = 0;
+        for ( int i = 0; i < 50; i++ )
+        {
+            now += 10000;
+            detector.heartbeat( member, now );
+        }
+
+        assertTrue( detector.isAvailable( member, now + 15000 ) );
+        assertTrue( "Delay was " + detector.getSuspicionDelay( member ),
+                detector.getSuspicionDelay( member ) > 15000 );
+        assertFalse( detector.isAvailable( member, now + 20000 ) );
+    }
+
+    @Test
+    public void shouldKeepOnlyLatestIntervals() throws Exception
+    {
+        long last = heartbeats( 0, 5000, 50 );
+        heartbeats( last, 1000, 100 );
+
+        assertEquals( 100, detector.getSampleCount( member ) );
+        assertEquals( 1000, detector.getMeanInterval( member ) );
+        assertEquals( 100, detector.getStdDeviation( member ) );
+    }
+
+    @Test
+    public void shouldSuspectMemberThatHasNotBeenHeardFrom() throws Exception
+    {
+        assertEquals( Double.POSITIVE_INFINITY, detector.phi( member, 0 ), 0.0 );
+        assertFalse( detector.isAvailable( member, 0 ) );
+        assertEquals( -1, detector.getSuspicionDelay( member ) );
+
+        heartbeats( 0, 1000, 5 );
+        detector.forget( member );
+
+        assertFalse( detector.isAvailable( member, 4000 ) );
+        assertEquals( 0, detector.getMembers().size() );
+    }
+
+    private long heartbeats( long from, long interval, int count )
+    {
+        long now = from;
+        for ( int i = 0; i < count; i++ )
+        {
+            now += interval;
+            detector.heartbeat( member, now );
+        }
+        return now;
+    }
+}
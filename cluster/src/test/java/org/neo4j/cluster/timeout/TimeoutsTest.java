@@ -0,0 +1,198 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.cluster.timeout;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.neo4j.cluster.com.message.Message.internal;
+import static org.neo4j.cluster.timeout.TimeoutKey.timeoutKey;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.neo4j.cluster.com.message.Message;
+import org.neo4j.cluster.com.message.MessageProcessor;
+import org.neo4j.cluster.com.message.MessageType;
+
+public class TimeoutsTest
+{
+    private final List<Object> triggered = new ArrayList<Object>();
+    private final List<Object> cancelled = new ArrayList<Object>();
+
+    private final Timeouts timeouts = new Timeouts( new MessageProcessor()
+    {
+        @Override
+        public void process( Message<? extends MessageType> message )
+        {
+            triggered.add( message.getPayload() );
+        }
+    }, new PayloadTimeoutStrategy(), 10, 8 );
+
+    @Test
+    public void shouldTriggerTimeoutWhenDueAndNotBefore() throws Exception
+    {
+        timeouts.tick( 1000 );
+        timeouts.setTimeout( "a", timeout( 25 ) );
+
+        timeouts.tick( 1010 );
+        timeouts.tick( 1020 );
+        assertEquals( 0, triggered.size() );
+
+        timeouts.tick( 1025 );
+        assertEquals( list( 25L ), triggered );
+        assertEquals( 0, timeouts.getTimeouts().size() );
+    }
+
+    @Test
+    public void shouldTriggerTimeoutsSeveralRevolutionsAhead() throws Exception
+    {
+        // The wheel covers 80 ms, so these are one and a half and five revolutions away
+        timeouts.setTimeout( "a", timeout( 120 ) );
+        timeouts.setTimeout( "b", timeout( 400 ) );
+        timeouts.setTimeout( "c", timeout( 5 ) );
+
+        for ( long time = 0; time <= 500; time += 10 )
+        {
+            timeouts.tick( time );
+            if ( time == 110 || time == 390 )
+            {
+                assertEquals( time == 110 ? 1 : 2, triggered.size() );
+            }
+        }
+
+        assertEquals( list( 5L, 120L, 400L ), triggered );
+    }
+
+    @Test
+    public void shouldTriggerEverythingDueWhenTimeJumpsPastTheWholeWheel() throws Exception
+    {
+        timeouts.setTimeout( "a", timeout( 30 ) );
+        timeouts.setTimeout( "b", timeout( 70 ) );
+        timeouts.setTimeout( "c", timeout( 1000 ) );
+
+        timeouts.tick( 500 );
+
+        assertEquals( list( 30L, 70L ), triggered );
+        assertEquals( 1, timeouts.getTimeouts().size() );
+
+        timeouts.tick( 1000 );
+        assertEquals( list( 30L, 70L, 1000L ), triggered );
+    }
+
+    @Test
+    public void shouldNotTriggerCancelledTimeout() throws Exception
+    {
+        timeouts.setTimeout( "a", timeout( 20 ) );
+        timeouts.setTimeout( "b", timeout( 20 ) );
+        timeouts.setTimeout( "c", timeout( 20 ) );
+
+        timeouts.cancelTimeout( "b" );
+        timeouts.cancelTimeout( "b" );
+
+        timeouts.tick( 50 );
+        assertEquals( 2, triggered.size() );
+        assertEquals( list( 20L ), cancelled );
+    }
+
+    @Test
+    public void shouldReplaceTimeoutSetWithSameKey() throws Exception
+    {
+        timeouts.setTimeout( timeoutKey( "heartbeat", "server1" ), timeout( 20 ) );
+        timeouts.setTimeout( timeoutKey( "heartbeat", "server1" ), timeout( 60 ) );
+
+        timeouts.tick( 30 );
+        assertEquals( 0, triggered.size() );
+        assertEquals( (Object) 60L, timeouts.getTimeoutMessage( timeoutKey( "heartbeat", "server1" ) ).getPayload() );
+
+        timeouts.tick( 60 );
+        assertEquals( list( 60L ), triggered );
+        assertNull( timeouts.getTimeoutMessage( timeoutKey( "heartbeat", "server1" ) ) );
+    }
+
+    @Test
+    public void shouldTriggerTimeoutSetForAnAlreadyPassedTimeOnNextTick() throws Exception
+    {
+        timeouts.tick( 100 );
+        timeouts.setTimeout( "a", timeout( -50 ) );
+
+        timeouts.tick( 101 );
+        assertEquals( list( -50L ), triggered );
+    }
+
+    @Test
+    public void shouldNotTriggerAnythingAfterCancellingAll() throws Exception
+    {
+        timeouts.setTimeout( "a", timeout( 10 ) );
+        timeouts.setTimeout( "b", timeout( 100 ) );
+
+        timeouts.cancelAllTimeouts();
+        timeouts.tick( 200 );
+
+        assertEquals( 0, triggered.size() );
+        assertEquals( 2, cancelled.size() );
+    }
+
+    private Message<TestMessage> timeout( long after )
+    {
+        return internal( TestMessage.timeout, after );
+    }
+
+    private List<Object> list( Object... values )
+    {
+        List<Object> list = new ArrayList<Object>();
+        for ( Object value : values )
+        {
+            list.add( value );
+        }
+        return list;
+    }
+
+    private enum TestMessage implements MessageType
+    {
+        timeout
+    }
+
+    private class PayloadTimeoutStrategy implements TimeoutStrategy
+    {
+        @Override
+        public long timeoutFor( Message message )
+        {
+            return (Long) message.getPayload();
+        }
+
+        @Override
+        public void timeoutTriggered( Message timeoutMessage )
+        {
+        }
+
+        @Override
+        public void timeoutCancelled( Message timeoutMessage )
+        {
+            cancelled.add( timeoutMessage.getPayload() );
+        }
+
+        @Override
+        public void tick( long now )
+        {
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.com;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the block framing that transaction streams are sent with:
+ * {@link BlockLogBuffer} on the writing side and {@link BlockLogReader} on the
+ * reading side. The transaction sizes span a single small commit up to the kind
+ * of batch a slave pulls when catching up.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 10, time = 1 )
+@Fork( 1 )
+public class BlockLogBenchmark
+{
+    @Param( { "100", "10000", "1000000" } )
+    public int transactionSize;
+
+    private byte[] transaction;
+    private ChannelBuffer target;
+    private ChannelBuffer framed;
+    private ByteBuffer readBuffer;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        transaction = new byte[transactionSize];
+        for ( int i = 0; i < transaction.length; i++ )
+        {
+            transaction[i] = (byte) i;
+        }
+        target = ChannelBuffers.dynamicBuffer( transactionSize + transactionSize / 100 + 16 );
+        readBuffer = ByteBuffer.allocate( 64 * 1024 );
+        framed = ChannelBuffers.dynamicBuffer();
+        BlockLogBuffer buffer = new BlockLogBuffer( framed );
+        buffer.put( transaction );
+        buffer.done();
+    }
+
+    /**
+     * Writes a transaction the way commands are serialized, one primitive at a time.
+     */
+    @Benchmark
+    public int writePrimitives() throws IOException
+    {
+        target.clear();
+        BlockLogBuffer buffer = new BlockLogBuffer( target );
+        int i = 0;
+        for ( ; i + 15 <= transactionSize; i += 15 )
+        {
+            buffer.put( (byte) 1 ).putLong( i ).putInt( i ).putShort( (short) i );
+        }
+        for ( ; i < transactionSize; i++ )
+        {
+            buffer.put( (byte) i );
+        }
+        buffer.done();
+        return target.writerIndex();
+    }
+
+    @Benchmark
+    public int writeArray() throws IOException
+    {
+        target.clear();
+        BlockLogBuffer buffer = new BlockLogBuffer( target );
+        buffer.put( transaction );
+        buffer.done();
+        return target.writerIndex();
+    }
+
+    /**
+     * Writes a transaction from a channel, which is how whole log files are streamed.
+     */
+    @Benchmark
+    public int writeFromChannel() throws IOException
+    {
+        target.clear();
+        BlockLogBuffer buffer = new BlockLogBuffer( target );
+        ReadableByteChannel source = Channels.newChannel( new ByteArrayInputStream( transaction ) );
+        int written = buffer.write( source );
+        buffer.done();
+        return written;
+    }
+
+    @Benchmark
+    public long read() throws IOException
+    {
+        BlockLogReader reader = new BlockLogReader( framed.duplicate() );
+        long total = 0;
+        int read;
+        do
+        {
+            readBuffer.clear();
+            read = reader.read( readBuffer );
+            total += read > 0 ? read : 0;
+        }
+        while ( read > 0 );
+        return total;
+    }
+}
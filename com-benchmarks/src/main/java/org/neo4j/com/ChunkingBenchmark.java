@@ -0,0 +1,117 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.com;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures splitting a response into chunks with {@link ChunkingChannelBuffer}
+ * and reassembling it with {@link DechunkingChannelBuffer}, which is what every
+ * master/slave response goes through. Run with {@code -prof gc} to see the
+ * allocation rate per message next to the throughput.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 10, time = 1 )
+@Fork( 1 )
+public class ChunkingBenchmark
+{
+    private static final byte INTERNAL_PROTOCOL_VERSION = 2;
+    private static final byte APPLICATION_PROTOCOL_VERSION = 1;
+
+    @Param( { "64", "4096", "1048576" } )
+    public int messageSize;
+
+    // The smallest allowed and the default ha.com_chunk_size
+    @Param( { "1024", "2097152" } )
+    public int chunkSize;
+
+    private final RecordingChannel channel = new RecordingChannel();
+    private byte[] payload;
+    private byte[] readBack;
+
+    @Setup
+    public void setUp()
+    {
+        payload = new byte[messageSize];
+        for ( int i = 0; i < payload.length; i++ )
+        {
+            payload[i] = (byte) i;
+        }
+        readBack = new byte[messageSize];
+        // Record one message so that there's something to dechunk
+        chunk();
+    }
+
+    @Benchmark
+    public int chunk()
+    {
+        channel.clear();
+        ChunkingChannelBuffer buffer = new ChunkingChannelBuffer( ChannelBuffers.dynamicBuffer(),
+                channel.channel(), chunkSize, INTERNAL_PROTOCOL_VERSION, APPLICATION_PROTOCOL_VERSION );
+        buffer.writeBytes( payload );
+        buffer.done();
+        return channel.chunks().size();
+    }
+
+    @Benchmark
+    public void dechunk( Blackhole blackhole )
+    {
+        DechunkingChannelBuffer buffer = new DechunkingChannelBuffer( channel.replay(), 1,
+                INTERNAL_PROTOCOL_VERSION, APPLICATION_PROTOCOL_VERSION );
+        buffer.readBytes( readBack );
+        blackhole.consume( readBack );
+    }
+
+    @Benchmark
+    public void chunkSmallWrites( Blackhole blackhole )
+    {
+        // Responses are mostly written one primitive at a time
+        channel.clear();
+        ChunkingChannelBuffer buffer = new ChunkingChannelBuffer( ChannelBuffers.dynamicBuffer(),
+                channel.channel(), chunkSize, INTERNAL_PROTOCOL_VERSION, APPLICATION_PROTOCOL_VERSION );
+        for ( int i = 0; i + 8 <= messageSize; i += 8 )
+        {
+            buffer.writeLong( i );
+        }
+        buffer.done();
+        for ( ChannelBuffer chunk : channel.chunks() )
+        {
+            blackhole.consume( chunk );
+        }
+    }
+}
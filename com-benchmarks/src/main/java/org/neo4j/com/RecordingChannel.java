@@ -0,0 +1,116 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.com;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.handler.queue.BlockingReadHandler;
+
+/**
+ * In-memory stand-in for a connected netty {@link Channel}, so that the
+ * chunking code can be measured without any socket or I/O thread involved.
+ * Every written {@link ChannelBuffer} is kept and can be replayed to a
+ * {@link DechunkingChannelBuffer} through {@link #replay()}.
+ */
+class RecordingChannel implements InvocationHandler
+{
+    private final List<ChannelBuffer> chunks = new ArrayList<ChannelBuffer>();
+    private final Channel channel = (Channel) Proxy.newProxyInstance( Channel.class.getClassLoader(),
+            new Class<?>[] { Channel.class }, this );
+
+    Channel channel()
+    {
+        return channel;
+    }
+
+    List<ChannelBuffer> chunks()
+    {
+        return chunks;
+    }
+
+    void clear()
+    {
+        chunks.clear();
+    }
+
+    /**
+     * @return a reader handing out the recorded chunks in the order they were
+     * written, each one as an independent view so that it can be replayed again.
+     */
+    BlockingReadHandler<ChannelBuffer> replay()
+    {
+        final Iterator<ChannelBuffer> iterator = chunks.iterator();
+        return new BlockingReadHandler<ChannelBuffer>()
+        {
+            @Override
+            public ChannelBuffer read( long timeout, TimeUnit unit )
+            {
+                return iterator.hasNext() ? iterator.next().duplicate() : null;
+            }
+        };
+    }
+
+    @Override
+    public Object invoke( Object proxy, Method method, Object[] args )
+    {
+        String name = method.getName();
+        if ( name.equals( "write" ) )
+        {
+            chunks.add( (ChannelBuffer) args[0] );
+            return Channels.succeededFuture( channel );
+        }
+        if ( name.equals( "isOpen" ) || name.equals( "isConnected" ) || name.equals( "isBound" )
+             || name.equals( "isReadable" ) || name.equals( "isWritable" ) )
+        {
+            return true;
+        }
+        if ( name.equals( "hashCode" ) )
+        {
+            return System.identityHashCode( proxy );
+        }
+        if ( name.equals( "equals" ) )
+        {
+            return proxy == args[0];
+        }
+        if ( name.equals( "toString" ) )
+        {
+            return "RecordingChannel";
+        }
+        if ( method.getReturnType() == ChannelFuture.class )
+        {
+            return Channels.succeededFuture( channel );
+        }
+        if ( method.getReturnType() == Integer.class || method.getReturnType() == int.class )
+        {
+            return 0;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.com;
+
+import static org.neo4j.com.RequestContext.lastAppliedTx;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.neo4j.com.RequestContext.Tx;
+import org.neo4j.kernel.impl.nioneo.store.StoreId;
+import org.neo4j.kernel.impl.util.StringLogger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the per request overhead of the protocol: the {@link RequestContext}
+ * that prefixes every request a slave sends to the master, and the strings that
+ * are part of it (data source names) and of many responses.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 10, time = 1 )
+@Fork( 1 )
+public class RequestContextBenchmark
+{
+    private static final String[] DATA_SOURCES = { "nioneodb", "lucene", "lucene-index", "spatial" };
+
+    @Param( { "1", "2", "4" } )
+    public int dataSources;
+
+    private ContextWritingClient client;
+    private RequestContext context;
+    private ChannelBuffer buffer;
+    private ChannelBuffer encodedString;
+    private ChannelBuffer encodedContext;
+    private LastAppliedTxs lastAppliedTxs;
+
+    @Setup
+    public void setUp()
+    {
+        client = new ContextWritingClient();
+        Tx[] txs = new Tx[dataSources];
+        for ( int i = 0; i < txs.length; i++ )
+        {
+            txs[i] = lastAppliedTx( DATA_SOURCES[i], 1000000L + i );
+        }
+        context = new RequestContext( 123456789L, 2, 42, txs, 1, 0xCAFEBABEL );
+        buffer = ChannelBuffers.dynamicBuffer( 256 );
+        encodedString = ChannelBuffers.dynamicBuffer( 64 );
+        Protocol.writeString( encodedString, DATA_SOURCES[0] );
+        encodedContext = ChannelBuffers.dynamicBuffer( 256 );
+        client.writeContext( null, context, encodedContext );
+        lastAppliedTxs = new LastAppliedTxs();
+    }
+
+    @Benchmark
+    public int writeContext()
+    {
+        buffer.clear();
+        client.writeContext( null, context, buffer );
+        return buffer.writerIndex();
+    }
+
+    @Benchmark
+    public int writeString()
+    {
+        buffer.clear();
+        Protocol.writeString( buffer, DATA_SOURCES[0] );
+        return buffer.writerIndex();
+    }
+
+    @Benchmark
+    public String readString()
+    {
+        encodedString.readerIndex( 0 );
+        return Protocol.readString( encodedString );
+    }
+
+    /**
+     * The transaction part of what the server decodes for every request.
+     */
+    @Benchmark
+    public Tx[] readLastAppliedTxs()
+    {
+        // Skip session id, read machine id and skip event identifier
+        encodedContext.readerIndex( 8 );
+        int machineId = encodedContext.readInt();
+        encodedContext.skipBytes( 4 );
+        Tx[] txs = new Tx[encodedContext.readByte()];
+        for ( int i = 0; i < txs.length; i++ )
+        {
+            txs[i] = lastAppliedTxs.read( encodedContext, machineId );
+        }
+        return txs;
+    }
+
+    /**
+     * Never started, so it doesn't connect anywhere; only here to get at
+     * {@link Client#writeContext(RequestType, RequestContext, ChannelBuffer)}.
+     */
+    private static class ContextWritingClient extends Client<Object>
+    {
+        ContextWritingClient()
+        {
+            super( "localhost", Protocol.PORT, StringLogger.DEV_NULL, new StoreId(), Protocol.DEFAULT_FRAME_LENGTH,
+                    (byte) 1, Client.DEFAULT_READ_RESPONSE_TIMEOUT_SECONDS,
+                    Client.DEFAULT_MAX_NUMBER_OF_CONCURRENT_CHANNELS_PER_CLIENT,
+                    Client.DEFAULT_MAX_NUMBER_OF_CONCURRENT_CHANNELS_PER_CLIENT, 1024 );
+        }
+    }
+}
@@ -43,11 +43,14 @@ public class BlockLogBuffer implements LogBuffer
     static final byte FULL_BLOCK_AND_MORE = 0;
     static final int MAX_SIZE = 256; /* soft limit, incl. header */
     static final int DATA_SIZE = MAX_SIZE-1;
+    // Size of the reads done by write(ReadableByteChannel), a whole number of blocks
+    private static final int TRANSFER_SIZE = DATA_SIZE * 256;
 
     private final ChannelBuffer target;
     // MAX_SIZE can be overcome by one primitive put(), the largest is 8 bytes
     private final byte[] byteArray = new byte[MAX_SIZE + 8/*largest atom*/];
     private final ByteBuffer byteBuffer = ByteBuffer.wrap( byteArray );
+    private ByteBuffer transferBuffer;
 
     public BlockLogBuffer( ChannelBuffer target )
     {
@@ -120,14 +123,44 @@ public class BlockLogBuffer implements LogBuffer
 
     public LogBuffer put( byte[] bytes ) throws IOException
     {
-        for ( int pos = 0; pos < bytes.length; )
+        put( bytes, 0, bytes.length );
+        return this;
+    }
+
+    /**
+     * Bulk version of the primitive puts. Blocks that can be filled entirely
+     * from {@code bytes} are written straight to the target, without going
+     * through the internal buffer. The block format is the same as if the
+     * bytes were put one by one, i.e. a full block is only written when there
+     * is at least one more byte after it, so that {@link #done()} always has
+     * something to terminate the stream with.
+     */
+    private void put( byte[] bytes, int offset, int length )
+    {
+        int pos = offset;
+        int end = offset + length;
+
+        // Top up the block we're currently filling
+        int toWrite = Math.min( MAX_SIZE - byteBuffer.position(), end - pos );
+        byteBuffer.put( bytes, pos, toWrite );
+        pos += toWrite;
+        if ( pos == end )
         {
-            int toWrite = Math.min( byteBuffer.remaining(), bytes.length - pos );
-            byteBuffer.put( bytes, pos, toWrite );
-            checkFlush();
-            pos += toWrite;
+            return;
         }
-        return this;
+        target.writeBytes( byteArray, 0, MAX_SIZE );
+        clearInternalBuffer();
+
+        // Whole blocks directly from the source array
+        while ( end - pos > DATA_SIZE )
+        {
+            target.writeByte( FULL_BLOCK_AND_MORE );
+            target.writeBytes( bytes, pos, DATA_SIZE );
+            pos += DATA_SIZE;
+        }
+
+        // The remainder, 1 to DATA_SIZE bytes, starts the next block
+        byteBuffer.put( bytes, pos, end - pos );
     }
 
     public LogBuffer put( char[] chars ) throws IOException
@@ -182,15 +215,29 @@ public class BlockLogBuffer implements LogBuffer
         clearInternalBuffer();
     }
 
+    /**
+     * Transfers everything readable from {@code data}, reading it in larger
+     * pieces than a block so that file channels don't see a read per block.
+     */
     public int write( ReadableByteChannel data ) throws IOException
     {
+        if ( transferBuffer == null )
+        {
+            transferBuffer = ByteBuffer.allocate( TRANSFER_SIZE );
+        }
         int result = 0;
         int bytesRead = 0;
-        while ( (bytesRead = data.read( byteBuffer )) >= 0 )
+        transferBuffer.clear();
+        while ( (bytesRead = data.read( transferBuffer )) >= 0 )
         {
-            checkFlush();
+            if ( !transferBuffer.hasRemaining() )
+            {
+                put( transferBuffer.array(), 0, transferBuffer.position() );
+                transferBuffer.clear();
+            }
             result += bytesRead;
         }
+        put( transferBuffer.array(), 0, transferBuffer.position() );
         return result;
     }
 }
@@ -54,12 +54,26 @@ public class BlockLogReader implements ReadableByteChannel
      * this op the buffer is flipped, ready to read.
      */
     private void readNextBlock()
+    {
+        readBlock( readBlockHeader() );
+    }
+
+    /**
+     * Reads the first byte of a block and sets {@link #moreBlocks} from it.
+     *
+     * @return the number of data bytes in the block.
+     */
+    private int readBlockHeader()
     {
         int blockSize = source.readUnsignedByte();
-        byteBuffer.clear();
         moreBlocks = blockSize == BlockLogBuffer.FULL_BLOCK_AND_MORE;
-        int limit = moreBlocks ? BlockLogBuffer.DATA_SIZE : blockSize;
-        byteBuffer.limit( limit );
+        return moreBlocks ? BlockLogBuffer.DATA_SIZE : blockSize;
+    }
+
+    private void readBlock( int dataSize )
+    {
+        byteBuffer.clear();
+        byteBuffer.limit( dataSize );
         source.readBytes( byteBuffer );
         byteBuffer.flip();
     }
@@ -84,7 +98,7 @@ public class BlockLogReader implements ReadableByteChannel
          * one chunk at a time until either it runs out of stuff coming
          * from the channel or the actual target buffer is filled.
          */
-        int bytesWanted = dst.limit();
+        int bytesWanted = dst.remaining();
         int bytesRead = 0;
         while ( bytesWanted > 0 )
         {
@@ -101,7 +115,8 @@ public class BlockLogReader implements ReadableByteChannel
 
     /**
      * Reads in at most {@code maxBytesWanted} in {@code dst} but never more
-     * than a chunk.
+     * than a chunk. A block that fits entirely in {@code dst} is read straight
+     * from the source into it, without going through the internal buffer.
      *
      * @param dst The buffer to write the reads bytes to
      * @param maxBytesWanted The maximum number of bytes to read.
@@ -111,7 +126,16 @@ public class BlockLogReader implements ReadableByteChannel
     {
         if ( byteBuffer.remaining() == 0 && moreBlocks )
         {
-            readNextBlock();
+            int blockSize = readBlockHeader();
+            if ( blockSize <= maxBytesWanted )
+            {
+                int limit = dst.limit();
+                dst.limit( dst.position() + blockSize );
+                source.readBytes( dst );
+                dst.limit( limit );
+                return blockSize;
+            }
+            readBlock( blockSize );
         }
 
         int bytesToRead = Math.min( maxBytesWanted, byteBuffer.remaining() );
@@ -54,7 +54,8 @@ import org.jboss.netty.channel.ChannelFutureListener;
  * Each chunk written is marked as pending and no more than
  * MAX_WRITE_AHEAD_CHUNKS are left pending - in such a case the write process
  * sleeps until some acknowledgment comes back from the other side that chunks
- * have been read.
+ * have been read. Chunks can also be held back by a {@link Throttle}, see
+ * {@link #setThrottle(Throttle)}.
  */
 public class ChunkingChannelBuffer implements ChannelBuffer, ChannelFutureListener
 {
@@ -72,6 +73,7 @@ public class ChunkingChannelBuffer implements ChannelBuffer, ChannelFutureListen
     private volatile boolean failure;
     private final byte applicationProtocolVersion;
     private final byte internalProtocolVersion;
+    private Throttle throttle;
 
     public ChunkingChannelBuffer( ChannelBuffer buffer, Channel channel, int capacity,
             byte internalProtocolVersion, byte applicationProtocolVersion )
@@ -84,6 +86,14 @@ public class ChunkingChannelBuffer implements ChannelBuffer, ChannelFutureListen
         addRoomForContinuationHeader();
     }
 
+    /**
+     * Limits the rate at which the chunks written from now on are sent, e.g. for store copies.
+     */
+    public void setThrottle( Throttle throttle )
+    {
+        this.throttle = throttle;
+    }
+
     private void addRoomForContinuationHeader()
     {
         continuationPosition = writerIndex();
@@ -545,11 +555,29 @@ public class ChunkingChannelBuffer implements ChannelBuffer, ChannelFutureListen
             throw new ComException( "Channel has been closed, so no need to try to write to it anymore. Client closed it?" );
 
         waitForClientToCatchUpOnReadingChunks();
+        throttle();
         ChannelFuture future = channel.write( buffer );
         future.addListener( this );
         writeAheadCounter.incrementAndGet();
     }
 
+    private void throttle()
+    {
+        if ( throttle == null )
+        {
+            return;
+        }
+        try
+        {
+            throttle.acquire( buffer.readableBytes() );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new ComException( "Interrupted while throttled", e );
+        }
+    }
+
     private void waitForClientToCatchUpOnReadingChunks()
     {
         // Wait until channel gets disconnected or client catches up.
@@ -33,6 +33,8 @@ import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import org.jboss.netty.bootstrap.ClientBootstrap;
@@ -69,20 +71,27 @@ public abstract class Client<T> extends LifecycleAdapter implements ChannelPipel
     // with the server in some way.
     public static final int DEFAULT_MAX_NUMBER_OF_CONCURRENT_CHANNELS_PER_CLIENT = 20;
     public static final int DEFAULT_READ_RESPONSE_TIMEOUT_SECONDS = 20;
+    private static final int TEMPORARY_BUFFER_SIZE = 1024 * 1024;
+    // How often unused channels are checked for liveness and the pool is topped up
+    // to its minimum number of unused channels.
+    private static final long CHANNEL_POOL_MAINTENANCE_INTERVAL_SECONDS = 5;
 
     private ClientBootstrap bootstrap;
     private final SocketAddress address;
     private final StringLogger msgLog;
     private ExecutorService executor;
+    private ScheduledExecutorService poolMaintainer;
     private ResourcePool<Triplet<Channel, ChannelBuffer, ByteBuffer>> channelPool;
     private final int frameLength;
     private final long readTimeout;
     private final int maxConcurrentChannels;
     private final int maxUnusedPoolSize;
+    private final int minUnusedPoolSize;
     private final byte applicationProtocolVersion;
     private final StoreId storeId;
-    private ResourceReleaser resourcePoolReleaser;
     private final List<MismatchingVersionHandler> mismatchingVersionHandlers;
+    // Temporary buffers of the channels, reused when channels are closed and opened again
+    private DirectBufferPool bufferPool;
 
     private int chunkSize;
 
@@ -90,6 +99,19 @@ public abstract class Client<T> extends LifecycleAdapter implements ChannelPipel
             StoreId storeId, int frameLength,
             byte applicationProtocolVersion, long readTimeout,
             int maxConcurrentChannels, int maxUnusedPoolSize, int chunkSize )
+    {
+        this( hostNameOrIp, port, logger, storeId, frameLength, applicationProtocolVersion, readTimeout,
+                maxConcurrentChannels, maxUnusedPoolSize, 0, chunkSize );
+    }
+
+    /**
+     * @param minUnusedPoolSize number of channels that are connected up front and kept
+     * connected in the background, so that requests seldom have to wait for a connect.
+     */
+    public Client( String hostNameOrIp, int port, StringLogger logger,
+            StoreId storeId, int frameLength,
+            byte applicationProtocolVersion, long readTimeout,
+            int maxConcurrentChannels, int maxUnusedPoolSize, int minUnusedPoolSize, int chunkSize )
     {
         assertChunkSizeIsWithinFrameSize( chunkSize, frameLength );
         
@@ -100,6 +122,7 @@ public abstract class Client<T> extends LifecycleAdapter implements ChannelPipel
         this.readTimeout = readTimeout;
         this.maxConcurrentChannels = maxConcurrentChannels;
         this.maxUnusedPoolSize = maxUnusedPoolSize;
+        this.minUnusedPoolSize = minUnusedPoolSize;
         this.chunkSize = chunkSize;
         this.mismatchingVersionHandlers = new ArrayList<MismatchingVersionHandler>( 2 );
         address = new InetSocketAddress( hostNameOrIp, port );
@@ -113,8 +136,9 @@ public abstract class Client<T> extends LifecycleAdapter implements ChannelPipel
         executor = Executors.newCachedThreadPool( new NamedThreadFactory( getClass().getSimpleName() + "@" + address ) );
         bootstrap = new ClientBootstrap( new NioClientSocketChannelFactory( executor, executor ) );
         bootstrap.setPipelineFactory( this );
+        bufferPool = new DirectBufferPool( (long) (maxConcurrentChannels + maxUnusedPoolSize) * TEMPORARY_BUFFER_SIZE );
         channelPool = new ResourcePool<Triplet<Channel, ChannelBuffer, ByteBuffer>>(
-                maxConcurrentChannels, maxUnusedPoolSize )
+                maxConcurrentChannels, maxUnusedPoolSize, minUnusedPoolSize )
         {
             @Override
             protected Triplet<Channel, ChannelBuffer, ByteBuffer> create()
@@ -126,7 +150,7 @@ public abstract class Client<T> extends LifecycleAdapter implements ChannelPipel
                 {
                     channel = Triplet.of( channelFuture.getChannel(),
                             ChannelBuffers.dynamicBuffer(),
-                            ByteBuffer.allocateDirect( 1024 * 1024 ) );
+                            bufferPool.acquire( TEMPORARY_BUFFER_SIZE ) );
                     msgLog.logMessage( "Opened a new channel to " + address, true );
                     return channel;
                 }
@@ -154,28 +178,58 @@ public abstract class Client<T> extends LifecycleAdapter implements ChannelPipel
                 {
                     channel.close();
                 }
+                bufferPool.release( resource.third() );
             }
-        };
-        /*
-         * This is here to couple the channel releasing to Response.close() itself and not
-         * to TransactionStream.close() as it is implemented here. The reason is that a Response
-         * that is returned without a TransactionStream will still hold the channel and should
-         * release it eventually. Also, logically, closing the channel is not dependent on the
-         * TransactionStream.
-         */
-        resourcePoolReleaser = new ResourceReleaser()
-        {
-            public void release()
+
+            @Override
+            protected void exhausted()
             {
-                channelPool.release();
+                maintainChannelPool();
             }
         };
+        poolMaintainer = Executors.newSingleThreadScheduledExecutor( new NamedThreadFactory(
+                getClass().getSimpleName() + " channel pool@" + address ) );
+        poolMaintainer.scheduleWithFixedDelay( channelPoolMaintenance, 0,
+                CHANNEL_POOL_MAINTENANCE_INTERVAL_SECONDS, TimeUnit.SECONDS );
     }
 
 
+    private final Runnable channelPoolMaintenance = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            try
+            {
+                channelPool.maintain();
+            }
+            catch ( ComException e )
+            {
+                // Already logged when trying to connect, requests will try again themselves
+            }
+            catch ( RuntimeException e )
+            {
+                msgLog.logMessage( "Failed to maintain channel pool for " + address, e );
+            }
+        }
+    };
+
+    private void maintainChannelPool()
+    {
+        try
+        {
+            poolMaintainer.execute( channelPoolMaintenance );
+        }
+        catch ( RejectedExecutionException e )
+        {
+            // We are stopping
+        }
+    }
+
     @Override
     public void stop()
     {
+        poolMaintainer.shutdownNow();
         channelPool.close( true );
         executor.shutdownNow();
         mismatchingVersionHandlers.clear();
@@ -206,13 +260,14 @@ public abstract class Client<T> extends LifecycleAdapter implements ChannelPipel
         {
             // Send 'em over the wire
             channelContext = getChannel( type );
+            ByteBuffer temporaryBuffer = channelContext.third();
             Channel channel = channelContext.first();
             channelContext.second().clear();
             ChunkingChannelBuffer chunkingBuffer = new ChunkingChannelBuffer( channelContext.second(),
                     channel, chunkSize, getInternalProtocolVersion(), applicationProtocolVersion );
             chunkingBuffer.writeByte( type.id() );
             writeContext( type, context, chunkingBuffer );
-            serializer.write( chunkingBuffer, channelContext.third() );
+            serializer.write( chunkingBuffer, temporaryBuffer );
             chunkingBuffer.done();
 
             // Read the response
@@ -223,8 +278,8 @@ public abstract class Client<T> extends LifecycleAdapter implements ChannelPipel
                     readTimeout ),
                     getInternalProtocolVersion(), applicationProtocolVersion );
 
-            R response = deserializer.read( dechunkingBuffer, channelContext.third() );
-            StoreId storeId = readStoreId( dechunkingBuffer, channelContext.third() );
+            R response = deserializer.read( dechunkingBuffer, temporaryBuffer );
+            StoreId storeId = readStoreId( dechunkingBuffer, temporaryBuffer );
             if ( shouldCheckStoreId( type ) )
             {
                 // specificStoreId is there as a workaround for then the graphDb isn't initialized yet
@@ -239,8 +294,7 @@ public abstract class Client<T> extends LifecycleAdapter implements ChannelPipel
             }
             TransactionStream txStreams = readTransactionStreams(
                     dechunkingBuffer, channelPool );
-            return new Response<R>( response, storeId, txStreams,
-                    resourcePoolReleaser );
+            return new Response<R>( response, storeId, txStreams, channelReleaser );
         }
         catch ( IllegalProtocolVersionException e )
         {
@@ -272,6 +326,23 @@ public abstract class Client<T> extends LifecycleAdapter implements ChannelPipel
         }
     }
 
+    /*
+     * This is here to couple the channel releasing to Response.close() itself and not
+     * to TransactionStream.close() as it is implemented here. The reason is that a Response
+     * that is returned without a TransactionStream will still hold the channel and should
+     * release it eventually. Also, logically, closing the channel is not dependent on the
+     * TransactionStream. The temporary buffer belongs to the channel, so it's only handed
+     * back to the buffer pool when the channel is closed, even if the Response never is.
+     */
+    private final ResourceReleaser channelReleaser = new ResourceReleaser()
+    {
+        @Override
+        public void release()
+        {
+            channelPool.release();
+        }
+    };
+
     protected long getReadTimeout( RequestType<T> type, long readTimeout )
     {
         return readTimeout;
@@ -34,4 +34,16 @@ public class ComSettings
     @Default( "2M" )
     public static final GraphDatabaseSetting<Integer> com_chunk_size =
             new GraphDatabaseSetting.IntegerRangeNumberOfBytesSetting( "ha.com_chunk_size", 1 * 1024 );
-}
\ No newline at end of file
+
+    @Description( "Max rate at which store files are read from disk when copying the store to a slave or " +
+            "taking a full backup, in bytes per second. Examples: 20M or 500k. 0 means no limit." )
+    @Default( "0" )
+    public static final GraphDatabaseSetting<Integer> store_copy_max_read_rate =
+            new GraphDatabaseSetting.IntegerRangeNumberOfBytesSetting( "ha.store_copy_max_read_rate", 0 );
+
+    @Description( "Max rate at which the store is sent over the network when copying it to a slave or taking a " +
+            "full backup, in bytes per second. Examples: 20M or 500k. 0 means no limit." )
+    @Default( "0" )
+    public static final GraphDatabaseSetting<Integer> store_copy_max_write_rate =
+            new GraphDatabaseSetting.IntegerRangeNumberOfBytesSetting( "ha.store_copy_max_write_rate", 0 );
+}
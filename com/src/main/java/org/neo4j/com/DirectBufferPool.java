@@ -0,0 +1,144 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.com;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of direct {@link ByteBuffer}s in power-of-two size classes. Direct memory is
+ * only reclaimed when the owning buffer is finalized, so instead of allocating a
+ * new buffer per channel, buffers are handed back with {@link #release(ByteBuffer)}
+ * and reused.
+ *
+ * The total amount of direct memory the pool allocates is capped. When the cap is
+ * reached heap buffers are handed out instead, these are not pooled. A pool belongs
+ * to one {@link Client}, which hands a buffer back when the channel holding it is
+ * closed, and drops the pool when it stops.
+ */
+public class DirectBufferPool
+{
+    private static final int MIN_SIZE_CLASS = 10; // 1k
+    private static final int MAX_SIZE_CLASS = 30; // 1G
+
+    private final Queue<ByteBuffer>[] free;
+    private final AtomicLong allocatedBytes = new AtomicLong();
+    private final AtomicLong heapFallbacks = new AtomicLong();
+    private volatile long maxTotalBytes;
+
+    @SuppressWarnings( "unchecked" )
+    public DirectBufferPool( long maxTotalBytes )
+    {
+        this.maxTotalBytes = maxTotalBytes;
+        this.free = new Queue[MAX_SIZE_CLASS + 1];
+        for ( int i = MIN_SIZE_CLASS; i < free.length; i++ )
+        {
+            free[i] = new ConcurrentLinkedQueue<ByteBuffer>();
+        }
+    }
+
+    /**
+     * @return a cleared buffer with a capacity of at least {@code minCapacity}.
+     */
+    public ByteBuffer acquire( int minCapacity )
+    {
+        int sizeClass = sizeClass( minCapacity );
+        ByteBuffer buffer = free[sizeClass].poll();
+        if ( buffer == null )
+        {
+            buffer = allocate( 1 << sizeClass );
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Hands a buffer acquired from this pool back. The buffer must not be used after this.
+     */
+    public void release( ByteBuffer buffer )
+    {
+        if ( buffer == null || !buffer.isDirect() )
+        {
+            return;
+        }
+        int capacity = buffer.capacity();
+        if ( Integer.bitCount( capacity ) != 1 || capacity < 1 << MIN_SIZE_CLASS )
+        {
+            // Not one of ours
+            return;
+        }
+        if ( allocatedBytes.get() > maxTotalBytes )
+        {
+            // The cap has been lowered, let this one go
+            allocatedBytes.addAndGet( -capacity );
+            return;
+        }
+        free[sizeClass( capacity )].offer( buffer );
+    }
+
+    public void setMaxTotalBytes( long maxTotalBytes )
+    {
+        this.maxTotalBytes = maxTotalBytes;
+    }
+
+    public long getMaxTotalBytes()
+    {
+        return maxTotalBytes;
+    }
+
+    public long getAllocatedBytes()
+    {
+        return allocatedBytes.get();
+    }
+
+    public long getHeapFallbacks()
+    {
+        return heapFallbacks.get();
+    }
+
+    private ByteBuffer allocate( int capacity )
+    {
+        for ( ;; )
+        {
+            long allocated = allocatedBytes.get();
+            if ( allocated + capacity > maxTotalBytes )
+            {
+                heapFallbacks.incrementAndGet();
+                return ByteBuffer.allocate( capacity );
+            }
+            if ( allocatedBytes.compareAndSet( allocated, allocated + capacity ) )
+            {
+                return ByteBuffer.allocateDirect( capacity );
+            }
+        }
+    }
+
+    private static int sizeClass( int capacity )
+    {
+        if ( capacity > 1 << MAX_SIZE_CLASS )
+        {
+            throw new IllegalArgumentException( "Can't pool buffers of size " + capacity );
+        }
+        int sizeClass = 32 - Integer.numberOfLeadingZeros( Math.max( capacity, 1 ) - 1 );
+        return Math.max( sizeClass, MIN_SIZE_CLASS );
+    }
+}
@@ -0,0 +1,299 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.com;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps track of when keys, e.g. channels or transactions, were last active and
+ * tells a {@link Listener} about those that have been idle for longer than a
+ * threshold. Backed by a hashed timing wheel that is advanced by {@link #tick()}:
+ * every tick only looks at the keys whose deadline falls within it, instead of
+ * scanning all keys.
+ *
+ * {@link #touch(Object)} only records the time of the activity, it doesn't move
+ * the key in the wheel. When the wheel reaches a key that has been touched since
+ * it was scheduled it's simply scheduled again for its new deadline, so a key is
+ * looked at roughly once per threshold regardless of how busy it is.
+ */
+public class IdleTimeouts<K>
+{
+    public interface Listener<K>
+    {
+        /**
+         * Called from the thread calling {@link IdleTimeouts#tick()}.
+         *
+         * @return {@code true} if the key has been dealt with and should no longer
+         * be tracked, {@code false} to be asked again after another threshold.
+         */
+        boolean idle( K key, long idleMillis );
+    }
+
+    // How many ticks there are in one threshold, i.e. the precision of the wheel
+    static final int TICKS_PER_THRESHOLD = 32;
+
+    private static final long PAUSED = Long.MIN_VALUE;
+
+    private final long thresholdMillis;
+    private final long tickMillis;
+    private final Listener<K> listener;
+    private final Queue<Timeout<K>>[] wheel;
+    private final ConcurrentMap<K, Entry<K>> entries = new ConcurrentHashMap<K, Entry<K>>();
+    private volatile long currentTick;
+    private final AtomicLong idleCount = new AtomicLong();
+    private final AtomicLong reapedCount = new AtomicLong();
+
+    public IdleTimeouts( long thresholdMillis, Listener<K> listener )
+    {
+        this( thresholdMillis, listener, System.currentTimeMillis() );
+    }
+
+    @SuppressWarnings( "unchecked" )
+    IdleTimeouts( long thresholdMillis, Listener<K> listener, long now )
+    {
+        this.thresholdMillis = thresholdMillis;
+        this.tickMillis = Math.max( 1, thresholdMillis / TICKS_PER_THRESHOLD );
+        this.listener = listener;
+        // One threshold fits in a turn of the wheel, further timeouts wait for their turn
+        this.wheel = new Queue[(int) (thresholdMillis / tickMillis) + 2];
+        for ( int i = 0; i < wheel.length; i++ )
+        {
+            wheel[i] = new ConcurrentLinkedQueue<Timeout<K>>();
+        }
+        this.currentTick = now / tickMillis;
+    }
+
+    /**
+     * @return how often {@link #tick()} should be called.
+     */
+    public long getTickMillis()
+    {
+        return tickMillis;
+    }
+
+    /**
+     * Marks {@code key} as active right now, starting to track it if it isn't already.
+     */
+    public void touch( K key )
+    {
+        touch( key, System.currentTimeMillis() );
+    }
+
+    void touch( K key, long now )
+    {
+        Entry<K> entry = entries.get( key );
+        if ( entry != null )
+        {
+            entry.lastActive = now;
+            return;
+        }
+
+        entry = new Entry<K>( key, now );
+        Entry<K> existing = entries.putIfAbsent( key, entry );
+        if ( existing != null )
+        {
+            existing.lastActive = now;
+            return;
+        }
+        schedule( entry, tickOf( now + thresholdMillis ) );
+    }
+
+    /**
+     * Keeps tracking {@code key}, but it won't be considered idle until it's
+     * {@link #touch(Object) touched} again. Used for keys which are busy for
+     * an unknown amount of time.
+     */
+    public void pause( K key )
+    {
+        Entry<K> entry = entries.get( key );
+        if ( entry != null )
+        {
+            entry.lastActive = PAUSED;
+        }
+    }
+
+    /**
+     * Has the {@link Listener} called for {@code key} on the next tick, whether
+     * it's idle or not.
+     */
+    public void expire( K key )
+    {
+        Entry<K> entry = entries.get( key );
+        if ( entry != null )
+        {
+            entry.expire = true;
+            schedule( entry, currentTick + 1 );
+        }
+    }
+
+    public void remove( K key )
+    {
+        // Left in its bucket, where it's dropped when the wheel gets there
+        entries.remove( key );
+    }
+
+    public void tick()
+    {
+        tick( System.currentTimeMillis() );
+    }
+
+    synchronized void tick( long now )
+    {
+        long targetTick = now / tickMillis;
+        // After a long pause one turn of the wheel covers everything that's due
+        long firstTick = Math.max( currentTick + 1, targetTick - wheel.length + 1 );
+        for ( long tick = firstTick; tick <= targetTick; tick++ )
+        {
+            currentTick = tick;
+            Queue<Timeout<K>> bucket = wheel[bucketOf( tick )];
+            for ( int count = bucket.size(); count > 0; count-- )
+            {
+                Timeout<K> timeout = bucket.poll();
+                if ( timeout == null )
+                {
+                    break;
+                }
+                Entry<K> entry = timeout.entry;
+                if ( timeout.tick > tick )
+                {   // Further away than one turn of the wheel
+                    bucket.add( timeout );
+                }
+                else if ( entry.scheduledTick == timeout.tick && entries.get( entry.key ) == entry )
+                {   // The latest timeout of a key that's still tracked, the others are left to drop out
+                    check( entry, now );
+                }
+            }
+        }
+    }
+
+    private void check( Entry<K> entry, long now )
+    {
+        long lastActive = entry.lastActive;
+        if ( !entry.expire )
+        {
+            if ( lastActive == PAUSED )
+            {
+                schedule( entry, tickOf( now + thresholdMillis ) );
+                return;
+            }
+            if ( now - lastActive < thresholdMillis )
+            {
+                schedule( entry, tickOf( lastActive + thresholdMillis ) );
+                return;
+            }
+        }
+
+        entry.expire = false;
+        idleCount.incrementAndGet();
+        long idleMillis = lastActive == PAUSED ? 0 : now - lastActive;
+        boolean done;
+        try
+        {
+            done = listener.idle( entry.key, idleMillis );
+        }
+        catch ( RuntimeException e )
+        {
+            done = false;
+        }
+        if ( done )
+        {
+            reapedCount.incrementAndGet();
+            entries.remove( entry.key, entry );
+        }
+        else
+        {
+            schedule( entry, tickOf( now + thresholdMillis ) );
+        }
+    }
+
+    private void schedule( Entry<K> entry, long tick )
+    {
+        // Never schedule into a bucket which has already been passed
+        tick = Math.max( tick, currentTick + 1 );
+        entry.scheduledTick = tick;
+        wheel[bucketOf( tick )].add( new Timeout<K>( entry, tick ) );
+    }
+
+    private long tickOf( long timeMillis )
+    {
+        // Round up so that a key is never seen before its deadline
+        return (timeMillis + tickMillis - 1) / tickMillis;
+    }
+
+    private int bucketOf( long tick )
+    {
+        return (int) (tick % wheel.length);
+    }
+
+    /**
+     * @return the number of keys currently being tracked.
+     */
+    public int getTrackedCount()
+    {
+        return entries.size();
+    }
+
+    /**
+     * @return the number of times the {@link Listener} has been called.
+     */
+    public long getIdleCount()
+    {
+        return idleCount.get();
+    }
+
+    /**
+     * @return the number of keys the {@link Listener} has dealt with, and so
+     * are no longer tracked.
+     */
+    public long getReapedCount()
+    {
+        return reapedCount.get();
+    }
+
+    private static class Timeout<K>
+    {
+        private final Entry<K> entry;
+        private final long tick;
+
+        Timeout( Entry<K> entry, long tick )
+        {
+            this.entry = entry;
+            this.tick = tick;
+        }
+    }
+
+    private static class Entry<K>
+    {
+        private final K key;
+        private volatile long lastActive;
+        private volatile long scheduledTick;
+        private volatile boolean expire;
+
+        Entry( K key, long lastActive )
+        {
+            this.key = key;
+            this.lastActive = lastActive;
+        }
+    }
+}
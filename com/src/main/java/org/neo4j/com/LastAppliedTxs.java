@@ -0,0 +1,145 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.com;
+
+import static org.neo4j.com.RequestContext.lastAppliedTx;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.neo4j.com.RequestContext.Tx;
+
+/**
+ * Decodes the last applied transactions of a {@link RequestContext} without
+ * allocating for the common case. There are only a handful of data source names
+ * and a slave keeps sending the same last applied tx id until it pulls updates,
+ * so the name is matched against the ones seen before directly in the buffer
+ * and the previous {@link Tx} of that slave is handed out again if the tx id
+ * hasn't changed. Tx is immutable, so sharing it between requests and threads
+ * is safe.
+ */
+final class LastAppliedTxs
+{
+    // Guard against a misbehaving client filling up the cache with garbage
+    private static final int MAX_NAMES = 32;
+    private static final int MAX_MACHINES = 64;
+
+    private static final class Entry
+    {
+        private final String dataSourceName;
+        // Slaves are at different tx ids, so each keeps its own. Machine ids are small, so boxing them is free
+        private final Map<Integer, Tx> lastTxs = new ConcurrentHashMap<Integer, Tx>();
+
+        Entry( String dataSourceName )
+        {
+            this.dataSourceName = dataSourceName;
+        }
+
+        Tx lastTx( int machineId, long txId )
+        {
+            Tx tx = lastTxs.get( machineId );
+            if ( tx == null || tx.getTxId() != txId )
+            {
+                tx = lastAppliedTx( dataSourceName, txId );
+                if ( lastTxs.size() < MAX_MACHINES || lastTxs.containsKey( machineId ) )
+                {
+                    lastTxs.put( machineId, tx );
+                }
+            }
+            return tx;
+        }
+    }
+
+    // Copy-on-write, it only changes the first time a data source name is seen
+    private volatile Entry[] entries = new Entry[0];
+
+    /**
+     * Reads a data source name, as written by {@link Protocol#writeString(ChannelBuffer, String)},
+     * followed by a tx id.
+     *
+     * @param machineId the slave that sent the request.
+     */
+    Tx read( ChannelBuffer buffer, int machineId )
+    {
+        int length = buffer.readInt();
+        Entry entry = find( buffer, length );
+        if ( entry == null )
+        {
+            entry = add( Protocol.readString( buffer, length ) );
+        }
+        else
+        {
+            buffer.skipBytes( length * 2 );
+        }
+        return entry.lastTx( machineId, buffer.readLong() );
+    }
+
+    private Entry find( ChannelBuffer buffer, int length )
+    {
+        int start = buffer.readerIndex();
+        for ( Entry entry : entries )
+        {
+            if ( matches( entry.dataSourceName, buffer, start, length ) )
+            {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private static boolean matches( String name, ChannelBuffer buffer, int start, int length )
+    {
+        if ( name.length() != length )
+        {
+            return false;
+        }
+        for ( int i = 0; i < length; i++ )
+        {
+            if ( name.charAt( i ) != buffer.getChar( start + i * 2 ) )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private synchronized Entry add( String dataSourceName )
+    {
+        Entry[] current = entries;
+        for ( Entry entry : current )
+        {
+            if ( entry.dataSourceName.equals( dataSourceName ) )
+            {
+                return entry;
+            }
+        }
+        Entry added = new Entry( dataSourceName );
+        if ( current.length >= MAX_NAMES )
+        {   // Not kept, so every request with this name allocates again
+            return added;
+        }
+        Entry[] updated = new Entry[current.length + 1];
+        System.arraycopy( current, 0, updated, 0, current.length );
+        updated[current.length] = added;
+        entries = updated;
+        return added;
+    }
+}
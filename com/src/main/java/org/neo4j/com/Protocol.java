@@ -108,9 +108,12 @@ public abstract class Protocol
 
     public static void writeString( ChannelBuffer buffer, String name )
     {
-        char[] chars = name.toCharArray();
-        buffer.writeInt( chars.length );
-        writeChars( buffer, chars );
+        int length = name.length();
+        buffer.writeInt( length );
+        for ( int i = 0; i < length; i++ )
+        {
+            buffer.writeChar( name.charAt( i ) );
+        }
     }
 
     public static void writeChars( ChannelBuffer buffer, char[] chars )
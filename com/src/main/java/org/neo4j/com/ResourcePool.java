@@ -19,12 +19,28 @@
  */
 package org.neo4j.com;
 
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Pool of resources, f.ex. channels, handed out one per thread. A thread keeps its
+ * resource between {@link #acquire()} and {@link #release()}.
+ *
+ * The unused resources are kept in a lock-free queue and a thread that comes back
+ * for a resource will preferably get the one it released last, if no other thread
+ * has taken it since. Health checks of unused resources and pre-creation of
+ * resources up to the configured minimum happens in {@link #maintain()}, which is
+ * meant to be called periodically from a background thread, so that request threads
+ * seldom have to create resources themselves.
+ */
 public abstract class ResourcePool<R>
 {
     private static final boolean FAIR = true;
@@ -53,14 +69,24 @@ public abstract class ResourcePool<R>
         }
     }
 
-    private final LinkedList<R> unused = new LinkedList<R>();
+    private final Queue<R> unused = new ConcurrentLinkedQueue<R>();
+    private final AtomicInteger unusedCount = new AtomicInteger();
     private final Map<Thread, R> current = new ConcurrentHashMap<Thread, R>();
+    private final Map<Thread, R> lastUsed = new ConcurrentHashMap<Thread, R>();
+    private final AtomicBoolean maintaining = new AtomicBoolean();
     private final ResizableSemaphore resources;
-    private int maxUnused; // Guarded by unused
+    private final int minUnused;
+    private volatile int maxUnused;
 
     protected ResourcePool( int maxResources, int maxUnused )
+    {
+        this( maxResources, maxUnused, 0 );
+    }
+
+    protected ResourcePool( int maxResources, int maxUnused, int minUnused )
     {
         this.maxUnused = maxUnused;
+        this.minUnused = Math.min( minUnused, maxUnused );
         this.resources = new ResizableSemaphore( maxResources );
     }
 
@@ -75,6 +101,14 @@ public abstract class ResourcePool<R>
         return true;
     }
 
+    /**
+     * Called when a thread found no unused resource and had to create one itself,
+     * a hint that {@link #maintain()} should run soon.
+     */
+    protected void exhausted()
+    {
+    }
+
     public final void setMaxResources( int maxResources )
     {
         resources.setPermits( maxResources );
@@ -88,20 +122,37 @@ public abstract class ResourcePool<R>
         {
             resources.acquireUninterruptibly();
             List<R> garbage = null;
-            synchronized ( unused )
+            R preferred = lastUsed.remove( thread );
+            if ( preferred != null && takeUnused( preferred ) )
+            {
+                if ( isAlive( preferred ) )
+                {
+                    resource = preferred;
+                }
+                else
+                {
+                    garbage = new LinkedList<R>();
+                    garbage.add( preferred );
+                }
+            }
+            while ( resource == null )
             {
-                for ( ;; )
+                R candidate = pollUnused();
+                if ( candidate == null ) break;
+                if ( isAlive( candidate ) )
+                {
+                    resource = candidate;
+                }
+                else
                 {
-                    resource = unused.poll();
-                    if ( resource == null ) break;
-                    if ( isAlive( resource ) ) break;
                     if ( garbage == null ) garbage = new LinkedList<R>();
-                    garbage.add( resource );
+                    garbage.add( candidate );
                 }
             }
             if ( resource == null )
             {
                 resource = create();
+                exhausted();
             }
             current.put( thread, resource );
             if ( garbage != null )
@@ -123,19 +174,14 @@ public abstract class ResourcePool<R>
         {
             if ( resource != null )
             {
-                boolean dead = false;
-                synchronized ( unused )
+                if ( offerUnused( resource ) )
+                {
+                    lastUsed.put( thread, resource );
+                }
+                else
                 {
-                    if ( unused.size() < maxUnused )
-                    {
-                        unused.add( resource );
-                    }
-                    else
-                    {
-                        dead = true;
-                    }
+                    dispose( resource );
                 }
-                if ( dead ) dispose( resource );
             }
         }
         finally
@@ -144,19 +190,102 @@ public abstract class ResourcePool<R>
         }
     }
 
+    /**
+     * Disposes unused resources that are no longer alive and creates new ones until
+     * there are at least as many unused resources as the configured minimum. Only
+     * one thread at a time does the maintenance, concurrent calls return immediately.
+     */
+    public final void maintain()
+    {
+        if ( !maintaining.compareAndSet( false, true ) )
+        {
+            return;
+        }
+        try
+        {
+            for ( R resource : unused )
+            {
+                if ( !isAlive( resource ) && takeUnused( resource ) )
+                {
+                    dispose( resource );
+                }
+            }
+            for ( Iterator<Map.Entry<Thread, R>> entries = lastUsed.entrySet().iterator(); entries.hasNext(); )
+            {
+                Map.Entry<Thread, R> entry = entries.next();
+                if ( !entry.getKey().isAlive() || !unused.contains( entry.getValue() ) )
+                {
+                    entries.remove();
+                }
+            }
+            while ( unusedCount.get() < Math.min( minUnused, maxUnused ) )
+            {
+                R resource = create();
+                if ( !offerUnused( resource ) )
+                {
+                    dispose( resource );
+                    break;
+                }
+            }
+        }
+        finally
+        {
+            maintaining.set( false );
+        }
+    }
+
     public final void close( boolean force )
     {
+        maxUnused = 0;
         List<R> dead = new LinkedList<R>();
-        synchronized ( unused )
+        for ( R resource = pollUnused(); resource != null; resource = pollUnused() )
         {
-            dead.addAll( unused );
-            unused.clear();
-            maxUnused = 0;
+            dead.add( resource );
         }
+        lastUsed.clear();
         if ( force ) dead.addAll( current.values() );
         for ( R resource : dead )
         {
             dispose( resource );
         }
     }
+
+    private R pollUnused()
+    {
+        R resource = unused.poll();
+        if ( resource != null )
+        {
+            unusedCount.decrementAndGet();
+        }
+        return resource;
+    }
+
+    private boolean takeUnused( R resource )
+    {
+        if ( unused.remove( resource ) )
+        {
+            unusedCount.decrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    private boolean offerUnused( R resource )
+    {
+        for ( ;; )
+        {
+            int count = unusedCount.get();
+            if ( count >= maxUnused )
+            {
+                return false;
+            }
+            if ( unusedCount.compareAndSet( count, count + 1 ) )
+            {
+                break;
+            }
+        }
+        unused.add( resource );
+        // The pool may have been closed while we were adding to it
+        return maxUnused > 0 || !takeUnused( resource );
+    }
 }
@@ -33,7 +33,6 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicLong;
 
 import org.jboss.netty.bootstrap.ServerBootstrap;
 import org.jboss.netty.buffer.ChannelBuffer;
@@ -55,7 +54,6 @@ import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
 import org.neo4j.com.RequestContext.Tx;
 import org.neo4j.helpers.Exceptions;
 import org.neo4j.helpers.NamedThreadFactory;
-import org.neo4j.helpers.Pair;
 import org.neo4j.helpers.Triplet;
 import org.neo4j.helpers.collection.IteratorUtil;
 import org.neo4j.kernel.configuration.Config;
@@ -106,8 +104,8 @@ public abstract class Server<T, R> extends Protocol implements ChannelPipelineFa
     private ServerBootstrap bootstrap;
     private T requestTarget;
     private ChannelGroup channelGroup;
-    private final Map<Channel, Pair<RequestContext, AtomicLong /*time last heard of*/>> connectedSlaveChannels =
-            new ConcurrentHashMap<Channel, Pair<RequestContext, AtomicLong>>();
+    private final ConcurrentHashMap<Channel, RequestContext> connectedSlaveChannels =
+            new ConcurrentHashMap<Channel, RequestContext>();
     private ExecutorService executor;
     private ExecutorService workerExecutor;
     private ExecutorService targetCallExecutor;
@@ -126,10 +124,12 @@ public abstract class Server<T, R> extends Protocol implements ChannelPipelineFa
     // events to not be sent. This is merely a safety net to catch the remained of the closed
     // channels that netty doesn't tell us about.
     private ScheduledExecutorService silentChannelExecutor;
+    private IdleTimeouts<Channel> silentChannels;
 
     private final byte applicationProtocolVersion;
     private long oldChannelThresholdMillis;
     private TxChecksumVerifier txVerifier;
+    private final LastAppliedTxs lastAppliedTxs = new LastAppliedTxs();
     private int chunkSize;
 
     public Server( T requestTarget, Configuration config, StringLogger logger, int frameLength,
@@ -162,9 +162,17 @@ public abstract class Server<T, R> extends Protocol implements ChannelPipelineFa
                 new NamedThreadFactory( "Unfinished transactions" ) );
         channelFactory = new NioServerSocketChannelFactory(
                 executor, workerExecutor, config.getMaxConcurrentTransactions() );
+        silentChannels = new IdleTimeouts<Channel>( oldChannelThresholdMillis / 2, silentChannelFinisher() );
         silentChannelExecutor = Executors.newSingleThreadScheduledExecutor( new NamedThreadFactory( "Silent channel " +
                 "reaper" ) );
-        silentChannelExecutor.scheduleWithFixedDelay( silentChannelFinisher(), 5, 5, TimeUnit.SECONDS );
+        silentChannelExecutor.scheduleWithFixedDelay( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                silentChannels.tick();
+            }
+        }, silentChannels.getTickMillis(), silentChannels.getTickMillis(), TimeUnit.MILLISECONDS );
         bootstrap = new ServerBootstrap( channelFactory );
         bootstrap.setPipelineFactory( this );
 
@@ -215,46 +223,41 @@ public abstract class Server<T, R> extends Protocol implements ChannelPipelineFa
     {
     }
 
-    private Runnable silentChannelFinisher()
+    private IdleTimeouts.Listener<Channel> silentChannelFinisher()
     {
-        // This poller is here because sometimes Netty doesn't tell us when channels are
+        // This is here because sometimes Netty doesn't tell us when channels are
         // closed or disconnected. Most of the time it does, but this acts as a safety
         // net for those we don't get notifications for. When the bug is fixed remove this.
-        return new Runnable()
+        // Channels are looked at after being silent for half the threshold, so that
+        // closed ones can be finished off early.
+        return new IdleTimeouts.Listener<Channel>()
         {
             @Override
-            public void run()
+            public boolean idle( Channel channel, long idleMillis )
             {
-                Map<Channel, Boolean/*starting to get old?*/> channels = new HashMap<Channel, Boolean>();
-                synchronized ( connectedSlaveChannels )
+                if ( idleMillis > oldChannelThresholdMillis )
                 {
-                    for ( Map.Entry<Channel, Pair<RequestContext, AtomicLong>> channel : connectedSlaveChannels
-                            .entrySet() )
-                    {   // Has this channel been silent for a while?
-                        long age = System.currentTimeMillis() - channel.getValue().other().get();
-                        if ( age > oldChannelThresholdMillis )
-                        {
-                            msgLog.logMessage( "Found a silent channel " + channel + ", " + age );
-                            channels.put( channel.getKey(), Boolean.TRUE );
-                        }
-                        else if ( age > oldChannelThresholdMillis / 2 )
-                        {   // Then add it to a list to check
-                            channels.put( channel.getKey(), Boolean.FALSE );
-                        }
-                    }
+                    msgLog.logMessage( "Found a silent channel " + channel + ", " + idleMillis );
                 }
-                for ( Map.Entry<Channel, Boolean> channel : channels.entrySet() )
+                else if ( channel.isOpen() && channel.isConnected() && channel.isBound() )
                 {
-                    if ( channel.getValue() || !channel.getKey().isOpen() || !channel.getKey().isConnected() ||
-                            !channel.getKey().isBound() )
-                    {
-                        tryToFinishOffChannel( channel.getKey() );
-                    }
+                    return false;
                 }
+                tryToFinishOffChannel( channel );
+                return true;
             }
         };
     }
 
+    /**
+     * @return the number of channels that have been finished off for having been
+     * silent for too long, or closed without us being told.
+     */
+    public long getSilentChannelsFinishedOff()
+    {
+        return silentChannels == null ? 0 : silentChannels.getReapedCount();
+    }
+
     /**
      * Only exposed so that tests can control it. It's not configurable really.
      */
@@ -333,16 +336,12 @@ public abstract class Server<T, R> extends Protocol implements ChannelPipelineFa
 
     protected void tryToFinishOffChannel( Channel channel )
     {
-        Pair<RequestContext, AtomicLong> slave = null;
-        synchronized ( connectedSlaveChannels )
-        {
-            slave = connectedSlaveChannels.remove( channel );
-        }
+        RequestContext slave = connectedSlaveChannels.remove( channel );
         if ( slave == null )
         {
             return;
         }
-        tryToFinishOffChannel( channel, slave.first() );
+        tryToFinishOffChannel( channel, slave );
     }
 
     protected void tryToFinishOffChannel( Channel channel, RequestContext slave )
@@ -601,12 +600,11 @@ public abstract class Server<T, R> extends Protocol implements ChannelPipelineFa
         Tx neoTx = null;
         for ( int i = 0; i < txsSize; i++ )
         {
-            String ds = readString( buffer );
-            Tx tx = RequestContext.lastAppliedTx( ds, buffer.readLong() );
+            Tx tx = lastAppliedTxs.read( buffer, machineId );
             lastAppliedTransactions[i] = tx;
 
             // Only perform checksum checks on the neo data source.
-            if ( ds.equals( Config.DEFAULT_DATA_SOURCE_NAME ) )
+            if ( tx.getDataSourceName().equals( Config.DEFAULT_DATA_SOURCE_NAME ) )
             {
                 neoTx = tx;
             }
@@ -627,33 +625,20 @@ public abstract class Server<T, R> extends Protocol implements ChannelPipelineFa
 
     protected ChannelBuffer mapSlave( Channel channel, RequestContext slave, RequestType<T> type )
     {
-        synchronized ( connectedSlaveChannels )
+        // Checking for machineId -1 excludes the "empty" slave contexts
+        // which some communication points pass in as context.
+        if ( slave != null && slave.machineId() != RequestContext.EMPTY.machineId() )
         {
-            // Checking for machineId -1 excludes the "empty" slave contexts
-            // which some communication points pass in as context.
-            if ( slave != null && slave.machineId() != RequestContext.EMPTY.machineId() )
-            {
-                Pair<RequestContext, AtomicLong> previous = connectedSlaveChannels.get( channel );
-                if ( previous != null )
-                {
-                    previous.other().set( System.currentTimeMillis() );
-                }
-                else
-                {
-                    connectedSlaveChannels.put( channel, Pair.of( slave, new AtomicLong( System.currentTimeMillis() )
-                    ) );
-                }
-            }
+            connectedSlaveChannels.putIfAbsent( channel, slave );
+            silentChannels.touch( channel );
         }
         return ChannelBuffers.dynamicBuffer();
     }
 
     protected void unmapSlave( Channel channel, RequestContext slave )
     {
-        synchronized ( connectedSlaveChannels )
-        {
-            connectedSlaveChannels.remove( channel );
-        }
+        connectedSlaveChannels.remove( channel );
+        silentChannels.remove( channel );
     }
 
     protected T getRequestTarget()
@@ -665,15 +650,7 @@ public abstract class Server<T, R> extends Protocol implements ChannelPipelineFa
 
     public Map<Channel, RequestContext> getConnectedSlaveChannels()
     {
-        Map<Channel, RequestContext> result = new HashMap<Channel, RequestContext>();
-        synchronized ( connectedSlaveChannels )
-        {
-            for ( Map.Entry<Channel, Pair<RequestContext, AtomicLong>> entry : connectedSlaveChannels.entrySet() )
-            {
-                result.put( entry.getKey(), entry.getValue().first() );
-            }
-        }
-        return result;
+        return new HashMap<Channel, RequestContext>( connectedSlaveChannels );
     }
 
     // =====================================================================
@@ -130,7 +130,8 @@ public class ServerUtil
         XaDataSourceManager dsManager =
                 graphDb.getXaDataSourceManager();
         RequestContext context = RequestContext.anonymous( rotateLogs( graphDb ) );
-        ByteBuffer temporaryBuffer = ByteBuffer.allocateDirect( 1024*1024 );
+        // The writers here send the files on over the network, this buffer is barely used
+        ByteBuffer temporaryBuffer = ByteBuffer.allocate( 1024*1024 );
         for ( XaDataSource ds : dsManager.getAllRegisteredDataSources() )
         {
             try
@@ -143,8 +144,9 @@ public class ServerUtil
                         FileInputStream stream = new FileInputStream( storefile );
                         try
                         {
-                            writer.write( relativePath( baseDir, storefile ), stream.getChannel(), temporaryBuffer,
-                                    storefile.length() > 0 );
+                            writer.write( relativePath( baseDir, storefile ),
+                                    new ThrottledByteChannel( stream.getChannel(), Throttle.STORE_COPY_READS ),
+                                    temporaryBuffer, storefile.length() > 0 );
                         }
                         finally
                         {
@@ -345,7 +347,10 @@ public class ServerUtil
                                         + "' found" );
         }
 
-        List<LogExtractor> extractors = startTx < endTx ? Collections.singletonList(
+        // Copy as far as the requested end, or as far as we've got if that's less,
+        // so that a client can catch up without knowing our last committed tx up front
+        endTx = Math.min( endTx, dataSource.getLastCommittedTxId() );
+        List<LogExtractor> extractors = startTx <= endTx ? Collections.singletonList(
                 getTransactionStreamForDatasource( dataSource, startTx, endTx, stream, ServerUtil.ALL ) ) :
                 Collections.<LogExtractor>emptyList();
         return new Response<Void>( null, graphDb.getStoreId(), createTransactionStream(
@@ -0,0 +1,113 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.com;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the rate at which bytes pass through some point, e.g. the reading of
+ * store files during a store copy or backup. Callers {@link #acquire(long)} the
+ * bytes they've just read or written and are put to sleep for as long as it
+ * takes to stay within the rate. The rate can be changed at any time, a rate of
+ * zero or less means no limit.
+ */
+public class Throttle
+{
+    /**
+     * Limits reading store files for store copies and backups in this JVM.
+     */
+    public static final Throttle STORE_COPY_READS = new Throttle( 0 );
+
+    /**
+     * Limits sending store copies and backups over the network in this JVM.
+     */
+    public static final Throttle STORE_COPY_WRITES = new Throttle( 0 );
+
+    // Short pauses aren't worth sleeping for, they're carried over instead
+    private static final long MIN_SLEEP_NANOS = TimeUnit.MILLISECONDS.toNanos( 1 );
+    // How far behind the rate a quiet throttle may fall, i.e. the largest burst allowed
+    private static final long MAX_CREDIT_NANOS = TimeUnit.MILLISECONDS.toNanos( 100 );
+
+    private volatile long bytesPerSecond;
+    private long nextFreeNanos = Long.MIN_VALUE;
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong throttledNanos = new AtomicLong();
+
+    public Throttle( long bytesPerSecond )
+    {
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    public long getBytesPerSecond()
+    {
+        return bytesPerSecond;
+    }
+
+    public void setBytesPerSecond( long bytesPerSecond )
+    {
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    /**
+     * Accounts for {@code count} bytes, sleeping if they came too soon after the previous ones.
+     */
+    public void acquire( long count ) throws InterruptedException
+    {
+        bytes.addAndGet( count );
+        long waitNanos = reserve( count, System.nanoTime() );
+        if ( waitNanos >= MIN_SLEEP_NANOS )
+        {
+            throttledNanos.addAndGet( waitNanos );
+            TimeUnit.NANOSECONDS.sleep( waitNanos );
+        }
+    }
+
+    /**
+     * @return for how long the caller should wait before going on.
+     */
+    synchronized long reserve( long count, long nowNanos )
+    {
+        long rate = bytesPerSecond;
+        if ( rate <= 0 )
+        {
+            return 0;
+        }
+        nextFreeNanos = Math.max( nextFreeNanos, nowNanos - MAX_CREDIT_NANOS ) +
+                count * TimeUnit.SECONDS.toNanos( 1 ) / rate;
+        return Math.max( 0, nextFreeNanos - nowNanos );
+    }
+
+    /**
+     * @return the total number of bytes that have passed through this throttle.
+     */
+    public long getBytes()
+    {
+        return bytes.get();
+    }
+
+    /**
+     * @return the total time callers have been put to sleep.
+     */
+    public long getThrottledMillis()
+    {
+        return TimeUnit.NANOSECONDS.toMillis( throttledNanos.get() );
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.com;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * A {@link ReadableByteChannel} which doesn't let data through faster than a
+ * {@link Throttle} allows.
+ */
+public class ThrottledByteChannel implements ReadableByteChannel
+{
+    private final ReadableByteChannel delegate;
+    private final Throttle throttle;
+
+    public ThrottledByteChannel( ReadableByteChannel delegate, Throttle throttle )
+    {
+        this.delegate = delegate;
+        this.throttle = throttle;
+    }
+
+    @Override
+    public int read( ByteBuffer dst ) throws IOException
+    {
+        int read = delegate.read( dst );
+        if ( read > 0 )
+        {
+            try
+            {
+                throttle.acquire( read );
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException( "Interrupted while throttled" );
+            }
+        }
+        return read;
+    }
+
+    @Override
+    public boolean isOpen()
+    {
+        return delegate.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        delegate.close();
+    }
+}
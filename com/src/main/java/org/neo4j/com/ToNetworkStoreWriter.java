@@ -30,8 +30,21 @@ public class ToNetworkStoreWriter implements StoreWriter
     private final ChannelBuffer targetBuffer;
 
     public ToNetworkStoreWriter( ChannelBuffer targetBuffer )
+    {
+        this( targetBuffer, Throttle.STORE_COPY_WRITES );
+    }
+
+    /**
+     * @param throttle limits the rate at which the response is sent, if {@code targetBuffer} sends it
+     * over the network in chunks.
+     */
+    public ToNetworkStoreWriter( ChannelBuffer targetBuffer, Throttle throttle )
     {
         this.targetBuffer = targetBuffer;
+        if ( targetBuffer instanceof ChunkingChannelBuffer )
+        {
+            ((ChunkingChannelBuffer) targetBuffer).setThrottle( throttle );
+        }
     }
 
     public void write( String path, ReadableByteChannel data, ByteBuffer temporaryBuffer,
@@ -0,0 +1,75 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.com;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class TestDirectBufferPool
+{
+    @Test
+    public void releasedBufferIsReusedForSameSizeClass() throws Exception
+    {
+        DirectBufferPool pool = new DirectBufferPool( 1024 * 1024 );
+
+        ByteBuffer first = pool.acquire( 3000 );
+        assertTrue( first.isDirect() );
+        assertEquals( 4096, first.capacity() );
+        first.put( (byte) 1 );
+        pool.release( first );
+
+        ByteBuffer second = pool.acquire( 4096 );
+        assertSame( first, second );
+        assertEquals( 0, second.position() );
+        assertFalse( second == pool.acquire( 4096 ) );
+    }
+
+    @Test
+    public void fallsBackToHeapBuffersWhenCapIsReached() throws Exception
+    {
+        DirectBufferPool pool = new DirectBufferPool( 8 * 1024 );
+
+        assertTrue( pool.acquire( 8 * 1024 ).isDirect() );
+        ByteBuffer overCap = pool.acquire( 1024 );
+        assertFalse( overCap.isDirect() );
+        assertEquals( 8 * 1024, pool.getAllocatedBytes() );
+        assertEquals( 1, pool.getHeapFallbacks() );
+
+        pool.release( overCap );
+        assertFalse( pool.acquire( 1024 ).isDirect() );
+    }
+
+    @Test
+    public void dropsReleasedBuffersWhenCapHasBeenLowered() throws Exception
+    {
+        DirectBufferPool pool = new DirectBufferPool( 1024 * 1024 );
+        ByteBuffer buffer = pool.acquire( 64 * 1024 );
+        pool.setMaxTotalBytes( 1024 );
+
+        pool.release( buffer );
+        assertEquals( 0, pool.getAllocatedBytes() );
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.com;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TestIdleTimeouts
+{
+    private static final long THRESHOLD = 3200;
+
+    private final List<String> idle = new ArrayList<String>();
+    private boolean done = true;
+    private final IdleTimeouts<String> timeouts = new IdleTimeouts<String>( THRESHOLD, new IdleTimeouts.Listener<String>()
+    {
+        @Override
+        public boolean idle( String key, long idleMillis )
+        {
+            idle.add( key );
+            return done;
+        }
+    }, 0 );
+
+    @Test
+    public void shouldNotFireBeforeThreshold() throws Exception
+    {
+        timeouts.touch( "a", 0 );
+
+        timeouts.tick( THRESHOLD - 1 );
+
+        assertTrue( idle.isEmpty() );
+        assertEquals( 1, timeouts.getTrackedCount() );
+    }
+
+    @Test
+    public void shouldFireOnceAfterThreshold() throws Exception
+    {
+        timeouts.touch( "a", 0 );
+
+        timeouts.tick( THRESHOLD + timeouts.getTickMillis() );
+        timeouts.tick( THRESHOLD * 3 );
+
+        assertEquals( asList( "a" ), idle );
+        assertEquals( 1, timeouts.getReapedCount() );
+        assertEquals( 0, timeouts.getTrackedCount() );
+    }
+
+    @Test
+    public void touchShouldPostponeIdleness() throws Exception
+    {
+        timeouts.touch( "a", 0 );
+        timeouts.touch( "b", 0 );
+        timeouts.touch( "a", THRESHOLD / 2 );
+
+        timeouts.tick( THRESHOLD + timeouts.getTickMillis() );
+        assertEquals( asList( "b" ), idle );
+
+        timeouts.tick( THRESHOLD + THRESHOLD / 2 + timeouts.getTickMillis() );
+        assertEquals( asList( "b", "a" ), idle );
+    }
+
+    @Test
+    public void pausedKeyShouldNotFireUntilTouchedAgain() throws Exception
+    {
+        timeouts.touch( "a", 0 );
+        timeouts.pause( "a" );
+
+        timeouts.tick( THRESHOLD * 5 );
+        assertTrue( idle.isEmpty() );
+
+        timeouts.touch( "a", THRESHOLD * 5 );
+        timeouts.tick( THRESHOLD * 7 );
+        assertEquals( asList( "a" ), idle );
+    }
+
+    @Test
+    public void expiredKeyShouldFireOnNextTick() throws Exception
+    {
+        timeouts.touch( "a", 0 );
+        timeouts.expire( "a" );
+
+        timeouts.tick( timeouts.getTickMillis() );
+
+        assertEquals( asList( "a" ), idle );
+    }
+
+    @Test
+    public void removedKeyShouldNeverFire() throws Exception
+    {
+        timeouts.touch( "a", 0 );
+        timeouts.remove( "a" );
+
+        timeouts.tick( THRESHOLD * 3 );
+
+        assertTrue( idle.isEmpty() );
+        assertEquals( 0, timeouts.getTrackedCount() );
+    }
+
+    @Test
+    public void shouldAskAgainIfListenerDidNotDealWithKey() throws Exception
+    {
+        done = false;
+        timeouts.touch( "a", 0 );
+
+        timeouts.tick( THRESHOLD + timeouts.getTickMillis() );
+        timeouts.tick( THRESHOLD * 2 + timeouts.getTickMillis() * 2 );
+
+        assertEquals( asList( "a", "a" ), idle );
+        assertEquals( 0, timeouts.getReapedCount() );
+        assertEquals( 1, timeouts.getTrackedCount() );
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.com;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.neo4j.com.Protocol.writeString;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.Test;
+import org.neo4j.com.RequestContext.Tx;
+
+public class TestLastAppliedTxs
+{
+    private final LastAppliedTxs txs = new LastAppliedTxs();
+
+    @Test
+    public void shouldReuseTxForSameDataSourceAndTxId() throws Exception
+    {
+        Tx first = txs.read( encode( "nioneodb", 10 ), 1 );
+        Tx second = txs.read( encode( "nioneodb", 10 ), 1 );
+
+        assertSame( first, second );
+        assertEquals( "nioneodb", second.getDataSourceName() );
+        assertEquals( 10, second.getTxId() );
+    }
+
+    @Test
+    public void shouldReuseDataSourceNameForNewTxId() throws Exception
+    {
+        Tx first = txs.read( encode( "nioneodb", 10 ), 1 );
+        Tx second = txs.read( encode( "nioneodb", 11 ), 1 );
+
+        assertNotSame( first, second );
+        assertSame( first.getDataSourceName(), second.getDataSourceName() );
+        assertEquals( 11, second.getTxId() );
+    }
+
+    @Test
+    public void shouldTellDataSourcesApart() throws Exception
+    {
+        txs.read( encode( "nioneodb", 10 ), 1 );
+        txs.read( encode( "lucene", 5 ), 1 );
+
+        Tx neo = txs.read( encode( "nioneodb", 10 ), 1 );
+        Tx lucene = txs.read( encode( "lucene", 5 ), 1 );
+        Tx other = txs.read( encode( "lucenf", 5 ), 1 );
+
+        assertEquals( "nioneodb", neo.getDataSourceName() );
+        assertEquals( "lucene", lucene.getDataSourceName() );
+        assertEquals( "lucenf", other.getDataSourceName() );
+    }
+
+    @Test
+    public void shouldReuseTxPerSlave() throws Exception
+    {
+        Tx first = txs.read( encode( "nioneodb", 10 ), 1 );
+        Tx other = txs.read( encode( "nioneodb", 20 ), 2 );
+        Tx second = txs.read( encode( "nioneodb", 10 ), 1 );
+
+        assertSame( first, second );
+        assertSame( other, txs.read( encode( "nioneodb", 20 ), 2 ) );
+        assertEquals( 20, other.getTxId() );
+    }
+
+    @Test
+    public void shouldLeaveBufferPositionedAfterTx() throws Exception
+    {
+        ChannelBuffer buffer = ChannelBuffers.dynamicBuffer();
+        writeString( buffer, "nioneodb" );
+        buffer.writeLong( 10 );
+        writeString( buffer, "nioneodb" );
+        buffer.writeLong( 12 );
+        buffer.writeInt( 42 );
+
+        assertEquals( 10, txs.read( buffer, 1 ).getTxId() );
+        assertEquals( 12, txs.read( buffer, 1 ).getTxId() );
+        assertEquals( 42, buffer.readInt() );
+    }
+
+    private ChannelBuffer encode( String dataSourceName, long txId )
+    {
+        ChannelBuffer buffer = ChannelBuffers.dynamicBuffer();
+        writeString( buffer, dataSourceName );
+        buffer.writeLong( txId );
+        return buffer;
+    }
+}
@@ -21,6 +21,9 @@ package org.neo4j.com;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
 
@@ -59,6 +62,95 @@ public class TestResourcePool
         somethingElse.doStuff();
     }
     
+    @Test
+    public void maintainCreatesUnusedInstancesUpToMinimum() throws Exception
+    {
+        final AtomicInteger created = new AtomicInteger();
+        ResourcePool<Something> pool = new ResourcePool<Something>( 10, 5, 3 )
+        {
+            @Override
+            protected Something create()
+            {
+                created.incrementAndGet();
+                return new Something();
+            }
+        };
+
+        pool.maintain();
+        assertEquals( 3, created.get() );
+
+        pool.acquire();
+        assertEquals( 3, created.get() );
+        pool.release();
+        pool.maintain();
+        assertEquals( 3, created.get() );
+    }
+
+    @Test
+    public void maintainDisposesDeadUnusedInstances() throws Exception
+    {
+        final AtomicInteger disposed = new AtomicInteger();
+        ResourcePool<Something> pool = new ResourcePool<Something>( 10, 5 )
+        {
+            @Override
+            protected Something create()
+            {
+                return new Something();
+            }
+
+            @Override
+            protected boolean isAlive( Something resource )
+            {
+                return !resource.closed;
+            }
+
+            @Override
+            protected void dispose( Something resource )
+            {
+                disposed.incrementAndGet();
+            }
+        };
+
+        Something something = pool.acquire();
+        pool.release();
+        something.close();
+        pool.maintain();
+        assertEquals( 1, disposed.get() );
+        assertFalse( something == pool.acquire() );
+    }
+
+    @Test
+    public void threadGetsBackTheInstanceItReleasedLast() throws Exception
+    {
+        final ResourcePool<Something> pool = new ResourcePool<Something>( 10, 5 )
+        {
+            @Override
+            protected Something create()
+            {
+                return new Something();
+            }
+        };
+
+        final Something[] others = new Something[1];
+        Thread other = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                others[0] = pool.acquire();
+                pool.release();
+            }
+        };
+        Something mine = pool.acquire();
+        other.start();
+        other.join();
+        pool.release();
+
+        // Both are unused now and the one released by the other thread is first in line
+        assertFalse( others[0] == mine );
+        assertSame( mine, pool.acquire() );
+    }
+
     private static class Something
     {
         private boolean closed;
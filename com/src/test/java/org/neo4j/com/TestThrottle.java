@@ -0,0 +1,77 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.com;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class TestThrottle
+{
+    private static final long SECOND = TimeUnit.SECONDS.toNanos( 1 );
+
+    @Test
+    public void shouldNeverWaitWithoutLimit() throws Exception
+    {
+        Throttle throttle = new Throttle( 0 );
+
+        assertEquals( 0, throttle.reserve( 1000000, 0 ) );
+        assertEquals( 0, throttle.reserve( 1000000, 0 ) );
+    }
+
+    @Test
+    public void shouldWaitForBytesAboveRate() throws Exception
+    {
+        Throttle throttle = new Throttle( 1000 );
+        long start = 10 * SECOND;
+
+        // A second's worth of bytes after having been quiet only eats into the credit
+        assertEquals( SECOND - SECOND / 10, throttle.reserve( 1000, start ) );
+        // The next second's worth has to wait for the first to pass
+        assertEquals( 2 * SECOND - SECOND / 10, throttle.reserve( 1000, start ) );
+    }
+
+    @Test
+    public void shouldNotWaitWhenStayingWithinRate() throws Exception
+    {
+        Throttle throttle = new Throttle( 1000 );
+        long now = 10 * SECOND;
+        for ( int i = 0; i < 10; i++, now += SECOND / 10 )
+        {
+            assertEquals( 0, throttle.reserve( 100, now ) );
+        }
+    }
+
+    @Test
+    public void shouldPickUpChangedRate() throws Exception
+    {
+        Throttle throttle = new Throttle( 1000 );
+        long now = 10 * SECOND;
+        assertEquals( 0, throttle.reserve( 100, now ) );
+
+        throttle.setBytesPerSecond( 0 );
+        assertEquals( 0, throttle.reserve( 1000000, now ) );
+
+        throttle.setBytesPerSecond( 2000 );
+        assertEquals( SECOND, throttle.reserve( 2000, now ) );
+    }
+}
@@ -35,19 +35,28 @@ import org.neo4j.perftest.enterprise.generator.DataGenerator;
 import org.neo4j.perftest.enterprise.util.Configuration;
 import org.neo4j.perftest.enterprise.util.Setting;
 
-class JsonReportWriter implements TimingProgress.Visitor
+public class JsonReportWriter implements TimingProgress.Visitor
 {
     private final File target;
     private JsonGenerator json;
     private boolean writeRecordsPerSecond = true;
     private final Configuration configuration;
     private final Config tuningConfiguration;
+    private final Class<?>[] settingsHolders;
 
     JsonReportWriter( Configuration configuration, Config tuningConfiguration )
+    {
+        this( configuration, tuningConfiguration, new File( configuration.get( ConsistencyPerformanceCheck.report_file ) ),
+                DataGenerator.class, ConsistencyPerformanceCheck.class );
+    }
+
+    public JsonReportWriter( Configuration configuration, Config tuningConfiguration, File target,
+                             Class<?>... settingsHolders )
     {
         this.configuration = configuration;
         this.tuningConfiguration = tuningConfiguration;
-        target = new File( configuration.get( ConsistencyPerformanceCheck.report_file ) );
+        this.target = target;
+        this.settingsHolders = settingsHolders;
     }
 
     @Override
@@ -82,7 +91,7 @@ class JsonReportWriter implements TimingProgress.Visitor
 
     private void emitConfiguration() throws IOException
     {
-        for ( Setting<?> setting : settingsOf( DataGenerator.class, ConsistencyPerformanceCheck.class ) )
+        for ( Setting<?> setting : settingsOf( settingsHolders ) )
         {
             emitSetting( setting );
         }
@@ -112,6 +121,30 @@ class JsonReportWriter implements TimingProgress.Visitor
         json.writeEndObject();
     }
 
+    /**
+     * Writes a phase with arbitrary measurements, f.ex. latency percentiles, instead of a count and a time.
+     */
+    public void phaseMeasurements( String phase, Map<String, ? extends Number> measurements ) throws IOException
+    {
+        ensureOpen( true );
+        json.writeStartObject();
+        json.writeStringField( "name", phase );
+        for ( Map.Entry<String, ? extends Number> measurement : measurements.entrySet() )
+        {
+            json.writeFieldName( measurement.getKey() );
+            Number value = measurement.getValue();
+            if ( value instanceof Double || value instanceof Float )
+            {
+                json.writeNumber( value.doubleValue() );
+            }
+            else
+            {
+                json.writeNumber( value.longValue() );
+            }
+        }
+        json.writeEndObject();
+    }
+
     private void emitTime( long elementCount, long timeNanos ) throws IOException
     {
         json.writeNumberField( "elementCount", elementCount );
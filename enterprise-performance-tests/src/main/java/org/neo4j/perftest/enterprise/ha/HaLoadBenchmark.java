@@ -0,0 +1,465 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.perftest.enterprise.ha;
+
+import static org.neo4j.perftest.enterprise.util.Configuration.SYSTEM_PROPERTIES;
+import static org.neo4j.perftest.enterprise.util.Configuration.settingsOf;
+import static org.neo4j.perftest.enterprise.util.Setting.booleanSetting;
+import static org.neo4j.perftest.enterprise.util.Setting.integerSetting;
+import static org.neo4j.perftest.enterprise.util.Setting.stringSetting;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.factory.GraphDatabaseBuilder;
+import org.neo4j.graphdb.factory.HighlyAvailableGraphDatabaseFactory;
+import org.neo4j.kernel.configuration.Config;
+import org.neo4j.kernel.ha.HaSettings;
+import org.neo4j.kernel.ha.HighlyAvailableGraphDatabase;
+import org.neo4j.kernel.impl.util.FileUtils;
+import org.neo4j.kernel.impl.util.StringLogger;
+import org.neo4j.perftest.enterprise.ccheck.JsonReportWriter;
+import org.neo4j.perftest.enterprise.util.Configuration;
+import org.neo4j.perftest.enterprise.util.Parameters;
+import org.neo4j.perftest.enterprise.util.Setting;
+
+/**
+ * Starts a cluster of {@link HighlyAvailableGraphDatabase} instances in this JVM, on loopback ports,
+ * and runs a mix of reads and writes against all of them. Reports commit latencies on master and
+ * slaves, lock round trips from slaves, replication lag and, optionally, the time it takes for the
+ * cluster to be writable again after the master is shut down.
+ */
+public class HaLoadBenchmark
+{
+    static final Setting<Long> cluster_size = integerSetting( "cluster_size", 3 );
+    static final Setting<String> store_dir = stringSetting( "store_dir", "target/ha_perf" );
+    static final Setting<Long> duration = integerSetting( "duration", 60 );
+    static final Setting<Long> threads_per_instance = integerSetting( "threads_per_instance", 4 );
+    static final Setting<Long> write_percentage = integerSetting( "write_percentage", 20 );
+    static final Setting<Long> seed_nodes = integerSetting( "seed_nodes", 1000 );
+    static final Setting<Long> pull_interval = integerSetting( "pull_interval", 100 );
+    static final Setting<Boolean> failover = booleanSetting( "failover", true );
+    static final Setting<String> report_file = stringSetting( "report_file", "target/ha_report.json" );
+
+    private static final int FIRST_CLUSTER_PORT = 5001;
+    private static final int FIRST_HA_PORT = 6361;
+    private static final RelationshipType LINK = DynamicRelationshipType.withName( "LINK" );
+    private static final String HEARTBEAT = "heartbeat";
+    private static final long FAILOVER_TIMEOUT_SECONDS = 120;
+
+    /**
+     * Sample execution:
+     * java -cp ... org.neo4j.perftest.enterprise.ha.HaLoadBenchmark
+     *    -cluster_size 3
+     *    -duration 60
+     *    -threads_per_instance 4
+     *    -write_percentage 20
+     *    -report_file target/ha_performance.json
+     */
+    public static void main( String... args ) throws Exception
+    {
+        new HaLoadBenchmark( Parameters.configuration( SYSTEM_PROPERTIES, settingsOf( HaLoadBenchmark.class ) )
+                .convert( args ) ).run();
+    }
+
+    private final Configuration configuration;
+    private final StringLogger logger = StringLogger.SYSTEM;
+    private final HighlyAvailableGraphDatabase[] dbs;
+    private final Map<String, String> tuningConfiguration = new HashMap<String, String>();
+    private final Latencies masterCommits = new Latencies( "master commit" );
+    private final Latencies slaveCommits = new Latencies( "slave commit" );
+    private final Latencies slaveLocks = new Latencies( "slave lock round trip" );
+    private final Latencies reads = new Latencies( "read" );
+    private final Latencies replicationLag = new Latencies( "replication lag" );
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong maxTxLag = new AtomicLong();
+    private volatile long firstNodeId;
+    private final AtomicLong lastNodeId = new AtomicLong();
+    private volatile long heartbeatNodeId;
+    private volatile boolean running = true;
+
+    HaLoadBenchmark( Configuration configuration )
+    {
+        this.configuration = configuration;
+        long size = configuration.get( cluster_size );
+        if ( size < 3 || size > 5 )
+        {
+            throw new IllegalArgumentException( "Cluster size must be between 3 and 5, was " + size );
+        }
+        this.dbs = new HighlyAvailableGraphDatabase[(int) size];
+    }
+
+    void run() throws Exception
+    {
+        File root = new File( configuration.get( store_dir ) );
+        FileUtils.deleteRecursively( root );
+        try
+        {
+            for ( int i = 0; i < dbs.length; i++ )
+            {
+                dbs[i] = startInstance( root, i );
+            }
+            HighlyAvailableGraphDatabase master = dbs[awaitMaster()];
+            seed( master );
+
+            List<Thread> threads = new ArrayList<Thread>();
+            for ( HighlyAvailableGraphDatabase db : dbs )
+            {
+                for ( int i = 0; i < configuration.get( threads_per_instance ); i++ )
+                {
+                    threads.add( new Thread( new Worker( db ), "Worker " + db + " " + i ) );
+                }
+                threads.add( new Thread( db.isMaster() ? new Heartbeat( db ) : new LagProbe( db, master ),
+                        "Replication " + db ) );
+            }
+            long start = System.nanoTime();
+            for ( Thread thread : threads )
+            {
+                thread.start();
+            }
+            Thread.sleep( TimeUnit.SECONDS.toMillis( configuration.get( duration ) ) );
+            running = false;
+            for ( Thread thread : threads )
+            {
+                thread.join();
+            }
+            long time = System.nanoTime() - start;
+
+            long failoverTime = configuration.get( failover ) ? failover() : -1;
+            report( time, failoverTime );
+        }
+        finally
+        {
+            for ( HighlyAvailableGraphDatabase db : dbs )
+            {
+                if ( db != null )
+                {
+                    db.shutdown();
+                }
+            }
+        }
+    }
+
+    private HighlyAvailableGraphDatabase startInstance( File root, int i )
+    {
+        StringBuilder initialHosts = new StringBuilder();
+        for ( int j = 0; j < dbs.length; j++ )
+        {
+            initialHosts.append( j > 0 ? "," : "" ).append( "127.0.0.1:" ).append( FIRST_CLUSTER_PORT + j );
+        }
+        GraphDatabaseBuilder builder = new HighlyAvailableGraphDatabaseFactory()
+                .newHighlyAvailableDatabaseBuilder( new File( root, "" + (i + 1) ).getAbsolutePath() );
+        Map<String, String> config = new HashMap<String, String>();
+        config.put( HaSettings.server_id.name(), "" + (i + 1) );
+        config.put( HaSettings.ha_server.name(), "127.0.0.1:" + (FIRST_HA_PORT + i) );
+        config.put( HaSettings.cluster_server.name(), "127.0.0.1:" + (FIRST_CLUSTER_PORT + i) );
+        config.put( HaSettings.initial_hosts.name(), initialHosts.toString() );
+        config.put( HaSettings.pull_interval.name(), configuration.get( pull_interval ) + "ms" );
+        builder.setConfig( config );
+        if ( i == 0 )
+        {
+            tuningConfiguration.putAll( config );
+        }
+        return (HighlyAvailableGraphDatabase) builder.newGraphDatabase();
+    }
+
+    private int awaitMaster() throws InterruptedException
+    {
+        long end = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis( FAILOVER_TIMEOUT_SECONDS );
+        while ( System.currentTimeMillis() < end )
+        {
+            for ( int i = 0; i < dbs.length; i++ )
+            {
+                if ( dbs[i] != null && dbs[i].isMaster() )
+                {
+                    return i;
+                }
+            }
+            Thread.sleep( 10 );
+        }
+        throw new IllegalStateException( "No master elected" );
+    }
+
+    private void seed( HighlyAvailableGraphDatabase master )
+    {
+        Transaction tx = master.beginTx();
+        try
+        {
+            heartbeatNodeId = master.createNode().getId();
+            Node previous = null;
+            for ( int i = 0; i < configuration.get( seed_nodes ); i++ )
+            {
+                Node node = master.createNode();
+                node.setProperty( "value", i );
+                if ( previous != null )
+                {
+                    previous.createRelationshipTo( node, LINK );
+                }
+                else
+                {
+                    firstNodeId = node.getId();
+                }
+                previous = node;
+                lastNodeId.set( node.getId() );
+            }
+            tx.success();
+        }
+        finally
+        {
+            tx.finish();
+        }
+    }
+
+    private Node randomNode( HighlyAvailableGraphDatabase db, Random random )
+    {
+        long range = lastNodeId.get() - firstNodeId + 1;
+        return db.getNodeById( firstNodeId + (long) (random.nextDouble() * range) );
+    }
+
+    private class Worker implements Runnable
+    {
+        private final HighlyAvailableGraphDatabase db;
+        private final Random random = new Random();
+
+        Worker( HighlyAvailableGraphDatabase db )
+        {
+            this.db = db;
+        }
+
+        @Override
+        public void run()
+        {
+            while ( running )
+            {
+                try
+                {
+                    if ( random.nextInt( 100 ) < configuration.get( write_percentage ) )
+                    {
+                        write();
+                    }
+                    else
+                    {
+                        read();
+                    }
+                }
+                catch ( NotFoundException e )
+                {   // Not pulled to this instance yet
+                }
+                catch ( RuntimeException e )
+                {
+                    failures.incrementAndGet();
+                }
+            }
+        }
+
+        private void write()
+        {
+            boolean master = db.isMaster();
+            long start = System.nanoTime();
+            Transaction tx = db.beginTx();
+            try
+            {
+                Node existing = randomNode( db, random );
+                long lockStart = System.nanoTime();
+                tx.acquireWriteLock( existing );
+                if ( !master )
+                {
+                    slaveLocks.recordNanos( System.nanoTime() - lockStart );
+                }
+                Node node = db.createNode();
+                node.setProperty( "value", random.nextInt() );
+                existing.createRelationshipTo( node, LINK );
+                tx.success();
+            }
+            finally
+            {
+                tx.finish();
+            }
+            (master ? masterCommits : slaveCommits).recordNanos( System.nanoTime() - start );
+        }
+
+        private void read()
+        {
+            long start = System.nanoTime();
+            Node node = randomNode( db, random );
+            node.getProperty( "value", null );
+            for ( Relationship relationship : node.getRelationships() )
+            {
+                relationship.getOtherNode( node );
+            }
+            reads.recordNanos( System.nanoTime() - start );
+        }
+    }
+
+    /**
+     * Writes the current time on the master so that the slaves can see how far behind they are.
+     */
+    private class Heartbeat implements Runnable
+    {
+        private final HighlyAvailableGraphDatabase master;
+
+        Heartbeat( HighlyAvailableGraphDatabase master )
+        {
+            this.master = master;
+        }
+
+        @Override
+        public void run()
+        {
+            while ( running )
+            {
+                Transaction tx = master.beginTx();
+                try
+                {
+                    master.getNodeById( heartbeatNodeId ).setProperty( HEARTBEAT, System.nanoTime() );
+                    tx.success();
+                }
+                catch ( RuntimeException e )
+                {
+                    failures.incrementAndGet();
+                }
+                finally
+                {
+                    tx.finish();
+                }
+                pause();
+            }
+        }
+    }
+
+    private class LagProbe implements Runnable
+    {
+        private final HighlyAvailableGraphDatabase slave;
+        private final HighlyAvailableGraphDatabase master;
+
+        LagProbe( HighlyAvailableGraphDatabase slave, HighlyAvailableGraphDatabase master )
+        {
+            this.slave = slave;
+            this.master = master;
+        }
+
+        @Override
+        public void run()
+        {
+            while ( running )
+            {
+                try
+                {
+                    Object heartbeat = slave.getNodeById( heartbeatNodeId ).getProperty( HEARTBEAT, null );
+                    if ( heartbeat != null )
+                    {
+                        replicationLag.recordNanos( System.nanoTime() - (Long) heartbeat );
+                    }
+                    long txLag = lastCommittedTx( master ) - lastCommittedTx( slave );
+                    for ( long max = maxTxLag.get(); txLag > max && !maxTxLag.compareAndSet( max, txLag ); )
+                    {
+                        max = maxTxLag.get();
+                    }
+                }
+                catch ( NotFoundException e )
+                {   // Not pulled to this instance yet
+                }
+                pause();
+            }
+        }
+
+        private long lastCommittedTx( HighlyAvailableGraphDatabase db )
+        {
+            return db.getXaDataSourceManager().getNeoStoreDataSource().getLastCommittedTxId();
+        }
+    }
+
+    private static void pause()
+    {
+        try
+        {
+            Thread.sleep( 10 );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Shuts the master down and measures the time until another instance is master and a write
+     * can be committed on it.
+     */
+    private long failover() throws InterruptedException
+    {
+        int master = awaitMaster();
+        long start = System.nanoTime();
+        dbs[master].shutdown();
+        dbs[master] = null;
+        long end = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis( FAILOVER_TIMEOUT_SECONDS );
+        while ( System.currentTimeMillis() < end )
+        {
+            HighlyAvailableGraphDatabase newMaster = dbs[awaitMaster()];
+            Transaction tx = newMaster.beginTx();
+            try
+            {
+                newMaster.createNode();
+                tx.success();
+                tx.finish();
+                return System.nanoTime() - start;
+            }
+            catch ( RuntimeException e )
+            {
+                tx.finish();
+                Thread.sleep( 10 );
+            }
+        }
+        return -1;
+    }
+
+    private void report( long timeNanos, long failoverNanos ) throws Exception
+    {
+        long operations = masterCommits.count() + slaveCommits.count() + reads.count();
+        JsonReportWriter writer = new JsonReportWriter( configuration, new Config( tuningConfiguration ),
+                new File( configuration.get( report_file ) ), HaLoadBenchmark.class );
+        writer.beginTimingProgress( operations, timeNanos );
+        for ( Latencies latencies : new Latencies[] {masterCommits, slaveCommits, slaveLocks, reads, replicationLag} )
+        {
+            writer.phaseMeasurements( latencies.name(), latencies.percentiles() );
+            logger.logMessage( latencies.name() + ": " + latencies.percentiles(), true );
+        }
+        writer.phaseMeasurements( "max replication lag", Collections.singletonMap( "transactions", maxTxLag.get() ) );
+        writer.phaseMeasurements( "failures", Collections.singletonMap( "count", failures.get() ) );
+        if ( configuration.get( failover ) )
+        {
+            writer.phaseMeasurements( "failover", Collections.singletonMap( "time_ms",
+                    failoverNanos == -1 ? -1 : TimeUnit.NANOSECONDS.toMillis( failoverNanos ) ) );
+        }
+        writer.endTimingProgress();
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.perftest.enterprise.ha;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Records latencies, in microseconds, and reports percentiles of them. Every sample is kept,
+ * which is fine for the length of a benchmark run.
+ */
+class Latencies
+{
+    private final String name;
+    private long[] samples = new long[1024];
+    private int count;
+
+    Latencies( String name )
+    {
+        this.name = name;
+    }
+
+    String name()
+    {
+        return name;
+    }
+
+    synchronized void recordNanos( long nanos )
+    {
+        if ( count == samples.length )
+        {
+            samples = Arrays.copyOf( samples, count * 2 );
+        }
+        samples[count++] = nanos / 1000;
+    }
+
+    synchronized int count()
+    {
+        return count;
+    }
+
+    synchronized Map<String, Number> percentiles()
+    {
+        long[] sorted = Arrays.copyOf( samples, count );
+        Arrays.sort( sorted );
+        Map<String, Number> result = new LinkedHashMap<String, Number>();
+        result.put( "count", count );
+        result.put( "p50_us", percentile( sorted, 0.5 ) );
+        result.put( "p90_us", percentile( sorted, 0.9 ) );
+        result.put( "p99_us", percentile( sorted, 0.99 ) );
+        result.put( "p999_us", percentile( sorted, 0.999 ) );
+        result.put( "max_us", sorted.length == 0 ? 0 : sorted[sorted.length - 1] );
+        return result;
+    }
+
+    private static long percentile( long[] sorted, double fraction )
+    {
+        if ( sorted.length == 0 )
+        {
+            return 0;
+        }
+        return sorted[Math.min( sorted.length - 1, (int) (sorted.length * fraction) )];
+    }
+}
@@ -0,0 +1,100 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.perftest.enterprise.ha;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class LatenciesTest
+{
+    @Test
+    public void shouldReportZeroesWhenNothingWasRecorded() throws Exception
+    {
+        // when
+        Map<String, Number> percentiles = new Latencies( "empty" ).percentiles();
+
+        // then
+        assertEquals( 0, percentiles.get( "count" ) );
+        assertEquals( 0L, percentiles.get( "p50_us" ) );
+        assertEquals( 0L, percentiles.get( "p999_us" ) );
+        assertEquals( 0L, percentiles.get( "max_us" ) );
+    }
+
+    @Test
+    public void shouldRecordInMicrosecondsAndReportPercentilesOfSortedSamples() throws Exception
+    {
+        // given
+        Latencies latencies = new Latencies( "commit" );
+        for ( int i = 100; i >= 1; i-- )
+        {
+            latencies.recordNanos( TimeUnit.MICROSECONDS.toNanos( i ) );
+        }
+
+        // when
+        Map<String, Number> percentiles = latencies.percentiles();
+
+        // then
+        assertEquals( 100, latencies.count() );
+        assertEquals( 100, percentiles.get( "count" ) );
+        assertEquals( 51L, percentiles.get( "p50_us" ) );
+        assertEquals( 91L, percentiles.get( "p90_us" ) );
+        assertEquals( 100L, percentiles.get( "p99_us" ) );
+        assertEquals( 100L, percentiles.get( "p999_us" ) );
+        assertEquals( 100L, percentiles.get( "max_us" ) );
+    }
+
+    @Test
+    public void shouldKeepAllSamplesWhenGrowingBeyondInitialCapacity() throws Exception
+    {
+        // given
+        Latencies latencies = new Latencies( "read" );
+        for ( int i = 0; i < 5000; i++ )
+        {
+            latencies.recordNanos( 1000 );
+        }
+        latencies.recordNanos( TimeUnit.MILLISECONDS.toNanos( 7 ) );
+
+        // when
+        Map<String, Number> percentiles = latencies.percentiles();
+
+        // then
+        assertEquals( 5001, percentiles.get( "count" ) );
+        assertEquals( 1L, percentiles.get( "p999_us" ) );
+        assertEquals( 7000L, percentiles.get( "max_us" ) );
+    }
+
+    @Test
+    public void shouldTruncateSubMicrosecondLatencies() throws Exception
+    {
+        // given
+        Latencies latencies = new Latencies( "lock" );
+        latencies.recordNanos( 999 );
+        latencies.recordNanos( 1999 );
+
+        // then
+        assertEquals( 1L, latencies.percentiles().get( "max_us" ) );
+        assertEquals( 1L, latencies.percentiles().get( "p50_us" ) );
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.kernel.ha;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import org.neo4j.kernel.impl.core.LockReleaser;
+
+/**
+ * InvocationHandler for the lock releaser given to the neostore data source, which is what the kernel evicts
+ * the nodes and relationships a command changes through as it applies a transaction. While a slave applies a
+ * pull, see {@link HaXaDataSourceManager}, those evictions are collected instead of done one command at a time,
+ * and {@link HaXaDataSourceManager} evicts each changed entity once after the whole pull has been applied.
+ * Anything else, and evictions outside of a pull, goes straight to the lock releaser.
+ *
+ * Used if {@link HaSettings#batch_cache_eviction} is set.
+ */
+public class BatchingCacheEviction implements InvocationHandler
+{
+    private final LockReleaser delegate;
+
+    private BatchingCacheEviction( LockReleaser delegate )
+    {
+        this.delegate = delegate;
+    }
+
+    public static LockReleaser wrap( LockReleaser lockReleaser )
+    {
+        return (LockReleaser) Proxy.newProxyInstance( LockReleaser.class.getClassLoader(),
+                new Class[]{LockReleaser.class}, new BatchingCacheEviction( lockReleaser ) );
+    }
+
+    @Override
+    public Object invoke( Object proxy, Method method, Object[] args ) throws Throwable
+    {
+        ChangedEntities changed = ChangedEntities.current();
+        if ( changed != null && args != null && args.length == 1 && args[0] instanceof Long )
+        {
+            if ( method.getName().equals( "removeNodeFromCache" ) )
+            {
+                changed.node( (Long) args[0] );
+                return null;
+            }
+            if ( method.getName().equals( "removeRelationshipFromCache" ) )
+            {
+                changed.relationship( (Long) args[0] );
+                return null;
+            }
+        }
+
+        try
+        {
+            return method.invoke( delegate, args );
+        }
+        catch ( InvocationTargetException e )
+        {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.ha;
+
+import java.io.IOException;
+
+import org.neo4j.helpers.Pair;
+import org.neo4j.kernel.impl.transaction.xaframework.XaLogicalLog;
+
+/**
+ * Finds the last transaction that two stores have in common, by comparing the master id and
+ * checksum each of them has for transactions. The transaction ids to compare are first searched
+ * exponentially backwards from the last committed tx until a common one is found, and then the
+ * branch point is binary searched between them, so that only a logarithmic number of lookups
+ * are needed, regardless of how far back the stores diverged.
+ *
+ * The branch point is only reported, a branched store isn't rolled back to it. Store files are
+ * updated in place and the logical logs have no before-images, so there's nothing to undo the
+ * diverged transactions with. What happens to a branched store is still up to
+ * {@link HaSettings#branched_data_policy}.
+ */
+public class BranchPointFinder
+{
+    /**
+     * Returns the master id and checksum of a committed transaction.
+     */
+    public interface TxChecksumLookup
+    {
+        Pair<Integer, Long> lookup( long txId ) throws IOException;
+    }
+
+    /**
+     * Returned if the logs needed to find the branch point aren't available.
+     */
+    public static final long UNKNOWN = -1;
+
+    // Transaction 1 is the empty store and never in any log
+    private static final long FIRST_TX_ID = 2;
+
+    private final TxChecksumLookup mine;
+    private final TxChecksumLookup masters;
+
+    public BranchPointFinder( TxChecksumLookup mine, TxChecksumLookup masters )
+    {
+        this.mine = mine;
+        this.masters = masters;
+    }
+
+    /**
+     * @param myLastCommittedTx the last transaction committed in my store, it's assumed to
+     * be different from the master's transaction with the same id.
+     * @return the id of the last transaction that both stores agree on, {@code 1} if they have
+     * no committed transaction in common or {@link #UNKNOWN} if any of the logs needed to find
+     * out are missing.
+     */
+    public long findLastCommonTx( long myLastCommittedTx )
+    {
+        try
+        {
+            long different = myLastCommittedTx;
+            long same;
+            for ( long step = 1; ; step *= 2 )
+            {
+                long txId = Math.max( different - step, FIRST_TX_ID );
+                if ( txId == different )
+                {   // Not even the first transaction is the same
+                    return FIRST_TX_ID - 1;
+                }
+                if ( isSame( txId ) )
+                {
+                    same = txId;
+                    break;
+                }
+                different = txId;
+            }
+
+            while ( different - same > 1 )
+            {
+                long txId = same + (different - same) / 2;
+                if ( isSame( txId ) )
+                {
+                    same = txId;
+                }
+                else
+                {
+                    different = txId;
+                }
+            }
+            return same;
+        }
+        catch ( IOException e )
+        {
+            return UNKNOWN;
+        }
+    }
+
+    private boolean isSame( long txId ) throws IOException
+    {
+        Pair<Integer, Long> myMaster = mine.lookup( txId );
+        return myMaster.first() == XaLogicalLog.MASTER_ID_REPRESENTING_NO_MASTER ||
+                myMaster.equals( masters.lookup( txId ) );
+    }
+}
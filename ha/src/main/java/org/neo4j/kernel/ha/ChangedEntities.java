@@ -0,0 +1,82 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.kernel.ha;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The ids of the nodes and relationships changed by the transactions applied in one pull. A pull
+ * applies its transactions on the thread that asked for them, so the batch being collected is
+ * kept per thread, between {@link #begin()} and {@link #end()}.
+ */
+class ChangedEntities
+{
+    private static final ThreadLocal<ChangedEntities> CURRENT = new ThreadLocal<ChangedEntities>();
+
+    private final Set<Long> nodes = new HashSet<Long>();
+    private final Set<Long> relationships = new HashSet<Long>();
+
+    static ChangedEntities begin()
+    {
+        ChangedEntities changed = new ChangedEntities();
+        CURRENT.set( changed );
+        return changed;
+    }
+
+    static void end()
+    {
+        CURRENT.remove();
+    }
+
+    /**
+     * @return the batch being collected by this thread, or {@code null} if it isn't applying a pull.
+     */
+    static ChangedEntities current()
+    {
+        return CURRENT.get();
+    }
+
+    void node( long id )
+    {
+        nodes.add( id );
+    }
+
+    void relationship( long id )
+    {
+        relationships.add( id );
+    }
+
+    Set<Long> getNodes()
+    {
+        return nodes;
+    }
+
+    Set<Long> getRelationships()
+    {
+        return relationships;
+    }
+
+    boolean isEmpty()
+    {
+        return nodes.isEmpty() && relationships.isEmpty();
+    }
+}
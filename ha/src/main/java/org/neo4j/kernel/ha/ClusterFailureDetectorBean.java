@@ -0,0 +1,125 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.kernel.ha;
+
+import java.net.URI;
+import java.util.List;
+
+import javax.management.NotCompliantMBeanException;
+
+import org.neo4j.cluster.client.ClusterClient;
+import org.neo4j.cluster.protocol.heartbeat.PhiAccrualFailureDetector;
+import org.neo4j.helpers.Service;
+import org.neo4j.jmx.impl.ManagementBeanProvider;
+import org.neo4j.jmx.impl.ManagementData;
+import org.neo4j.jmx.impl.Neo4jMBean;
+import org.neo4j.management.ClusterFailureDetector;
+import org.neo4j.management.ClusterMemberHeartbeatInfo;
+
+@Service.Implementation(ManagementBeanProvider.class)
+public final class ClusterFailureDetectorBean extends ManagementBeanProvider
+{
+    public ClusterFailureDetectorBean()
+    {
+        super( ClusterFailureDetector.class );
+    }
+
+    @Override
+    protected Neo4jMBean createMXBean( ManagementData management ) throws NotCompliantMBeanException
+    {
+        if ( !isHA( management ) )
+        {
+            return null;
+        }
+        return new ClusterFailureDetectorImpl( management, true );
+    }
+
+    @Override
+    protected Neo4jMBean createMBean( ManagementData management ) throws NotCompliantMBeanException
+    {
+        if ( !isHA( management ) )
+        {
+            return null;
+        }
+        return new ClusterFailureDetectorImpl( management );
+    }
+
+    private static boolean isHA( ManagementData management )
+    {
+        return management.getKernelData().graphDatabase() instanceof HighlyAvailableGraphDatabase;
+    }
+
+    private static class ClusterFailureDetectorImpl extends Neo4jMBean implements ClusterFailureDetector
+    {
+        private final ClusterClient client;
+
+        ClusterFailureDetectorImpl( ManagementData management ) throws NotCompliantMBeanException
+        {
+            super( management );
+            client = clusterClient( management );
+        }
+
+        ClusterFailureDetectorImpl( ManagementData management, boolean isMXBean )
+        {
+            super( management, isMXBean );
+            client = clusterClient( management );
+        }
+
+        private static ClusterClient clusterClient( ManagementData management )
+        {
+            return management.getKernelData().graphDatabase().getDependencyResolver()
+                    .resolveDependency( ClusterClient.class );
+        }
+
+        @Override
+        public double getPhiThreshold()
+        {
+            PhiAccrualFailureDetector detector = client.getFailureDetector();
+            return detector == null ? 0 : detector.getThreshold();
+        }
+
+        @Override
+        public ClusterMemberHeartbeatInfo[] getMembers()
+        {
+            PhiAccrualFailureDetector detector = client.getFailureDetector();
+            if ( detector == null )
+            {
+                return new ClusterMemberHeartbeatInfo[0];
+            }
+
+            long now = System.currentTimeMillis();
+            List<URI> members = detector.getMembers();
+            ClusterMemberHeartbeatInfo[] infos = new ClusterMemberHeartbeatInfo[members.size()];
+            for ( int i = 0; i < infos.length; i++ )
+            {
+                URI member = members.get( i );
+                double phi = detector.phi( member, now );
+                long lastHeartbeat = detector.getLastHeartbeat( member );
+                infos[i] = new ClusterMemberHeartbeatInfo( member.toString(), phi,
+                        phi >= detector.getThreshold(), lastHeartbeat < 0 ? -1 : now - lastHeartbeat,
+                        detector.getMeanInterval( member ), detector.getStdDeviation( member ),
+                        detector.getRoundTrip( member ), detector.getSampleCount( member ),
+                        detector.getSuspicionDelay( member ) );
+            }
+            return infos;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.kernel.ha;
+
+import javax.management.NotCompliantMBeanException;
+
+import org.neo4j.cluster.client.ClusterClient;
+import org.neo4j.cluster.protocol.atomicbroadcast.multipaxos.ProposerContext;
+import org.neo4j.helpers.Service;
+import org.neo4j.jmx.impl.ManagementBeanProvider;
+import org.neo4j.jmx.impl.ManagementData;
+import org.neo4j.jmx.impl.Neo4jMBean;
+import org.neo4j.management.ClusterProposer;
+
+@Service.Implementation(ManagementBeanProvider.class)
+public final class ClusterProposerBean extends ManagementBeanProvider
+{
+    public ClusterProposerBean()
+    {
+        super( ClusterProposer.class );
+    }
+
+    @Override
+    protected Neo4jMBean createMXBean( ManagementData management ) throws NotCompliantMBeanException
+    {
+        if ( !isHA( management ) )
+        {
+            return null;
+        }
+        return new ClusterProposerImpl( management, true );
+    }
+
+    @Override
+    protected Neo4jMBean createMBean( ManagementData management ) throws NotCompliantMBeanException
+    {
+        if ( !isHA( management ) )
+        {
+            return null;
+        }
+        return new ClusterProposerImpl( management );
+    }
+
+    private static boolean isHA( ManagementData management )
+    {
+        return management.getKernelData().graphDatabase() instanceof HighlyAvailableGraphDatabase;
+    }
+
+    private static class ClusterProposerImpl extends Neo4jMBean implements ClusterProposer
+    {
+        private final ClusterClient client;
+
+        ClusterProposerImpl( ManagementData management ) throws NotCompliantMBeanException
+        {
+            super( management );
+            client = clusterClient( management );
+        }
+
+        ClusterProposerImpl( ManagementData management, boolean isMXBean )
+        {
+            super( management, isMXBean );
+            client = clusterClient( management );
+        }
+
+        private static ClusterClient clusterClient( ManagementData management )
+        {
+            return management.getKernelData().graphDatabase().getDependencyResolver()
+                    .resolveDependency( ClusterClient.class );
+        }
+
+        private ProposerContext proposer()
+        {
+            return client.getProposerContext();
+        }
+
+        @Override
+        public int getWindowSize()
+        {
+            return proposer().getWindow().getSize();
+        }
+
+        @Override
+        public int getMaxWindowSize()
+        {
+            return proposer().getWindow().getMaxSize();
+        }
+
+        @Override
+        public int getOpenInstances()
+        {
+            return proposer().getWindow().getOpenInstances();
+        }
+
+        @Override
+        public int getPendingValues()
+        {
+            return proposer().getPendingValueCount();
+        }
+
+        @Override
+        public long getAverageCloseLatency()
+        {
+            return proposer().getWindow().getCloseLatency();
+        }
+
+        @Override
+        public long getClosedInstances()
+        {
+            return proposer().getWindow().getClosedInstances();
+        }
+
+        @Override
+        public long getWindowShrinks()
+        {
+            return proposer().getWindow().getShrinks();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.ha;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.NotCompliantMBeanException;
+
+import org.neo4j.helpers.Service;
+import org.neo4j.jmx.impl.ManagementBeanProvider;
+import org.neo4j.jmx.impl.ManagementData;
+import org.neo4j.jmx.impl.Neo4jMBean;
+import org.neo4j.kernel.GraphDatabaseAPI;
+import org.neo4j.kernel.impl.cache.Cache;
+import org.neo4j.kernel.impl.cache.CacheStatistics;
+import org.neo4j.kernel.impl.cache.GCResistantCache;
+import org.neo4j.management.GCResistantCacheInfo;
+import org.neo4j.management.GCResistantCaches;
+
+@Service.Implementation(ManagementBeanProvider.class)
+public final class GCResistantCachesBean extends ManagementBeanProvider
+{
+    public GCResistantCachesBean()
+    {
+        super( GCResistantCaches.class );
+    }
+
+    @Override
+    protected Neo4jMBean createMXBean( ManagementData management ) throws NotCompliantMBeanException
+    {
+        if ( !isHA( management ) )
+        {
+            return null;
+        }
+        return new GCResistantCachesImpl( management, true );
+    }
+
+    @Override
+    protected Neo4jMBean createMBean( ManagementData management ) throws NotCompliantMBeanException
+    {
+        if ( !isHA( management ) )
+        {
+            return null;
+        }
+        return new GCResistantCachesImpl( management );
+    }
+
+    private static boolean isHA( ManagementData management )
+    {
+        return management.getKernelData().graphDatabase() instanceof HighlyAvailableGraphDatabase;
+    }
+
+    private static class GCResistantCachesImpl extends Neo4jMBean implements GCResistantCaches
+    {
+        private final GraphDatabaseAPI graphDatabase;
+
+        GCResistantCachesImpl( ManagementData management ) throws NotCompliantMBeanException
+        {
+            super( management );
+            this.graphDatabase = management.getKernelData().graphDatabase();
+        }
+
+        GCResistantCachesImpl( ManagementData management, boolean isMXBean )
+        {
+            super( management, isMXBean );
+            this.graphDatabase = management.getKernelData().graphDatabase();
+        }
+
+        @Override
+        public GCResistantCacheInfo[] getCaches()
+        {
+            // Look the caches up every time since they're recreated when the cache configuration changes
+            List<GCResistantCacheInfo> result = new ArrayList<GCResistantCacheInfo>();
+            for ( GCResistantCache<?> cache : caches() )
+            {
+                CacheStatistics statistics = cache.getStatistics();
+                CacheStatistics interval = cache.getIntervalStatistics();
+                result.add( new GCResistantCacheInfo( cache.getName(), cache.size(), cache.getMaxSize(),
+                        cache.getArrayLength(), statistics.getHits(), statistics.getMisses(),
+                        statistics.getHitRatio(), interval.getHitRatio(), statistics.getCollisions(),
+                        statistics.getCollisionRate(), statistics.getPurges(), interval.getPurges(),
+                        statistics.getAveragePurgeTime(), cache.getMaxPurgeTime() ) );
+            }
+            return result.toArray( new GCResistantCacheInfo[result.size()] );
+        }
+
+        @Override
+        public int[] getOccupancyHistogram( String cacheName, int buckets )
+        {
+            if ( buckets <= 0 )
+            {
+                throw new IllegalArgumentException( "Number of buckets must be positive, was " + buckets );
+            }
+            for ( GCResistantCache<?> cache : caches() )
+            {
+                if ( cache.getName().equals( cacheName ) )
+                {
+                    return cache.getOccupancyHistogram( buckets );
+                }
+            }
+            throw new IllegalArgumentException( "No GC resistant cache named '" + cacheName + "'" );
+        }
+
+        private List<GCResistantCache<?>> caches()
+        {
+            List<GCResistantCache<?>> result = new ArrayList<GCResistantCache<?>>();
+            for ( Cache<?> cache : graphDatabase.getNodeManager().caches() )
+            {
+                if ( cache instanceof GCResistantCache )
+                {
+                    result.add( (GCResistantCache<?>) cache );
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.ha;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.helpers.NamedThreadFactory;
+import org.neo4j.kernel.GraphDatabaseAPI;
+import org.neo4j.kernel.ha.cluster.HighAvailabilityMemberChangeEvent;
+import org.neo4j.kernel.ha.cluster.HighAvailabilityMemberListener;
+import org.neo4j.kernel.ha.cluster.HighAvailabilityMemberState;
+import org.neo4j.kernel.ha.cluster.HighAvailabilityMemberStateMachine;
+import org.neo4j.kernel.impl.util.StringLogger;
+import org.neo4j.kernel.lifecycle.LifecycleAdapter;
+
+/**
+ * Keeps the caches warm across role switches. The ids of what's in the node and relationship
+ * caches are sampled periodically, and when the switch is done, i.e. when this instance is
+ * available as master or slave again, those entities are loaded back into the caches in the
+ * background, so that the first requests after a failover don't all go to disk.
+ *
+ * Sampling and warming up both run on the warmer's own thread, so cluster events are never held
+ * up by a scan of the caches.
+ */
+public class HaCacheWarmer extends LifecycleAdapter
+{
+    static final long SAMPLE_INTERVAL_SECONDS = 30;
+
+    private final HaCaches caches;
+    private final GraphDatabaseAPI graphDb;
+    private final int sampleSize;
+    private final StringLogger msgLog;
+    private ScheduledExecutorService executor;
+    private Future<?> warmUpTask;
+    private volatile long[] nodeIds = new long[0];
+    private volatile long[] relationshipIds = new long[0];
+
+    public HaCacheWarmer( HaCaches caches, GraphDatabaseAPI graphDb, HighAvailabilityMemberStateMachine stateMachine,
+                          int sampleSize, StringLogger msgLog )
+    {
+        this.caches = caches;
+        this.graphDb = graphDb;
+        this.sampleSize = sampleSize;
+        this.msgLog = msgLog;
+        stateMachine.addClusterMemberListener( new SwitchListener() );
+    }
+
+    @Override
+    public synchronized void start() throws Throwable
+    {
+        if ( sampleSize == 0 )
+        {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor( new NamedThreadFactory( "Cache warmer" ) );
+        executor.scheduleWithFixedDelay( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                sample();
+            }
+        }, SAMPLE_INTERVAL_SECONDS, SAMPLE_INTERVAL_SECONDS, TimeUnit.SECONDS );
+    }
+
+    @Override
+    public synchronized void stop() throws Throwable
+    {
+        if ( executor != null )
+        {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * Samples the ids in the caches, unless they're empty, in which case they've most likely just been
+     * cleared and the previous sample is better. Only called on the warmer's thread.
+     */
+    void sample()
+    {
+        long[] nodes = caches.sampleNodeIds( sampleSize );
+        long[] relationships = caches.sampleRelationshipIds( sampleSize );
+        if ( nodes.length + relationships.length > 0 )
+        {
+            nodeIds = nodes;
+            relationshipIds = relationships;
+        }
+    }
+
+    /**
+     * Takes a sample on the warmer's thread, ahead of any warm up requested after this.
+     */
+    synchronized void sampleSoon()
+    {
+        if ( executor == null )
+        {
+            return;
+        }
+        executor.execute( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                sample();
+            }
+        } );
+    }
+
+    synchronized void warmUp()
+    {
+        if ( executor == null )
+        {
+            return;
+        }
+        if ( warmUpTask != null )
+        {
+            warmUpTask.cancel( true );
+        }
+        warmUpTask = executor.submit( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                // Read here, after any sample queued before this warm up has been taken
+                long[] nodes = nodeIds;
+                long[] relationships = relationshipIds;
+                long start = System.currentTimeMillis();
+                try
+                {
+                    for ( long id : nodes )
+                    {
+                        if ( Thread.interrupted() )
+                        {
+                            return;
+                        }
+                        try
+                        {
+                            graphDb.getNodeById( id );
+                        }
+                        catch ( NotFoundException e )
+                        {   // Deleted since it was sampled
+                        }
+                    }
+                    for ( long id : relationships )
+                    {
+                        if ( Thread.interrupted() )
+                        {
+                            return;
+                        }
+                        try
+                        {
+                            graphDb.getRelationshipById( id );
+                        }
+                        catch ( NotFoundException e )
+                        {   // Deleted since it was sampled
+                        }
+                    }
+                    msgLog.logMessage( "Warmed up caches with " + nodes.length + " nodes and " +
+                            relationships.length + " relationships in " + (System.currentTimeMillis() - start) + "ms" );
+                }
+                catch ( RuntimeException e )
+                {   // The database is probably switching again, that's fine, it's just a warm up
+                    msgLog.logMessage( "Cache warm up stopped", e );
+                }
+            }
+        } );
+    }
+
+    private class SwitchListener extends HighAvailabilityMemberListener.Adapter
+    {
+        @Override
+        public void masterIsElected( HighAvailabilityMemberChangeEvent event )
+        {
+            if ( isSwitchStarting( event ) )
+            {   // Take a last sample before the switch clears the caches, if it gets there first
+                sampleSoon();
+            }
+        }
+
+        @Override
+        public void masterIsAvailable( HighAvailabilityMemberChangeEvent event )
+        {
+            if ( isSwitchDone( event ) )
+            {
+                warmUp();
+            }
+        }
+
+        @Override
+        public void slaveIsAvailable( HighAvailabilityMemberChangeEvent event )
+        {
+            if ( isSwitchDone( event ) )
+            {
+                warmUp();
+            }
+        }
+
+        private boolean isSwitchStarting( HighAvailabilityMemberChangeEvent event )
+        {
+            return event.getOldState() != event.getNewState() &&
+                    (event.getNewState() == HighAvailabilityMemberState.TO_MASTER ||
+                     event.getNewState() == HighAvailabilityMemberState.TO_SLAVE);
+        }
+
+        private boolean isSwitchDone( HighAvailabilityMemberChangeEvent event )
+        {
+            return event.getOldState() != event.getNewState() &&
+                    (event.getNewState() == HighAvailabilityMemberState.MASTER ||
+                     event.getNewState() == HighAvailabilityMemberState.SLAVE);
+        }
+    }
+}
@@ -28,13 +28,16 @@ import org.neo4j.graphdb.factory.GraphDatabaseSetting;
 import org.neo4j.kernel.configuration.Config;
 import org.neo4j.kernel.impl.cache.Cache;
 import org.neo4j.kernel.impl.cache.CacheProvider;
+import org.neo4j.kernel.impl.cache.GCResistantCache;
 import org.neo4j.kernel.impl.cache.GCResistantCacheProvider;
 import org.neo4j.kernel.impl.core.Caches;
 import org.neo4j.kernel.impl.core.NodeImpl;
 import org.neo4j.kernel.impl.core.RelationshipImpl;
 import org.neo4j.kernel.impl.util.StringLogger;
+import org.neo4j.kernel.info.DiagnosticsPhase;
+import org.neo4j.kernel.info.DiagnosticsProvider;
 
-public class HaCaches implements Caches
+public class HaCaches implements Caches, DiagnosticsProvider
 {
     private CacheProvider type;
     private Config config;
@@ -75,7 +78,9 @@ public class HaCaches implements Caches
                 mySettingIsSameAs(config, node_cache_array_fraction ) &&
                 mySettingIsSameAs(config, relationship_cache_array_fraction ) &&
                 mySettingIsSameAs(config, node_cache_size) &&
-        		mySettingIsSameAs(config, relationship_cache_size);
+        		mySettingIsSameAs(config, relationship_cache_size) &&
+                mySettingIsSameAs(config, GCResistantCacheProvider.Configuration.eviction_policy) &&
+                mySettingIsSameAs(config, GCResistantCacheProvider.Configuration.relationship_cache_off_heap_size);
     }
 
     private boolean mySettingIsSameAs(Config otherConfig, GraphDatabaseSetting<?> setting) {
@@ -103,4 +108,51 @@ public class HaCaches implements Caches
         type = null;
         config = null;
     }
+
+    /**
+     * @return ids of at most {@code max} nodes in the node cache, or none if the cache type doesn't support it.
+     */
+    public long[] sampleNodeIds( int max )
+    {
+        return sampleIds( node, max );
+    }
+
+    /**
+     * @return ids of at most {@code max} relationships in the relationship cache, or none if the cache type
+     * doesn't support it.
+     */
+    public long[] sampleRelationshipIds( int max )
+    {
+        return sampleIds( relationship, max );
+    }
+
+    private static long[] sampleIds( Cache<?> cache, int max )
+    {
+        return cache instanceof GCResistantCache ? ((GCResistantCache<?>) cache).sampleIds( max ) : new long[0];
+    }
+
+    @Override
+    public String getDiagnosticsIdentifier()
+    {
+        return getClass().getName();
+    }
+
+    @Override
+    public void acceptDiagnosticsVisitor( Object visitor )
+    {
+        // accept no visitors.
+    }
+
+    @Override
+    public void dump( DiagnosticsPhase phase, StringLogger log )
+    {
+        // The caches are recreated when their configuration changes, so delegate to the current ones
+        for ( Cache<?> cache : new Cache<?>[] { node, relationship } )
+        {
+            if ( cache instanceof DiagnosticsProvider )
+            {
+                ((DiagnosticsProvider) cache).dump( phase, log );
+            }
+        }
+    }
 }
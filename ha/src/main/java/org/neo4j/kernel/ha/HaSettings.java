@@ -57,6 +57,32 @@ public class HaSettings
             GraphDatabaseSetting.IntegerSetting( "ha.max_concurrent_channels_per_slave",
             "Must be valid timeout in seconds", 1, null );
 
+    @Description("Number of channels a slave keeps connected to the master while they are not in use, " +
+            "so that requests don't have to wait for new connections, f.ex. right after a master switch.")
+    @Default("2")
+    public static final IntegerSetting min_unused_channels_per_slave = new IntegerSetting(
+            "ha.min_unused_channels_per_slave", "Must be a valid number of channels", 0, null );
+
+    @Description("Number of transactions a slave asks the master for at a time when catching up with it " +
+            "before becoming available, instead of copying the whole store.")
+    @Default("10000")
+    public static final IntegerSetting catch_up_batch_size = new IntegerSetting(
+            "ha.catch_up_batch_size", "Must be a valid number of transactions", 1, null );
+
+    @Description("Number of nodes, and relationships, whose ids are sampled from the caches and loaded " +
+            "into them again after this instance has switched role, so that it isn't serving from cold caches. " +
+            "0 disables it.")
+    @Default("100000")
+    public static final IntegerSetting cache_warmup_size = new IntegerSetting(
+            "ha.cache_warmup_size", "Must be a valid number of entities", 0, null );
+
+    @Description("Have a slave evict the nodes and relationships changed by the transactions it pulls from the " +
+            "master once per pull, after all of them have been applied, instead of once per command as each " +
+            "transaction is applied. An entity changed by many of the pulled transactions is then only evicted " +
+            "once, but readers may see it as it was before the pull until the pull has been applied.")
+    @Default(FALSE)
+    public static final BooleanSetting batch_cache_eviction = new BooleanSetting( "ha.batch_cache_eviction" );
+
     public static final IntegerSetting server_id = new GraphDatabaseSetting.IntegerSetting( "ha.server_id",
             "Must be a valid server id" );
 
@@ -108,6 +134,10 @@ public class HaSettings
     public static final GraphDatabaseSetting gcr_relationship_cache_array_fraction = GCResistantCacheProvider
             .Configuration.relationship_cache_array_fraction;
     public static final GraphDatabaseSetting gcr_log_interval = GCResistantCacheProvider.Configuration.log_interval;
+    public static final GraphDatabaseSetting gcr_eviction_policy = GCResistantCacheProvider.Configuration
+            .eviction_policy;
+    public static final GraphDatabaseSetting gcr_relationship_cache_off_heap_size = GCResistantCacheProvider
+            .Configuration.relationship_cache_off_heap_size;
 
     public static class TxPushStrategySetting
             extends OptionsSetting
@@ -17,6 +17,7 @@
  * You should have received a copy of the GNU Affero General Public License
  * along with this program. If not, see <http://www.gnu.org/licenses/>.
  */
+
 package org.neo4j.kernel.ha;
 
 import java.nio.channels.ReadableByteChannel;
@@ -24,17 +25,22 @@ import java.nio.channels.ReadableByteChannel;
 import org.neo4j.com.Response;
 import org.neo4j.com.ServerUtil;
 import org.neo4j.com.TxExtractor;
+import org.neo4j.graphdb.DependencyResolver;
 import org.neo4j.helpers.Triplet;
 import org.neo4j.helpers.collection.IteratorUtil;
+import org.neo4j.kernel.impl.core.NodeManager;
 import org.neo4j.kernel.impl.transaction.XaDataSourceManager;
 import org.neo4j.kernel.impl.transaction.xaframework.XaDataSource;
 import org.neo4j.kernel.impl.util.StringLogger;
 
 public class HaXaDataSourceManager extends XaDataSourceManager
 {
-    public HaXaDataSourceManager( StringLogger msgLog )
+    private final DependencyResolver dependencyResolver;
+
+    public HaXaDataSourceManager( StringLogger msgLog, DependencyResolver dependencyResolver )
     {
         super( msgLog );
+        this.dependencyResolver = dependencyResolver;
     }
 
     public <T> T applyTransactions( Response<T> response )
@@ -44,6 +50,7 @@ public class HaXaDataSourceManager extends XaDataSourceManager
 
     public <T> T applyTransactions( Response<T> response, ServerUtil.TxHandler txHandler )
     {
+        ChangedEntities changed = ChangedEntities.begin();
         try
         {
             for ( Triplet<String, Long, TxExtractor> tx : IteratorUtil.asIterable( response.transactions() ) )
@@ -70,7 +77,33 @@ public class HaXaDataSourceManager extends XaDataSourceManager
         finally
         {
             response.close();
+            ChangedEntities.end();
+            evictFromCaches( changed );
         }
         return response.response();
     }
+
+    /**
+     * Evicts the entities changed by a batch of applied transactions, all at once after they have
+     * been applied. Any entity a reader has put back into the caches while a transaction was being
+     * applied is gone after this, and entities not changed stay cached. What changed is what the
+     * kernel evicted while applying each transaction, collected by {@link BatchingCacheEviction}.
+     * Nothing is collected unless {@link HaSettings#batch_cache_eviction} is set.
+     */
+    void evictFromCaches( ChangedEntities changed )
+    {
+        if ( changed.isEmpty() )
+        {
+            return;
+        }
+        NodeManager nodeManager = dependencyResolver.resolveDependency( NodeManager.class );
+        for ( Long node : changed.getNodes() )
+        {
+            nodeManager.removeNodeFromCache( node );
+        }
+        for ( Long relationship : changed.getRelationships() )
+        {
+            nodeManager.removeRelationshipFromCache( relationship );
+        }
+    }
 }
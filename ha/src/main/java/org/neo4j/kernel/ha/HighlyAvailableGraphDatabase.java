@@ -31,6 +31,7 @@ import org.neo4j.cluster.client.ClusterClient;
 import org.neo4j.cluster.com.NetworkInstance;
 import org.neo4j.cluster.protocol.election.DefaultElectionCredentialsProvider;
 import org.neo4j.com.ComSettings;
+import org.neo4j.com.Throttle;
 import org.neo4j.graphdb.DependencyResolver;
 import org.neo4j.graphdb.index.IndexProvider;
 import org.neo4j.kernel.HighlyAvailableKernelData;
@@ -74,8 +75,10 @@ public class HighlyAvailableGraphDatabase extends InternalAbstractGraphDatabase
     private InstanceAccessGuard accessGuard;
     private HighAvailabilityMemberStateMachine memberStateMachine;
     private UpdatePuller updatePuller;
+    private HaCaches haCaches;
     private HighAvailabilityMemberContext memberContext;
     private ClusterClient clusterClient;
+    private HighAvailabilityModeSwitcher modeSwitcher;
 
     public HighlyAvailableGraphDatabase( String storeDir, Map<String, String> params,
                                          List<IndexProvider> indexProviders, List<KernelExtensionFactory<?>>
@@ -98,6 +101,9 @@ public class HighlyAvailableGraphDatabase extends InternalAbstractGraphDatabase
 
         super.create();
 
+        Throttle.STORE_COPY_READS.setBytesPerSecond( config.get( ComSettings.store_copy_max_read_rate ) );
+        Throttle.STORE_COPY_WRITES.setBytesPerSecond( config.get( ComSettings.store_copy_max_write_rate ) );
+
         kernelEventHandlers.registerKernelEventHandler( new TxManagerCheckKernelEventHandler( xaDataSourceManager,
                 (TxManager) txManager ) );
         transactionSupport.setLockReleaser( lockReleaser );
@@ -105,6 +111,9 @@ public class HighlyAvailableGraphDatabase extends InternalAbstractGraphDatabase
         life.add( updatePuller = new UpdatePuller( (HaXaDataSourceManager) xaDataSourceManager, master,
                 requestContextFactory, txManager, accessGuard, config, msgLog ) );
 
+        life.add( new HaCacheWarmer( haCaches, this, memberStateMachine, config.get( HaSettings.cache_warmup_size ),
+                msgLog ) );
+
         // Add this just before cluster join to ensure that it is up and running as late as possible
         // and is shut down as early as possible
         life.add( clusterClient );
@@ -112,6 +121,7 @@ public class HighlyAvailableGraphDatabase extends InternalAbstractGraphDatabase
         life.add( new StartupWaiter() );
 
         diagnosticsManager.appendProvider( new HighAvailabilityDiagnostics( memberStateMachine, clusterClient ) );
+        diagnosticsManager.appendProvider( haCaches );
     }
 
     private static Map<String, String> withDefaults( Map<String, String> params )
@@ -157,7 +167,8 @@ public class HighlyAvailableGraphDatabase extends InternalAbstractGraphDatabase
     @Override
     protected XaDataSourceManager createXaDataSourceManager()
     {
-        XaDataSourceManager toReturn = new HaXaDataSourceManager( logging.getLogger( HaXaDataSourceManager.class ) );
+        XaDataSourceManager toReturn = new HaXaDataSourceManager( logging.getLogger( HaXaDataSourceManager.class ),
+                dependencyResolver );
         requestContextFactory = new RequestContextFactory( config.get( HaSettings.server_id ), toReturn,
                 dependencyResolver );
         return toReturn;
@@ -181,8 +192,8 @@ public class HighlyAvailableGraphDatabase extends InternalAbstractGraphDatabase
 
         memberStateMachine = new HighAvailabilityMemberStateMachine( memberContext, accessGuard, clusterEvents,
                 logging.getLogger( HighAvailabilityMemberStateMachine.class ) );
-        life.add( new HighAvailabilityModeSwitcher( delegateInvocationHandler, clusterEvents, memberStateMachine, this,
-                config, logging.getLogger( HighAvailabilityModeSwitcher.class ) ) );
+        modeSwitcher = life.add( new HighAvailabilityModeSwitcher( delegateInvocationHandler, clusterEvents,
+                memberStateMachine, this, config, logging.getLogger( HighAvailabilityModeSwitcher.class ) ) );
 
         DelegateInvocationHandler<TxHook> txHookDelegate = new DelegateInvocationHandler<TxHook>();
         TxHook txHook = (TxHook) Proxy.newProxyInstance( TxHook.class.getClassLoader(), new Class[]{TxHook.class},
@@ -250,7 +261,7 @@ public class HighlyAvailableGraphDatabase extends InternalAbstractGraphDatabase
     @Override
     protected Caches createCaches()
     {
-        return new HaCaches( msgLog );
+        return haCaches = new HaCaches( msgLog );
     }
 
     @Override
@@ -386,6 +397,10 @@ public class HighlyAvailableGraphDatabase extends InternalAbstractGraphDatabase
                     {
                         result = (T) clusterClient;
                     }
+                    else if ( HighAvailabilityModeSwitcher.class.isAssignableFrom( type ) )
+                    {
+                        result = (T) modeSwitcher;
+                    }
                     else
                     {
                         throw e;
@@ -0,0 +1,114 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.kernel.ha;
+
+import org.neo4j.com.RequestContext;
+import org.neo4j.kernel.impl.transaction.xaframework.MissingLogDataException;
+import org.neo4j.kernel.impl.transaction.xaframework.XaDataSource;
+import org.neo4j.kernel.impl.util.StringLogger;
+
+/**
+ * Applies the transactions a slave is missing, in batches, so that a slave that has been away
+ * for a while doesn't have to do all that work in its first pull after becoming available.
+ * Every registered data source is caught up. If the master doesn't have the logs anymore the
+ * store is out of date and has to be copied.
+ *
+ * Masters from before batched catch up can't copy a range of transactions that goes beyond
+ * their last committed one. For those, and for data sources the master doesn't have, the
+ * transactions are left to the first pull as before.
+ */
+public class MasterCatchUp
+{
+    private final Master master;
+    private final HaXaDataSourceManager xaDataSourceManager;
+    private final int batchSize;
+    private final StringLogger msgLog;
+
+    public MasterCatchUp( Master master, HaXaDataSourceManager xaDataSourceManager, int batchSize,
+                          StringLogger msgLog )
+    {
+        this.master = master;
+        this.xaDataSourceManager = xaDataSourceManager;
+        this.batchSize = batchSize;
+        this.msgLog = msgLog;
+    }
+
+    public void catchUp()
+    {
+        for ( XaDataSource dataSource : xaDataSourceManager.getAllRegisteredDataSources() )
+        {
+            catchUp( dataSource );
+        }
+    }
+
+    private void catchUp( XaDataSource dataSource )
+    {
+        String name = dataSource.getName();
+        long startTxId = dataSource.getLastCommittedTxId();
+        long lastTxId = startTxId;
+        while ( true )
+        {
+            long endTxId = lastTxId + batchSize;
+            try
+            {
+                xaDataSourceManager.applyTransactions( master.copyTransactions( RequestContext.EMPTY,
+                        name, lastTxId + 1, endTxId ) );
+            }
+            catch ( RuntimeException e )
+            {
+                if ( isMissingLogData( e ) )
+                {
+                    throw new StoreOutOfDateException( "The master is missing the logs required to catch up " +
+                            name + " from txId " + (lastTxId + 1), e );
+                }
+                msgLog.logMessage( "Master can't send the transactions of " + name + " from txId " +
+                        (lastTxId + 1) + " in batches, they will come with the first pull instead: " + e );
+                break;
+            }
+
+            long newLastTxId = dataSource.getLastCommittedTxId();
+            if ( newLastTxId < endTxId || newLastTxId == lastTxId )
+            {   // Got less than we asked for, so that was all the master had
+                lastTxId = newLastTxId;
+                break;
+            }
+            lastTxId = newLastTxId;
+            msgLog.logMessage( "Caught up " + name + " with master to txId " + lastTxId );
+        }
+        if ( lastTxId > startTxId )
+        {
+            msgLog.logMessage( "Caught up " + name + " with master from txId " + startTxId + " to " + lastTxId );
+        }
+    }
+
+    private static boolean isMissingLogData( Throwable e )
+    {
+        // Checked exceptions from the server come wrapped, possibly more than once
+        for ( Throwable cause = e; cause != null; cause = cause.getCause() )
+        {
+            if ( cause instanceof MissingLogDataException )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+}
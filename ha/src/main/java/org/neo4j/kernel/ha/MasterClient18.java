@@ -68,10 +68,18 @@ public class MasterClient18 extends Client<Master> implements MasterClient
 
     public MasterClient18( String hostNameOrIp, int port, StringLogger stringLogger, StoreId storeId,
             long readTimeoutSeconds, long lockReadTimeout, int maxConcurrentChannels, int chunkSize )
+    {
+        this( hostNameOrIp, port, stringLogger, storeId, readTimeoutSeconds, lockReadTimeout,
+                maxConcurrentChannels, 0, chunkSize );
+    }
+
+    public MasterClient18( String hostNameOrIp, int port, StringLogger stringLogger, StoreId storeId,
+            long readTimeoutSeconds, long lockReadTimeout, int maxConcurrentChannels, int minUnusedChannels,
+            int chunkSize )
     {
         super( hostNameOrIp, port, stringLogger, storeId, MasterServer.FRAME_LENGTH, PROTOCOL_VERSION,
                 readTimeoutSeconds, maxConcurrentChannels, Math.min( maxConcurrentChannels,
-                        DEFAULT_MAX_NUMBER_OF_CONCURRENT_CHANNELS_PER_CLIENT ), chunkSize );
+                        DEFAULT_MAX_NUMBER_OF_CONCURRENT_CHANNELS_PER_CLIENT ), minUnusedChannels, chunkSize );
         this.lockReadTimeout = lockReadTimeout;
     }
 
@@ -82,6 +90,7 @@ public class MasterClient18 extends Client<Master> implements MasterClient
                 config.get( HaSettings.lock_read_timeout )
                 : config.get( HaSettings.read_timeout ),
                 config.get( HaSettings.max_concurrent_channels_per_slave ),
+                config.get( HaSettings.min_unused_channels_per_slave ),
                 config.get( ComSettings.com_chunk_size ) );
         this.config = config;
     }
@@ -28,13 +28,13 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicLong;
 
 import javax.transaction.NotSupportedException;
 import javax.transaction.SystemException;
 import javax.transaction.Transaction;
 import javax.transaction.TransactionManager;
 
+import org.neo4j.com.IdleTimeouts;
 import org.neo4j.com.RequestContext;
 import org.neo4j.com.ResourceReleaser;
 import org.neo4j.com.Response;
@@ -73,7 +73,6 @@ import org.neo4j.kernel.lifecycle.LifecycleAdapter;
 public class MasterImpl extends LifecycleAdapter implements Master
 {
     private static final int ID_GRAB_SIZE = 1000;
-    public static final int UNFINISHED_TRANSACTION_CLEANUP_DELAY = 1;
 
     private final GraphDatabaseAPI graphDb;
     private final StringLogger msgLog;
@@ -82,6 +81,7 @@ public class MasterImpl extends LifecycleAdapter implements Master
     private final Map<RequestContext, MasterTransaction> transactions = new ConcurrentHashMap<RequestContext,
             MasterTransaction>();
     private ScheduledExecutorService unfinishedTransactionsExecutor;
+    private IdleTimeouts<RequestContext> unfinishedTransactions;
     private long unfinishedTransactionThresholdMillis;
     private GraphProperties graphProperties;
     private final LockManager lockManager;
@@ -104,6 +104,8 @@ public class MasterImpl extends LifecycleAdapter implements Master
     {
         this.unfinishedTransactionThresholdMillis = config.isSet( HaSettings.lock_read_timeout ) ?
                 config.get( HaSettings.lock_read_timeout ) : config.get( HaSettings.read_timeout );
+        this.unfinishedTransactions = new IdleTimeouts<RequestContext>( unfinishedTransactionThresholdMillis,
+                unfinishedTransactionFinisher() );
         this.unfinishedTransactionsExecutor =
                 Executors.newSingleThreadScheduledExecutor( new NamedThreadFactory( "Unfinished transaction reaper" ) );
         this.unfinishedTransactionsExecutor.scheduleWithFixedDelay( new Runnable()
@@ -113,46 +115,62 @@ public class MasterImpl extends LifecycleAdapter implements Master
             {
                 try
                 {
-                    Map<RequestContext, MasterTransaction> safeTransactions = null;
-                    synchronized ( transactions )
-                    {
-                        safeTransactions = new HashMap<RequestContext, MasterTransaction>( transactions );
-                    }
-
-                    for ( Map.Entry<RequestContext, MasterTransaction> entry : safeTransactions.entrySet() )
-                    {
-                        long time = entry.getValue().timeLastSuspended.get();
-                        if ( (time != 0 && System.currentTimeMillis() - time >= unfinishedTransactionThresholdMillis) || entry.getValue().finishAsap() )
-                        {
-                            long displayableTime = (time == 0 ? 0 : (System.currentTimeMillis() - time));
-                            msgLog.logMessage( "Found old tx " + entry.getKey() + ", " +
-                                    "" + entry.getValue().transaction + ", " + displayableTime );
-                            try
-                            {
-                                Transaction otherTx = suspendOtherAndResumeThis( entry.getKey(), false );
-                                finishThisAndResumeOther( otherTx, entry.getKey(), false );
-                                msgLog.logMessage( "Rolled back old tx " + entry.getKey() + ", " +
-                                        "" + entry.getValue().transaction + ", " + displayableTime );
-                            }
-                            catch ( IllegalStateException e )
-                            {
-                                // Expected for waiting transactions
-                            }
-                            catch ( Throwable t )
-                            {
-                                // Not really expected
-                                msgLog.logMessage( "Unable to roll back old tx " + entry.getKey() + ", " +
-                                        "" + entry.getValue().transaction + ", " + displayableTime );
-                            }
-                        }
-                    }
+                    unfinishedTransactions.tick();
                 }
                 catch ( Throwable t )
                 {
                     // The show must go on
                 }
             }
-        }, UNFINISHED_TRANSACTION_CLEANUP_DELAY, UNFINISHED_TRANSACTION_CLEANUP_DELAY, TimeUnit.SECONDS );
+        }, unfinishedTransactions.getTickMillis(), unfinishedTransactions.getTickMillis(), TimeUnit.MILLISECONDS );
+    }
+
+    private IdleTimeouts.Listener<RequestContext> unfinishedTransactionFinisher()
+    {
+        return new IdleTimeouts.Listener<RequestContext>()
+        {
+            @Override
+            public boolean idle( RequestContext context, long idleMillis )
+            {
+                MasterTransaction tx = transactions.get( context );
+                if ( tx == null )
+                {
+                    return true;
+                }
+                msgLog.logMessage( "Found old tx " + context + ", " + tx.transaction + ", " + idleMillis );
+                try
+                {
+                    Transaction otherTx = suspendOtherAndResumeThis( context, false );
+                    finishThisAndResumeOther( otherTx, context, false );
+                    msgLog.logMessage( "Rolled back old tx " + context + ", " + tx.transaction + ", " + idleMillis );
+                    return true;
+                }
+                catch ( IllegalStateException e )
+                {
+                    // Expected for waiting transactions
+                }
+                catch ( Throwable t )
+                {
+                    // Not really expected
+                    msgLog.logMessage( "Unable to roll back old tx " + context + ", " + tx.transaction + ", " +
+                            idleMillis );
+                }
+                if ( tx.finishAsap() )
+                {   // Trying to resume it paused it, and the slave has given up on it so no request will touch it
+                    unfinishedTransactions.touch( context );
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @return the number of transactions that have been rolled back for having
+     * been left unfinished by their slaves.
+     */
+    public long getUnfinishedTransactionsRolledBack()
+    {
+        return unfinishedTransactions == null ? 0 : unfinishedTransactions.getReapedCount();
     }
 
     @Override
@@ -216,10 +234,10 @@ public class MasterImpl extends LifecycleAdapter implements Master
         MasterTransaction result = transactions.get( txId );
         if ( result != null )
         {
-            // set time stamp to zero so that we don't even try to finish it off
+            // stop monitoring it so that we don't even try to finish it off
             // if getting old. This is because if the tx is active and old then
             // it means it's waiting for a lock and we cannot do anything about it.
-            result.resetTime();
+            unfinishedTransactions.pause( txId );
             return result.transaction;
         }
         return null;
@@ -305,10 +323,10 @@ public class MasterImpl extends LifecycleAdapter implements Master
                 return;
             }
 
-            // update time stamp to current time so that we know that this tx just completed
+            // touch it so that we know that this tx just completed
             // a request and can now again start to be monitored, so that it can be
             // rolled back if it's getting old.
-            tx.updateTime();
+            unfinishedTransactions.touch( txId );
 
             txManager.suspend();
             if ( otherTx != null )
@@ -335,6 +353,7 @@ public class MasterImpl extends LifecycleAdapter implements Master
                 txManager.rollback();
             }
             transactions.remove( txId );
+            unfinishedTransactions.remove( txId );
             if ( otherTx != null )
             {
                 txManager.resume( otherTx );
@@ -450,6 +469,7 @@ public class MasterImpl extends LifecycleAdapter implements Master
         catch ( UnableToResumeTransactionException e )
         {
             transactions.get( context ).markAsFinishAsap();
+            unfinishedTransactions.expire( context );
             throw e;
         }
 
@@ -566,7 +586,6 @@ public class MasterImpl extends LifecycleAdapter implements Master
     private static class MasterTransaction
     {
         private final Transaction transaction;
-        private final AtomicLong timeLastSuspended = new AtomicLong();
         private volatile boolean finishAsap;
 
         MasterTransaction( Transaction transaction )
@@ -574,16 +593,6 @@ public class MasterImpl extends LifecycleAdapter implements Master
             this.transaction = transaction;
         }
 
-        void updateTime()
-        {
-            this.timeLastSuspended.set( System.currentTimeMillis() );
-        }
-
-        void resetTime()
-        {
-            this.timeLastSuspended.set( 0 );
-        }
-
         void markAsFinishAsap()
         {
             this.finishAsap = true;
@@ -592,7 +601,7 @@ public class MasterImpl extends LifecycleAdapter implements Master
         @Override
         public String toString()
         {
-            return transaction+"[lastSuspended="+timeLastSuspended+", finishAsap="+finishAsap+"]";
+            return transaction+"[finishAsap="+finishAsap+"]";
         }
 
         boolean finishAsap()
@@ -0,0 +1,99 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.kernel.ha;
+
+import javax.management.NotCompliantMBeanException;
+
+import org.neo4j.helpers.Service;
+import org.neo4j.jmx.impl.ManagementBeanProvider;
+import org.neo4j.jmx.impl.ManagementData;
+import org.neo4j.jmx.impl.Neo4jMBean;
+import org.neo4j.kernel.ha.cluster.HighAvailabilityModeSwitcher;
+import org.neo4j.management.SlaveConnections;
+
+@Service.Implementation(ManagementBeanProvider.class)
+public final class SlaveConnectionsBean extends ManagementBeanProvider
+{
+    public SlaveConnectionsBean()
+    {
+        super( SlaveConnections.class );
+    }
+
+    @Override
+    protected Neo4jMBean createMXBean( ManagementData management ) throws NotCompliantMBeanException
+    {
+        if ( !isHA( management ) )
+        {
+            return null;
+        }
+        return new SlaveConnectionsImpl( management, true );
+    }
+
+    @Override
+    protected Neo4jMBean createMBean( ManagementData management ) throws NotCompliantMBeanException
+    {
+        if ( !isHA( management ) )
+        {
+            return null;
+        }
+        return new SlaveConnectionsImpl( management );
+    }
+
+    private static boolean isHA( ManagementData management )
+    {
+        return management.getKernelData().graphDatabase() instanceof HighlyAvailableGraphDatabase;
+    }
+
+    private static class SlaveConnectionsImpl extends Neo4jMBean implements SlaveConnections
+    {
+        private final HighAvailabilityModeSwitcher modeSwitcher;
+
+        SlaveConnectionsImpl( ManagementData management ) throws NotCompliantMBeanException
+        {
+            super( management );
+            modeSwitcher = modeSwitcher( management );
+        }
+
+        SlaveConnectionsImpl( ManagementData management, boolean isMXBean )
+        {
+            super( management, isMXBean );
+            modeSwitcher = modeSwitcher( management );
+        }
+
+        private static HighAvailabilityModeSwitcher modeSwitcher( ManagementData management )
+        {
+            return management.getKernelData().graphDatabase().getDependencyResolver()
+                    .resolveDependency( HighAvailabilityModeSwitcher.class );
+        }
+
+        @Override
+        public long getSilentChannelsClosed()
+        {
+            return modeSwitcher.getSilentSlaveChannelsClosed();
+        }
+
+        @Override
+        public long getUnfinishedTransactionsRolledBack()
+        {
+            return modeSwitcher.getUnfinishedSlaveTransactionsRolledBack();
+        }
+    }
+}
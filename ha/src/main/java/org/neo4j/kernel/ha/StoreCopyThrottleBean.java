@@ -0,0 +1,111 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.ha;
+
+import javax.management.NotCompliantMBeanException;
+
+import org.neo4j.com.Throttle;
+import org.neo4j.helpers.Service;
+import org.neo4j.jmx.impl.ManagementBeanProvider;
+import org.neo4j.jmx.impl.ManagementData;
+import org.neo4j.jmx.impl.Neo4jMBean;
+import org.neo4j.management.StoreCopyThrottle;
+
+@Service.Implementation(ManagementBeanProvider.class)
+public final class StoreCopyThrottleBean extends ManagementBeanProvider
+{
+    public StoreCopyThrottleBean()
+    {
+        super( StoreCopyThrottle.class );
+    }
+
+    @Override
+    protected Neo4jMBean createMXBean( ManagementData management ) throws NotCompliantMBeanException
+    {
+        return new StoreCopyThrottleImpl( management, true );
+    }
+
+    @Override
+    protected Neo4jMBean createMBean( ManagementData management ) throws NotCompliantMBeanException
+    {
+        return new StoreCopyThrottleImpl( management );
+    }
+
+    private static class StoreCopyThrottleImpl extends Neo4jMBean implements StoreCopyThrottle
+    {
+        StoreCopyThrottleImpl( ManagementData management ) throws NotCompliantMBeanException
+        {
+            super( management );
+        }
+
+        StoreCopyThrottleImpl( ManagementData management, boolean isMXBean )
+        {
+            super( management, isMXBean );
+        }
+
+        @Override
+        public long getMaxReadRate()
+        {
+            return Throttle.STORE_COPY_READS.getBytesPerSecond();
+        }
+
+        @Override
+        public void setMaxReadRate( long bytesPerSecond )
+        {
+            Throttle.STORE_COPY_READS.setBytesPerSecond( bytesPerSecond );
+        }
+
+        @Override
+        public long getMaxWriteRate()
+        {
+            return Throttle.STORE_COPY_WRITES.getBytesPerSecond();
+        }
+
+        @Override
+        public void setMaxWriteRate( long bytesPerSecond )
+        {
+            Throttle.STORE_COPY_WRITES.setBytesPerSecond( bytesPerSecond );
+        }
+
+        @Override
+        public long getBytesRead()
+        {
+            return Throttle.STORE_COPY_READS.getBytes();
+        }
+
+        @Override
+        public long getBytesWritten()
+        {
+            return Throttle.STORE_COPY_WRITES.getBytes();
+        }
+
+        @Override
+        public long getThrottledReadMillis()
+        {
+            return Throttle.STORE_COPY_READS.getThrottledMillis();
+        }
+
+        @Override
+        public long getThrottledWriteMillis()
+        {
+            return Throttle.STORE_COPY_WRITES.getThrottledMillis();
+        }
+    }
+}
@@ -42,13 +42,16 @@ import org.neo4j.kernel.InternalAbstractGraphDatabase;
 import org.neo4j.kernel.TransactionInterceptorProviders;
 import org.neo4j.kernel.configuration.Config;
 import org.neo4j.kernel.configuration.ConfigurationDefaults;
+import org.neo4j.kernel.ha.BatchingCacheEviction;
 import org.neo4j.kernel.ha.BranchDetectingTxVerifier;
+import org.neo4j.kernel.ha.BranchPointFinder;
 import org.neo4j.kernel.ha.BranchedDataException;
 import org.neo4j.kernel.ha.BranchedDataPolicy;
 import org.neo4j.kernel.ha.DelegateInvocationHandler;
 import org.neo4j.kernel.ha.HaSettings;
 import org.neo4j.kernel.ha.HaXaDataSourceManager;
 import org.neo4j.kernel.ha.Master;
+import org.neo4j.kernel.ha.MasterCatchUp;
 import org.neo4j.kernel.ha.MasterClient18;
 import org.neo4j.kernel.ha.MasterImpl;
 import org.neo4j.kernel.ha.MasterServer;
@@ -108,6 +111,8 @@ public class HighAvailabilityModeSwitcher implements HighAvailabilityMemberListe
     private ScheduledExecutorService executor;
     private Future<?> toMasterTask;
     private Future<?> toSlaveTask;
+    private volatile MasterImpl currentMaster;
+    private volatile MasterServer currentMasterServer;
 
     public HighAvailabilityModeSwitcher( DelegateInvocationHandler delegateHandler, HighAvailabilityEvents clusterEvents,
                                       HighAvailabilityMemberStateMachine stateHandler, GraphDatabaseAPI graphDb,
@@ -148,6 +153,26 @@ public class HighAvailabilityModeSwitcher implements HighAvailabilityMemberListe
         life.shutdown();
     }
 
+    /**
+     * @return the number of slave channels that went silent and were closed since
+     * this instance last became master.
+     */
+    public long getSilentSlaveChannelsClosed()
+    {
+        MasterServer server = currentMasterServer;
+        return server == null ? 0 : server.getSilentChannelsFinishedOff();
+    }
+
+    /**
+     * @return the number of transactions left unfinished by slaves that were rolled
+     * back since this instance last became master.
+     */
+    public long getUnfinishedSlaveTransactionsRolledBack()
+    {
+        MasterImpl master = currentMaster;
+        return master == null ? 0 : master.getUnfinishedTransactionsRolledBack();
+    }
+
     @Override
     public void masterIsElected( HighAvailabilityMemberChangeEvent event )
     {
@@ -259,6 +284,8 @@ public class HighAvailabilityModeSwitcher implements HighAvailabilityMemberListe
                             new BranchDetectingTxVerifier( graphDb ) );
                     life.add( masterImpl );
                     life.add( masterServer );
+                    currentMaster = masterImpl;
+                    currentMasterServer = masterServer;
                     delegateHandler.setDelegate( masterImpl );
                     DependencyResolver resolver = graphDb.getDependencyResolver();
                     HaXaDataSourceManager xaDsm = resolver.resolveDependency( HaXaDataSourceManager.class );
@@ -272,7 +299,7 @@ public class HighAvailabilityModeSwitcher implements HighAvailabilityMemberListe
                                 nioneoDataSource = new NeoStoreXaDataSource( config,
                                         resolver.resolveDependency( StoreFactory.class ),
                                         resolver.resolveDependency( LockManager.class ),
-                                        resolver.resolveDependency( LockReleaser.class ),
+                                        lockReleaser( resolver ),
                                         resolver.resolveDependency( StringLogger.class ),
                                         resolver.resolveDependency( XaFactory.class ),
                                         resolver.resolveDependency( TransactionInterceptorProviders.class ),
@@ -362,7 +389,7 @@ public class HighAvailabilityModeSwitcher implements HighAvailabilityMemberListe
                             nioneoDataSource = new NeoStoreXaDataSource( config,
                                     resolver.resolveDependency( StoreFactory.class ),
                                     resolver.resolveDependency( LockManager.class ),
-                                    resolver.resolveDependency( LockReleaser.class ),
+                                    lockReleaser( resolver ),
                                     resolver.resolveDependency( StringLogger.class ),
                                     resolver.resolveDependency( XaFactory.class ),
                                     resolver.resolveDependency( TransactionInterceptorProviders.class ),
@@ -384,6 +411,8 @@ public class HighAvailabilityModeSwitcher implements HighAvailabilityMemberListe
                         checkConsistencyLife.add( checkConsistencyMaster );
                         checkConsistencyLife.start();
                         checkDataConsistencyWithMaster( checkConsistencyMaster, nioneoDataSource );
+                        new MasterCatchUp( checkConsistencyMaster, xaDataSourceManager,
+                                config.get( HaSettings.catch_up_batch_size ), msgLog ).catchUp();
                     }
                     catch ( StoreUnableToParticipateInClusterException upe )
                     {
@@ -544,6 +573,64 @@ public class HighAvailabilityModeSwitcher implements HighAvailabilityMemberListe
         } );
     }
 
+    private LockReleaser lockReleaser( DependencyResolver resolver )
+    {
+        // Only slaves apply pulled transactions, so the same data source can be used by a master as well
+        LockReleaser lockReleaser = resolver.resolveDependency( LockReleaser.class );
+        return config.get( HaSettings.batch_cache_eviction ) ? BatchingCacheEviction.wrap( lockReleaser ) :
+                lockReleaser;
+    }
+
+    private long findLastCommonTx( final Master master, final NeoStoreXaDataSource nioneoDataSource,
+                                   long myLastCommittedTx )
+    {
+        BranchPointFinder.TxChecksumLookup mine = new BranchPointFinder.TxChecksumLookup()
+        {
+            @Override
+            public Pair<Integer, Long> lookup( long txId ) throws IOException
+            {
+                return nioneoDataSource.getMasterForCommittedTx( txId );
+            }
+        };
+        BranchPointFinder.TxChecksumLookup masters = new BranchPointFinder.TxChecksumLookup()
+        {
+            @Override
+            public Pair<Integer, Long> lookup( long txId ) throws IOException
+            {
+                Response<Pair<Integer, Long>> response = null;
+                try
+                {
+                    response = master.getMasterIdForCommittedTx( txId, nioneoDataSource.getStoreId() );
+                    return response.response();
+                }
+                catch ( RuntimeException e )
+                {
+                    if ( e.getCause() instanceof MissingLogDataException )
+                    {
+                        throw (MissingLogDataException) e.getCause();
+                    }
+                    throw e;
+                }
+                finally
+                {
+                    if ( response != null )
+                    {
+                        response.close();
+                    }
+                }
+            }
+        };
+        try
+        {
+            return new BranchPointFinder( mine, masters ).findLastCommonTx( myLastCommittedTx );
+        }
+        catch ( RuntimeException e )
+        {
+            msgLog.logMessage( "Failed to find the branch point for txId " + myLastCommittedTx, e );
+            return BranchPointFinder.UNKNOWN;
+        }
+    }
+
     private void checkDataConsistencyWithMaster( Master master, NeoStoreXaDataSource nioneoDataSource )
     {
         long myLastCommittedTx = nioneoDataSource.getLastCommittedTxId();
@@ -616,6 +703,11 @@ public class HighAvailabilityModeSwitcher implements HighAvailabilityMemberListe
                     " txId (" +
                     myLastCommittedTx + ") is " + myMaster + ", but master (machineId:" +
                     getServerId( availableMasterId ) + ") says that it's " + mastersMaster;
+            long lastCommonTx = findLastCommonTx( master, nioneoDataSource, myLastCommittedTx );
+            msg += lastCommonTx == BranchPointFinder.UNKNOWN ?
+                    ". The branch point couldn't be found with the logs available" :
+                    ". Last common txId is " + lastCommonTx + ", " + (myLastCommittedTx - lastCommonTx) +
+                    " transactions have diverged";
             throw new BranchedDataException( msg );
         }
         msgLog.logMessage( "Master id for last committed tx ok with highestTxId=" +
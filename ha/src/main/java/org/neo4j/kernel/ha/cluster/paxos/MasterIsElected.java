@@ -20,9 +20,14 @@
 
 package org.neo4j.kernel.ha.cluster.paxos;
 
+import java.io.IOException;
 import java.io.Serializable;
 import java.net.URI;
 
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.neo4j.cluster.com.message.MessageCodec;
+import org.neo4j.cluster.com.message.PayloadCodec;
+
 /**
  * This message is sent out when a master has been election by the {@link org.neo4j.cluster.protocol.election
  * .ElectionState} process.
@@ -30,6 +35,21 @@ import java.net.URI;
 public class MasterIsElected
         implements Serializable
 {
+    static final PayloadCodec<MasterIsElected> CODEC = new PayloadCodec<MasterIsElected>()
+    {
+        @Override
+        public void write( MasterIsElected payload, ChannelBuffer buffer, MessageCodec codec ) throws IOException
+        {
+            codec.writeObject( payload.masterUri, buffer );
+        }
+
+        @Override
+        public MasterIsElected read( ChannelBuffer buffer, MessageCodec codec ) throws IOException
+        {
+            return new MasterIsElected( (URI) codec.readObject( buffer ) );
+        }
+    };
+
     URI masterUri;
 
     public MasterIsElected( URI masterUri )
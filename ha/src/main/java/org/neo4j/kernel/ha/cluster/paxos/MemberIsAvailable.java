@@ -27,6 +27,9 @@ import java.io.ObjectOutput;
 import java.net.URI;
 import java.net.URISyntaxException;
 
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.neo4j.cluster.com.message.MessageCodec;
+import org.neo4j.cluster.com.message.PayloadCodec;
 import org.neo4j.helpers.collection.Iterables;
 
 /**
@@ -36,6 +39,40 @@ import org.neo4j.helpers.collection.Iterables;
 public class MemberIsAvailable
         implements Externalizable
 {
+    static final PayloadCodec<MemberIsAvailable> CODEC = new PayloadCodec<MemberIsAvailable>()
+    {
+        @Override
+        public void write( MemberIsAvailable payload, ChannelBuffer buffer, MessageCodec codec ) throws IOException
+        {
+            codec.writeString( payload.role, buffer );
+            codec.writeString( payload.clusterUri.toString(), buffer );
+            codec.writeVarInt( payload.instanceUris.length, buffer );
+            for ( URI instanceUri : payload.instanceUris )
+            {
+                codec.writeString( instanceUri.toString(), buffer );
+            }
+        }
+
+        @Override
+        public MemberIsAvailable read( ChannelBuffer buffer, MessageCodec codec ) throws IOException
+        {
+            MemberIsAvailable payload = new MemberIsAvailable();
+            payload.role = codec.readString( buffer );
+            payload.clusterUri = codec.readUri( buffer );
+            int count = codec.readVarInt( buffer );
+            if ( count < 0 || count > buffer.readableBytes() )
+            {
+                throw new IOException( "Invalid number of instance URIs " + count );
+            }
+            payload.instanceUris = new URI[count];
+            for ( int i = 0; i < count; i++ )
+            {
+                payload.instanceUris[i] = codec.readUri( buffer );
+            }
+            return payload;
+        }
+    };
+
     private String role;
     private URI clusterUri;
     private URI[] instanceUris;
@@ -26,7 +26,9 @@ import java.net.URISyntaxException;
 
 import org.neo4j.backup.OnlineBackupSettings;
 import org.neo4j.cluster.BindingListener;
+import org.neo4j.cluster.ClusterSettings;
 import org.neo4j.cluster.client.ClusterClient;
+import org.neo4j.cluster.com.message.MessageCodec;
 import org.neo4j.cluster.protocol.atomicbroadcast.AtomicBroadcastListener;
 import org.neo4j.cluster.protocol.atomicbroadcast.AtomicBroadcastSerializer;
 import org.neo4j.cluster.protocol.atomicbroadcast.Payload;
@@ -54,6 +56,8 @@ public class PaxosHighAvailabilityEvents implements HighAvailabilityEvents, Life
         int getServerId();
 
         int getBackupPort();
+
+        boolean isCompactBroadcasts();
     }
     
     public static Configuration adapt( final Config config )
@@ -77,9 +81,28 @@ public class PaxosHighAvailabilityEvents implements HighAvailabilityEvents, Life
             {
                 return config.get( OnlineBackupSettings.online_backup_port );
             }
+
+            @Override
+            public boolean isCompactBroadcasts()
+            {
+                return config.get( ClusterSettings.compact_broadcasts );
+            }
         };
     }
     
+    /**
+     * @param compact whether to write the events broadcast by this class compactly. They are read either way.
+     * @return a serializer that writes the events broadcast by this class, and can read them back.
+     */
+    public static AtomicBroadcastSerializer newSerializer( boolean compact )
+    {
+        MessageCodec codec = new MessageCodec();
+        codec.registerPayload( MessageCodec.FIRST_EXTENSION_ID, MasterIsElected.class, MasterIsElected.CODEC );
+        codec.registerPayload( MessageCodec.FIRST_EXTENSION_ID + 1, MemberIsAvailable.class,
+                MemberIsAvailable.CODEC );
+        return new AtomicBroadcastSerializer( codec, compact );
+    }
+
     private URI serverClusterId;
     private Configuration config;
     private StringLogger logger;
@@ -120,7 +143,7 @@ public class PaxosHighAvailabilityEvents implements HighAvailabilityEvents, Life
     public void init()
             throws Throwable
     {
-        serializer = new AtomicBroadcastSerializer();
+        serializer = newSerializer( config.isCompactBroadcasts() );
 
         cluster.addClusterListener( new ClusterListener.Adapter()
         {
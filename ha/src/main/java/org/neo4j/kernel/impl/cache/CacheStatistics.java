@@ -0,0 +1,124 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.cache;
+
+/**
+ * Snapshot of the counters of a {@link GCResistantCache}. Two snapshots can be compared with
+ * {@link #since(CacheStatistics)} to get the statistics of the interval between them.
+ */
+public class CacheStatistics
+{
+    private final long timestamp;
+    private final long hits;
+    private final long misses;
+    private final long puts;
+    private final long collisions;
+    private final long purges;
+    private final long purgeTime;
+
+    CacheStatistics( long timestamp, long hits, long misses, long puts, long collisions, long purges,
+            long purgeTime )
+    {
+        this.timestamp = timestamp;
+        this.hits = hits;
+        this.misses = misses;
+        this.puts = puts;
+        this.collisions = collisions;
+        this.purges = purges;
+        this.purgeTime = purgeTime;
+    }
+
+    /**
+     * @return the statistics of what happened between {@code earlier} and this snapshot.
+     */
+    public CacheStatistics since( CacheStatistics earlier )
+    {
+        return new CacheStatistics( timestamp - earlier.timestamp, hits - earlier.hits, misses - earlier.misses,
+                puts - earlier.puts, collisions - earlier.collisions, purges - earlier.purges,
+                purgeTime - earlier.purgeTime );
+    }
+
+    /**
+     * @return time of the snapshot, or the length of the interval for statistics returned
+     * from {@link #since(CacheStatistics)}, in milliseconds.
+     */
+    public long getTimestamp()
+    {
+        return timestamp;
+    }
+
+    public long getHits()
+    {
+        return hits;
+    }
+
+    public long getMisses()
+    {
+        return misses;
+    }
+
+    public long getPuts()
+    {
+        return puts;
+    }
+
+    public long getCollisions()
+    {
+        return collisions;
+    }
+
+    public long getPurges()
+    {
+        return purges;
+    }
+
+    public long getPurgeTime()
+    {
+        return purgeTime;
+    }
+
+    public float getHitRatio()
+    {
+        return ratio( hits, hits + misses );
+    }
+
+    public float getCollisionRate()
+    {
+        return ratio( collisions, puts );
+    }
+
+    public long getAveragePurgeTime()
+    {
+        return purges > 0 ? purgeTime / purges : 0;
+    }
+
+    private static float ratio( long part, long total )
+    {
+        return total > 0 ? (float) part / (float) total : 0f;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "hit ratio:" + getHitRatio() * 100.0f + "% collision rate:" + getCollisionRate() * 100.0f +
+                "% (" + collisions + ") puts:" + puts + " purges:" + purges + " avg. purge time:" +
+                (purges > 0 ? getAveragePurgeTime() + "ms" : "N/A");
+    }
+}
@@ -19,10 +19,18 @@
  */
 package org.neo4j.kernel.impl.cache;
 
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.neo4j.kernel.impl.util.StringLogger;
@@ -32,6 +40,44 @@ import org.neo4j.kernel.info.DiagnosticsProvider;
 public class GCResistantCache<E extends EntityWithSize> implements Cache<E>, DiagnosticsProvider
 {
     public static final long MIN_SIZE = 1;
+
+    /**
+     * How to choose which entries to throw out when the cache gets too big.
+     */
+    public enum EvictionPolicy
+    {
+        /**
+         * Remove entries outwards from the slot of the object that made the cache overflow,
+         * while the putting thread waits.
+         */
+        sweep,
+
+        /**
+         * Second chance (CLOCK) eviction where entries that have been used since the clock
+         * hand passed them last are kept. Purging is done in the background, one stripe of
+         * the array at a time, so that puts don't have to wait for it.
+         */
+        clock
+    }
+
+    // Number of slots the clock hand passes in a stripe before moving on to the next stripe
+    private static final int CLOCK_SWEEP_BATCH = 512;
+    private static final int MAX_PURGE_STRIPES = 64;
+    private static final int MIN_PURGE_STRIPE_LENGTH = 1024;
+
+    private static final ExecutorService PURGER = Executors.newCachedThreadPool( new ThreadFactory()
+    {
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread( Runnable r )
+        {
+            Thread thread = new Thread( r, "GCResistantCache purger-" + threadCount.incrementAndGet() );
+            thread.setDaemon( true );
+            return thread;
+        }
+    } );
+
     private final AtomicReferenceArray<E> cache;
     private final long maxSize;
     private long closeToMaxSize;
@@ -42,32 +88,86 @@ public class GCResistantCache<E extends EntityWithSize> implements Cache<E>, Dia
     private final String name;
     private final AtomicLong highestIdSet = new AtomicLong();
 
-    // non thread safe, only ~statistics (atomic update will affect performance)
-    private long hitCount = 0;
-    private long missCount = 0;
-    private long totalPuts = 0;
-    private long collisions = 0;
-    private long purgeCount = 0;
+    // striped so that statistics are accurate without all threads contending for the same counter
+    private final StripedCounter hitCount = new StripedCounter();
+    private final StripedCounter missCount = new StripedCounter();
+    private final StripedCounter totalPuts = new StripedCounter();
+    private final StripedCounter collisions = new StripedCounter();
+    private final AtomicLong purgeCount = new AtomicLong();
 
     private final StringLogger logger;
     
     private final AtomicBoolean purging = new AtomicBoolean();
     private final AtomicInteger avertedPurgeWaits = new AtomicInteger();
     private final AtomicInteger forcedPurgeWaits = new AtomicInteger();
-    private long purgeTime;
+    private final AtomicLong purgeTime = new AtomicLong();
+    private final AtomicLong maxPurgeTime = new AtomicLong();
+    private CacheStatistics intervalStart = getStatistics(); // guarded by this
+    private CacheStatistics lastInterval; // guarded by this
+
+    private final EvictionPolicy evictionPolicy;
+    // Set on every get and put. Cleared by the clock hand with EvictionPolicy.clock, otherwise by sampleIds
+    private final AtomicLongArray referenceBits;
+
+    // Only used with EvictionPolicy.clock
+    private final AtomicIntegerArray stripeLocks;
+    private final int[] clockHands; // guarded by stripeLocks
+    private final int stripeLength;
+    private final AtomicInteger nextStripe = new AtomicInteger();
+
+    private final OffHeapCache<E> secondTier;
 
     GCResistantCache( AtomicReferenceArray<E> cache )
+    {
+        this( cache, EvictionPolicy.sweep, 1024l*1024*1024 );
+    }
+
+    GCResistantCache( AtomicReferenceArray<E> cache, OffHeapCache<E> secondTier )
+    {
+        this( cache, EvictionPolicy.sweep, 1024l*1024*1024, secondTier );
+    }
+
+    GCResistantCache( AtomicReferenceArray<E> cache, EvictionPolicy evictionPolicy, long maxSizeInBytes )
+    {
+        this( cache, evictionPolicy, maxSizeInBytes, null );
+    }
+
+    GCResistantCache( AtomicReferenceArray<E> cache, EvictionPolicy evictionPolicy, long maxSizeInBytes,
+            OffHeapCache<E> secondTier )
     {
         this.cache = cache;
         this.minLogInterval = Long.MAX_VALUE;
-        this.maxSize = 1024l*1024*1024;
+        this.maxSize = maxSizeInBytes;
         this.name = "test cache";
-        this.logger = null;
+        this.logger = StringLogger.DEV_NULL;
+        this.secondTier = secondTier;
         calculateSizes();
+        this.evictionPolicy = evictionPolicy;
+        this.referenceBits = createReferenceBits();
+        this.stripeLength = stripeLength();
+        this.stripeLocks = new AtomicIntegerArray( stripeCount() );
+        this.clockHands = new int[stripeCount()];
     }
-    
+
     public GCResistantCache( long maxSizeInBytes, float arrayHeapFraction, long minLogInterval, String name, StringLogger logger )
     {
+        this( maxSizeInBytes, arrayHeapFraction, minLogInterval, name, logger, EvictionPolicy.sweep );
+    }
+
+    public GCResistantCache( long maxSizeInBytes, float arrayHeapFraction, long minLogInterval, String name,
+            StringLogger logger, EvictionPolicy evictionPolicy )
+    {
+        this( maxSizeInBytes, arrayHeapFraction, minLogInterval, name, logger, evictionPolicy, null );
+    }
+
+    /**
+     * @param secondTier optional off heap cache where evicted entities are kept and where misses
+     * are looked up before reporting a miss, {@code null} for no second tier.
+     */
+    public GCResistantCache( long maxSizeInBytes, float arrayHeapFraction, long minLogInterval, String name,
+            StringLogger logger, EvictionPolicy evictionPolicy, OffHeapCache<E> secondTier )
+    {
+        this.secondTier = secondTier;
         this.minLogInterval = minLogInterval;
         if ( arrayHeapFraction < 1 || arrayHeapFraction > 10 )
         {
@@ -91,6 +191,27 @@ public class GCResistantCache<E extends EntityWithSize> implements Cache<E>, Dia
         this.name = name == null ? super.toString() : name;
         this.logger = logger == null ? StringLogger.SYSTEM : logger;
         calculateSizes();
+        this.evictionPolicy = evictionPolicy;
+        this.referenceBits = createReferenceBits();
+        this.stripeLength = stripeLength();
+        this.stripeLocks = new AtomicIntegerArray( stripeCount() );
+        this.clockHands = new int[stripeCount()];
+    }
+
+    private AtomicLongArray createReferenceBits()
+    {
+        return new AtomicLongArray( (cache.length() + 63) / 64 );
+    }
+
+    private int stripeLength()
+    {
+        int stripes = Math.max( 1, Math.min( MAX_PURGE_STRIPES, cache.length() / MIN_PURGE_STRIPE_LENGTH ) );
+        return (cache.length() + stripes - 1) / stripes;
+    }
+
+    private int stripeCount()
+    {
+        return Math.max( 1, (cache.length() + stripeLength - 1) / stripeLength );
     }
 
     private void calculateSizes()
@@ -125,8 +246,9 @@ public class GCResistantCache<E extends EntityWithSize> implements Cache<E>, Dia
         if ( oldObj != obj )
         {
             int objectSize = obj.size();
-            if ( cache.compareAndSet( pos, oldObj, obj ) )
+            if ( replace( pos, oldObj, obj ) )
             {
+                markReferenced( pos );
                 setHighest( pos );
                 int oldObjSize = 0;
                 if ( oldObj != null )
@@ -137,9 +259,9 @@ public class GCResistantCache<E extends EntityWithSize> implements Cache<E>, Dia
                 obj.setRegisteredSize( objectSize );
                 if ( oldObj != null )
                 {
-                    collisions++;
+                    collisions.increment();
                 }
-                totalPuts++;
+                totalPuts.increment();
                 if ( size > closeToMaxSize )
                 {
                     purgeFrom( pos );
@@ -168,7 +290,45 @@ public class GCResistantCache<E extends EntityWithSize> implements Cache<E>, Dia
         }
     }
 
+    /**
+     * Replaces what is in the slot, moving an entity with another id that is replaced to the second tier if
+     * there is one.
+     *
+     * @return false if the slot no longer held {@code oldObj}.
+     */
+    private boolean replace( int pos, E oldObj, E obj )
+    {
+        if ( secondTier == null || oldObj == null || oldObj.getId() == obj.getId() )
+        {
+            return cache.compareAndSet( pos, oldObj, obj );
+        }
+        // Under the same lock as remove, so that an entity removed meanwhile isn't moved to the second tier
+        synchronized ( secondTier.lockForId( oldObj.getId() ) )
+        {
+            if ( !cache.compareAndSet( pos, oldObj, obj ) )
+            {
+                return false;
+            }
+            secondTier.put( oldObj );
+            return true;
+        }
+    }
+
     public E remove( long id )
+    {
+        if ( secondTier == null )
+        {
+            return removeFromSlot( id );
+        }
+        synchronized ( secondTier.lockForId( id ) )
+        {
+            E obj = removeFromSlot( id );
+            secondTier.remove( id );
+            return obj;
+        }
+    }
+
+    private E removeFromSlot( long id )
     {
         int pos = getPosition( id );
         E obj = cache.get(pos);
@@ -182,16 +342,56 @@ public class GCResistantCache<E extends EntityWithSize> implements Cache<E>, Dia
         return obj;
     }
 
+    /**
+     * Removes whatever is in the slot to make room, moving it to the second tier if there is one.
+     */
+    private void evict( int pos )
+    {
+        E obj = cache.get( pos );
+        if ( obj == null )
+        {
+            return;
+        }
+        if ( secondTier == null )
+        {
+            if ( cache.compareAndSet( pos, obj, null ) )
+            {
+                currentSize.addAndGet( obj.getRegisteredSize() * -1 );
+            }
+            return;
+        }
+        // Under the same lock as remove, so that an entity removed meanwhile isn't moved to the second tier
+        synchronized ( secondTier.lockForId( obj.getId() ) )
+        {
+            if ( cache.compareAndSet( pos, obj, null ) )
+            {
+                currentSize.addAndGet( obj.getRegisteredSize() * -1 );
+                secondTier.put( obj );
+            }
+        }
+    }
+
     public E get( long id )
     {
         int pos = getPosition( id );
         E obj = cache.get( pos );
         if ( obj != null && obj.getId() == id )
         {
-            hitCount++;
+            markReferenced( pos );
+            hitCount.increment();
             return obj;
         }
-        missCount++;
+        if ( secondTier != null )
+        {
+            obj = secondTier.get( id );
+            if ( obj != null )
+            {
+                put( obj );
+                hitCount.increment();
+                return obj;
+            }
+        }
+        missCount.increment();
         return null;
     }
 
@@ -202,7 +402,13 @@ public class GCResistantCache<E extends EntityWithSize> implements Cache<E>, Dia
         long myCurrentSize = currentSize.get();
         if ( myCurrentSize <= closeToMaxSize )
             return;
-        
+
+        if ( evictionPolicy == EvictionPolicy.clock )
+        {
+            clockPurge( myCurrentSize );
+            return;
+        }
+
         // if we're within 0.95 < size < 1.05 and someone else is purging then just return and let
         // the other one purge for us. if we're above 1.05 then wait for the purger to finish before returning.
         if ( purging.compareAndSet( false, true ) )
@@ -245,7 +451,7 @@ public class GCResistantCache<E extends EntityWithSize> implements Cache<E>, Dia
             return;
         
         long startTime = System.currentTimeMillis();
-        purgeCount++;
+        purgeCount.incrementAndGet();
         long sizeBefore = currentSize.get();
         try
         {
@@ -255,14 +461,14 @@ public class GCResistantCache<E extends EntityWithSize> implements Cache<E>, Dia
                 if ( ( pos - index ) >= 0 )
                 {
                     int minusPos = pos - index;
-                    remove( minusPos );
+                    evict( minusPos );
                     if ( currentSize.get() <= purgeStopSize )
                         return;
                 }
                 if ( ( pos + index ) < cache.length() )
                 {
                     int plusPos = pos + index;
-                    remove( plusPos );
+                    evict( plusPos );
                     if ( currentSize.get() <= purgeStopSize )
                         return;
                 }
@@ -270,29 +476,185 @@ public class GCResistantCache<E extends EntityWithSize> implements Cache<E>, Dia
             }
             while ( ( pos - index ) >= 0 || ( pos + index ) < cache.length() );
             // current object larger than max size, clear it
-            remove( pos ); 
+            evict( pos );
         }
         finally
         {
-            long timestamp = System.currentTimeMillis();
-            purgeTime += (timestamp-startTime);
-            if ( timestamp - lastPurgeLogTimestamp > minLogInterval )
+            purgeDone( startTime, sizeBefore );
+        }
+    }
+
+    private void purgeDone( long startTime, long sizeBefore )
+    {
+        long timestamp = System.currentTimeMillis();
+        long time = timestamp - startTime;
+        purgeTime.addAndGet( time );
+        for ( long max = maxPurgeTime.get(); time > max && !maxPurgeTime.compareAndSet( max, time ); )
+        {
+            max = maxPurgeTime.get();
+        }
+        if ( timestamp - lastPurgeLogTimestamp > minLogInterval )
+        {
+            lastPurgeLogTimestamp = timestamp;
+            long sizeAfter = currentSize.get();
+
+            String sizeBeforeStr = getSize( sizeBefore );
+            String sizeAfterStr = getSize( sizeAfter );
+            String diffStr = getSize( sizeBefore - sizeAfter );
+
+            CacheStatistics statistics = getStatistics();
+            String missPercentage =  ((1.0f - statistics.getHitRatio()) * 100.0f) + "%";
+            String colPercentage = (statistics.getCollisionRate() * 100.0f) + "%";
+
+            logger.logMessage( name + " purge (nr " + statistics.getPurges() + ") " + sizeBeforeStr + " -> " + sizeAfterStr + " (" + diffStr +
+                    ") " + missPercentage + " misses, " + colPercentage + " collisions (" + statistics.getCollisions() + ").", true );
+            printAccurateStatistics();
+        }
+    }
+
+    private void clockPurge( long myCurrentSize )
+    {
+        if ( myCurrentSize > purgeHandoffSize )
+        {   // The background purger isn't keeping up, help out in a stripe no one else is purging
+            forcedPurgeWaits.incrementAndGet();
+            sweepSomeStripe();
+        }
+        if ( purging.compareAndSet( false, true ) )
+        {
+            try
+            {
+                PURGER.execute( backgroundPurge );
+            }
+            catch ( RejectedExecutionException e )
+            {
+                purging.set( false );
+            }
+        }
+        else
+        {
+            avertedPurgeWaits.incrementAndGet();
+        }
+    }
+
+    private final Runnable backgroundPurge = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            try
+            {
+                long startTime = System.currentTimeMillis();
+                purgeCount.incrementAndGet();
+                long sizeBefore = currentSize.get();
+                try
+                {
+                    // Two full turns of the clock evicts everything, so if that isn't enough the
+                    // sizes are off and we'd better stop anyway
+                    long slotsLeft = 2l * cache.length();
+                    while ( currentSize.get() > purgeStopSize && slotsLeft > 0 )
+                    {
+                        slotsLeft -= sweepSomeStripe();
+                    }
+                }
+                finally
+                {
+                    purgeDone( startTime, sizeBefore );
+                }
+            }
+            finally
+            {
+                purging.set( false );
+            }
+        }
+    };
+
+    /**
+     * Moves the clock hand of the next stripe that no one else is purging one batch forward.
+     *
+     * @return the number of slots the hand passed, or 0 if all stripes were busy.
+     */
+    private int sweepSomeStripe()
+    {
+        int stripes = clockHands.length;
+        for ( int attempt = 0; attempt < stripes; attempt++ )
+        {
+            int stripe = (nextStripe.getAndIncrement() & Integer.MAX_VALUE) % stripes;
+            if ( stripeLocks.compareAndSet( stripe, 0, 1 ) )
             {
-                lastPurgeLogTimestamp = timestamp;
-                long sizeAfter = currentSize.get();
+                try
+                {
+                    return sweepStripe( stripe );
+                }
+                finally
+                {
+                    stripeLocks.set( stripe, 0 );
+                }
+            }
+        }
+        return 0;
+    }
 
-                String sizeBeforeStr = getSize( sizeBefore );
-                String sizeAfterStr = getSize( sizeAfter );
-                String diffStr = getSize( sizeBefore - sizeAfter );
+    private int sweepStripe( int stripe )
+    {
+        int start = stripe * stripeLength;
+        int end = Math.min( start + stripeLength, cache.length() );
+        int hand = Math.max( clockHands[stripe], start );
+        int passed = 0;
+        while ( passed < CLOCK_SWEEP_BATCH && currentSize.get() > purgeStopSize )
+        {
+            if ( hand >= end )
+            {
+                hand = start;
+            }
+            int pos = hand++;
+            passed++;
+            if ( cache.get( pos ) != null && !clearReferenced( pos ) )
+            {
+                evict( pos );
+            }
+        }
+        clockHands[stripe] = hand;
+        return passed;
+    }
 
-                String missPercentage =  ((float) missCount / (float) (hitCount+missCount) * 100.0f) + "%";
-                String colPercentage = ((float) collisions / (float) totalPuts * 100.0f) + "%";
+    boolean isPurging()
+    {
+        return purging.get();
+    }
+
+    private void markReferenced( int pos )
+    {
+        int word = pos >>> 6;
+        long bit = 1l << (pos & 63);
+        long bits = referenceBits.get( word );
+        while ( (bits & bit) == 0 && !referenceBits.compareAndSet( word, bits, bits | bit ) )
+        {
+            bits = referenceBits.get( word );
+        }
+    }
 
-                logger.logMessage( name + " purge (nr " + purgeCount + ") " + sizeBeforeStr + " -> " + sizeAfterStr + " (" + diffStr +
-                        ") " + missPercentage + " misses, " + colPercentage + " collisions (" + collisions + ").", true );
-                printAccurateStatistics();
+    private boolean isReferenced( int pos )
+    {
+        return (referenceBits.get( pos >>> 6 ) & (1l << (pos & 63))) != 0;
+    }
+
+    /**
+     * @return whether or not the slot had been referenced since last time.
+     */
+    private boolean clearReferenced( int pos )
+    {
+        int word = pos >>> 6;
+        long bit = 1l << (pos & 63);
+        long bits = referenceBits.get( word );
+        while ( (bits & bit) != 0 )
+        {
+            if ( referenceBits.compareAndSet( word, bits, bits & ~bit ) )
+            {
+                return true;
             }
+            bits = referenceBits.get( word );
         }
+        return false;
     }
 
     private void printAccurateStatistics()
@@ -310,7 +672,7 @@ public class GCResistantCache<E extends EntityWithSize> implements Cache<E>, Dia
                 registeredSize += obj.getRegisteredSize();
             }
         }
-        logger.logMessage( name + " purge (nr " + purgeCount + "): elementCount:" + elementCount + " and sizes actual:" + getSize( actualSize ) + 
+        logger.logMessage( name + " purge (nr " + purgeCount.get() + "): elementCount:" + elementCount + " and sizes actual:" + getSize( actualSize ) + 
                     ", perceived:" + getSize( currentSize.get() ) + " (diff:" + getSize(currentSize.get() - actualSize) + "), registered:" + getSize( registeredSize ), true );
     }
 
@@ -320,6 +682,116 @@ public class GCResistantCache<E extends EntityWithSize> implements Cache<E>, Dia
 //        printAccurateStatistics();
     }
 
+    /**
+     * @return a snapshot of the counters of this cache, see {@link CacheStatistics#since(CacheStatistics)}
+     * for getting the statistics of an interval.
+     */
+    public CacheStatistics getStatistics()
+    {
+        return new CacheStatistics( System.currentTimeMillis(), hitCount.sum(), missCount.sum(), totalPuts.sum(),
+                collisions.sum(), purgeCount.get(), purgeTime.get() );
+    }
+
+    public long getMaxPurgeTime()
+    {
+        return maxPurgeTime.get();
+    }
+
+    public long getMaxSize()
+    {
+        return maxSize;
+    }
+
+    public int getArrayLength()
+    {
+        return cache.length();
+    }
+
+    /**
+     * Counts the occupied slots in each of {@code buckets} equally sized regions of the array.
+     * Goes through the whole array, so it's not for the hot path.
+     */
+    public int[] getOccupancyHistogram( int buckets )
+    {
+        int[] histogram = new int[buckets];
+        long length = cache.length();
+        for ( int i = 0; i < length; i++ )
+        {
+            if ( cache.get( i ) != null )
+            {
+                histogram[(int) (i * buckets / length)]++;
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * Returns the ids of at most {@code max} entries in this cache, f.ex. to load them again into
+     * a new cache. Entries that have been referenced come first, i.e. those read or put since the
+     * clock hand passed them with {@link EvictionPolicy#clock}, or since the previous sample with
+     * {@link EvictionPolicy#sweep}. The array is scanned from a random slot, so that a sample
+     * smaller than the cache isn't made up of the lowest ids, and only until {@code max}
+     * referenced entries have been found.
+     */
+    public long[] sampleIds( int max )
+    {
+        // Referenced ids are collected from the front, others from the back until they are pushed out
+        long[] ids = new long[max];
+        int referenced = 0;
+        int unreferenced = 0;
+        int slots = (int) Math.min( highestIdSet.get() + 1, cache.length() );
+        int start = slots > 0 ? new Random().nextInt( slots ) : 0;
+        for ( int n = 0; n < slots && referenced < max; n++ )
+        {
+            int i = (start + n) % slots;
+            E obj = cache.get( i );
+            if ( obj == null )
+            {
+                continue;
+            }
+            // Nothing else clears the bits with sweep eviction, so sampling starts a new period
+            if ( evictionPolicy == EvictionPolicy.sweep ? clearReferenced( i ) : isReferenced( i ) )
+            {
+                if ( referenced + unreferenced == max )
+                {
+                    unreferenced--;
+                }
+                ids[referenced++] = obj.getId();
+            }
+            else if ( referenced + unreferenced < max )
+            {
+                ids[max - 1 - unreferenced++] = obj.getId();
+            }
+        }
+
+        int count = referenced + unreferenced;
+        if ( count == max )
+        {
+            return ids;
+        }
+        long[] sample = Arrays.copyOf( ids, count );
+        System.arraycopy( ids, max - unreferenced, sample, referenced, unreferenced );
+        return sample;
+    }
+
+    /**
+     * Intervals are at least {@code gcr_cache_min_log_interval} long and are the same for everyone
+     * reading them, reading doesn't start a new interval. Until the first interval has passed this
+     * returns what has happened so far.
+     *
+     * @return the statistics of the last whole interval.
+     */
+    public synchronized CacheStatistics getIntervalStatistics()
+    {
+        CacheStatistics now = getStatistics();
+        if ( now.getTimestamp() - intervalStart.getTimestamp() >= minLogInterval )
+        {
+            lastInterval = now.since( intervalStart );
+            intervalStart = now;
+        }
+        return lastInterval != null ? lastInterval : now.since( intervalStart );
+    }
+
     @Override
     public String getDiagnosticsIdentifier()
     {
@@ -335,12 +807,17 @@ public class GCResistantCache<E extends EntityWithSize> implements Cache<E>, Dia
     @Override
     public void dump( DiagnosticsPhase phase, StringLogger log )
     {
-        if (phase.isExplicitlyRequested()) logStatistics(log);
+        if (phase.isExplicitlyRequested())
+        {
+            logStatistics( log );
+            log.logMessage( name + " max purge time:" + getMaxPurgeTime() + "ms occupancy:" +
+                    Arrays.toString( getOccupancyHistogram( 10 ) ), true );
+        }
     }
 
     private void logStatistics( StringLogger log )
     {
-        log.logMessage( this.toString(), true );
+        log.logMessage( this.toString() + ", last interval: " + getIntervalStatistics(), true );
     }
     
     @Override
@@ -348,12 +825,14 @@ public class GCResistantCache<E extends EntityWithSize> implements Cache<E>, Dia
     {
         String currentSizeStr = getSize( currentSize.get() );
 
-        String missPercentage =  ((float) missCount / (float) (hitCount+missCount) * 100.0f) + "%";
-        String colPercentage = ((float) collisions / (float) totalPuts * 100.0f) + "%";
-        
-        return name + " array:" + cache.length() + " purge:" + purgeCount + " size:" + currentSizeStr +
-                " misses:" + missPercentage + " collisions:" + colPercentage + " (" + collisions + ") av.purge waits:" +
-                avertedPurgeWaits.get() + " purge waits:" + forcedPurgeWaits.get() + " avg. purge time:" + (purgeCount > 0 ? (purgeTime/purgeCount) + "ms" : "N/A");
+        CacheStatistics statistics = getStatistics();
+        String missPercentage =  ((1.0f - statistics.getHitRatio()) * 100.0f) + "%";
+        String colPercentage = (statistics.getCollisionRate() * 100.0f) + "%";
+
+        return name + " array:" + cache.length() + " purge:" + statistics.getPurges() + " size:" + currentSizeStr +
+                " misses:" + missPercentage + " collisions:" + colPercentage + " (" + statistics.getCollisions() + ") av.purge waits:" +
+                avertedPurgeWaits.get() + " purge waits:" + forcedPurgeWaits.get() + " avg. purge time:" + (statistics.getPurges() > 0 ? statistics.getAveragePurgeTime() + "ms" : "N/A") +
+                (secondTier != null ? " second tier hits:" + secondTier.hitCount() + " misses:" + secondTier.missCount() : "");
     }
 
     private String getSize( long size )
@@ -382,6 +861,14 @@ public class GCResistantCache<E extends EntityWithSize> implements Cache<E>, Dia
         {
             cache.set( i, null );
         }
+        if ( secondTier != null )
+        {
+            secondTier.clear();
+        }
+        for ( int i = 0; i < referenceBits.length(); i++ )
+        {
+            referenceBits.set( i, 0 );
+        }
         currentSize.set( 0 );
         highestIdSet.set( 0 );
     }
@@ -409,13 +896,13 @@ public class GCResistantCache<E extends EntityWithSize> implements Cache<E>, Dia
     @Override
     public long hitCount()
     {
-        return hitCount;
+        return hitCount.sum();
     }
 
     @Override
     public long missCount()
     {
-        return missCount;
+        return missCount.sum();
     }
 
     @Override
@@ -29,6 +29,7 @@ import org.neo4j.helpers.Service;
 import org.neo4j.kernel.configuration.Config;
 import org.neo4j.kernel.impl.core.NodeImpl;
 import org.neo4j.kernel.impl.core.RelationshipImpl;
+import org.neo4j.kernel.impl.core.RelationshipImplCodec;
 import org.neo4j.kernel.impl.util.StringLogger;
 
 @Service.Implementation( CacheProvider.class )
@@ -50,6 +51,19 @@ public class GCResistantCacheProvider extends CacheProvider
         @Default( "60s" )
         public static GraphDatabaseSetting<Long> log_interval = new TimeSpanSetting( "gcr_cache_min_log_interval" );
 
+        @Default( "sweep" )
+        public static GraphDatabaseSetting<GCResistantCache.EvictionPolicy> eviction_policy =
+                new GraphDatabaseSetting.EnumerableSetting<GCResistantCache.EvictionPolicy>(
+                        "gcr_cache_eviction_policy", GCResistantCache.EvictionPolicy.class );
+
+        /**
+         * Size of the off heap second tier of the relationship cache, 0 means no second tier.
+         * It's allocated as direct memory, so it can't be larger than -XX:MaxDirectMemorySize
+         * (which defaults to -Xmx) or startup fails.
+         */
+        @Default( "0" )
+        public static GraphDatabaseSetting<Long> relationship_cache_off_heap_size = new NumberOfBytesSetting( "relationship_cache_off_heap_size" );
+
         private static final class GCRMemoryUsageSetting extends NumberOfBytesSetting implements org.neo4j.graphdb.factory.GraphDatabaseSetting.DefaultValue
         {
             public GCRMemoryUsageSetting(String name) {
@@ -77,7 +91,7 @@ public class GCResistantCacheProvider extends CacheProvider
         long rel = config.get( Configuration.relationship_cache_size );
         checkMemToUse( logger, node, rel, Runtime.getRuntime().maxMemory() );
         return new GCResistantCache<NodeImpl>( node, config.get( Configuration.node_cache_array_fraction ), config.get( Configuration.log_interval ),
-                NODE_CACHE_NAME, logger );
+                NODE_CACHE_NAME, logger, config.get( Configuration.eviction_policy ) );
     }
 
     @Override
@@ -86,8 +100,11 @@ public class GCResistantCacheProvider extends CacheProvider
         long node = config.get( Configuration.node_cache_size );
         long rel = config.get( Configuration.relationship_cache_size );
         checkMemToUse( logger, node, rel, Runtime.getRuntime().maxMemory() );
+        long offHeap = config.get( Configuration.relationship_cache_off_heap_size );
+        OffHeapCache<RelationshipImpl> secondTier = offHeap > 0 ?
+                new OffHeapCache<RelationshipImpl>( offHeap, new RelationshipImplCodec() ) : null;
         return new GCResistantCache<RelationshipImpl>( rel, config.get( Configuration.relationship_cache_array_fraction ), config.get( Configuration.log_interval ),
-                RELATIONSHIP_CACHE_NAME, logger );
+                RELATIONSHIP_CACHE_NAME, logger, config.get( Configuration.eviction_policy ), secondTier );
     }
 
     // TODO: Move into validation method of config setting?
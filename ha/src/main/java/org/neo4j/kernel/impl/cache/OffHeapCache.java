@@ -0,0 +1,244 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.cache;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A cache of compact, serialized entities kept in direct memory, meant as a second tier behind
+ * a {@link GCResistantCache}. Entities that are evicted from the on-heap cache are written here
+ * and cache misses on the heap consult it before going to the store. Since the memory is
+ * outside the java heap it doesn't add to GC pauses.
+ *
+ * The JVM caps direct memory with -XX:MaxDirectMemorySize, which defaults to -Xmx. So a cache
+ * larger than the heap needs that flag set to at least its size, see {@link #maxDirectMemory()}.
+ *
+ * Like {@link GCResistantCache} it's direct mapped, i.e. each id maps to exactly one slot and a
+ * put overwrites whatever was in that slot. Each slot has a header with the id (plus one, so that
+ * zeroed memory means empty) and the generation the slot was written in, so that {@link #clear()}
+ * doesn't have to touch the memory.
+ */
+public class OffHeapCache<E extends EntityWithSize>
+{
+    /**
+     * Turns entities into fixed size records and back.
+     */
+    public interface Codec<E>
+    {
+        /**
+         * @return the size in bytes of a record, all records must have the same size.
+         */
+        int recordSize();
+
+        void write( E entity, ByteBuffer target );
+
+        E read( long id, ByteBuffer source );
+    }
+
+    private static final int HEADER_SIZE = 8 + 4;
+    private static final int MAX_PAGE_SIZE = 1 << 30;
+    private static final int LOCK_STRIPES = 1024;
+
+    private final Codec<E> codec;
+    private final ByteBuffer[] pages;
+    private final int slotSize;
+    private final int slotsPerPage;
+    private final long slots;
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    private volatile int generation = 1;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    public OffHeapCache( long maxSizeInBytes, Codec<E> codec )
+    {
+        long maxDirectMemory = maxDirectMemory();
+        if ( maxSizeInBytes > maxDirectMemory )
+        {
+            throw new IllegalArgumentException( "Off heap cache of " + maxSizeInBytes +
+                    "b exceeds the direct memory limit of " + maxDirectMemory +
+                    "b, start the JVM with a larger -XX:MaxDirectMemorySize" );
+        }
+        this.codec = codec;
+        this.slotSize = HEADER_SIZE + codec.recordSize();
+        this.slotsPerPage = MAX_PAGE_SIZE / slotSize;
+        this.slots = maxSizeInBytes / slotSize;
+        if ( slots < 1 )
+        {
+            throw new IllegalArgumentException( "Off heap cache of " + maxSizeInBytes +
+                    "b can't hold any records of size " + slotSize );
+        }
+        int pageCount = (int) ((slots + slotsPerPage - 1) / slotsPerPage);
+        this.pages = new ByteBuffer[pageCount];
+        for ( int i = 0; i < pageCount; i++ )
+        {
+            long slotsInPage = Math.min( slotsPerPage, slots - (long) i * slotsPerPage );
+            pages[i] = ByteBuffer.allocateDirect( (int) (slotsInPage * slotSize) );
+        }
+        for ( int i = 0; i < locks.length; i++ )
+        {
+            locks[i] = new Object();
+        }
+    }
+
+    public void put( E entity )
+    {
+        long id = entity.getId();
+        long slot = id % slots;
+        ByteBuffer page = pages[(int) (slot / slotsPerPage)];
+        int offset = (int) (slot % slotsPerPage) * slotSize;
+        synchronized ( lockFor( slot ) )
+        {
+            page.putLong( offset, id + 1 );
+            page.putInt( offset + 8, generation );
+            ByteBuffer record = record( page, offset );
+            codec.write( entity, record );
+        }
+    }
+
+    public E get( long id )
+    {
+        long slot = id % slots;
+        ByteBuffer page = pages[(int) (slot / slotsPerPage)];
+        int offset = (int) (slot % slotsPerPage) * slotSize;
+        synchronized ( lockFor( slot ) )
+        {
+            if ( holds( page, offset, id ) )
+            {
+                hitCount.incrementAndGet();
+                return codec.read( id, record( page, offset ) );
+            }
+        }
+        missCount.incrementAndGet();
+        return null;
+    }
+
+    public void remove( long id )
+    {
+        long slot = id % slots;
+        ByteBuffer page = pages[(int) (slot / slotsPerPage)];
+        int offset = (int) (slot % slotsPerPage) * slotSize;
+        synchronized ( lockFor( slot ) )
+        {
+            if ( holds( page, offset, id ) )
+            {
+                page.putLong( offset, 0 );
+            }
+        }
+    }
+
+    /**
+     * Makes all records invalid by moving on to the next generation.
+     */
+    public synchronized void clear()
+    {
+        generation++;
+    }
+
+    public long hitCount()
+    {
+        return hitCount.get();
+    }
+
+    public long missCount()
+    {
+        return missCount.get();
+    }
+
+    public long capacity()
+    {
+        return slots;
+    }
+
+    /**
+     * @return the most direct memory the JVM will hand out, as set by -XX:MaxDirectMemorySize
+     * or the maximum heap size if that isn't set.
+     */
+    public static long maxDirectMemory()
+    {
+        String prefix = "-XX:MaxDirectMemorySize=";
+        long max = Runtime.getRuntime().maxMemory();
+        for ( String argument : ManagementFactory.getRuntimeMXBean().getInputArguments() )
+        {
+            if ( argument.startsWith( prefix ) )
+            {
+                max = parseSize( argument.substring( prefix.length() ) );
+            }
+        }
+        return max;
+    }
+
+    static long parseSize( String size )
+    {
+        String value = size.trim().toLowerCase();
+        long multiplier = 1;
+        switch ( value.charAt( value.length() - 1 ) )
+        {
+        case 'g':
+            multiplier *= 1024;
+            // fall through
+        case 'm':
+            multiplier *= 1024;
+            // fall through
+        case 'k':
+            multiplier *= 1024;
+            value = value.substring( 0, value.length() - 1 );
+            break;
+        default:
+            break;
+        }
+        return Long.parseLong( value ) * multiplier;
+    }
+
+    /**
+     * @return the lock that guards the slot of the given id. {@link GCResistantCache} holds it while it moves
+     *         an entity here or removes one from both tiers, so that the two can't be interleaved.
+     */
+    Object lockForId( long id )
+    {
+        return lockFor( id % slots );
+    }
+
+    private boolean holds( ByteBuffer page, int offset, long id )
+    {
+        return page.getLong( offset ) == id + 1 && page.getInt( offset + 8 ) == generation;
+    }
+
+    private ByteBuffer record( ByteBuffer page, int offset )
+    {
+        ByteBuffer record = page.duplicate();
+        record.limit( offset + slotSize );
+        record.position( offset + HEADER_SIZE );
+        return record.slice();
+    }
+
+    private Object lockFor( long slot )
+    {
+        return locks[(int) (slot % LOCK_STRIPES)];
+    }
+
+    @Override
+    public String toString()
+    {
+        return getClass().getSimpleName() + "[slots:" + slots + ", record size:" + slotSize + "]";
+    }
+}
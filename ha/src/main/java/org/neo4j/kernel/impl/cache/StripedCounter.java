@@ -0,0 +1,69 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.cache;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter that many threads can increment at the same time without all of them
+ * contending for the same memory location. Each thread increments one of a number of
+ * cells, picked from its thread id, and reading the counter sums all cells.
+ */
+final class StripedCounter
+{
+    // Cells are spread out this many longs so that they end up in different cache lines
+    private static final int PADDING = 8;
+    private static final int STRIPES = stripes();
+
+    private final AtomicLongArray cells = new AtomicLongArray( STRIPES * PADDING );
+
+    void increment()
+    {
+        add( 1 );
+    }
+
+    void add( long delta )
+    {
+        cells.addAndGet( cell(), delta );
+    }
+
+    long sum()
+    {
+        long sum = 0;
+        for ( int i = 0; i < STRIPES; i++ )
+        {
+            sum += cells.get( i * PADDING );
+        }
+        return sum;
+    }
+
+    private static int cell()
+    {
+        long id = Thread.currentThread().getId();
+        return (int) ((id ^ (id >>> 16)) & (STRIPES - 1)) * PADDING;
+    }
+
+    private static int stripes()
+    {
+        // Next power of two of twice the number of processors
+        int processors = Runtime.getRuntime().availableProcessors();
+        return Integer.highestOneBit( Math.max( 1, processors * 2 - 1 ) ) << 1;
+    }
+}
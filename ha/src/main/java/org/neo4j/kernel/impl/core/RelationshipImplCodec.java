@@ -0,0 +1,55 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.core;
+
+import java.nio.ByteBuffer;
+
+import org.neo4j.kernel.impl.cache.OffHeapCache;
+
+/**
+ * Keeps the parts of a {@link RelationshipImpl} that never change, i.e. start node, end node
+ * and type, in an {@link OffHeapCache}. Properties are left out and loaded from the store
+ * when needed, just as for a relationship that was loaded from the store.
+ */
+public class RelationshipImplCodec implements OffHeapCache.Codec<RelationshipImpl>
+{
+    @Override
+    public int recordSize()
+    {
+        return 8 + 8 + 4;
+    }
+
+    @Override
+    public void write( RelationshipImpl relationship, ByteBuffer target )
+    {
+        target.putLong( relationship.getStartNodeId() );
+        target.putLong( relationship.getEndNodeId() );
+        target.putInt( relationship.getTypeId() );
+    }
+
+    @Override
+    public RelationshipImpl read( long id, ByteBuffer source )
+    {
+        long startNodeId = source.getLong();
+        long endNodeId = source.getLong();
+        int typeId = source.getInt();
+        return new RelationshipImpl( id, startNodeId, endNodeId, typeId, false );
+    }
+}
@@ -0,0 +1,39 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.management;
+
+import org.neo4j.jmx.Description;
+import org.neo4j.jmx.ManagementInterface;
+
+@ManagementInterface( name = ClusterFailureDetector.NAME )
+@Description( "How likely this cluster member finds it that each of the other members has failed, " +
+        "based on how regularly messages from them have arrived" )
+public interface ClusterFailureDetector
+{
+    final String NAME = "Cluster Failure Detector";
+
+    @Description( "Phi at which another member is suspected. 0 if members are suspected after a fixed timeout." )
+    double getPhiThreshold();
+
+    @Description( "Phi, the time since the last message and the statistics phi is computed from, for each member " +
+            "this member has heard from. Times are in milliseconds." )
+    ClusterMemberHeartbeatInfo[] getMembers();
+}
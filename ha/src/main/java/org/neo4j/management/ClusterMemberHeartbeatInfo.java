@@ -0,0 +1,100 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.management;
+
+import java.beans.ConstructorProperties;
+import java.io.Serializable;
+
+public final class ClusterMemberHeartbeatInfo implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    private final String member;
+    private final double phi;
+    private final boolean suspected;
+    private final long timeSinceLastHeartbeat;
+    private final long meanInterval;
+    private final long intervalStdDeviation;
+    private final long roundTrip;
+    private final int samples;
+    private final long suspicionDelay;
+
+    @ConstructorProperties( { "member", "phi", "suspected", "timeSinceLastHeartbeat", "meanInterval",
+            "intervalStdDeviation", "roundTrip", "samples", "suspicionDelay" } )
+    public ClusterMemberHeartbeatInfo( String member, double phi, boolean suspected, long timeSinceLastHeartbeat,
+            long meanInterval, long intervalStdDeviation, long roundTrip, int samples, long suspicionDelay )
+    {
+        this.member = member;
+        this.phi = phi;
+        this.suspected = suspected;
+        this.timeSinceLastHeartbeat = timeSinceLastHeartbeat;
+        this.meanInterval = meanInterval;
+        this.intervalStdDeviation = intervalStdDeviation;
+        this.roundTrip = roundTrip;
+        this.samples = samples;
+        this.suspicionDelay = suspicionDelay;
+    }
+
+    public String getMember()
+    {
+        return member;
+    }
+
+    public double getPhi()
+    {
+        return phi;
+    }
+
+    public boolean isSuspected()
+    {
+        return suspected;
+    }
+
+    public long getTimeSinceLastHeartbeat()
+    {
+        return timeSinceLastHeartbeat;
+    }
+
+    public long getMeanInterval()
+    {
+        return meanInterval;
+    }
+
+    public long getIntervalStdDeviation()
+    {
+        return intervalStdDeviation;
+    }
+
+    public long getRoundTrip()
+    {
+        return roundTrip;
+    }
+
+    public int getSamples()
+    {
+        return samples;
+    }
+
+    public long getSuspicionDelay()
+    {
+        return suspicionDelay;
+    }
+}
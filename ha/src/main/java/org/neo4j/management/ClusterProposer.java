@@ -0,0 +1,53 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.management;
+
+import org.neo4j.jmx.Description;
+import org.neo4j.jmx.ManagementInterface;
+
+@ManagementInterface( name = ClusterProposer.NAME )
+@Description( "How many Paxos instances this cluster member runs at the same time for the values it broadcasts" )
+public interface ClusterProposer
+{
+    final String NAME = "Cluster Proposer";
+
+    @Description( "Number of instances that may be open at the same time right now" )
+    int getWindowSize();
+
+    @Description( "Largest number of instances that may be open at the same time" )
+    int getMaxWindowSize();
+
+    @Description( "Number of instances that are open right now" )
+    int getOpenInstances();
+
+    @Description( "Number of values waiting for an instance to close" )
+    int getPendingValues();
+
+    @Description( "Average time from opening an instance until its value is accepted, in milliseconds. " +
+            "-1 if no instance has closed yet." )
+    long getAverageCloseLatency();
+
+    @Description( "Number of instances closed since this member joined the cluster" )
+    long getClosedInstances();
+
+    @Description( "Number of times the window has been halved because of timeouts or rejections" )
+    long getWindowShrinks();
+}
@@ -0,0 +1,136 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.management;
+
+import java.beans.ConstructorProperties;
+import java.io.Serializable;
+
+public final class GCResistantCacheInfo implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    private final String name;
+    private final long size;
+    private final long maxSize;
+    private final int arrayLength;
+    private final long hitCount;
+    private final long missCount;
+    private final float hitRatio;
+    private final float intervalHitRatio;
+    private final long collisions;
+    private final float collisionRate;
+    private final long purgeCount;
+    private final long intervalPurgeCount;
+    private final long averagePurgeTime;
+    private final long maxPurgeTime;
+
+    @ConstructorProperties( { "name", "size", "maxSize", "arrayLength", "hitCount", "missCount", "hitRatio",
+            "intervalHitRatio", "collisions", "collisionRate", "purgeCount", "intervalPurgeCount",
+            "averagePurgeTime", "maxPurgeTime" } )
+    public GCResistantCacheInfo( String name, long size, long maxSize, int arrayLength, long hitCount,
+            long missCount, float hitRatio, float intervalHitRatio, long collisions, float collisionRate,
+            long purgeCount, long intervalPurgeCount, long averagePurgeTime, long maxPurgeTime )
+    {
+        this.name = name;
+        this.size = size;
+        this.maxSize = maxSize;
+        this.arrayLength = arrayLength;
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.hitRatio = hitRatio;
+        this.intervalHitRatio = intervalHitRatio;
+        this.collisions = collisions;
+        this.collisionRate = collisionRate;
+        this.purgeCount = purgeCount;
+        this.intervalPurgeCount = intervalPurgeCount;
+        this.averagePurgeTime = averagePurgeTime;
+        this.maxPurgeTime = maxPurgeTime;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public long getSize()
+    {
+        return size;
+    }
+
+    public long getMaxSize()
+    {
+        return maxSize;
+    }
+
+    public int getArrayLength()
+    {
+        return arrayLength;
+    }
+
+    public long getHitCount()
+    {
+        return hitCount;
+    }
+
+    public long getMissCount()
+    {
+        return missCount;
+    }
+
+    public float getHitRatio()
+    {
+        return hitRatio;
+    }
+
+    public float getIntervalHitRatio()
+    {
+        return intervalHitRatio;
+    }
+
+    public long getCollisions()
+    {
+        return collisions;
+    }
+
+    public float getCollisionRate()
+    {
+        return collisionRate;
+    }
+
+    public long getPurgeCount()
+    {
+        return purgeCount;
+    }
+
+    public long getIntervalPurgeCount()
+    {
+        return intervalPurgeCount;
+    }
+
+    public long getAveragePurgeTime()
+    {
+        return averagePurgeTime;
+    }
+
+    public long getMaxPurgeTime()
+    {
+        return maxPurgeTime;
+    }
+}
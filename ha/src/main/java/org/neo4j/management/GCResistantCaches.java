@@ -0,0 +1,37 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.management;
+
+import org.neo4j.jmx.Description;
+import org.neo4j.jmx.ManagementInterface;
+
+@ManagementInterface( name = GCResistantCaches.NAME )
+@Description( "Statistics about the GC resistant caches of this database" )
+public interface GCResistantCaches
+{
+    final String NAME = "GC Resistant Caches";
+
+    @Description( "Statistics for each GC resistant cache, both in total and for the last interval of gcr_cache_min_log_interval" )
+    GCResistantCacheInfo[] getCaches();
+
+    @Description( "Number of occupied slots in each of the given number of equally sized regions of the " +
+            "array of the named cache. This scans the whole array." )
+    int[] getOccupancyHistogram( String cacheName, int buckets );
+}
@@ -0,0 +1,39 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.management;
+
+import org.neo4j.jmx.Description;
+import org.neo4j.jmx.ManagementInterface;
+
+@ManagementInterface( name = SlaveConnections.NAME )
+@Description( "Channels and transactions that slaves left behind on this instance while it was master" )
+public interface SlaveConnections
+{
+    final String NAME = "Slave Connections";
+
+    @Description( "Number of slave channels that went silent and were closed since this instance last became " +
+            "master" )
+    long getSilentChannelsClosed();
+
+    @Description( "Number of transactions slaves didn't finish that were rolled back since this instance last " +
+            "became master" )
+    long getUnfinishedTransactionsRolledBack();
+}
@@ -0,0 +1,53 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.management;
+
+import org.neo4j.jmx.Description;
+import org.neo4j.jmx.ManagementInterface;
+
+@ManagementInterface( name = StoreCopyThrottle.NAME )
+@Description( "Rate limits for store copies to slaves and full backups, shared by all databases in this JVM" )
+public interface StoreCopyThrottle
+{
+    final String NAME = "Store Copy Throttle";
+
+    @Description( "Max rate at which store files are read from disk, in bytes per second. 0 means no limit." )
+    long getMaxReadRate();
+
+    void setMaxReadRate( long bytesPerSecond );
+
+    @Description( "Max rate at which store files are sent over the network, in bytes per second. " +
+            "0 means no limit." )
+    long getMaxWriteRate();
+
+    void setMaxWriteRate( long bytesPerSecond );
+
+    @Description( "Number of bytes read from store files for store copies and backups" )
+    long getBytesRead();
+
+    @Description( "Number of bytes of store files sent for store copies and backups" )
+    long getBytesWritten();
+
+    @Description( "Time spent waiting for the read rate limit, in milliseconds" )
+    long getThrottledReadMillis();
+
+    @Description( "Time spent waiting for the write rate limit, in milliseconds" )
+    long getThrottledWriteMillis();
+}
@@ -22,8 +22,10 @@ package org.neo4j.ha;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import java.nio.channels.ReadableByteChannel;
 import java.util.Arrays;
 
@@ -287,6 +289,38 @@ public class TestBlockLogBuffer
         assertThat( actual, new ArrayMatches<byte[]>( Arrays.copyOfRange( bytesValue, 510, 600 ) ) );
     }
     
+    @Test
+    public void canTransferLargeChannelInBlocks() throws Exception
+    {
+        byte[] bytesValue = new byte[100000];
+        for ( int i = 0; i < bytesValue.length; i++ )
+        {
+            bytesValue[i] = (byte) i;
+        }
+        ChannelBuffer wrappedBuffer = ChannelBuffers.dynamicBuffer();
+        BlockLogBuffer buffer = new BlockLogBuffer( wrappedBuffer );
+        buffer.putInt( 1 );
+        assertEquals( bytesValue.length,
+                buffer.write( Channels.newChannel( new ByteArrayInputStream( bytesValue ) ) ) );
+        buffer.done();
+
+        // 100004 bytes is 392 full blocks and 44 bytes in the last one
+        assertEquals( 392 * 256 + 1 + 44, wrappedBuffer.readableBytes() );
+        assertEquals( (byte) 0, wrappedBuffer.getByte( 391 * 256 ) );
+        assertEquals( (byte) 44, wrappedBuffer.getByte( 392 * 256 ) );
+
+        BlockLogReader reader = new BlockLogReader( wrappedBuffer );
+        ByteBuffer verificationBuffer = ByteBuffer.allocate( 200000 );
+        assertEquals( 4 + bytesValue.length, reader.read( verificationBuffer ) );
+        assertEquals( -1, reader.read( verificationBuffer ) );
+        verificationBuffer.flip();
+        assertEquals( 1, verificationBuffer.getInt() );
+        byte[] actual = new byte[bytesValue.length];
+        verificationBuffer.get( actual );
+        assertThat( actual, new ArrayMatches<byte[]>( bytesValue ) );
+        assertEquals( 0, wrappedBuffer.readableBytes() );
+    }
+
     private class ArrayMatches<T> extends BaseMatcher<T>
     {
         private final T expected;
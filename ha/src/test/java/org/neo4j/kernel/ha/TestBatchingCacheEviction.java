@@ -0,0 +1,79 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.kernel.ha;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import org.junit.Test;
+import org.neo4j.graphdb.DependencyResolver;
+import org.neo4j.kernel.impl.core.LockReleaser;
+import org.neo4j.kernel.impl.core.NodeManager;
+import org.neo4j.kernel.impl.util.StringLogger;
+
+public class TestBatchingCacheEviction
+{
+    private final DependencyResolver resolver = mock( DependencyResolver.class );
+    private final NodeManager nodeManager = mock( NodeManager.class );
+    private final LockReleaser lockReleaser = mock( LockReleaser.class );
+
+    @Test
+    public void evictsWhatTheKernelEvictedOnceAfterThePull() throws Exception
+    {
+        when( resolver.resolveDependency( NodeManager.class ) ).thenReturn( nodeManager );
+        LockReleaser batching = BatchingCacheEviction.wrap( lockReleaser );
+
+        ChangedEntities changed = ChangedEntities.begin();
+        try
+        {
+            // Two pulled transactions changing the same node
+            batching.removeNodeFromCache( 1 );
+            batching.removeRelationshipFromCache( 10 );
+            batching.removeNodeFromCache( 1 );
+        }
+        finally
+        {
+            ChangedEntities.end();
+        }
+        verifyZeroInteractions( lockReleaser );
+        new HaXaDataSourceManager( StringLogger.DEV_NULL, resolver ).evictFromCaches( changed );
+
+        verify( nodeManager, times( 1 ) ).removeNodeFromCache( 1 );
+        verify( nodeManager, times( 1 ) ).removeRelationshipFromCache( 10 );
+        verifyNoMoreInteractions( nodeManager );
+    }
+
+    @Test
+    public void evictsStraightAwayOutsideOfAPull() throws Exception
+    {
+        LockReleaser batching = BatchingCacheEviction.wrap( lockReleaser );
+
+        batching.removeNodeFromCache( 1 );
+        batching.removeRelationshipFromCache( 10 );
+
+        verify( lockReleaser ).removeNodeFromCache( 1 );
+        verify( lockReleaser ).removeRelationshipFromCache( 10 );
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.ha;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.Test;
+import org.neo4j.helpers.Pair;
+import org.neo4j.kernel.impl.transaction.xaframework.NoSuchLogVersionException;
+
+public class TestBranchPointFinder
+{
+    @Test
+    public void findsLastCommonTxFarBack() throws Exception
+    {
+        Store mine = new Store( 1000, 137 );
+        Store masters = new Store( 1000, Long.MAX_VALUE );
+        assertEquals( 136, new BranchPointFinder( mine, masters ).findLastCommonTx( 1000 ) );
+        assertTrue( "Too many lookups: " + mine.lookups, mine.lookups <= 2 * 11 );
+    }
+
+    @Test
+    public void findsLastCommonTxJustBeforeLastCommitted() throws Exception
+    {
+        assertEquals( 999, new BranchPointFinder( new Store( 1000, 1000 ), new Store( 1000, Long.MAX_VALUE ) )
+                .findLastCommonTx( 1000 ) );
+    }
+
+    @Test
+    public void noCommonTransactionGivesTheEmptyStore() throws Exception
+    {
+        assertEquals( 1, new BranchPointFinder( new Store( 50, 2 ), new Store( 50, Long.MAX_VALUE ) )
+                .findLastCommonTx( 50 ) );
+    }
+
+    @Test
+    public void missingLogsGivesUnknown() throws Exception
+    {
+        Store mine = new Store( 1000, 10 );
+        mine.lowestLoggedTx = 500;
+        assertEquals( BranchPointFinder.UNKNOWN,
+                new BranchPointFinder( mine, new Store( 1000, Long.MAX_VALUE ) ).findLastCommonTx( 1000 ) );
+    }
+
+    /**
+     * Transactions from {@code firstDifferentTx} and on are committed under another master.
+     */
+    private static class Store implements BranchPointFinder.TxChecksumLookup
+    {
+        private final long lastTx;
+        private final long firstDifferentTx;
+        private long lowestLoggedTx = 2;
+        private int lookups;
+
+        Store( long lastTx, long firstDifferentTx )
+        {
+            this.lastTx = lastTx;
+            this.firstDifferentTx = firstDifferentTx;
+        }
+
+        @Override
+        public Pair<Integer, Long> lookup( long txId ) throws IOException
+        {
+            lookups++;
+            if ( txId < lowestLoggedTx || txId > lastTx )
+            {
+                throw new NoSuchLogVersionException( txId );
+            }
+            return Pair.of( txId < firstDifferentTx ? 1 : 2, txId * 31 );
+        }
+    }
+}
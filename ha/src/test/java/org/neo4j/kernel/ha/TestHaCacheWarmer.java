@@ -0,0 +1,117 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.kernel.ha;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.neo4j.kernel.ha.cluster.HighAvailabilityMemberState.MASTER;
+import static org.neo4j.kernel.ha.cluster.HighAvailabilityMemberState.PENDING;
+import static org.neo4j.kernel.ha.cluster.HighAvailabilityMemberState.TO_MASTER;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.neo4j.kernel.GraphDatabaseAPI;
+import org.neo4j.kernel.ha.cluster.HighAvailabilityMemberChangeEvent;
+import org.neo4j.kernel.ha.cluster.HighAvailabilityMemberListener;
+import org.neo4j.kernel.ha.cluster.HighAvailabilityMemberState;
+import org.neo4j.kernel.ha.cluster.HighAvailabilityMemberStateMachine;
+import org.neo4j.kernel.impl.util.StringLogger;
+
+public class TestHaCacheWarmer
+{
+    private final HaCaches caches = mock( HaCaches.class );
+    private final GraphDatabaseAPI graphDb = mock( GraphDatabaseAPI.class );
+    private HaCacheWarmer warmer;
+    private HighAvailabilityMemberListener listener;
+
+    @Before
+    public void startWarmer() throws Throwable
+    {
+        HighAvailabilityMemberStateMachine stateMachine = mock( HighAvailabilityMemberStateMachine.class );
+        warmer = new HaCacheWarmer( caches, graphDb, stateMachine, 10, StringLogger.DEV_NULL );
+        ArgumentCaptor<HighAvailabilityMemberListener> listenerCaptor =
+                ArgumentCaptor.forClass( HighAvailabilityMemberListener.class );
+        verify( stateMachine ).addClusterMemberListener( listenerCaptor.capture() );
+        listener = listenerCaptor.getValue();
+        warmer.start();
+    }
+
+    @After
+    public void stopWarmer() throws Throwable
+    {
+        warmer.stop();
+    }
+
+    @Test
+    public void samplesOnItsOwnThreadWhenSwitchStarts() throws Exception
+    {
+        final AtomicReference<Thread> samplingThread = new AtomicReference<Thread>();
+        final CountDownLatch sampled = new CountDownLatch( 1 );
+        when( caches.sampleNodeIds( 10 ) ).thenAnswer( new Answer<long[]>()
+        {
+            @Override
+            public long[] answer( InvocationOnMock invocation )
+            {
+                samplingThread.set( Thread.currentThread() );
+                sampled.countDown();
+                return new long[] { 1 };
+            }
+        } );
+        when( caches.sampleRelationshipIds( 10 ) ).thenReturn( new long[0] );
+
+        listener.masterIsElected( event( PENDING, TO_MASTER ) );
+
+        assertTrue( sampled.await( 10, SECONDS ) );
+        assertNotSame( Thread.currentThread(), samplingThread.get() );
+    }
+
+    @Test
+    public void warmsUpWithWhatWasSampledWhenSwitchStarted() throws Exception
+    {
+        when( caches.sampleNodeIds( 10 ) ).thenReturn( new long[] { 1, 2 } );
+        when( caches.sampleRelationshipIds( 10 ) ).thenReturn( new long[] { 3 } );
+
+        listener.masterIsElected( event( PENDING, TO_MASTER ) );
+        listener.masterIsAvailable( event( TO_MASTER, MASTER ) );
+
+        verify( graphDb, timeout( 10000 ) ).getNodeById( 1 );
+        verify( graphDb, timeout( 10000 ) ).getNodeById( 2 );
+        verify( graphDb, timeout( 10000 ) ).getRelationshipById( 3 );
+    }
+
+    private HighAvailabilityMemberChangeEvent event( HighAvailabilityMemberState from,
+                                                     HighAvailabilityMemberState to )
+    {
+        return new HighAvailabilityMemberChangeEvent( from, to, null, null );
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.kernel.ha;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.neo4j.com.RequestContext;
+import org.neo4j.com.Response;
+import org.neo4j.kernel.impl.transaction.xaframework.MissingLogDataException;
+import org.neo4j.kernel.impl.transaction.xaframework.XaDataSource;
+import org.neo4j.kernel.impl.util.StringLogger;
+
+public class TestMasterCatchUp
+{
+    private final Map<String, Long> slaveTxs = new HashMap<String, Long>();
+    private final Map<String, Long> masterTxs = new HashMap<String, Long>();
+    private final List<String> requests = new ArrayList<String>();
+    private final Master master = mock( Master.class );
+    private final HaXaDataSourceManager xaDataSourceManager = mock( HaXaDataSourceManager.class );
+
+    @Test
+    public void catchesUpEveryDataSourceInBatches() throws Exception
+    {
+        dataSources( "nioneodb", 10, 25, "lucene", 3, 7 );
+
+        new MasterCatchUp( master, xaDataSourceManager, 10, StringLogger.SYSTEM ).catchUp();
+
+        assertEquals( 25, (long) slaveTxs.get( "nioneodb" ) );
+        assertEquals( 7, (long) slaveTxs.get( "lucene" ) );
+        assertEquals( asList( "nioneodb 11-20", "nioneodb 21-30", "lucene 4-13" ), requests );
+    }
+
+    @Test
+    public void leavesItToThePullIfMasterCanNotCopyTheRange() throws Exception
+    {
+        dataSources( "nioneodb", 10, 25, "lucene", 3, 7 );
+        masterFailsWith( "nioneodb", new RuntimeException( new IOException( "Unable to find txId 20" ) ) );
+
+        new MasterCatchUp( master, xaDataSourceManager, 10, StringLogger.SYSTEM ).catchUp();
+
+        assertEquals( 10, (long) slaveTxs.get( "nioneodb" ) );
+        assertEquals( 7, (long) slaveTxs.get( "lucene" ) );
+    }
+
+    @Test( expected = StoreOutOfDateException.class )
+    public void storeIsOutOfDateIfMasterIsMissingTheLogs() throws Exception
+    {
+        dataSources( "nioneodb", 10, 25 );
+        masterFailsWith( "nioneodb", new RuntimeException( new MissingLogDataException( "log 3 is gone" ) ) );
+
+        new MasterCatchUp( master, xaDataSourceManager, 10, StringLogger.SYSTEM ).catchUp();
+    }
+
+    /**
+     * Name, slave's last tx and master's last tx for each data source.
+     */
+    private void dataSources( Object... nameSlaveMaster )
+    {
+        Collection<XaDataSource> dataSources = new ArrayList<XaDataSource>();
+        for ( int i = 0; i < nameSlaveMaster.length; i += 3 )
+        {
+            final String name = (String) nameSlaveMaster[i];
+            slaveTxs.put( name, ((Number) nameSlaveMaster[i + 1]).longValue() );
+            masterTxs.put( name, ((Number) nameSlaveMaster[i + 2]).longValue() );
+            XaDataSource dataSource = mock( XaDataSource.class );
+            when( dataSource.getName() ).thenReturn( name );
+            when( dataSource.getLastCommittedTxId() ).thenAnswer( new Answer<Long>()
+            {
+                @Override
+                public Long answer( InvocationOnMock invocation )
+                {
+                    return slaveTxs.get( name );
+                }
+            } );
+            dataSources.add( dataSource );
+        }
+        when( xaDataSourceManager.getAllRegisteredDataSources() ).thenReturn( dataSources );
+        when( master.copyTransactions( any( RequestContext.class ), anyString(), anyLong(), anyLong() ) ).thenAnswer(
+                new Answer<Response<Void>>()
+                {
+                    @Override
+                    public Response<Void> answer( InvocationOnMock invocation )
+                    {
+                        Object[] arguments = invocation.getArguments();
+                        String name = (String) arguments[1];
+                        long start = (Long) arguments[2];
+                        long end = (Long) arguments[3];
+                        requests.add( name + " " + start + "-" + end );
+                        slaveTxs.put( name, Math.max( slaveTxs.get( name ), Math.min( end, masterTxs.get( name ) ) ) );
+                        return null;
+                    }
+                } );
+    }
+
+    private void masterFailsWith( String dataSource, RuntimeException failure )
+    {
+        // doThrow, since stubbing with when() would call the answer set up in dataSources()
+        doThrow( failure ).when( master ).copyTransactions( any( RequestContext.class ), eq( dataSource ),
+                anyLong(), anyLong() );
+    }
+}
@@ -19,8 +19,13 @@
  */
 package org.neo4j.kernel.impl.cache;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
+import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.junit.Before;
@@ -122,6 +127,117 @@ public class TestGCResistantCache
         cache.remove( -1l );
     }
     
+    @Test
+    public void clockEvictionGivesReferencedEntriesASecondChance() throws Exception
+    {
+        GCResistantCache<Entity> clockCache = new GCResistantCache<Entity>( new AtomicReferenceArray<Entity>( 10 ),
+                GCResistantCache.EvictionPolicy.clock, 100 );
+        for ( int i = 0; i < 10; i++ )
+        {
+            clockCache.put( new Entity( i, 10 ) );
+        }
+        // First turn of the clock clears all reference bits, the second evicts the first entry
+        awaitPurge( clockCache );
+        assertNull( clockCache.get( 0 ) );
+
+        assertNotNull( clockCache.get( 1 ) );
+        clockCache.put( new Entity( 10, 10 ) );
+        awaitPurge( clockCache );
+
+        assertNotNull( clockCache.get( 1 ) );
+        assertNull( clockCache.get( 2 ) );
+        assertEquals( 90, clockCache.size() );
+    }
+
+    @Test
+    public void statisticsCountHitsAndMissesPerInterval()
+    {
+        cache.put( new Entity( 1, 10 ) );
+        cache.get( 1 );
+        cache.get( 2 );
+        CacheStatistics first = cache.getStatistics();
+        assertEquals( 1, first.getHits() );
+        assertEquals( 1, first.getMisses() );
+        assertEquals( 1, first.getPuts() );
+        assertEquals( 0.5f, first.getHitRatio(), 0.0f );
+
+        cache.get( 1 );
+        cache.get( 1 );
+        CacheStatistics interval = cache.getStatistics().since( first );
+        assertEquals( 2, interval.getHits() );
+        assertEquals( 0, interval.getMisses() );
+        assertEquals( 1.0f, interval.getHitRatio(), 0.0f );
+    }
+
+    @Test
+    public void readingIntervalStatisticsDoesNotStartANewInterval()
+    {
+        cache.put( new Entity( 1, 10 ) );
+        cache.get( 1 );
+
+        assertEquals( 1, cache.getIntervalStatistics().getHits() );
+        assertEquals( 1, cache.getIntervalStatistics().getHits() );
+    }
+
+    @Test
+    public void occupancyHistogramCountsOccupiedSlotsPerRegion()
+    {
+        cache.put( new Entity( 0, 10 ) );
+        cache.put( new Entity( 1, 10 ) );
+        cache.put( new Entity( 9, 10 ) );
+        int[] histogram = cache.getOccupancyHistogram( 2 );
+        assertEquals( 2, histogram[0] );
+        assertEquals( 1, histogram[1] );
+    }
+
+    @Test
+    public void sampleIdsPrefersReferencedEntriesWithClockEviction() throws Exception
+    {
+        GCResistantCache<Entity> clockCache = new GCResistantCache<Entity>( new AtomicReferenceArray<Entity>( 10 ),
+                GCResistantCache.EvictionPolicy.clock, 100 );
+        for ( int i = 0; i < 10; i++ )
+        {
+            clockCache.put( new Entity( i, 10 ) );
+        }
+        awaitPurge( clockCache );
+        clockCache.get( 7 );
+        clockCache.get( 3 );
+
+        // 3 and 7 were just read, the purge cleared the reference bits of the other entries and evicted 0
+        long[] ids = clockCache.sampleIds( 3 );
+        assertEquals( 3, ids.length );
+        long[] referenced = Arrays.copyOf( ids, 2 );
+        Arrays.sort( referenced );
+        assertArrayEquals( new long[] { 3, 7 }, referenced );
+        assertEquals( 9, clockCache.sampleIds( 20 ).length );
+    }
+
+    @Test
+    public void sampleIdsPrefersEntriesReferencedSinceLastSampleWithSweepEviction() throws Exception
+    {
+        for ( int i = 0; i < 10; i++ )
+        {
+            cache.put( new Entity( i, 10 ) );
+        }
+        assertEquals( 10, cache.sampleIds( 10 ).length );
+
+        for ( int i = 0; i < 20; i++ )
+        {   // The scan starts at a random slot, 4 must come first regardless
+            cache.get( 4 );
+            assertEquals( 4, cache.sampleIds( 1 )[0] );
+        }
+    }
+
+    private void awaitPurge( GCResistantCache<Entity> cache ) throws InterruptedException
+    {
+        long end = System.currentTimeMillis() + 10000;
+        while ( (cache.size() > 90 || cache.isPurging()) && System.currentTimeMillis() < end )
+        {
+            Thread.sleep( 10 );
+        }
+        assertTrue( "Purge didn't finish", cache.size() <= 90 && !cache.isPurging() );
+    }
+
     private static class Entity implements EntityWithSize
     {
         private final long id;
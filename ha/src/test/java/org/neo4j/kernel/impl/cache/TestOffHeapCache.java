@@ -0,0 +1,175 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.junit.Test;
+
+public class TestOffHeapCache
+{
+    @Test
+    public void shouldGetWhatWasPut() throws Exception
+    {
+        OffHeapCache<Entity> cache = new OffHeapCache<Entity>( 1024, new EntityCodec() );
+        cache.put( new Entity( 3, 42 ) );
+
+        assertEquals( 42, cache.get( 3 ).value );
+        assertNull( cache.get( 4 ) );
+        assertEquals( 1, cache.hitCount() );
+        assertEquals( 1, cache.missCount() );
+    }
+
+    @Test
+    public void shouldNotReturnEntityThatCollidedOrWasRemoved() throws Exception
+    {
+        OffHeapCache<Entity> cache = new OffHeapCache<Entity>( 10 * (12 + 8), new EntityCodec() );
+        assertEquals( 10, cache.capacity() );
+        cache.put( new Entity( 1, 1 ) );
+        cache.put( new Entity( 11, 11 ) );
+        cache.put( new Entity( 2, 2 ) );
+        cache.remove( 2 );
+
+        assertNull( cache.get( 1 ) );
+        assertEquals( 11, cache.get( 11 ).value );
+        assertNull( cache.get( 2 ) );
+    }
+
+    @Test
+    public void clearShouldInvalidateEverything() throws Exception
+    {
+        OffHeapCache<Entity> cache = new OffHeapCache<Entity>( 1024, new EntityCodec() );
+        cache.put( new Entity( 1, 1 ) );
+        cache.clear();
+        assertNull( cache.get( 1 ) );
+
+        cache.put( new Entity( 1, 2 ) );
+        assertEquals( 2, cache.get( 1 ).value );
+    }
+
+    @Test
+    public void gcResistantCacheShouldFindEvictedEntitiesInSecondTier() throws Exception
+    {
+        OffHeapCache<Entity> secondTier = new OffHeapCache<Entity>( 1024, new EntityCodec() );
+        GCResistantCache<Entity> cache = new GCResistantCache<Entity>( new AtomicReferenceArray<Entity>( 10 ),
+                secondTier );
+        cache.put( new Entity( 1, 1 ) );
+        cache.put( new Entity( 11, 11 ) );
+
+        assertEquals( 1, cache.get( 1 ).value );
+        assertEquals( 11, cache.get( 11 ).value );
+
+        cache.remove( 1 );
+        assertNull( cache.get( 1 ) );
+    }
+
+    @Test
+    public void hitsInSecondTierShouldCountAsHits() throws Exception
+    {
+        OffHeapCache<Entity> secondTier = new OffHeapCache<Entity>( 1024, new EntityCodec() );
+        GCResistantCache<Entity> cache = new GCResistantCache<Entity>( new AtomicReferenceArray<Entity>( 10 ),
+                secondTier );
+        cache.put( new Entity( 1, 1 ) );
+        cache.put( new Entity( 11, 11 ) );
+
+        cache.get( 1 );
+        cache.get( 2 );
+
+        assertEquals( 1, cache.hitCount() );
+        assertEquals( 1, cache.missCount() );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void shouldNotAllowCacheLargerThanDirectMemoryLimit() throws Exception
+    {
+        new OffHeapCache<Entity>( OffHeapCache.maxDirectMemory() + 1, new EntityCodec() );
+    }
+
+    @Test
+    public void shouldParseDirectMemorySizes() throws Exception
+    {
+        assertEquals( 512, OffHeapCache.parseSize( "512" ) );
+        assertEquals( 2 * 1024, OffHeapCache.parseSize( "2k" ) );
+        assertEquals( 3L * 1024 * 1024, OffHeapCache.parseSize( "3M" ) );
+        assertEquals( 4L * 1024 * 1024 * 1024, OffHeapCache.parseSize( "4g" ) );
+    }
+
+    private static class Entity implements EntityWithSize
+    {
+        private final long id;
+        private final long value;
+        private int registeredSize;
+
+        Entity( long id, long value )
+        {
+            this.id = id;
+            this.value = value;
+        }
+
+        @Override
+        public int size()
+        {
+            return 10;
+        }
+
+        @Override
+        public long getId()
+        {
+            return id;
+        }
+
+        @Override
+        public void setRegisteredSize( int size )
+        {
+            this.registeredSize = size;
+        }
+
+        @Override
+        public int getRegisteredSize()
+        {
+            return registeredSize;
+        }
+    }
+
+    private static class EntityCodec implements OffHeapCache.Codec<Entity>
+    {
+        @Override
+        public int recordSize()
+        {
+            return 8;
+        }
+
+        @Override
+        public void write( Entity entity, ByteBuffer target )
+        {
+            target.putLong( entity.value );
+        }
+
+        @Override
+        public Entity read( long id, ByteBuffer source )
+        {
+            return new Entity( id, source.getLong() );
+        }
+    }
+}